@@ -0,0 +1,188 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.client.HttpRequestAborter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Executes the REST-API calls of a source to all its apiUrls in parallel, on a shared bounded pool.
+ *
+ * <p>Every call has its own deadline, so that a hung target cannot hold the results of the others.
+ * The HTTP request in flight of a call is aborted when its deadline expires. Sources with a single
+ * apiUrl are called directly from the caller thread.
+ */
+@Singleton
+public class ApiCallsExecutor {
+  static final String API_CALLS_QUEUE_NAME = "PullReplication-ApiCalls";
+  static final int DEFAULT_API_CALLS_THREADS = 8;
+
+  /** REST-API call to a single apiUrl of a source. */
+  @FunctionalInterface
+  public interface ApiCall<E extends Exception> {
+    boolean call(String apiUrl) throws E;
+  }
+
+  private final WorkQueue workQueue;
+  private final int threads;
+  private final Counter1<String> timeouts;
+  private volatile ScheduledExecutorService pool;
+
+  @Inject
+  ApiCallsExecutor(
+      ReplicationConfig replicationConfig,
+      WorkQueue workQueue,
+      @PluginName String pluginName,
+      MetricMaker metricMaker) {
+    this.workQueue = workQueue;
+    this.threads =
+        Math.max(
+            1,
+            replicationConfig
+                .getConfig()
+                .getInt("replication", "apiCallsThreads", DEFAULT_API_CALLS_THREADS));
+    timeouts =
+        metricMaker.newCounter(
+            "api_calls_timeouts",
+            new Description("Number of REST-API calls abandoned after their deadline")
+                .setRate()
+                .setUnit("calls"),
+            Field.ofString(
+                    "pull_replication",
+                    (metadataBuilder, fieldValue) ->
+                        metadataBuilder
+                            .pluginName(pluginName)
+                            .addPluginMetadata(
+                                PluginMetadata.create("pull_replication", fieldValue)))
+                .build());
+  }
+
+  public synchronized void start() {
+    if (pool == null) {
+      pool = workQueue.createQueue(threads, API_CALLS_QUEUE_NAME);
+    }
+  }
+
+  public synchronized int stop() {
+    int discarded = 0;
+    if (pool != null) {
+      discarded = pool.shutdownNow().size();
+      pool = null;
+    }
+    return discarded;
+  }
+
+  /**
+   * Call all the apiUrls of a source and wait for the results.
+   *
+   * @param source the replication source.
+   * @param call the call to execute for every apiUrl of the source.
+   * @return true if all the calls were successful and completed within the source deadline.
+   * @throws E the first exception thrown by a call, once all the others have completed.
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Exception> boolean callAll(Source source, ApiCall<E> call) throws E {
+    List<String> apiUrls = source.getApis();
+    ScheduledExecutorService executor = pool;
+    if (apiUrls.size() == 1 || executor == null) {
+      boolean resultIsSuccessful = true;
+      for (String apiUrl : apiUrls) {
+        resultIsSuccessful &= call.call(apiUrl);
+      }
+      return resultIsSuccessful;
+    }
+
+    List<Future<Boolean>> results = new ArrayList<>(apiUrls.size());
+    List<HttpRequestAborter> aborters = new ArrayList<>(apiUrls.size());
+    try {
+      for (String apiUrl : apiUrls) {
+        HttpRequestAborter aborter = new HttpRequestAborter();
+        results.add(executor.submit(() -> aborter.run(() -> call.call(apiUrl))));
+        aborters.add(aborter);
+      }
+    } catch (RejectedExecutionException e) {
+      cancel(results, aborters);
+      repLog.warn("REST-API calls queue is shutting down: discarding calls to {}", apiUrls, e);
+      return false;
+    }
+
+    int timeoutMs = source.getApiCallTimeout();
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    boolean resultIsSuccessful = true;
+    Throwable failure = null;
+    for (int i = 0; i < results.size(); i++) {
+      Future<Boolean> result = results.get(i);
+      try {
+        resultIsSuccessful &=
+            timeoutMs > 0
+                ? result.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)
+                : result.get();
+      } catch (TimeoutException e) {
+        aborters.get(i).abort();
+        result.cancel(true);
+        timeouts.increment(source.getRemoteConfigName());
+        repLog.warn(
+            "Pull replication REST API call to {} did not complete within {} ms",
+            apiUrls.get(i),
+            timeoutMs);
+        resultIsSuccessful = false;
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+        resultIsSuccessful = false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel(results, aborters);
+        return false;
+      }
+    }
+
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    if (failure != null) {
+      throw (E) failure;
+    }
+    return resultIsSuccessful;
+  }
+
+  private static void cancel(List<Future<Boolean>> results, List<HttpRequestAborter> aborters) {
+    aborters.forEach(HttpRequestAborter::abort);
+    results.forEach(r -> r.cancel(true));
+  }
+}
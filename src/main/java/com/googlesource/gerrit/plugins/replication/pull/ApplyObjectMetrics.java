@@ -16,6 +16,7 @@ package com.googlesource.gerrit.plugins.replication.pull;
 
 import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
@@ -23,13 +24,22 @@ import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.logging.PluginMetadata;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
 
 @Singleton
 public class ApplyObjectMetrics {
   private final Timer1<String> executionTime;
   private final Timer1<String> end2EndTime;
+  private final Timer1<String> payloadParseTime;
+  private final Timer1<String> payloadInsertTime;
 
   private final Counter0 maxApiPayloadSizeReachedCounter;
+  private final Counter1<String> payloadSerializedBytes;
+  private final Counter1<String> payloadSentBytes;
+  private final Counter1<String> writtenObjects;
+  private final Counter1<String> writtenBytes;
+  private final Counter1<String> skippedObjects;
+  private final Counter1<String> skippedBytes;
 
   @Inject
   ApplyObjectMetrics(@PluginName String pluginName, MetricMaker metricMaker) {
@@ -56,6 +66,20 @@ public class ApplyObjectMetrics {
                 .setCumulative()
                 .setUnit(Description.Units.MILLISECONDS),
             field);
+    payloadParseTime =
+        metricMaker.newTimer(
+            "apply_object_payload_parse_latency",
+            new Description("Time spent parsing streamed apply object payloads")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            field);
+    payloadInsertTime =
+        metricMaker.newTimer(
+            "apply_object_payload_insert_latency",
+            new Description("Time spent inserting the objects of streamed apply object payloads")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            field);
     maxApiPayloadSizeReachedCounter =
         metricMaker.newCounter(
             "apply_object_max_api_payload_reached",
@@ -63,6 +87,48 @@ public class ApplyObjectMetrics {
                     "Number of apply object operation with payload larger than maxApiPayloadSize")
                 .setRate()
                 .setUnit("errors"));
+    payloadSerializedBytes =
+        metricMaker.newCounter(
+            "apply_object_payload_serialized_bytes",
+            new Description("Number of bytes of apply object payloads serialized")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
+    payloadSentBytes =
+        metricMaker.newCounter(
+            "apply_object_payload_sent_bytes",
+            new Description("Number of bytes of apply object payloads sent to the apiUrls")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
+    writtenObjects =
+        metricMaker.newCounter(
+            "apply_object_written_objects",
+            new Description("Number of apply object objects written to the repository")
+                .setCumulative()
+                .setUnit("objects"),
+            field);
+    writtenBytes =
+        metricMaker.newCounter(
+            "apply_object_written_bytes",
+            new Description("Number of payload bytes of the apply object objects written")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
+    skippedObjects =
+        metricMaker.newCounter(
+            "apply_object_skipped_objects",
+            new Description("Number of apply object objects already in the repository")
+                .setCumulative()
+                .setUnit("objects"),
+            field);
+    skippedBytes =
+        metricMaker.newCounter(
+            "apply_object_skipped_bytes",
+            new Description("Number of payload bytes of the apply object objects skipped")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
   }
 
   /**
@@ -85,6 +151,62 @@ public class ApplyObjectMetrics {
     return end2EndTime.start(name);
   }
 
+  /**
+   * Record the size of an apply object payload serialized for a source.
+   *
+   * @param name the source name.
+   * @param bytes the size of the serialized payload.
+   */
+  public void recordPayloadSerialized(String name, long bytes) {
+    payloadSerializedBytes.incrementBy(name, bytes);
+  }
+
+  /**
+   * Record the size of an apply object payload sent to one of the apiUrls of a source.
+   *
+   * @param name the source name.
+   * @param bytes the size of the payload sent, after its compression.
+   */
+  public void recordPayloadSent(String name, long bytes) {
+    payloadSentBytes.incrementBy(name, bytes);
+  }
+
+  /**
+   * Record the time spent ingesting an apply object payload streamed from a source.
+   *
+   * @param name the source name.
+   * @param parseNanos the time spent parsing the JSON payload and decoding the objects.
+   * @param insertNanos the time spent inserting the objects into the repository.
+   */
+  public void recordPayloadIngested(String name, long parseNanos, long insertNanos) {
+    payloadParseTime.record(name, parseNanos, TimeUnit.NANOSECONDS);
+    payloadInsertTime.record(name, insertNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record the objects of an apply object request written to the repository.
+   *
+   * @param name the source name.
+   * @param objects the number of objects written.
+   * @param bytes the size of the written objects in the payload.
+   */
+  public void recordObjectsWritten(String name, long objects, long bytes) {
+    writtenObjects.incrementBy(name, objects);
+    writtenBytes.incrementBy(name, bytes);
+  }
+
+  /**
+   * Record the objects of an apply object request skipped because already in the repository.
+   *
+   * @param name the source name.
+   * @param objects the number of objects skipped.
+   * @param bytes the size of the skipped objects in the payload.
+   */
+  public void recordObjectsSkipped(String name, long objects, long bytes) {
+    skippedObjects.incrementBy(name, objects);
+    skippedBytes.incrementBy(name, bytes);
+  }
+
   /** Increment metric when ref size is larger than maxApiPayloadSize. */
   public void incrementMaxPayloadSizeReached() {
     maxApiPayloadSizeReachedCounter.increment();
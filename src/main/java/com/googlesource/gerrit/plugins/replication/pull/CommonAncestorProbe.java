@@ -0,0 +1,86 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Finds the newest ancestor of a commit already present on a target, for sending only the missing
+ * part of its history.
+ *
+ * <p>The first round asks the target for the ancestors at distance 1, 2, 4, 8, ... and for the
+ * oldest one. When the newest one present is not next to the previous probe, a second round asks
+ * for all the ancestors in between, so that at most two round-trips are needed.
+ */
+class CommonAncestorProbe {
+
+  /** Target of the probe, answering with the first of the candidates it has. */
+  @FunctionalInterface
+  interface Target {
+    Optional<ObjectId> findCommonAncestor(List<ObjectId> candidates) throws IOException;
+  }
+
+  /**
+   * Count the ancestors missing on the target.
+   *
+   * @param ancestors the ancestors of the commit, from the newest to the oldest.
+   * @param target the target of the probe.
+   * @return the number of the newest ancestors missing on the target.
+   */
+  static int missingAncestors(List<ObjectId> ancestors, Target target) throws IOException {
+    if (ancestors.isEmpty()) {
+      return 0;
+    }
+
+    List<Integer> probes = new ArrayList<>();
+    for (long distance = 1; distance <= ancestors.size(); distance *= 2) {
+      probes.add((int) distance - 1);
+    }
+    if (probes.get(probes.size() - 1) != ancestors.size() - 1) {
+      probes.add(ancestors.size() - 1);
+    }
+
+    Optional<Integer> newest = probe(ancestors, probes, target);
+    if (newest.isEmpty()) {
+      return ancestors.size();
+    }
+
+    int probeIndex = probes.indexOf(newest.get());
+    int previous = probeIndex == 0 ? -1 : probes.get(probeIndex - 1);
+    if (newest.get() - previous > 1) {
+      List<Integer> between = new ArrayList<>();
+      for (int i = previous + 1; i < newest.get(); i++) {
+        between.add(i);
+      }
+      return probe(ancestors, between, target).orElse(newest.get());
+    }
+    return newest.get();
+  }
+
+  private static Optional<Integer> probe(
+      List<ObjectId> ancestors, List<Integer> indexes, Target target) throws IOException {
+    List<ObjectId> candidates = indexes.stream().map(ancestors::get).collect(Collectors.toList());
+    return target
+        .findCommonAncestor(candidates)
+        .map(candidates::indexOf)
+        .filter(i -> i >= 0)
+        .map(indexes::get);
+  }
+}
@@ -0,0 +1,427 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import com.google.common.collect.Queues;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Long-lived stage that executes the outbound REST calls triggered by local ref-update events.
+ *
+ * <p>Events are admitted into a bounded queue and each of them is split into one call per
+ * replication source. Calls are executed on a shared worker pool, with a per-source cap on the
+ * number of concurrent calls, so that a slow source cannot hold all the workers. The calls of the
+ * same project towards the same source are executed one at a time, in the order of their events,
+ * so that an older value of a ref cannot overwrite a newer one.
+ *
+ * <p>When the queue is full the configured {@link Backpressure} policy applies.
+ */
+@Singleton
+public class FetchCallsDispatcher {
+  static final String FETCH_CALLS_QUEUE_NAME = "PullReplication-FetchCalls";
+  static final int DEFAULT_FETCH_CALLS_THREADS = 4;
+  static final int DEFAULT_FETCH_CALLS_QUEUE_SIZE = 1024;
+
+  /** Policy applied when an event is dispatched and the queue is full. */
+  public enum Backpressure {
+    /** The event thread waits until a queue slot becomes available. */
+    BLOCK,
+
+    /** Skip the apply-object payload and just dispatch the fetch REST-API calls. */
+    FETCH,
+
+    /** Keep the event in an unbounded in-memory overflow, admitted as soon as a slot frees up. */
+    SPILL
+  }
+
+  private final WorkQueue workQueue;
+  private final int threads;
+  private final int queueSize;
+  private final int maxCallsPerSource;
+  private final Backpressure backpressure;
+  private final Semaphore queueSlots;
+  private final Queue<Spilled> spilled = Queues.newConcurrentLinkedQueue();
+  private final Object admission = new Object();
+  private final Map<String, SourceLane> lanes = new ConcurrentHashMap<>();
+  private final AtomicInteger queuedCalls = new AtomicInteger();
+  private final Timer1<String> waitTime;
+  private final Counter1<String> rejected;
+  private volatile ScheduledExecutorService pool;
+
+  @Inject
+  FetchCallsDispatcher(
+      ReplicationConfig replicationConfig,
+      WorkQueue workQueue,
+      @PluginName String pluginName,
+      MetricMaker metricMaker) {
+    Config cfg = replicationConfig.getConfig();
+    this.workQueue = workQueue;
+    this.threads =
+        Math.max(1, cfg.getInt("replication", "fetchCallsThreads", DEFAULT_FETCH_CALLS_THREADS));
+    this.queueSize =
+        Math.max(
+            1, cfg.getInt("replication", "fetchCallsQueueSize", DEFAULT_FETCH_CALLS_QUEUE_SIZE));
+    this.maxCallsPerSource =
+        Math.max(1, cfg.getInt("replication", "fetchCallsMaxPerSource", threads));
+    this.backpressure =
+        cfg.getEnum("replication", null, "fetchCallsBackpressure", Backpressure.SPILL);
+    this.queueSlots = new Semaphore(queueSize);
+
+    Field<String> field =
+        Field.ofString(
+                "pull_replication",
+                (metadataBuilder, fieldValue) ->
+                    metadataBuilder
+                        .pluginName(pluginName)
+                        .addPluginMetadata(PluginMetadata.create("pull_replication", fieldValue)))
+            .build();
+    waitTime =
+        metricMaker.newTimer(
+            "fetch_calls_queue_wait_time",
+            new Description("Time spent by a fetch call in the queue before being executed.")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            field);
+    rejected =
+        metricMaker.newCounter(
+            "fetch_calls_queue_rejected",
+            new Description("Number of events dispatched when the fetch calls queue was full")
+                .setRate()
+                .setUnit("events"),
+            Field.ofString(
+                    "backpressure",
+                    (metadataBuilder, fieldValue) ->
+                        metadataBuilder
+                            .pluginName(pluginName)
+                            .addPluginMetadata(PluginMetadata.create("backpressure", fieldValue)))
+                .build());
+    metricMaker.newCallbackMetric(
+        "fetch_calls_queue_depth",
+        Integer.class,
+        new Description("Number of fetch calls waiting to be executed").setGauge().setUnit("calls"),
+        queuedCalls::get);
+    metricMaker.newCallbackMetric(
+        "fetch_calls_queue_spilled",
+        Integer.class,
+        new Description("Number of events waiting for a free slot in the fetch calls queue")
+            .setGauge()
+            .setUnit("events"),
+        spilled::size);
+  }
+
+  public synchronized void start() {
+    if (pool == null) {
+      pool = workQueue.createQueue(threads, FETCH_CALLS_QUEUE_NAME);
+    }
+  }
+
+  public synchronized int stop() {
+    ScheduledExecutorService executor = pool;
+    pool = null;
+
+    // The discarded calls complete their events and release their queue slots
+    int discarded = 0;
+    for (Spilled event = spilled.poll(); event != null; event = spilled.poll()) {
+      event.onCompletion.run();
+      discarded++;
+    }
+    for (SourceLane lane : lanes.values()) {
+      discarded += lane.clear();
+    }
+    lanes.clear();
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    return discarded;
+  }
+
+  /**
+   * Dispatch the calls of one event to all the sources, without waiting for their execution.
+   *
+   * @param project the project of the event. The calls of the same project towards the same source
+   *     are executed in the order of their events.
+   * @param sources the replication sources to call.
+   * @param call the call to execute for every source.
+   * @param fetchCall the lightweight call used instead of {@code call} when the queue is full and
+   *     the backpressure policy is {@link Backpressure#FETCH}.
+   * @param onCompletion executed once all the sources calls have been completed or discarded.
+   */
+  public void dispatch(
+      Project.NameKey project,
+      List<Source> sources,
+      Consumer<Source> call,
+      Consumer<Source> fetchCall,
+      Runnable onCompletion) {
+    synchronized (admission) {
+      // The spilled events are admitted first, for keeping the order of the events
+      if (spilled.isEmpty() && queueSlots.tryAcquire()) {
+        enqueue(project, sources, call, onCompletion, true);
+        return;
+      }
+
+      rejected.increment(backpressure.name().toLowerCase());
+      switch (backpressure) {
+        case FETCH:
+          repLog.warn("Fetch calls queue is full: falling back to fetch REST-API calls");
+          enqueue(project, sources, fetchCall, onCompletion, false);
+          return;
+        case SPILL:
+          repLog.warn("Fetch calls queue is full: spilling event to the overflow queue");
+          spilled.add(
+              new Spilled(() -> enqueue(project, sources, call, onCompletion, true), onCompletion));
+          admitSpilled();
+          return;
+        case BLOCK:
+        default:
+          break;
+      }
+    }
+
+    try {
+      queueSlots.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      repLog.error("Interrupted whilst waiting for a free slot in the fetch calls queue", e);
+      onCompletion.run();
+      return;
+    }
+    synchronized (admission) {
+      enqueue(project, sources, call, onCompletion, true);
+    }
+  }
+
+  private void enqueue(
+      Project.NameKey project,
+      List<Source> sources,
+      Consumer<Source> call,
+      Runnable onCompletion,
+      boolean holdsSlot) {
+    AtomicInteger remaining = new AtomicInteger(sources.size());
+    Runnable completeOne =
+        () -> {
+          if (remaining.decrementAndGet() == 0) {
+            onCompletion.run();
+            if (holdsSlot) {
+              releaseSlot();
+            }
+          }
+        };
+    for (Source source : sources) {
+      long enqueuedNanos = System.nanoTime();
+      queuedCalls.incrementAndGet();
+      lanes
+          .computeIfAbsent(source.getRemoteConfigName(), name -> new SourceLane())
+          .add(
+              new Call(
+                  project.get(),
+                  () -> {
+                    queuedCalls.decrementAndGet();
+                    waitTime.record(
+                        source.getRemoteConfigName(),
+                        System.nanoTime() - enqueuedNanos,
+                        TimeUnit.NANOSECONDS);
+                    try {
+                      call.accept(source);
+                    } catch (RuntimeException e) {
+                      repLog.error(
+                          "Unexpected error during the pull replication calls to source {}",
+                          source.getRemoteConfigName(),
+                          e);
+                    } finally {
+                      completeOne.run();
+                    }
+                  },
+                  () -> {
+                    queuedCalls.decrementAndGet();
+                    completeOne.run();
+                  }));
+    }
+  }
+
+  private void releaseSlot() {
+    queueSlots.release();
+    admitSpilled();
+  }
+
+  private void admitSpilled() {
+    synchronized (admission) {
+      while (!spilled.isEmpty() && queueSlots.tryAcquire()) {
+        Spilled next = spilled.poll();
+        if (next == null) {
+          queueSlots.release();
+          return;
+        }
+        next.admit.run();
+      }
+    }
+  }
+
+  /** Event waiting for a free slot in the queue. */
+  private static class Spilled {
+    final Runnable admit;
+    final Runnable onCompletion;
+
+    Spilled(Runnable admit, Runnable onCompletion) {
+      this.admit = admit;
+      this.onCompletion = onCompletion;
+    }
+  }
+
+  /** Call to a source, either executed or discarded exactly once. */
+  private static class Call {
+    final String key;
+    private final Runnable execution;
+    private final Runnable discard;
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    Call(String key, Runnable execution, Runnable discard) {
+      this.key = key;
+      this.execution = execution;
+      this.discard = discard;
+    }
+
+    void run() {
+      if (done.compareAndSet(false, true)) {
+        execution.run();
+      }
+    }
+
+    boolean discard() {
+      if (done.compareAndSet(false, true)) {
+        discard.run();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Per-source FIFO of calls, executed with at most maxCallsPerSource calls in parallel and one
+   * call at a time per project.
+   *
+   * <p>The discarded calls are completed after releasing the lock of the lane, because completing
+   * an event can admit spilled events into other lanes.
+   */
+  private class SourceLane {
+    private final Queue<Call> calls = new ArrayDeque<>();
+    private final Set<Call> submitted = new HashSet<>();
+    private final Set<String> runningKeys = new HashSet<>();
+
+    void add(Call call) {
+      List<Call> discarded;
+      synchronized (this) {
+        calls.add(call);
+        discarded = drain();
+      }
+      discarded.forEach(Call::discard);
+    }
+
+    int clear() {
+      List<Call> cleared;
+      synchronized (this) {
+        cleared = new ArrayList<>(calls);
+        cleared.addAll(submitted);
+        calls.clear();
+      }
+      // The calls already running cannot be discarded anymore
+      int discarded = 0;
+      for (Call call : cleared) {
+        if (call.discard()) {
+          discarded++;
+        }
+      }
+      return discarded;
+    }
+
+    private void finished(Call call) {
+      List<Call> discarded;
+      synchronized (this) {
+        submitted.remove(call);
+        runningKeys.remove(call.key);
+        discarded = drain();
+      }
+      discarded.forEach(Call::discard);
+    }
+
+    private List<Call> drain() {
+      ScheduledExecutorService executor = pool;
+      List<Call> discarded = new ArrayList<>();
+      Iterator<Call> queued = calls.iterator();
+      while (runningKeys.size() < maxCallsPerSource && queued.hasNext()) {
+        Call call = queued.next();
+        if (executor == null) {
+          repLog.warn("Fetch calls queue is not running: discarding call");
+          queued.remove();
+          discarded.add(call);
+          continue;
+        }
+        // Waits for the call of the same project already running
+        if (runningKeys.contains(call.key)) {
+          continue;
+        }
+
+        queued.remove();
+        runningKeys.add(call.key);
+        submitted.add(call);
+        try {
+          executor.execute(
+              () -> {
+                try {
+                  call.run();
+                } finally {
+                  finished(call);
+                }
+              });
+        } catch (RejectedExecutionException e) {
+          runningKeys.remove(call.key);
+          submitted.remove(call);
+          discarded.add(call);
+          repLog.warn("Fetch calls queue is shutting down: discarding call", e);
+        }
+      }
+      return discarded;
+    }
+  }
+}
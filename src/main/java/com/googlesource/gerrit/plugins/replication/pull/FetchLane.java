@@ -0,0 +1,68 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.RefNames;
+
+/**
+ * Priority lane of the fetch tasks of a source.
+ *
+ * <p>Each lane can have its own pool of threads, so that the fetches of one lane are never queued
+ * behind the ones of another. The lanes without dedicated threads share the pool of the source.
+ */
+public enum FetchLane {
+  /** Fetches waited upon by the clients, for the refs matched by the sync refs filter. */
+  SYNC("syncThreads"),
+  /** Fetches of the NoteDb meta refs. */
+  META("metaThreads"),
+  /** Regular fetches of the refs updated on the source. */
+  ASYNC(null),
+  /** Fetches of all the refs of a project, for a full or startup resync. */
+  BULK("bulkThreads");
+
+  private final String threadsConfigName;
+
+  FetchLane(@Nullable String threadsConfigName) {
+    this.threadsConfigName = threadsConfigName;
+  }
+
+  /**
+   * Name of the remote setting with the threads dedicated to the lane.
+   *
+   * @return the setting name or null when the lane always uses the pool of the source.
+   */
+  @Nullable
+  String getThreadsConfigName() {
+    return threadsConfigName;
+  }
+
+  boolean isMoreUrgentThan(FetchLane other) {
+    return compareTo(other) < 0;
+  }
+
+  static FetchLane of(ReplicationType replicationType, String ref) {
+    if (FetchOne.ALL_REFS.equals(ref)) {
+      return BULK;
+    }
+    if (ReplicationType.SYNC.equals(replicationType)) {
+      return SYNC;
+    }
+    if (RefNames.isNoteDbMetaRef(ref)) {
+      return META;
+    }
+    return ASYNC;
+  }
+}
@@ -21,6 +21,7 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Sets;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.registration.DynamicItem;
 import com.google.gerrit.metrics.Timer1;
@@ -40,14 +41,17 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.InexistentRefTrans
 import com.googlesource.gerrit.plugins.replication.pull.fetch.PermanentTransportException;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.errors.NoRemoteRepositoryException;
@@ -55,6 +59,8 @@ import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.RemoteRepositoryException;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RefSpec;
@@ -85,19 +91,22 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
   private final Project.NameKey projectName;
   private final URIish uri;
   private final Set<String> delta = Sets.newHashSetWithExpectedSize(4);
+  private final Map<String, ObjectId> newRevs = new HashMap<>();
   private final Set<TransportException> fetchFailures = Sets.newHashSetWithExpectedSize(4);
   private boolean fetchAllRefs;
   private Repository git;
-  private boolean retrying;
+  private volatile boolean retrying;
   private int retryCount;
   private final int maxRetries;
-  private boolean canceled;
+  private volatile boolean canceled;
+  private FetchLane lane = FetchLane.ASYNC;
   private final ListMultimap<String, ReplicationState> stateMap = LinkedListMultimap.create();
   private final int maxLockRetries;
   private int lockRetryCount;
   private final int id;
   private String taskIdHex;
   private final long createdAt;
+  @Nullable private volatile Long dueAt;
   private final FetchReplicationMetrics metrics;
   private final AtomicBoolean canceledWhileRunning;
   private final FetchFactory fetchFactory;
@@ -175,6 +184,21 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
     return taskIdHex;
   }
 
+  FetchLane getLane() {
+    return lane;
+  }
+
+  void setLane(FetchLane lane) {
+    this.lane = lane;
+  }
+
+  /** Move the task to a lane, if it has a higher priority than its own. */
+  void promoteLane(FetchLane lane) {
+    if (lane.isMoreUrgentThan(this.lane)) {
+      this.lane = lane;
+    }
+  }
+
   @Override
   public String toString() {
     String print = "[" + taskIdHex + "] fetch " + uri;
@@ -208,8 +232,10 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
   }
 
   void addRef(String ref) {
+    newRevs.remove(ref);
     if (ALL_REFS.equals(ref)) {
       delta.clear();
+      newRevs.clear();
       fetchAllRefs = true;
       repLog.trace("[{}] Added all refs for replication from {}", taskIdHex, uri);
     } else if (!fetchAllRefs) {
@@ -218,6 +244,20 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
     }
   }
 
+  /**
+   * Add a ref to fetch, whose value on the source may be known.
+   *
+   * @param ref the ref to fetch.
+   * @param newRev the value of the ref on the source, which replaces the one of a previous update
+   *     of the ref. When empty, the ref is always fetched.
+   */
+  void addRef(String ref, Optional<ObjectId> newRev) {
+    addRef(ref);
+    if (!fetchAllRefs) {
+      newRev.ifPresent(id -> newRevs.put(ref, id));
+    }
+  }
+
   Set<String> getRefs() {
     return fetchAllRefs ? Sets.newHashSet(ALL_REFS) : delta;
   }
@@ -272,24 +312,39 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
     }
   }
 
+  /**
+   * Set the delay of the scheduling of the task, after which it is due to run.
+   *
+   * @param delay the scheduling delay.
+   * @param unit the unit of the delay.
+   */
+  void setScheduledDelay(long delay, TimeUnit unit) {
+    dueAt = System.nanoTime() + unit.toNanos(delay);
+  }
+
   @Override
   public void run() {
+    recordQueueWait();
+    boolean deferred = false;
     try {
-      threadScoper
-          .scope(
-              new Callable<Void>() {
-                @Override
-                public Void call() {
-                  runFetchOperation();
-                  return null;
-                }
-              })
-          .call();
+      deferred =
+          threadScoper
+              .scope(
+                  new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                      return runFetchOperation();
+                    }
+                  })
+              .call();
     } catch (Exception e) {
       Throwables.throwIfUnchecked(e);
       throw new RuntimeException(e);
     } finally {
-      statesCleanUp();
+      // A follow-up task keeps its states until it runs
+      if (!deferred) {
+        statesCleanUp();
+      }
     }
   }
 
@@ -297,27 +352,37 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
     return fetchFailures;
   }
 
-  private void runFetchOperation() {
+  private void recordQueueWait() {
+    Long due = dueAt;
+    if (due != null) {
+      metrics.recordQueueWait(
+          config.getName(), Math.max(0, NANOSECONDS.toMillis(System.nanoTime() - due)));
+    }
+  }
+
+  /** @return true if the task was deferred, to follow the in-flight task of its URI. */
+  private boolean runFetchOperation() {
     try (TraceContext ctx = TraceContext.open().addTag(ID_KEY, HexFormat.fromInt(id))) {
-      doRunFetchOperation();
+      return doRunFetchOperation();
     }
   }
 
-  private void doRunFetchOperation() {
+  private boolean doRunFetchOperation() {
     // Lock the queue, and remove ourselves, so we can't be modified once
     // we start replication (instead a new instance, with the same URI, is
-    // created and scheduled for a future point in time.)
+    // created and follows this one when it finishes.)
     //
     if (!pool.requestRunway(this)) {
-      if (!canceled) {
-        repLog.info(
-            "[{}] Rescheduling replication from {} to avoid collision with an in-flight fetch task [{}].",
-            taskIdHex,
-            uri,
-            pool.getInFlight(getURI()).map(FetchOne::getTaskIdHex).orElse("<unknown>"));
-        pool.reschedule(this, Source.RetryReason.COLLISION);
+      if (canceled) {
+        return false;
       }
-      return;
+      repLog.info(
+          "[{}] Replication from {} will follow the in-flight fetch task [{}] as task [{}].",
+          taskIdHex,
+          uri,
+          pool.getInFlight(getURI()).map(FetchOne::getTaskIdHex).orElse("<unknown>"),
+          pool.getFollowUp(getURI()).map(FetchOne::getTaskIdHex).orElse("<unknown>"));
+      return true;
     }
 
     repLog.info(
@@ -422,6 +487,7 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
       }
       pool.notifyFinished(this);
     }
+    return false;
   }
 
   private void logCanceledWhileRunningException(TransportException e) {
@@ -429,11 +495,19 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
   }
 
   private List<RefSpec> runImpl() throws IOException {
-    Fetch fetch = fetchFactory.create(taskIdHex, uri, git);
-    List<RefSpec> fetchRefSpecs = getFetchRefSpecs();
+    Set<String> upToDateRefs = getUpToDateRefs();
+    List<RefSpec> fetchRefSpecs = getFetchRefSpecs(upToDateRefs);
 
     try {
-      updateStates(fetch.fetch(fetchRefSpecs));
+      List<RefUpdateState> refUpdates =
+          upToDateRefs.stream()
+              .map(ref -> new RefUpdateState(ref, RefUpdate.Result.NO_CHANGE))
+              .collect(Collectors.toCollection(ArrayList::new));
+      if (refUpdates.isEmpty() || !fetchRefSpecs.isEmpty()) {
+        Fetch fetch = fetchFactory.create(taskIdHex, uri, git);
+        refUpdates.addAll(fetch.fetch(fetchRefSpecs));
+      }
+      updateStates(refUpdates);
     } catch (InexistentRefTransportException e) {
       String inexistentRef = e.getInexistentRef();
       repLog.info(
@@ -453,13 +527,52 @@ public class FetchOne implements ProjectRunnable, CanceledWhileRunning {
     return fetchRefSpecs;
   }
 
-  private List<RefSpec> getFetchRefSpecs() {
+  /**
+   * Get the refs that already have locally the value they have on the source, according to their
+   * latest update. All the refs are read at once from the local ref database.
+   */
+  private Set<String> getUpToDateRefs() throws IOException {
+    if (newRevs.isEmpty()) {
+      return Collections.emptySet();
+    }
+
+    List<RefSpec> configRefSpecs = config.getFetchRefSpecs();
+    Map<String, String> localNames = new HashMap<>();
+    for (String ref : newRevs.keySet()) {
+      refToFetchRefSpec(ref, configRefSpecs)
+          .map(RefSpec::getDestination)
+          .ifPresent(localName -> localNames.put(localName, ref));
+    }
+    Map<String, Ref> localRefs =
+        git.getRefDatabase().exactRef(localNames.keySet().toArray(new String[0]));
+
+    Set<String> upToDateRefs = new HashSet<>();
+    for (Ref localRef : localRefs.values()) {
+      String ref = localNames.get(localRef.getName());
+      if (newRevs.get(ref).equals(localRef.getObjectId())) {
+        upToDateRefs.add(ref);
+      }
+    }
+    if (!upToDateRefs.isEmpty()) {
+      repLog.info(
+          "[{}] Skipping the fetch of {} from {}, already up to date",
+          taskIdHex,
+          upToDateRefs,
+          uri);
+      metrics.recordUpToDateRefsSkipped(config.getName(), upToDateRefs.size());
+    }
+    return upToDateRefs;
+  }
+
+  private List<RefSpec> getFetchRefSpecs(Set<String> upToDateRefs) {
     List<RefSpec> configRefSpecs = config.getFetchRefSpecs();
     if (delta.isEmpty()) {
       return configRefSpecs;
     }
 
-    return runRefsFilter(delta).stream()
+    Set<String> refs =
+        upToDateRefs.isEmpty() ? delta : Sets.newHashSet(Sets.difference(delta, upToDateRefs));
+    return runRefsFilter(refs).stream()
         .map(ref -> refToFetchRefSpec(ref, configRefSpecs))
         .filter(Optional::isPresent)
         .map(Optional::get)
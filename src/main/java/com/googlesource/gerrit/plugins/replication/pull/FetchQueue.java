@@ -0,0 +1,297 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.common.Nullable;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * Fetch tasks of a source, pending, in-flight or following the in-flight one, per remote URI.
+ *
+ * <p>Each URI moves from pending to in-flight and back without a lock shared by all the URIs: the
+ * transitions are atomic per URI, using {@link ConcurrentHashMap#compute}, so that the tasks of
+ * different URIs are scheduled, started and completed without contending with each other.
+ *
+ * <p>A task that cannot start because another one of the same URI is in-flight becomes the
+ * follow-up of the URI, or is merged into it, and is released as soon as the in-flight task
+ * finishes.
+ */
+class FetchQueue {
+  /** Task released when the in-flight task of its URI finished. */
+  static class FollowUp {
+    final FetchOne fetchOp;
+    final long waitingSinceNanos;
+
+    private FollowUp(FetchOne fetchOp, long waitingSinceNanos) {
+      this.fetchOp = fetchOp;
+      this.waitingSinceNanos = waitingSinceNanos;
+    }
+  }
+
+  private final ConcurrentHashMap<URIish, UriState> states = new ConcurrentHashMap<>();
+
+  Optional<FetchOne> getPending(URIish uri) {
+    return Optional.ofNullable(states.get(uri)).map(s -> s.pending);
+  }
+
+  Optional<FetchOne> getInFlight(URIish uri) {
+    return Optional.ofNullable(states.get(uri)).map(s -> s.inFlight);
+  }
+
+  Optional<FetchOne> getFollowUp(URIish uri) {
+    return Optional.ofNullable(states.get(uri)).map(s -> s.followUp).map(f -> f.fetchOp);
+  }
+
+  /**
+   * Check whether a ref of a URI would be added to a new task, instead of the pending one.
+   *
+   * @param uri the remote URI.
+   * @param lane the lane of the ref.
+   * @return true if the URI has no pending task, or it is retrying or in a lower priority lane.
+   */
+  boolean needsNewTask(URIish uri, FetchLane lane) {
+    return getPending(uri)
+        .map(pending -> pending.isRetrying() || lane.isMoreUrgentThan(pending.getLane()))
+        .orElse(true);
+  }
+
+  /**
+   * Atomically add a ref to the pending task of a URI, or to a new task replacing it when it is
+   * missing, retrying or in a lower priority lane.
+   *
+   * <p>Only the refs and states of the tasks are updated while holding the state of the URI: the
+   * new task is created beforehand, and it is scheduled by the caller afterwards. A pending task of
+   * a lower priority lane is canceled, and its refs and states are moved to the new task, as it
+   * would otherwise keep the delay and the threads of its own lane for the refs of the higher
+   * priority one.
+   *
+   * @param uri the remote URI.
+   * @param ref the ref to fetch.
+   * @param newRev the value of the ref on the source, when known.
+   * @param lane the lane of the ref.
+   * @param state the replication state of the ref.
+   * @param newTask the task replacing the pending one, or null when expecting a pending task.
+   * @return the task the ref was added to, with a null task when a new task is needed but none was
+   *     provided.
+   */
+  PendingRef addPendingRef(
+      URIish uri,
+      String ref,
+      Optional<ObjectId> newRev,
+      FetchLane lane,
+      ReplicationState state,
+      @Nullable FetchOne newTask) {
+    AtomicReference<PendingRef> added = new AtomicReference<>(PendingRef.MISSING_TASK);
+    states.compute(
+        uri,
+        (u, current) -> {
+          FetchOne pending = current == null ? null : current.pending;
+          FetchOne fetchOp = pending;
+          FetchOne promoted = null;
+          if (pending == null || pending.isRetrying() || lane.isMoreUrgentThan(pending.getLane())) {
+            if (newTask == null) {
+              return current;
+            }
+            fetchOp = newTask;
+            if (pending != null && !pending.isRetrying()) {
+              fetchOp.addRefs(pending.getRefs());
+              fetchOp.addStates(pending.getStates());
+              pending.removeStates();
+              pending.canceledByReplication();
+              promoted = pending;
+            }
+          }
+
+          boolean isAdded = !fetchOp.getRefs().contains(ref);
+          // The ref is only up to date when it has the value of its latest update
+          fetchOp.addRef(ref, newRev);
+          if (isAdded) {
+            fetchOp.addState(ref, state);
+          }
+          added.set(new PendingRef(fetchOp, fetchOp == newTask, isAdded, promoted));
+          return current == null
+              ? UriState.of(fetchOp, null, null)
+              : UriState.of(fetchOp, current.inFlight, current.followUp);
+        });
+    return added.get();
+  }
+
+  /**
+   * Atomically replace the pending task of a URI.
+   *
+   * <p>The update is executed while holding the state of the URI: it may merge the refs and states
+   * of the tasks, but it must neither schedule them nor access this queue.
+   *
+   * @param uri the remote URI.
+   * @param update called with the pending task of the URI, or null, returns the new pending task or
+   *     null for removing it.
+   * @return the new pending task of the URI.
+   */
+  @Nullable
+  FetchOne updatePending(URIish uri, UnaryOperator<FetchOne> update) {
+    UriState state =
+        states.compute(
+            uri,
+            (u, current) ->
+                current == null
+                    ? UriState.of(update.apply(null), null, null)
+                    : UriState.of(
+                        update.apply(current.pending), current.inFlight, current.followUp));
+    return state == null ? null : state.pending;
+  }
+
+  /**
+   * Move a task from pending to in-flight, unless it was canceled or another task of the same URI
+   * is still in-flight, in which case the task becomes the follow-up of the URI or its refs and
+   * states are merged into the existing follow-up, which moves to the lane of the task when it has
+   * a higher priority.
+   *
+   * @param op the task to start.
+   * @return true if the task can start.
+   */
+  boolean requestRunway(FetchOne op) {
+    AtomicBoolean granted = new AtomicBoolean();
+    states.compute(
+        op.getURI(),
+        (u, current) -> {
+          if (op.wasCanceled()) {
+            return current;
+          }
+          FetchOne inFlight = current == null ? null : current.inFlight;
+          if (inFlight == null) {
+            granted.set(true);
+            return UriState.of(null, op, current == null ? null : current.followUp);
+          }
+          FollowUp followUp = current.followUp;
+          if (followUp == null) {
+            followUp = new FollowUp(op, System.nanoTime());
+          } else if (followUp.fetchOp != op) {
+            followUp.fetchOp.addRefs(op.getRefs());
+            followUp.fetchOp.addStates(op.getStates());
+            followUp.fetchOp.promoteLane(op.getLane());
+            op.removeStates();
+          }
+          return UriState.of(null, inFlight, followUp);
+        });
+    return granted.get();
+  }
+
+  /**
+   * Remove the in-flight task of a URI.
+   *
+   * @param op the in-flight task.
+   * @return the follow-up of the URI, to be scheduled straight away.
+   */
+  Optional<FollowUp> notifyFinished(FetchOne op) {
+    AtomicReference<FollowUp> followUp = new AtomicReference<>();
+    states.computeIfPresent(
+        op.getURI(),
+        (u, current) -> {
+          followUp.set(current.followUp);
+          return UriState.of(current.pending, null, null);
+        });
+    return Optional.ofNullable(followUp.get());
+  }
+
+  /** @return a snapshot of the pending tasks. */
+  Map<URIish, FetchOne> pending() {
+    ImmutableMap.Builder<URIish, FetchOne> pending = ImmutableMap.builder();
+    states.forEach(
+        (uri, state) -> {
+          if (state.pending != null) {
+            pending.put(uri, state.pending);
+          }
+        });
+    return pending.build();
+  }
+
+  /** @return a snapshot of the in-flight tasks. */
+  Map<URIish, FetchOne> inFlight() {
+    ImmutableMap.Builder<URIish, FetchOne> inFlight = ImmutableMap.builder();
+    states.forEach(
+        (uri, state) -> {
+          if (state.inFlight != null) {
+            inFlight.put(uri, state.inFlight);
+          }
+        });
+    return inFlight.build();
+  }
+
+  /** @return a snapshot of the follow-up tasks. */
+  Map<URIish, FetchOne> followUp() {
+    ImmutableMap.Builder<URIish, FetchOne> followUp = ImmutableMap.builder();
+    states.forEach(
+        (uri, state) -> {
+          if (state.followUp != null) {
+            followUp.put(uri, state.followUp.fetchOp);
+          }
+        });
+    return followUp.build();
+  }
+
+  /** Task a ref was added to by {@link #addPendingRef}. */
+  static class PendingRef {
+    static final PendingRef MISSING_TASK = new PendingRef(null, false, false, null);
+
+    /** The task with the ref, or null when a new task is needed. */
+    @Nullable final FetchOne fetchOp;
+
+    /** True if the task is the new one, which must be scheduled. */
+    final boolean isNew;
+
+    /** True if the ref was not already fetched by the task. */
+    final boolean isAdded;
+
+    /** The pending task canceled and moved to the new one of a higher priority lane, if any. */
+    @Nullable final FetchOne promoted;
+
+    private PendingRef(
+        @Nullable FetchOne fetchOp, boolean isNew, boolean isAdded, @Nullable FetchOne promoted) {
+      this.fetchOp = fetchOp;
+      this.isNew = isNew;
+      this.isAdded = isAdded;
+      this.promoted = promoted;
+    }
+  }
+
+  private static class UriState {
+    @Nullable final FetchOne pending;
+    @Nullable final FetchOne inFlight;
+    @Nullable final FollowUp followUp;
+
+    @Nullable
+    static UriState of(
+        @Nullable FetchOne pending, @Nullable FetchOne inFlight, @Nullable FollowUp followUp) {
+      return pending == null && inFlight == null && followUp == null
+          ? null
+          : new UriState(pending, inFlight, followUp);
+    }
+
+    private UriState(
+        @Nullable FetchOne pending, @Nullable FetchOne inFlight, @Nullable FollowUp followUp) {
+      this.pending = pending;
+      this.inFlight = inFlight;
+      this.followUp = followUp;
+    }
+  }
+}
@@ -15,6 +15,9 @@
 package com.googlesource.gerrit.plugins.replication.pull;
 
 import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.extensions.registration.RegistrationHandle;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.Histogram1;
@@ -23,7 +26,10 @@ import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.logging.PluginMetadata;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
 
 @Singleton
 public class FetchReplicationMetrics {
@@ -31,6 +37,11 @@ public class FetchReplicationMetrics {
   private final Timer1<String> end2EndExecutionTime;
   private final Histogram1<String> executionDelay;
   private final Histogram1<String> executionRetries;
+  private final Histogram1<String> followUpDelay;
+  private final Histogram1<String> followUpSavedTime;
+  private final Histogram1<String> queueWait;
+  private final Counter1<String> upToDateRefsSkipped;
+  private final Map<String, IntSupplier> refsBatchSizes = new ConcurrentHashMap<>();
 
   @Inject
   FetchReplicationMetrics(@PluginName String pluginName, MetricMaker metricMaker) {
@@ -74,6 +85,59 @@ public class FetchReplicationMetrics {
                 .setCumulative()
                 .setUnit("retries"),
             SOURCE_FIELD);
+
+    followUpDelay =
+        metricMaker.newHistogram(
+            "replication_follow_up_delay",
+            new Description(
+                    "Time spent by a fetch waiting for the in-flight fetch from the same URI")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            SOURCE_FIELD);
+
+    followUpSavedTime =
+        metricMaker.newHistogram(
+            "replication_follow_up_saved_time",
+            new Description(
+                    "Time saved by a fetch following the in-flight fetch from the same URI,"
+                        + " compared with rescheduling it every rescheduleDelay")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            SOURCE_FIELD);
+
+    queueWait =
+        metricMaker.newHistogram(
+            "replication_queue_wait",
+            new Description(
+                    "Time spent by a fetch waiting for a thread after its scheduling delay")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            SOURCE_FIELD);
+
+    upToDateRefsSkipped =
+        metricMaker.newCounter(
+            "replication_up_to_date_refs_skipped",
+            new Description(
+                    "Number of refs not fetched from a source because they already had locally"
+                        + " the value of their latest update")
+                .setRate()
+                .setUnit("refs"),
+            SOURCE_FIELD);
+
+    CallbackMetric1<String, Integer> refsBatchSize =
+        metricMaker.newCallbackMetric(
+            "replication_refs_batch_size",
+            Integer.class,
+            new Description("Number of refs fetched in a single fetch call from a source")
+                .setGauge()
+                .setUnit("refs"),
+            SOURCE_FIELD);
+    metricMaker.newTrigger(
+        refsBatchSize,
+        () -> {
+          refsBatchSizes.forEach((name, size) -> refsBatchSize.set(name, size.getAsInt()));
+          refsBatchSize.prune();
+        });
   }
 
   /**
@@ -117,4 +181,48 @@ public class FetchReplicationMetrics {
     executionDelay.record(name, delay);
     executionRetries.record(name, retries);
   }
+
+  /**
+   * Record the start of a fetch that followed the in-flight fetch from the same URI.
+   *
+   * @param name the source name.
+   * @param delay time waited for the in-flight fetch in milliseconds.
+   * @param savedTime time saved compared with the reschedule back-off in milliseconds.
+   */
+  public void recordFollowUp(String name, long delay, long savedTime) {
+    followUpDelay.record(name, delay);
+    followUpSavedTime.record(name, savedTime);
+  }
+
+  /**
+   * Record the time a fetch waited for a thread of a source, once its scheduling delay elapsed.
+   *
+   * @param name the source name.
+   * @param wait time waited for a thread in milliseconds.
+   */
+  public void recordQueueWait(String name, long wait) {
+    queueWait.record(name, wait);
+  }
+
+  /**
+   * Record the refs not fetched because they were already up to date.
+   *
+   * @param name the source name.
+   * @param refs the number of refs.
+   */
+  public void recordUpToDateRefsSkipped(String name, int refs) {
+    upToDateRefsSkipped.incrementBy(name, refs);
+  }
+
+  /**
+   * Register the current number of refs fetched in a single fetch call from a source.
+   *
+   * @param name the source name.
+   * @param size supplier of the current number of refs.
+   * @return the handle for removing the registration.
+   */
+  public RegistrationHandle registerRefsBatchSize(String name, IntSupplier size) {
+    refsBatchSizes.put(name, size);
+    return () -> refsBatchSizes.remove(name, size);
+  }
 }
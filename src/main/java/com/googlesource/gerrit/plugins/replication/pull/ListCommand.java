@@ -92,6 +92,7 @@ final class ListCommand extends SshCommand {
         Source.QueueInfo q = s.getQueueInfo();
         addQueueDetails(obj, "InFlight", q.inFlight.values());
         addQueueDetails(obj, "Pending", q.pending.values());
+        addQueueDetails(obj, "FollowUp", q.followUp.values());
       }
       stdout.print(obj.toString() + "\n");
     } else {
@@ -119,6 +120,8 @@ final class ListCommand extends SshCommand {
         addQueueDetails(out, q.inFlight.values());
         out.append("Pending: ").append(q.pending.size()).append("\n");
         addQueueDetails(out, q.pending.values());
+        out.append("Follow-up: ").append(q.followUp.size()).append("\n");
+        addQueueDetails(out, q.followUp.values());
       }
       stdout.print(out.toString() + "\n");
     }
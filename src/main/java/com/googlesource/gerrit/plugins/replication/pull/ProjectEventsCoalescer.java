@@ -0,0 +1,168 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ReplicationQueue.ReferenceBatchUpdatedEvent;
+import com.googlesource.gerrit.plugins.replication.pull.ReplicationQueue.ReferenceUpdatedEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Merges the ref-update events of the same project received within a configurable time window,
+ * so that a burst of updates is sent to the replication sources with a single call.
+ *
+ * <p>Multiple updates of the same ref are collapsed into the latest one and the NoteDb meta refs
+ * are kept at the end of the merged batch.
+ */
+@Singleton
+public class ProjectEventsCoalescer {
+  static final String COALESCER_QUEUE_NAME = "PullReplication-Coalescer";
+  static final int DEFAULT_COALESCING_MAX_BATCH_SIZE = 100;
+
+  private final WorkQueue workQueue;
+  private final long windowMs;
+  private final int maxBatchSize;
+  private final Map<String, PendingBatch> pending = new HashMap<>();
+  private ScheduledExecutorService scheduler;
+
+  @Inject
+  ProjectEventsCoalescer(ReplicationConfig replicationConfig, WorkQueue workQueue) {
+    Config cfg = replicationConfig.getConfig();
+    this.workQueue = workQueue;
+    this.windowMs =
+        ConfigUtil.getTimeUnit(
+            cfg, "replication", null, "coalescingWindow", 0L, TimeUnit.MILLISECONDS);
+    this.maxBatchSize =
+        Math.max(
+            1,
+            cfg.getInt(
+                "replication", "coalescingMaxBatchSize", DEFAULT_COALESCING_MAX_BATCH_SIZE));
+  }
+
+  public boolean isEnabled() {
+    return windowMs > 0;
+  }
+
+  public synchronized void start() {
+    if (isEnabled() && scheduler == null) {
+      scheduler = workQueue.createQueue(1, COALESCER_QUEUE_NAME);
+    }
+  }
+
+  /**
+   * Stop the coalescing of events.
+   *
+   * @return the events that were waiting for the coalescing window to expire.
+   */
+  public synchronized List<ReferenceBatchUpdatedEvent> stop() {
+    List<ReferenceBatchUpdatedEvent> unsent = new ArrayList<>(pending.size());
+    for (Map.Entry<String, PendingBatch> batch : pending.entrySet()) {
+      batch.getValue().timeout.cancel(false);
+      unsent.add(batch.getValue().toEvent(batch.getKey()));
+    }
+    pending.clear();
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    return unsent;
+  }
+
+  /**
+   * Add an event to the coalescing window of its project.
+   *
+   * @param event the ref-update event.
+   * @param send called with the merged event when the window expires or the batch is full.
+   */
+  public void add(ReferenceBatchUpdatedEvent event, Consumer<ReferenceBatchUpdatedEvent> send) {
+    String projectName = event.projectName();
+    ReferenceBatchUpdatedEvent ready = null;
+    synchronized (this) {
+      if (scheduler == null) {
+        ready = event;
+      } else {
+        PendingBatch batch = pending.get(projectName);
+        if (batch == null) {
+          PendingBatch newBatch = new PendingBatch(event.eventCreatedOn());
+          newBatch.timeout =
+              scheduler.schedule(
+                  () -> expire(projectName, newBatch, send), windowMs, TimeUnit.MILLISECONDS);
+          pending.put(projectName, newBatch);
+          batch = newBatch;
+        }
+        batch.add(event.refs());
+
+        if (batch.refs.size() >= maxBatchSize) {
+          batch.timeout.cancel(false);
+          pending.remove(projectName);
+          ready = batch.toEvent(projectName);
+        }
+      }
+    }
+
+    if (ready != null) {
+      send.accept(ready);
+    }
+  }
+
+  private void expire(
+      String projectName, PendingBatch batch, Consumer<ReferenceBatchUpdatedEvent> send) {
+    synchronized (this) {
+      if (!pending.remove(projectName, batch)) {
+        return;
+      }
+    }
+    send.accept(batch.toEvent(projectName));
+  }
+
+  private static class PendingBatch {
+    private final Map<String, ReferenceUpdatedEvent> refs = new LinkedHashMap<>();
+    private final long eventCreatedOn;
+    private ScheduledFuture<?> timeout;
+
+    PendingBatch(long eventCreatedOn) {
+      this.eventCreatedOn = eventCreatedOn;
+    }
+
+    void add(List<ReferenceUpdatedEvent> refUpdates) {
+      for (ReferenceUpdatedEvent refUpdate : refUpdates) {
+        // The latest update of a ref replaces the previous one and moves to the end of the batch
+        refs.remove(refUpdate.refName());
+        refs.put(refUpdate.refName(), refUpdate);
+      }
+    }
+
+    ReferenceBatchUpdatedEvent toEvent(String projectName) {
+      List<ReferenceUpdatedEvent> sortedRefs = new ArrayList<>(refs.values());
+      sortedRefs.sort(ReplicationQueue::sortByMetaRefAsLast);
+      return ReferenceBatchUpdatedEvent.create(
+          projectName, ImmutableList.copyOf(sortedRefs), eventCreatedOn);
+    }
+  }
+}
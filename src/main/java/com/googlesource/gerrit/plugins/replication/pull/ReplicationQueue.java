@@ -14,8 +14,15 @@
 
 package com.googlesource.gerrit.plugins.replication.pull;
 
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.APPLY_PACK_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.BATCH_APPLY_OBJECT_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.COMMON_ANCESTOR_API_ENDPOINT;
+
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.Project.NameKey;
@@ -39,9 +46,11 @@ import com.googlesource.gerrit.plugins.replication.ObservableQueue;
 import com.googlesource.gerrit.plugins.replication.pull.FetchResultProcessing.GitUpdateProcessing;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.BatchApplyObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
 import com.googlesource.gerrit.plugins.replication.pull.client.FetchApiClient;
 import com.googlesource.gerrit.plugins.replication.pull.client.HttpResult;
+import com.googlesource.gerrit.plugins.replication.pull.client.JsonPayload;
 import com.googlesource.gerrit.plugins.replication.pull.filter.ApplyObjectsRefsFilter;
 import com.googlesource.gerrit.plugins.replication.pull.filter.ExcludedRefsFilter;
 import java.io.IOException;
@@ -50,13 +59,12 @@ import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.errors.CorruptObjectException;
@@ -79,7 +87,6 @@ public class ReplicationQueue
   static final String PULL_REPLICATION_LOG_NAME = "pull_replication_log";
   static final Logger repLog = LoggerFactory.getLogger(PULL_REPLICATION_LOG_NAME);
 
-  private static final Integer DEFAULT_FETCH_CALLS_TIMEOUT = 0;
   private static final String BATCH_REF_UPDATED_EVENT_TYPE = BatchRefUpdateEvent.TYPE;
   private static final String REF_UDPATED_EVENT_TYPE = new RefUpdatedEvent().type;
   private static final String ZEROS_OBJECTID = ObjectId.zeroId().getName();
@@ -92,9 +99,12 @@ public class ReplicationQueue
   private volatile boolean replaying;
   private final Queue<ReferenceBatchUpdatedEvent> beforeStartupEventsQueue;
   private FetchApiClient.Factory fetchClientFactory;
-  private Integer fetchCallsTimeout;
+  private final FetchCallsDispatcher fetchCallsDispatcher;
+  private final ApiCallsExecutor apiCallsExecutor;
+  private final ProjectEventsCoalescer eventsCoalescer;
   private ExcludedRefsFilter refsFilter;
   private Provider<RevisionReader> revReaderProvider;
+  private final RevisionPackWriter revisionPackWriter;
   private final ApplyObjectMetrics applyObjectMetrics;
   private final FetchReplicationMetrics fetchMetrics;
   private final String instanceId;
@@ -110,11 +120,15 @@ public class ReplicationQueue
       FetchApiClient.Factory fetchClientFactory,
       ExcludedRefsFilter refsFilter,
       Provider<RevisionReader> revReaderProvider,
+      RevisionPackWriter revisionPackWriter,
       ApplyObjectMetrics applyObjectMetrics,
       FetchReplicationMetrics fetchMetrics,
       @GerritInstanceId String instanceId,
       @GerritServerConfig Config gerritConfig,
-      ApplyObjectsRefsFilter applyObjectsRefsFilter) {
+      ApplyObjectsRefsFilter applyObjectsRefsFilter,
+      FetchCallsDispatcher fetchCallsDispatcher,
+      ApiCallsExecutor apiCallsExecutor,
+      ProjectEventsCoalescer eventsCoalescer) {
     workQueue = wq;
     dispatcher = dis;
     sources = rd;
@@ -123,24 +137,25 @@ public class ReplicationQueue
     this.fetchClientFactory = fetchClientFactory;
     this.refsFilter = refsFilter;
     this.revReaderProvider = revReaderProvider;
+    this.revisionPackWriter = revisionPackWriter;
     this.applyObjectMetrics = applyObjectMetrics;
     this.fetchMetrics = fetchMetrics;
     this.instanceId = instanceId;
     this.useBatchUpdateEvents =
         gerritConfig.getBoolean("event", "stream-events", "enableBatchRefUpdatedEvents", false);
     this.applyObjectsRefsFilter = applyObjectsRefsFilter;
+    this.fetchCallsDispatcher = fetchCallsDispatcher;
+    this.apiCallsExecutor = apiCallsExecutor;
+    this.eventsCoalescer = eventsCoalescer;
   }
 
   @Override
   public void start() {
     if (!running) {
       sources.get().startup(workQueue);
-      fetchCallsTimeout =
-          2
-              * sources.get().getAll().stream()
-                  .mapToInt(Source::getConnectionTimeout)
-                  .max()
-                  .orElse(DEFAULT_FETCH_CALLS_TIMEOUT);
+      fetchCallsDispatcher.start();
+      apiCallsExecutor.start();
+      eventsCoalescer.start();
 
       running = true;
       fireBeforeStartupEvents();
@@ -150,7 +165,9 @@ public class ReplicationQueue
   @Override
   public void stop() {
     running = false;
-    int discarded = sources.get().shutdown();
+    beforeStartupEventsQueue.addAll(eventsCoalescer.stop());
+    int discarded =
+        fetchCallsDispatcher.stop() + apiCallsExecutor.stop() + sources.get().shutdown();
     if (discarded > 0) {
       repLog.warn("Canceled {} replication events during shutdown", discarded);
     }
@@ -237,7 +254,7 @@ public class ReplicationQueue
                 source.getApis().forEach(apiUrl -> source.scheduleDeleteProject(apiUrl, project)));
   }
 
-  private static int sortByMetaRefAsLast(ReferenceUpdatedEvent a, ReferenceUpdatedEvent b) {
+  static int sortByMetaRefAsLast(ReferenceUpdatedEvent a, ReferenceUpdatedEvent b) {
     repLog.debug("sortByMetaRefAsLast({} <=> {})", a.refName(), b.refName());
     return Boolean.compare(
         RefNames.isNoteDbMetaRef(a.refName()), RefNames.isNoteDbMetaRef(b.refName()));
@@ -258,9 +275,16 @@ public class ReplicationQueue
   }
 
   private void fire(ReferenceBatchUpdatedEvent event) {
+    if (running && eventsCoalescer.isEnabled()) {
+      eventsCoalescer.add(event, this::fireBatch);
+      return;
+    }
+    fireBatch(event);
+  }
+
+  private void fireBatch(ReferenceBatchUpdatedEvent event) {
     ReplicationState state = new ReplicationState(new GitUpdateProcessing(dispatcher.get()));
     fire(event, state);
-    state.markAllFetchTasksScheduled();
   }
 
   private void fire(ReferenceBatchUpdatedEvent event, ReplicationState state) {
@@ -269,36 +293,24 @@ public class ReplicationQueue
           "Replication plugin did not finish startup before event, event replication is postponed",
           state);
       beforeStartupEventsQueue.add(event);
+      state.markAllFetchTasksScheduled();
       return;
     }
-    ForkJoinPool fetchCallsPool = null;
-    try {
-      List<Source> allSources = sources.get().getAll();
-      int numSources = allSources.size();
-      if (numSources == 0) {
-        repLog.debug("No replication sources configured -> skipping fetch");
-        return;
-      }
-      fetchCallsPool = new ForkJoinPool(numSources);
-
-      final Consumer<Source> callFunction =
-          callFunction(
-              Project.nameKey(event.projectName()), event.refs(), event.eventCreatedOn(), state);
-      fetchCallsPool
-          .submit(() -> allSources.parallelStream().forEach(callFunction))
-          .get(fetchCallsTimeout, TimeUnit.MILLISECONDS);
-    } catch (InterruptedException | ExecutionException | TimeoutException e) {
-      stateLog.error(
-          String.format(
-              "Exception during the pull replication fetch rest api call.  Message:%s",
-              e.getMessage()),
-          e,
-          state);
-    } finally {
-      if (fetchCallsPool != null) {
-        fetchCallsPool.shutdown();
-      }
+
+    List<Source> allSources = sources.get().getAll();
+    if (allSources.isEmpty()) {
+      repLog.debug("No replication sources configured -> skipping fetch");
+      state.markAllFetchTasksScheduled();
+      return;
     }
+
+    Project.NameKey project = Project.nameKey(event.projectName());
+    fetchCallsDispatcher.dispatch(
+        project,
+        allSources,
+        callFunction(project, event.refs(), event.eventCreatedOn(), state),
+        source -> callFetch(source, project, event.refs(), state),
+        state::markAllFetchTasksScheduled);
   }
 
   private Consumer<Source> callFunction(
@@ -306,12 +318,17 @@ public class ReplicationQueue
       List<ReferenceUpdatedEvent> refs,
       long eventCreatedOn,
       ReplicationState state) {
-    CallFunction call = getCallFunction(project, refs, eventCreatedOn, state);
+    // The revisions are read only once per event, by the first source call executed
+    Supplier<CallFunction> call =
+        Suppliers.memoize(() -> getCallFunction(project, refs, eventCreatedOn, state));
 
     return (source) -> {
       boolean callSuccessful;
       try {
-        callSuccessful = call.call(source);
+        callSuccessful =
+            source.useApplyPack()
+                ? callSendPack(source, project, refs, eventCreatedOn, state)
+                : call.get().call(source);
       } catch (Exception e) {
         repLog.warn(
             String.format(
@@ -343,7 +360,10 @@ public class ReplicationQueue
               .collect(Collectors.toList());
 
       if (!containsLargeRef(refsBatch)) {
-        return ((source) -> callBatchSendObject(source, project, refsBatch, eventCreatedOn, state));
+        // Sources with the same filtered refs share the same serialized payload
+        Map<List<BatchApplyObjectData>, JsonPayload> payloads = new ConcurrentHashMap<>();
+        return ((source) ->
+            callBatchSendObject(source, project, refsBatch, eventCreatedOn, payloads, state));
       }
     } catch (UncheckedIOException e) {
       stateLog.error("Falling back to calling fetch", e, state);
@@ -378,6 +398,7 @@ public class ReplicationQueue
 
   private boolean callSendObject(
       Source source,
+      String apiUrl,
       NameKey project,
       String refName,
       long eventCreatedOn,
@@ -387,134 +408,28 @@ public class ReplicationQueue
       throws MissingParentObjectException {
     boolean resultIsSuccessful = true;
     if (source.wouldFetchProject(project) && source.wouldFetchRef(refName)) {
-      for (String apiUrl : source.getApis()) {
-        try {
-          URIish uri = new URIish(apiUrl);
-          FetchApiClient fetchClient = fetchClientFactory.create(source);
-          repLog.info(
-              "Pull replication REST API apply object to {} for {}:{} - {}",
-              apiUrl,
-              project,
-              refName,
-              revision);
-          Context<String> apiTimer = applyObjectMetrics.startEnd2End(source.getRemoteConfigName());
-          HttpResult result =
-              isDelete
-                  ? fetchClient.callSendObject(
-                      project, refName, eventCreatedOn, isDelete, null, uri)
-                  : fetchClient.callSendObjects(project, refName, eventCreatedOn, revision, uri);
-          boolean resultSuccessful = result.isSuccessful();
-          repLog.info(
-              "Pull replication REST API apply object to {} COMPLETED for {}:{} - {}, HTTP Result:"
-                  + " {} - time:{} ms",
-              apiUrl,
-              project,
-              refName,
-              revision,
-              result,
-              apiTimer.stop() / 1000000.0);
-
-          if (!resultSuccessful
-              && result.isProjectMissing(project)
-              && source.isCreateMissingRepositories()) {
-            result = initProject(project, uri, fetchClient, result);
-            repLog.info("Missing project {} created, HTTP Result:{}", project, result);
-          }
-
-          if (!resultSuccessful) {
-            if (result.isParentObjectMissing()) {
-
-              if ((RefNames.isNoteDbMetaRef(refName) || applyObjectsRefsFilter.match(refName))
-                  && revision.size() == 1) {
-                List<RevisionData> allRevisions =
-                    fetchWholeMetaHistory(project, refName, revision.get(0));
-                repLog.info(
-                    "Pull replication REST API apply object to {} for {}:{} - {}",
-                    apiUrl,
-                    project,
-                    refName,
-                    allRevisions);
-                return callSendObject(
-                    source, project, refName, eventCreatedOn, isDelete, allRevisions, state);
-              }
-
-              throw new MissingParentObjectException(
-                  project, refName, source.getRemoteConfigName());
-            }
-          }
-
-          resultIsSuccessful &= resultSuccessful;
-        } catch (URISyntaxException e) {
-          repLog.warn(
-              "Pull replication REST API apply object to {} *FAILED* for {}:{} - {}",
-              apiUrl,
-              project,
-              refName,
-              revision,
-              e);
-          stateLog.error(String.format("Cannot parse pull replication api url:%s", apiUrl), state);
-          resultIsSuccessful = false;
-        } catch (IOException e) {
-          repLog.warn(
-              "Pull replication REST API apply object to {} *FAILED* for {}:{} - {}",
-              apiUrl,
-              project,
-              refName,
-              revision,
-              e);
-          stateLog.error(
-              String.format(
-                  "Exception during the pull replication fetch rest api call. Endpoint url:%s,"
-                      + " message:%s",
-                  apiUrl, e.getMessage()),
-              e,
-              state);
-          resultIsSuccessful = false;
-        }
-      }
-    }
-
-    return resultIsSuccessful;
-  }
-
-  private boolean callBatchSendObject(
-      Source source,
-      NameKey project,
-      List<BatchApplyObjectData> refsBatch,
-      long eventCreatedOn,
-      ReplicationState state)
-      throws MissingParentObjectException {
-    boolean batchResultSuccessful = true;
-
-    List<BatchApplyObjectData> filteredRefsBatch =
-        refsBatch.stream()
-            .filter(r -> source.wouldFetchProject(project) && source.wouldFetchRef(r.refName()))
-            .collect(Collectors.toList());
-
-    String batchApplyObjectStr =
-        filteredRefsBatch.stream()
-            .map(BatchApplyObjectData::toString)
-            .collect(Collectors.joining(","));
-    FetchApiClient fetchClient = fetchClientFactory.create(source);
-
-    for (String apiUrl : source.getApis()) {
       try {
         URIish uri = new URIish(apiUrl);
+        FetchApiClient fetchClient = fetchClientFactory.create(source);
         repLog.info(
-            "Pull replication REST API batch apply object to {} for {}:[{}]",
+            "Pull replication REST API apply object to {} for {}:{} - {}",
             apiUrl,
             project,
-            batchApplyObjectStr);
+            refName,
+            revision);
         Context<String> apiTimer = applyObjectMetrics.startEnd2End(source.getRemoteConfigName());
         HttpResult result =
-            fetchClient.callBatchSendObject(project, filteredRefsBatch, eventCreatedOn, uri);
+            isDelete
+                ? fetchClient.callSendObject(project, refName, eventCreatedOn, isDelete, null, uri)
+                : fetchClient.callSendObjects(project, refName, eventCreatedOn, revision, uri);
         boolean resultSuccessful = result.isSuccessful();
         repLog.info(
-            "Pull replication REST API batch apply object to {} COMPLETED for {}:[{}], HTTP  Result:"
+            "Pull replication REST API apply object to {} COMPLETED for {}:{} - {}, HTTP Result:"
                 + " {} - time:{} ms",
             apiUrl,
             project,
-            batchApplyObjectStr,
+            refName,
+            revision,
             result,
             apiTimer.stop() / 1000000.0);
 
@@ -525,64 +440,53 @@ public class ReplicationQueue
           repLog.info("Missing project {} created, HTTP Result:{}", project, result);
         }
 
-        if (!resultSuccessful && result.isParentObjectMissing()) {
-          resultSuccessful = true;
-          for (BatchApplyObjectData batchApplyObject : filteredRefsBatch) {
-            String refName = batchApplyObject.refName();
-            if ((RefNames.isNoteDbMetaRef(refName) || applyObjectsRefsFilter.match(refName))
-                && batchApplyObject.revisionData().isPresent()) {
+        if (!resultSuccessful) {
+          if (result.isParentObjectMissing()) {
 
-              Optional<RevisionData> maybeRevisionData = batchApplyObject.revisionData();
+            if ((RefNames.isNoteDbMetaRef(refName) || applyObjectsRefsFilter.match(refName))
+                && revision.size() == 1) {
               List<RevisionData> allRevisions =
-                  fetchWholeMetaHistory(project, refName, maybeRevisionData.get());
-
-              resultSuccessful &=
-                  callSendObject(
-                      source,
-                      project,
-                      refName,
-                      eventCreatedOn,
-                      batchApplyObject.isDelete(),
-                      allRevisions,
-                      state);
-            } else {
-              throw new MissingParentObjectException(
-                  project, refName, source.getRemoteConfigName());
+                  fetchMissingMetaHistory(
+                      source, fetchClient, uri, project, refName, revision.get(0));
+              repLog.info(
+                  "Pull replication REST API apply object to {} for {}:{} - {}",
+                  apiUrl,
+                  project,
+                  refName,
+                  allRevisions);
+              return callSendObject(
+                  source,
+                  apiUrl,
+                  project,
+                  refName,
+                  eventCreatedOn,
+                  isDelete,
+                  allRevisions,
+                  state);
             }
-          }
-        }
 
-        if (!resultSuccessful && !result.isSendBatchObjectAvailable()) {
-          resultSuccessful = true;
-          for (BatchApplyObjectData batchApplyObjectData : filteredRefsBatch) {
-            resultSuccessful &=
-                callSendObject(
-                    source,
-                    project,
-                    batchApplyObjectData.refName(),
-                    eventCreatedOn,
-                    batchApplyObjectData.isDelete(),
-                    batchApplyObjectData.revisionData().map(ImmutableList::of).orElse(null),
-                    state);
+            throw new MissingParentObjectException(project, refName, source.getRemoteConfigName());
           }
         }
 
-        batchResultSuccessful &= resultSuccessful;
+        resultIsSuccessful &= resultSuccessful;
       } catch (URISyntaxException e) {
         repLog.warn(
-            "Pull replication REST API batch apply object to {} *FAILED* for {}:[{}]",
+            "Pull replication REST API apply object to {} *FAILED* for {}:{} - {}",
             apiUrl,
             project,
-            batchApplyObjectStr,
+            refName,
+            revision,
             e);
         stateLog.error(String.format("Cannot parse pull replication api url:%s", apiUrl), state);
-        batchResultSuccessful = false;
-      } catch (IOException | IllegalArgumentException e) {
+        resultIsSuccessful = false;
+      } catch (IOException e) {
         repLog.warn(
-            "Pull replication REST API batch apply object to {} *FAILED* for {}:[{}]",
+            "Pull replication REST API apply object to {} *FAILED* for {}:{} - {}",
             apiUrl,
             project,
-            batchApplyObjectStr,
+            refName,
+            revision,
             e);
         stateLog.error(
             String.format(
@@ -591,10 +495,377 @@ public class ReplicationQueue
                 apiUrl, e.getMessage()),
             e,
             state);
-        batchResultSuccessful = false;
+        resultIsSuccessful = false;
       }
     }
-    return batchResultSuccessful;
+
+    return resultIsSuccessful;
+  }
+
+  private boolean callBatchSendObject(
+      Source source,
+      NameKey project,
+      List<BatchApplyObjectData> refsBatch,
+      long eventCreatedOn,
+      Map<List<BatchApplyObjectData>, JsonPayload> payloads,
+      ReplicationState state)
+      throws MissingParentObjectException {
+    List<BatchApplyObjectData> filteredRefsBatch =
+        refsBatch.stream()
+            .filter(r -> source.wouldFetchProject(project) && source.wouldFetchRef(r.refName()))
+            .collect(Collectors.toList());
+
+    String batchApplyObjectStr =
+        filteredRefsBatch.stream()
+            .map(BatchApplyObjectData::toString)
+            .collect(Collectors.joining(","));
+    FetchApiClient fetchClient = fetchClientFactory.create(source);
+    JsonPayload payload =
+        payloads.computeIfAbsent(
+            filteredRefsBatch,
+            refs -> {
+              JsonPayload serialized = fetchClient.serializeBatchSendObject(refs, eventCreatedOn);
+              applyObjectMetrics.recordPayloadSerialized(
+                  source.getRemoteConfigName(), serialized.size());
+              return serialized;
+            });
+
+    return apiCallsExecutor.callAll(
+        source,
+        apiUrl ->
+            callBatchSendObject(
+                source,
+                apiUrl,
+                project,
+                filteredRefsBatch,
+                batchApplyObjectStr,
+                eventCreatedOn,
+                fetchClient,
+                payload,
+                state));
+  }
+
+  private boolean callBatchSendObject(
+      Source source,
+      String apiUrl,
+      NameKey project,
+      List<BatchApplyObjectData> filteredRefsBatch,
+      String batchApplyObjectStr,
+      long eventCreatedOn,
+      FetchApiClient fetchClient,
+      JsonPayload payload,
+      ReplicationState state)
+      throws MissingParentObjectException {
+    try {
+      URIish uri = new URIish(apiUrl);
+      if (!fetchClient.getCapabilities(uri).supportsEndpoint(BATCH_APPLY_OBJECT_API_ENDPOINT)) {
+        return callSendObjects(source, apiUrl, project, filteredRefsBatch, eventCreatedOn, state);
+      }
+
+      repLog.info(
+          "Pull replication REST API batch apply object to {} for {}:[{}]",
+          apiUrl,
+          project,
+          batchApplyObjectStr);
+      Context<String> apiTimer = applyObjectMetrics.startEnd2End(source.getRemoteConfigName());
+      HttpResult result = fetchClient.callBatchSendObject(project, payload, uri);
+      boolean resultSuccessful = result.isSuccessful();
+      repLog.info(
+          "Pull replication REST API batch apply object to {} COMPLETED for {}:[{}], HTTP  Result:"
+              + " {} - time:{} ms",
+          apiUrl,
+          project,
+          batchApplyObjectStr,
+          result,
+          apiTimer.stop() / 1000000.0);
+
+      if (!resultSuccessful
+          && result.isProjectMissing(project)
+          && source.isCreateMissingRepositories()) {
+        result = initProject(project, uri, fetchClient, result);
+        repLog.info("Missing project {} created, HTTP Result:{}", project, result);
+      }
+
+      if (!resultSuccessful && result.isParentObjectMissing()) {
+        resultSuccessful = true;
+        for (BatchApplyObjectData batchApplyObject : filteredRefsBatch) {
+          String refName = batchApplyObject.refName();
+          if ((RefNames.isNoteDbMetaRef(refName) || applyObjectsRefsFilter.match(refName))
+              && batchApplyObject.revisionData().isPresent()) {
+
+            Optional<RevisionData> maybeRevisionData = batchApplyObject.revisionData();
+            List<RevisionData> allRevisions =
+                fetchMissingMetaHistory(
+                    source, fetchClient, uri, project, refName, maybeRevisionData.get());
+
+            resultSuccessful &=
+                callSendObject(
+                    source,
+                    apiUrl,
+                    project,
+                    refName,
+                    eventCreatedOn,
+                    batchApplyObject.isDelete(),
+                    allRevisions,
+                    state);
+          } else {
+            throw new MissingParentObjectException(project, refName, source.getRemoteConfigName());
+          }
+        }
+      }
+
+      if (!resultSuccessful && !result.isSendBatchObjectAvailable()) {
+        if (!result.isProjectMissing(project)) {
+          fetchClient.endpointUnavailable(uri, BATCH_APPLY_OBJECT_API_ENDPOINT);
+        }
+        resultSuccessful =
+            callSendObjects(source, apiUrl, project, filteredRefsBatch, eventCreatedOn, state);
+      }
+
+      return resultSuccessful;
+    } catch (URISyntaxException e) {
+      repLog.warn(
+          "Pull replication REST API batch apply object to {} *FAILED* for {}:[{}]",
+          apiUrl,
+          project,
+          batchApplyObjectStr,
+          e);
+      stateLog.error(String.format("Cannot parse pull replication api url:%s", apiUrl), state);
+      return false;
+    } catch (IOException | IllegalArgumentException e) {
+      repLog.warn(
+          "Pull replication REST API batch apply object to {} *FAILED* for {}:[{}]",
+          apiUrl,
+          project,
+          batchApplyObjectStr,
+          e);
+      stateLog.error(
+          String.format(
+              "Exception during the pull replication fetch rest api call. Endpoint url:%s,"
+                  + " message:%s",
+              apiUrl, e.getMessage()),
+          e,
+          state);
+      return false;
+    }
+  }
+
+  private boolean callSendObjects(
+      Source source,
+      String apiUrl,
+      NameKey project,
+      List<BatchApplyObjectData> filteredRefsBatch,
+      long eventCreatedOn,
+      ReplicationState state)
+      throws MissingParentObjectException {
+    boolean resultSuccessful = true;
+    for (BatchApplyObjectData batchApplyObjectData : filteredRefsBatch) {
+      resultSuccessful &=
+          callSendObject(
+              source,
+              apiUrl,
+              project,
+              batchApplyObjectData.refName(),
+              eventCreatedOn,
+              batchApplyObjectData.isDelete(),
+              batchApplyObjectData.revisionData().map(ImmutableList::of).orElse(null),
+              state);
+    }
+    return resultSuccessful;
+  }
+
+  private boolean callSendPack(
+      Source source,
+      NameKey project,
+      List<ReferenceUpdatedEvent> refs,
+      long eventCreatedOn,
+      ReplicationState state)
+      throws MissingParentObjectException {
+    List<ReferenceUpdatedEvent> filteredRefs =
+        refs.stream()
+            .filter(r -> source.wouldFetchProject(project) && source.wouldFetchRef(r.refName()))
+            .collect(Collectors.toList());
+    FetchApiClient fetchClient = fetchClientFactory.create(source);
+
+    return apiCallsExecutor.callAll(
+        source,
+        apiUrl -> {
+          boolean resultIsSuccessful = true;
+          for (ReferenceUpdatedEvent ref : filteredRefs) {
+            resultIsSuccessful &=
+                callSendPack(
+                    source, apiUrl, project, ref, eventCreatedOn, fetchClient, false, state);
+          }
+          return resultIsSuccessful;
+        });
+  }
+
+  private boolean callSendPack(
+      Source source,
+      String apiUrl,
+      NameKey project,
+      ReferenceUpdatedEvent ref,
+      long eventCreatedOn,
+      FetchApiClient fetchClient,
+      boolean withHistory,
+      ReplicationState state)
+      throws MissingParentObjectException {
+    String refName = ref.refName();
+    try {
+      URIish uri = new URIish(apiUrl);
+      if (!ref.isDelete()
+          && !fetchClient.getCapabilities(uri).supportsEndpoint(APPLY_PACK_API_ENDPOINT)) {
+        Optional<RevisionData> revision =
+            revReaderProvider.get().read(project, ref.objectId(), refName, 0);
+        return revision.isPresent()
+            && callSendObject(
+                source,
+                apiUrl,
+                project,
+                refName,
+                eventCreatedOn,
+                false,
+                ImmutableList.of(revision.get()),
+                state);
+      }
+
+      repLog.info(
+          "Pull replication REST API apply pack to {} for {}:{} - {}",
+          apiUrl,
+          project,
+          refName,
+          ref.objectId().name());
+      Context<String> apiTimer = applyObjectMetrics.startEnd2End(source.getRemoteConfigName());
+      HttpResult result =
+          ref.isDelete()
+              ? fetchClient.callSendObject(project, refName, eventCreatedOn, true, null, uri)
+              : fetchClient.callSendPack(
+                  project,
+                  refName,
+                  eventCreatedOn,
+                  ref.objectId(),
+                  out -> revisionPackWriter.write(project, ref.objectId(), withHistory, out),
+                  uri);
+      boolean resultSuccessful = result.isSuccessful();
+      repLog.info(
+          "Pull replication REST API apply pack to {} COMPLETED for {}:{} - {}, HTTP Result:"
+              + " {} - time:{} ms",
+          apiUrl,
+          project,
+          refName,
+          ref.objectId().name(),
+          result,
+          apiTimer.stop() / 1000000.0);
+
+      if (!resultSuccessful
+          && result.isProjectMissing(project)
+          && source.isCreateMissingRepositories()) {
+        result = initProject(project, uri, fetchClient, result);
+        repLog.info("Missing project {} created, HTTP Result:{}", project, result);
+      }
+
+      if (!resultSuccessful && result.isNotFound() && !result.isProjectMissing(project)) {
+        fetchClient.endpointUnavailable(uri, APPLY_PACK_API_ENDPOINT);
+      }
+
+      if (!resultSuccessful && result.isParentObjectMissing()) {
+        if (!withHistory
+            && (RefNames.isNoteDbMetaRef(refName) || applyObjectsRefsFilter.match(refName))) {
+          if (!revisionPackWriter.isHistoryWithinDepth(project, ref.objectId())) {
+            repLog.info(
+                "History of {}:{} is too deep for apply pack to {}, falling back to git fetch",
+                project,
+                refName,
+                apiUrl);
+            return false;
+          }
+          return callSendPack(
+              source, apiUrl, project, ref, eventCreatedOn, fetchClient, true, state);
+        }
+        throw new MissingParentObjectException(project, refName, source.getRemoteConfigName());
+      }
+
+      return resultSuccessful;
+    } catch (URISyntaxException e) {
+      repLog.warn(
+          "Pull replication REST API apply pack to {} *FAILED* for {}:{}",
+          apiUrl,
+          project,
+          refName,
+          e);
+      stateLog.error(String.format("Cannot parse pull replication api url:%s", apiUrl), state);
+      return false;
+    } catch (IOException e) {
+      repLog.warn(
+          "Pull replication REST API apply pack to {} *FAILED* for {}:{}",
+          apiUrl,
+          project,
+          refName,
+          e);
+      stateLog.error(
+          String.format(
+              "Exception during the pull replication fetch rest api call. Endpoint url:%s,"
+                  + " message:%s",
+              apiUrl, e.getMessage()),
+          e,
+          state);
+      return false;
+    }
+  }
+
+  private List<RevisionData> fetchMissingMetaHistory(
+      Source source,
+      FetchApiClient fetchClient,
+      URIish uri,
+      NameKey project,
+      String refName,
+      RevisionData revision)
+      throws RepositoryNotFoundException, MissingObjectException, IncorrectObjectTypeException,
+          CorruptObjectException, IOException {
+    RevisionObjectData commitObject = revision.getCommitObject();
+    if (!source.negotiateMissingHistory()
+        || commitObject == null
+        || !fetchClient.getCapabilities(uri).supportsEndpoint(COMMON_ANCESTOR_API_ENDPOINT)) {
+      return fetchWholeMetaHistory(project, refName, revision);
+    }
+
+    RevisionReader revisionReader = revReaderProvider.get();
+    ObjectId commitId = ObjectId.fromString(commitObject.getSha1());
+    List<ObjectId> ancestors = Lists.reverse(revisionReader.readParentObjectIds(project, commitId));
+    int missingAncestors;
+    try {
+      missingAncestors =
+          CommonAncestorProbe.missingAncestors(
+              ancestors,
+              candidates -> fetchClient.findCommonAncestor(project, refName, candidates, uri));
+    } catch (IOException e) {
+      repLog.warn(
+          "Unable to negotiate the missing history of {}:{} with {}, sending all of it",
+          project,
+          refName,
+          uri,
+          e);
+      return fetchWholeMetaHistory(project, refName, revision);
+    }
+
+    // The direct parent is present, so the target is missing other objects than the history
+    if (missingAncestors == 0) {
+      return fetchWholeMetaHistory(project, refName, revision);
+    }
+
+    repLog.info(
+        "Target {} is missing {} of the {} ancestors of {}:{}",
+        uri,
+        missingAncestors,
+        ancestors.size(),
+        project,
+        refName);
+    return ImmutableList.<RevisionData>builder()
+        .addAll(
+            revisionReader.readAll(
+                project, Lists.reverse(ancestors.subList(0, missingAncestors)), refName))
+        .add(revision)
+        .build();
   }
 
   private List<RevisionData> fetchWholeMetaHistory(
@@ -605,22 +876,29 @@ public class ReplicationQueue
     Optional<RevisionData> revisionDataWithParents =
         revisionReader.read(project, refName, Integer.MAX_VALUE);
 
-    ImmutableList.Builder<RevisionData> revisionDataBuilder = ImmutableList.builder();
     List<ObjectId> parentObjectIds =
         revisionDataWithParents
             .map(RevisionData::getParentObjetIds)
             .orElse(Collections.emptyList());
-    for (ObjectId parentObjectId : parentObjectIds) {
-      revisionReader.read(project, parentObjectId, refName, 0).ifPresent(revisionDataBuilder::add);
-    }
 
-    revisionDataBuilder.add(revision);
+    return ImmutableList.<RevisionData>builder()
+        .addAll(revisionReader.readAll(project, parentObjectIds, refName))
+        .add(revision)
+        .build();
+  }
 
-    return revisionDataBuilder.build();
+  private boolean callFetch(
+      Source source,
+      Project.NameKey project,
+      List<ReferenceUpdatedEvent> refs,
+      ReplicationState state) {
+    return apiCallsExecutor.callAll(
+        source, apiUrl -> callFetch(source, apiUrl, project, refs, state));
   }
 
   private boolean callFetch(
       Source source,
+      String apiUrl,
       Project.NameKey project,
       List<ReferenceUpdatedEvent> refs,
       ReplicationState state) {
@@ -628,52 +906,48 @@ public class ReplicationQueue
     for (ReferenceUpdatedEvent refEvent : refs) {
       String refName = refEvent.refName();
       if (source.wouldFetchProject(project) && source.wouldFetchRef(refName)) {
-        for (String apiUrl : source.getApis()) {
-          try {
-            URIish uri = new URIish(apiUrl);
-            FetchApiClient fetchClient = fetchClientFactory.create(source);
-            repLog.info(
-                "Pull replication REST API fetch to {} for {}:{}", apiUrl, project, refName);
-            Context<String> timer = fetchMetrics.startEnd2End(source.getRemoteConfigName());
-            HttpResult result = fetchClient.callFetch(project, refName, uri);
-            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(timer.stop());
-            boolean resultSuccessful = result.isSuccessful();
-            repLog.info(
-                "Pull replication REST API fetch to {} COMPLETED for {}:{}, HTTP Result:"
-                    + " {} - time:{} ms",
-                apiUrl,
-                project,
-                refName,
-                result,
-                elapsedMs);
-            if (!resultSuccessful
-                && result.isProjectMissing(project)
-                && source.isCreateMissingRepositories()) {
-              result = initProject(project, uri, fetchClient, result);
-            }
-            if (!resultSuccessful) {
-              stateLog.warn(
-                  String.format(
-                      "Pull replication rest api fetch call failed. Endpoint url: %s, reason:%s",
-                      apiUrl, result.getMessage().orElse("unknown")),
-                  state);
-            }
-
-            resultIsSuccessful &= result.isSuccessful();
-          } catch (URISyntaxException e) {
-            stateLog.error(
-                String.format("Cannot parse pull replication api url:%s", apiUrl), state);
-            resultIsSuccessful = false;
-          } catch (Exception e) {
-            stateLog.error(
+        try {
+          URIish uri = new URIish(apiUrl);
+          FetchApiClient fetchClient = fetchClientFactory.create(source);
+          repLog.info("Pull replication REST API fetch to {} for {}:{}", apiUrl, project, refName);
+          Context<String> timer = fetchMetrics.startEnd2End(source.getRemoteConfigName());
+          HttpResult result = fetchClient.callFetch(project, refName, uri);
+          long elapsedMs = TimeUnit.NANOSECONDS.toMillis(timer.stop());
+          boolean resultSuccessful = result.isSuccessful();
+          repLog.info(
+              "Pull replication REST API fetch to {} COMPLETED for {}:{}, HTTP Result:"
+                  + " {} - time:{} ms",
+              apiUrl,
+              project,
+              refName,
+              result,
+              elapsedMs);
+          if (!resultSuccessful
+              && result.isProjectMissing(project)
+              && source.isCreateMissingRepositories()) {
+            result = initProject(project, uri, fetchClient, result);
+          }
+          if (!resultSuccessful) {
+            stateLog.warn(
                 String.format(
-                    "Exception during the pull replication fetch rest api call. Endpoint url:%s,"
-                        + " message:%s",
-                    apiUrl, e.getMessage()),
-                e,
+                    "Pull replication rest api fetch call failed. Endpoint url: %s, reason:%s",
+                    apiUrl, result.getMessage().orElse("unknown")),
                 state);
-            resultIsSuccessful = false;
           }
+
+          resultIsSuccessful &= result.isSuccessful();
+        } catch (URISyntaxException e) {
+          stateLog.error(String.format("Cannot parse pull replication api url:%s", apiUrl), state);
+          resultIsSuccessful = false;
+        } catch (Exception e) {
+          stateLog.error(
+              String.format(
+                  "Exception during the pull replication fetch rest api call. Endpoint url:%s,"
+                      + " message:%s",
+                  apiUrl, e.getMessage()),
+              e,
+              state);
+          resultIsSuccessful = false;
         }
       }
     }
@@ -0,0 +1,136 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
+
+/**
+ * Writes the git objects of a revision as a pack stream, for the apply-pack REST-API.
+ *
+ * <p>The pack contains the objects introduced by the revision: the commit and the trees and blobs
+ * not reachable from its parents. The objects are copied as they are stored in the repository,
+ * without being inflated.
+ *
+ * <p>The history of a revision is only sent up to the {@code replication.maxApiHistoryDepth}
+ * commits, as for the apply-object REST-API: deeper histories are fetched by the target instead.
+ */
+public class RevisionPackWriter {
+  private final GitRepositoryManager gitRepositoryManager;
+  private final int maxDepth;
+
+  @Inject
+  public RevisionPackWriter(GitRepositoryManager gitRepositoryManager, ReplicationConfig cfg) {
+    this.gitRepositoryManager = gitRepositoryManager;
+    this.maxDepth =
+        cfg.getConfig()
+            .getInt(
+                "replication",
+                RevisionReader.CONFIG_MAX_API_HISTORY_DEPTH,
+                RevisionReader.DEFAULT_MAX_API_HISTORY_DEPTH);
+  }
+
+  /**
+   * Check whether the history of a revision can be sent in a pack.
+   *
+   * @param project the project name.
+   * @param objectId the object the ref points to.
+   * @return true when the revision has at most {@code replication.maxApiHistoryDepth} ancestors.
+   */
+  public boolean isHistoryWithinDepth(Project.NameKey project, ObjectId objectId)
+      throws IOException {
+    try (Repository git = gitRepositoryManager.openRepository(project)) {
+      return isHistoryWithinDepth(git, objectId);
+    }
+  }
+
+  /**
+   * Write the pack of a revision.
+   *
+   * @param project the project name.
+   * @param objectId the object the ref points to.
+   * @param withHistory true for including all the history of the revision, when the target is
+   *     missing some of its parents.
+   * @param out the output stream of the pack.
+   * @throws IOException if the history of the revision is deeper than {@code
+   *     replication.maxApiHistoryDepth}, or the pack cannot be written.
+   */
+  public void write(
+      Project.NameKey project, ObjectId objectId, boolean withHistory, OutputStream out)
+      throws IOException {
+    try (Repository git = gitRepositoryManager.openRepository(project);
+        PackWriter packWriter = new PackWriter(new PackConfig(git), git.newObjectReader())) {
+      if (withHistory && !isHistoryWithinDepth(git, objectId)) {
+        throw new IOException(
+            String.format(
+                "The history of %s in project %s is deeper than %d commits",
+                objectId.name(), project, maxDepth));
+      }
+      Set<ObjectId> haves = withHistory ? Collections.emptySet() : parentsOf(git, objectId);
+      packWriter.setThin(false);
+      packWriter.setIndexDisabled(true);
+      packWriter.preparePack(NullProgressMonitor.INSTANCE, Set.of(objectId), haves);
+      packWriter.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, out);
+    }
+  }
+
+  private boolean isHistoryWithinDepth(Repository git, ObjectId objectId) throws IOException {
+    try (RevWalk rw = new RevWalk(git)) {
+      RevObject object = rw.peel(rw.parseAny(objectId));
+      if (!(object instanceof RevCommit)) {
+        return true;
+      }
+
+      rw.markStart((RevCommit) object);
+      int ancestors = -1;
+      while (rw.next() != null) {
+        if (++ancestors > maxDepth) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static Set<ObjectId> parentsOf(Repository git, ObjectId objectId) throws IOException {
+    try (RevWalk rw = new RevWalk(git)) {
+      RevObject object = rw.parseAny(objectId);
+      if (!(object instanceof RevCommit)) {
+        return Collections.emptySet();
+      }
+
+      Set<ObjectId> parents = new HashSet<>();
+      for (RevCommit parent : ((RevCommit) object).getParents()) {
+        parents.add(parent.getId());
+      }
+      return parents;
+    }
+  }
+}
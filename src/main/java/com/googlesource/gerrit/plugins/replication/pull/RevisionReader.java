@@ -24,6 +24,7 @@ import com.google.inject.Inject;
 import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -37,6 +38,8 @@ import org.eclipse.jgit.errors.IncorrectObjectTypeException;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.internal.storage.pack.DeltaIndex;
+import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
@@ -52,10 +55,13 @@ public class RevisionReader {
   private static final String CONFIG_MAX_API_PAYLOAD_SIZE = "maxApiPayloadSize";
   private static final Long DEFAULT_MAX_PAYLOAD_SIZE_IN_BYTES = 10000L;
   static final String CONFIG_MAX_API_HISTORY_DEPTH = "maxApiHistoryDepth";
-  private static final int DEFAULT_MAX_API_HISTORY_DEPTH = 128;
+  static final int DEFAULT_MAX_API_HISTORY_DEPTH = 128;
+  static final String CONFIG_USE_API_PAYLOAD_DELTAS = "useApiPayloadDeltas";
+  private static final int MIN_DELTA_OBJECT_SIZE = 64;
   private GitRepositoryManager gitRepositoryManager;
   private Long maxRefSize;
   private final int maxDepth;
+  private final boolean useDeltas;
   private ApplyObjectMetrics metrics;
 
   @Inject
@@ -70,6 +76,8 @@ public class RevisionReader {
     this.maxDepth =
         cfg.getConfig()
             .getInt("replication", CONFIG_MAX_API_HISTORY_DEPTH, DEFAULT_MAX_API_HISTORY_DEPTH);
+    this.useDeltas =
+        cfg.getConfig().getBoolean("replication", CONFIG_USE_API_PAYLOAD_DELTAS, false);
     this.metrics = metrics;
   }
 
@@ -88,6 +96,60 @@ public class RevisionReader {
       throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException,
           RepositoryNotFoundException, IOException {
     try (Repository git = gitRepositoryManager.openRepository(project)) {
+      return read(git, project, refObjectId, refName, maxParentObjectIds);
+    }
+  }
+
+  /**
+   * Read multiple revisions of a ref, without their parents and opening the repository only once.
+   *
+   * @param project the project name.
+   * @param objectIds the ids of the revisions.
+   * @param refName the ref name.
+   * @return the revisions that could be read, in the same order of {@code objectIds}.
+   */
+  public List<RevisionData> readAll(
+      Project.NameKey project, List<ObjectId> objectIds, String refName)
+      throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException,
+          RepositoryNotFoundException, IOException {
+    List<RevisionData> revisions = new ArrayList<>();
+    try (Repository git = gitRepositoryManager.openRepository(project)) {
+      for (ObjectId objectId : objectIds) {
+        read(git, project, objectId, refName, 0).ifPresent(revisions::add);
+      }
+    }
+    return revisions;
+  }
+
+  /**
+   * Read the ids of the ancestors of a commit, up to {@code replication.maxApiHistoryDepth} of
+   * them.
+   *
+   * @param project the project name.
+   * @param commitId the id of the commit.
+   * @return the ids of the ancestors, from the oldest to the newest.
+   */
+  public List<ObjectId> readParentObjectIds(Project.NameKey project, ObjectId commitId)
+      throws MissingObjectException, IncorrectObjectTypeException, RepositoryNotFoundException,
+          IOException {
+    try (Repository git = gitRepositoryManager.openRepository(project)) {
+      ObjectLoader commitLoader = git.open(commitId, Constants.OBJ_COMMIT);
+      RevCommit commit = RevCommit.parse(commitLoader.getCachedBytes());
+      List<ObjectId> parentObjectIds = getParentObjectIds(git, commit.getParents(), 0, maxDepth);
+      Collections.reverse(parentObjectIds);
+      return parentObjectIds;
+    }
+  }
+
+  private Optional<RevisionData> read(
+      Repository git,
+      Project.NameKey project,
+      @Nullable ObjectId refObjectId,
+      String refName,
+      int maxParentObjectIds)
+      throws MissingObjectException, IncorrectObjectTypeException, CorruptObjectException,
+          IOException {
+    try {
       Long totalRefSize = 0l;
 
       Ref ref = git.exactRef(refName);
@@ -132,7 +194,12 @@ public class RevisionReader {
       verifySize(project, refName, treeObjectId, totalRefSize, treeLoader);
 
       RevisionObjectData treeRev =
-          new RevisionObjectData(treeObjectId.name(), tree.getType(), treeLoader.getCachedBytes());
+          readObject(
+              git,
+              treeObjectId,
+              tree.getType(),
+              treeLoader.getCachedBytes(),
+              commit.getParentCount() > 0 ? getParentTree(git, commit) : null);
 
       List<RevisionObjectData> blobs = Lists.newLinkedList();
       try (TreeWalk walk = new TreeWalk(git)) {
@@ -249,14 +316,49 @@ public class RevisionReader {
         totalRefSize += objectLoader.getSize();
         verifySize(projectName, refName, diffObjectId, totalRefSize, objectLoader);
         RevisionObjectData rev =
-            new RevisionObjectData(
-                diffObjectId.name(), objectLoader.getType(), objectLoader.getCachedBytes());
+            readObject(
+                git,
+                diffObjectId,
+                objectLoader.getType(),
+                objectLoader.getCachedBytes(),
+                deltaBase(diffEntry));
         blobs.add(rev);
       }
     }
     return blobs;
   }
 
+  /**
+   * Encodes the object as a git binary delta against its previous version, when enabled with
+   * {@code replication.useApiPayloadDeltas} and when the delta is less than half of the object
+   * size. The target has the previous version, because it is part of the parent commit.
+   */
+  private RevisionObjectData readObject(
+      Repository git, ObjectId objectId, int type, byte[] content, @Nullable AnyObjectId baseId)
+      throws MissingObjectException, IOException {
+    if (useDeltas && baseId != null && content.length >= MIN_DELTA_OBJECT_SIZE) {
+      ObjectLoader baseLoader = git.open(baseId, type);
+      if (!baseLoader.isLarge()) {
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        if (new DeltaIndex(baseLoader.getCachedBytes())
+            .encode(delta, content, content.length / 2)) {
+          return new RevisionObjectData(
+              objectId.name(), Constants.OBJ_REF_DELTA, delta.toByteArray(), baseId.name());
+        }
+      }
+    }
+    return new RevisionObjectData(objectId.name(), type, content);
+  }
+
+  @Nullable
+  private static ObjectId deltaBase(DiffEntry diffEntry) {
+    if (ChangeType.MODIFY.equals(diffEntry.getChangeType())
+        && diffEntry.getOldMode().getObjectType() == diffEntry.getNewMode().getObjectType()) {
+      return diffEntry.getOldId().toObjectId();
+    }
+    return null;
+  }
+
   private boolean gitSubmoduleCommit(DiffEntry diffEntry) {
     return diffEntry.getNewMode().equals(FileMode.GITLINK);
   }
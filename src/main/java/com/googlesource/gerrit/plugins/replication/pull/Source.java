@@ -16,6 +16,8 @@ package com.googlesource.gerrit.plugins.replication.pull;
 
 import static com.googlesource.gerrit.plugins.replication.ReplicationFileBasedConfig.replaceName;
 import static com.googlesource.gerrit.plugins.replication.pull.ReplicationType.SYNC;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -24,6 +26,8 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSet.Builder;
 import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.math.LongMath;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.BranchNameKey;
 import com.google.gerrit.entities.GroupReference;
@@ -32,6 +36,7 @@ import com.google.gerrit.entities.RefNames;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.config.FactoryModule;
 import com.google.gerrit.extensions.registration.DynamicItem;
+import com.google.gerrit.extensions.registration.RegistrationHandle;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.PluginUser;
@@ -61,6 +66,8 @@ import com.google.inject.servlet.RequestScoped;
 import com.googlesource.gerrit.plugins.replication.RemoteSiteUser;
 import com.googlesource.gerrit.plugins.replication.ReplicationFilter;
 import com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationApiRequestMetrics;
+import com.googlesource.gerrit.plugins.replication.pull.client.RequestCompression;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.AdaptiveRefsBatchSize;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.BatchFetchClient;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.CGitFetch;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.CGitFetchValidator;
@@ -68,26 +75,33 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.Fetch;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.FetchClientImplementation;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.FetchFactory;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.JGitFetch;
+import com.googlesource.gerrit.plugins.replication.pull.transport.TransportProvider;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.math.RoundingMode;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
@@ -105,20 +119,24 @@ public class Source {
 
   private final ReplicationStateListener stateLog;
   private final UpdateHeadTask.Factory updateHeadFactory;
-  private final Object stateLock = new Object();
-  private final Map<URIish, FetchOne> pending = new HashMap<>();
-  private final Map<URIish, FetchOne> inFlight = new HashMap<>();
+  private final FetchQueue queue = new FetchQueue();
   private final FetchOne.Factory opFactory;
   private final GitRepositoryManager gitManager;
   private final PermissionBackend permissionBackend;
   private final Provider<CurrentUser> userProvider;
   private final ProjectCache projectCache;
   private volatile ScheduledExecutorService pool;
+  private volatile Map<FetchLane, ScheduledExecutorService> lanePools = Collections.emptyMap();
+  private volatile ScheduledExecutorService batchPool;
+  private final AdaptiveRefsBatchSize refsBatchSize;
+  private volatile RegistrationHandle refsBatchSizeMetric;
   private final PerThreadRequestScope.Scoper threadScoper;
   private final SourceConfiguration config;
   private final DynamicItem<EventDispatcher> eventDispatcher;
   private CloseableHttpClient httpClient;
   private final DeleteProjectTask.Factory deleteProjectFactory;
+  private final FetchReplicationMetrics fetchMetrics;
+  private final TransportProvider transportProvider;
 
   protected enum RetryReason {
     TRANSPORT_ERROR,
@@ -129,10 +147,15 @@ public class Source {
   public static class QueueInfo {
     public final Map<URIish, FetchOne> pending;
     public final Map<URIish, FetchOne> inFlight;
+    public final Map<URIish, FetchOne> followUp;
 
-    public QueueInfo(Map<URIish, FetchOne> pending, Map<URIish, FetchOne> inFlight) {
+    public QueueInfo(
+        Map<URIish, FetchOne> pending,
+        Map<URIish, FetchOne> inFlight,
+        Map<URIish, FetchOne> followUp) {
       this.pending = ImmutableMap.copyOf(pending);
       this.inFlight = ImmutableMap.copyOf(inFlight);
+      this.followUp = ImmutableMap.copyOf(followUp);
     }
   }
 
@@ -148,8 +171,16 @@ public class Source {
       GroupBackend groupBackend,
       ReplicationStateListeners stateLog,
       GroupIncludeCache groupIncludeCache,
-      DynamicItem<EventDispatcher> eventDispatcher) {
+      DynamicItem<EventDispatcher> eventDispatcher,
+      FetchReplicationMetrics fetchMetrics) {
     config = cfg;
+    refsBatchSize =
+        new AdaptiveRefsBatchSize(
+            cfg.getRefsBatchSize(),
+            cfg.getRefsBatchSizeMin(),
+            cfg.getRefsBatchSizeMax(),
+            cfg.getRefsBatchTargetLatencyMs());
+    this.fetchMetrics = fetchMetrics;
     this.eventDispatcher = eventDispatcher;
     gitManager = gitRepositoryManager;
     this.permissionBackend = permissionBackend;
@@ -188,9 +219,12 @@ public class Source {
                 install(new FactoryModuleBuilder().build(DeleteProjectTask.Factory.class));
                 Class<? extends Fetch> clientClass =
                     cfg.useCGitClient() ? CGitFetch.class : JGitFetch.class;
+                // The native git client reads all the refspecs from its standard input
+                Class<? extends Fetch> batchClass =
+                    cfg.useCGitClient() ? CGitFetch.class : BatchFetchClient.class;
                 install(
                     new FactoryModuleBuilder()
-                        .implement(Fetch.class, BatchFetchClient.class)
+                        .implement(Fetch.class, batchClass)
                         .implement(Fetch.class, FetchClientImplementation.class, clientClass)
                         .build(FetchFactory.class));
                 factory(UpdateHeadTask.Factory.class);
@@ -219,6 +253,7 @@ public class Source {
     threadScoper = child.getInstance(PerThreadRequestScope.Scoper.class);
     deleteProjectFactory = child.getInstance(DeleteProjectTask.Factory.class);
     updateHeadFactory = child.getInstance(UpdateHeadTask.Factory.class);
+    transportProvider = child.getInstance(TransportProvider.class);
   }
 
   public synchronized CloseableHttpClient memoize(
@@ -243,14 +278,44 @@ public class Source {
   }
 
   public QueueInfo getQueueInfo() {
-    synchronized (stateLock) {
-      return new QueueInfo(pending, inFlight);
-    }
+    return new QueueInfo(queue.pending(), queue.inFlight(), queue.followUp());
   }
 
   public void start(WorkQueue workQueue) {
     String poolName = "ReplicateFrom-" + config.getRemoteConfig().getName();
     pool = workQueue.createQueue(config.getPoolThreads(), poolName);
+    Map<FetchLane, ScheduledExecutorService> lanes = new EnumMap<>(FetchLane.class);
+    for (FetchLane lane : FetchLane.values()) {
+      int threads = config.getLaneThreads(lane);
+      if (threads > 0) {
+        lanes.put(lane, workQueue.createQueue(threads, poolName + "-" + lane.name()));
+      }
+    }
+    lanePools = lanes;
+    // The native git client fetches all the refs with a single process
+    if (config.getRefsBatchThreads() > 1 && !config.useCGitClient()) {
+      batchPool = workQueue.createQueue(config.getRefsBatchThreads(), poolName + "-batch");
+    }
+    refsBatchSizeMetric =
+        fetchMetrics.registerRefsBatchSize(config.getRemoteConfig().getName(), refsBatchSize::get);
+  }
+
+  /**
+   * Get the number of refs fetched in a single fetch call, adapted to the latency of the source.
+   *
+   * @return the number of refs of the batches.
+   */
+  public AdaptiveRefsBatchSize getRefsBatchSize() {
+    return refsBatchSize;
+  }
+
+  /**
+   * Get the executor of the batches of refs fetched in parallel.
+   *
+   * @return the executor, or empty when the batches are fetched sequentially.
+   */
+  public Optional<ExecutorService> getBatchFetchExecutor() {
+    return Optional.ofNullable(batchPool);
   }
 
   public synchronized int shutdown() {
@@ -259,6 +324,19 @@ public class Source {
       cnt = pool.shutdownNow().size();
       pool = null;
     }
+    for (ScheduledExecutorService lanePool : lanePools.values()) {
+      cnt += lanePool.shutdownNow().size();
+    }
+    lanePools = Collections.emptyMap();
+    if (batchPool != null) {
+      cnt += batchPool.shutdownNow().size();
+      batchPool = null;
+    }
+    if (refsBatchSizeMetric != null) {
+      refsBatchSizeMetric.remove();
+      refsBatchSizeMetric = null;
+    }
+    transportProvider.close();
     if (httpClient != null) {
       try {
         httpClient.close();
@@ -388,8 +466,30 @@ public class Source {
       ReplicationState state,
       ReplicationType replicationType,
       Optional<PullReplicationApiRequestMetrics> apiRequestMetrics) {
+    return schedule(project, ref, Optional.empty(), state, replicationType, apiRequestMetrics);
+  }
+
+  /**
+   * Schedule the fetch of a ref, whose value on the source is known.
+   *
+   * @param project the project name.
+   * @param ref the ref to fetch.
+   * @param newRev the value of the ref on the source, when known. The fetch of the ref is skipped
+   *     when it already has this value locally.
+   * @param state the replication state.
+   * @param replicationType the type of replication.
+   * @param apiRequestMetrics the metrics of the API request triggering the fetch.
+   * @return the future of the scheduled fetch.
+   */
+  public Future<?> schedule(
+      Project.NameKey project,
+      String ref,
+      Optional<ObjectId> newRev,
+      ReplicationState state,
+      ReplicationType replicationType,
+      Optional<PullReplicationApiRequestMetrics> apiRequestMetrics) {
     URIish uri = getURI(project);
-    return schedule(project, ref, uri, state, replicationType, apiRequestMetrics);
+    return schedule(project, ref, uri, newRev, state, replicationType, apiRequestMetrics);
   }
 
   public Future<?> schedule(
@@ -399,6 +499,17 @@ public class Source {
       ReplicationState state,
       ReplicationType replicationType,
       Optional<PullReplicationApiRequestMetrics> apiRequestMetrics) {
+    return schedule(project, ref, uri, Optional.empty(), state, replicationType, apiRequestMetrics);
+  }
+
+  private Future<?> schedule(
+      Project.NameKey project,
+      String ref,
+      URIish uri,
+      Optional<ObjectId> newRev,
+      ReplicationState state,
+      ReplicationType replicationType,
+      Optional<PullReplicationApiRequestMetrics> apiRequestMetrics) {
 
     repLog.info("scheduling replication {}:{} => {}", uri, ref, project);
     if (!shouldReplicate(project, ref, state)) {
@@ -406,11 +517,7 @@ public class Source {
     }
 
     if (!config.replicatePermissions()) {
-      FetchOne e;
-      synchronized (stateLock) {
-        e = pending.get(uri);
-      }
-      if (e == null) {
+      if (queue.getPending(uri).isEmpty()) {
         try (Repository git = gitManager.openRepository(project)) {
           try {
             Ref head = git.exactRef(Constants.HEAD);
@@ -430,23 +537,55 @@ public class Source {
       }
     }
 
-    synchronized (stateLock) {
-      FetchOne e = pending.get(uri);
-      Future<?> f = CompletableFuture.completedFuture(null);
-      if (e == null || e.isRetrying()) {
-        e = opFactory.create(project, uri, apiRequestMetrics);
-        addRef(e, ref);
-        e.addState(ref, state);
-        pending.put(uri, e);
-        f = pool.schedule(e, isSyncCall(replicationType) ? 0 : config.getDelay(), TimeUnit.SECONDS);
-      } else if (!e.getRefs().contains(ref)) {
-        addRef(e, ref);
-        e.addState(ref, state);
+    // The new task is created beforehand and scheduled afterwards, as the update of the pending
+    // task of the URI only adds the ref to it
+    FetchLane lane = FetchLane.of(replicationType, ref);
+    FetchOne newTask =
+        queue.needsNewTask(uri, lane) ? newFetchOp(project, uri, lane, apiRequestMetrics) : null;
+    FetchQueue.PendingRef pending = queue.addPendingRef(uri, ref, newRev, lane, state, newTask);
+    while (pending.fetchOp == null) {
+      // The pending task started, or it was rescheduled, in the meantime
+      pending =
+          queue.addPendingRef(
+              uri, ref, newRev, lane, state, newFetchOp(project, uri, lane, apiRequestMetrics));
+    }
+
+    FetchOne e = pending.fetchOp;
+    if (pending.promoted != null) {
+      repLog.info(
+          "[{}] Promoting the pending fetch from {} to the {} lane as task [{}]",
+          pending.promoted.getTaskIdHex(),
+          uri,
+          lane,
+          e.getTaskIdHex());
+    }
+    if (pending.isAdded) {
+      postReplicationScheduledEvent(e, ref);
+    }
+    // Counted before the task can start, as it is scheduled below
+    state.increaseFetchTaskCount(project.get(), ref);
+
+    Future<?> f = CompletableFuture.completedFuture(null);
+    if (pending.isNew) {
+      try {
+        f = scheduleFetch(e, isSyncCall(replicationType) ? 0 : config.getDelay(), TimeUnit.SECONDS);
+      } catch (RejectedExecutionException err) {
+        queue.updatePending(uri, pendingFetchOp -> pendingFetchOp == e ? null : pendingFetchOp);
+        throw err;
       }
-      state.increaseFetchTaskCount(project.get(), ref);
-      repLog.info("scheduled {}:{} => {} to run after {}s", e, ref, project, config.getDelay());
-      return f;
     }
+    repLog.info("scheduled {}:{} => {} to run after {}s", e, ref, project, config.getDelay());
+    return f;
+  }
+
+  private FetchOne newFetchOp(
+      Project.NameKey project,
+      URIish uri,
+      FetchLane lane,
+      Optional<PullReplicationApiRequestMetrics> apiRequestMetrics) {
+    FetchOne fetchOp = opFactory.create(project, uri, apiRequestMetrics);
+    fetchOp.setLane(lane);
+    return fetchOp;
   }
 
   void scheduleDeleteProject(String uri, Project.NameKey project) {
@@ -456,15 +595,16 @@ public class Source {
   }
 
   void fetchWasCanceled(FetchOne fetchOp) {
-    synchronized (stateLock) {
-      URIish uri = fetchOp.getURI();
-      pending.remove(uri);
-    }
+    queue.updatePending(fetchOp.getURI(), pendingFetchOp -> null);
   }
 
-  private void addRef(FetchOne e, String ref) {
-    e.addRef(ref);
-    postReplicationScheduledEvent(e, ref);
+  private ScheduledExecutorService pool(FetchLane lane) {
+    return lanePools.getOrDefault(lane, pool);
+  }
+
+  private ScheduledFuture<?> scheduleFetch(FetchOne fetchOp, long delay, TimeUnit unit) {
+    fetchOp.setScheduledDelay(delay, unit);
+    return pool(fetchOp.getLane()).schedule(fetchOp, delay, unit);
   }
 
   private boolean isSyncCall(ReplicationType replicationType) {
@@ -474,9 +614,9 @@ public class Source {
   /**
    * It schedules again a FetchOp instance.
    *
-   * <p>If the reason for rescheduling is to avoid a collision with an in-flight push to the same
-   * URI, we don't mark the operation as "retrying," and we schedule using the replication delay,
-   * rather than the retry delay. Otherwise, the operation is marked as "retrying" and scheduled to
+   * <p>If the reason for rescheduling is a collision, the FetchOp is the follow-up of an in-flight
+   * fetch from the same URI that just finished: we don't mark the operation as "retrying," and we
+   * schedule it straight away. Otherwise, the operation is marked as "retrying" and scheduled to
    * run following the minutes count determined by class attribute retryDelay.
    *
    * <p>In case the FetchOp instance to be scheduled has same URI than one marked as "retrying," it
@@ -488,119 +628,130 @@ public class Source {
    * scheduled for retry.
    *
    * <p>Notice all operations to indicate a FetchOp should be canceled, or it is retrying, or
-   * remove/add it from/to pending Map should be protected by synchronizing on the stateLock object.
+   * remove/add it from/to the pending tasks are executed atomically for the URI of the FetchOp.
    *
    * @param fetchOp The FetchOp instance to be scheduled.
    */
   void reschedule(FetchOne fetchOp, RetryReason reason) {
-    synchronized (stateLock) {
-      URIish uri = fetchOp.getURI();
-      FetchOne pendingFetchOp = pending.get(uri);
-
-      if (pendingFetchOp != null) {
-        // There is one FetchOp instance already pending to same URI.
-
-        if (pendingFetchOp.isRetrying()) {
-          // The one pending is one already retrying, so it should
-          // maintain it and add to it the refs of the one passed
-          // as parameter to the method.
-
-          // This scenario would happen if a FetchOp has started running
-          // and then before it failed due transport exception, another
-          // one to same URI started. The first one would fail and would
-          // be rescheduled, being present in pending list. When the
-          // second one fails, it will also be rescheduled and then,
-          // here, find out replication to its URI is already pending
-          // for retry (blocking).
-          pendingFetchOp.addRefs(fetchOp.getRefs());
-          pendingFetchOp.addStates(fetchOp.getStates());
-          fetchOp.removeStates();
-
-          stateLog.warn(
-              String.format(
-                  "[%s] Merging all refs to fetch from [%s] to the already retrying task [%s] for keeping its position into the replication queue",
-                  fetchOp.getTaskIdHex(), fetchOp.getURI(), pendingFetchOp.getTaskIdHex()),
-              fetchOp.getStatesAsArray());
+    AtomicReference<FetchOne> replaced = new AtomicReference<>();
+    FetchOne pending =
+        queue.updatePending(
+            fetchOp.getURI(),
+            pendingFetchOp -> {
+              replaced.set(pendingFetchOp);
+              return merge(fetchOp, pendingFetchOp, reason);
+            });
 
-        } else {
-          // The one pending is one that is NOT retrying, it was just
-          // scheduled believing no problem would happen. The one pending
-          // should be canceled, and this is done by setting its canceled
-          // flag, removing it from pending list, and adding its refs to
-          // the fetchOp instance that should then, later, in this method,
-          // be scheduled for retry.
-
-          // Notice that the FetchOp found pending will start running and,
-          // when notifying it is starting (with pending lock protection),
-          // it will see it was canceled and then it will do nothing with
-          // pending list and it will not execute its run implementation.
-          pendingFetchOp.canceledByReplication();
-          pending.remove(uri);
-
-          fetchOp.addRefs(pendingFetchOp.getRefs());
-          fetchOp.addStates(pendingFetchOp.getStates());
-          pendingFetchOp.removeStates();
-
-          stateLog.warn(
-              String.format(
-                  "[%s] Merging the pending fetch from [%s] with task [%s] and rescheduling",
-                  pendingFetchOp.getTaskIdHex(), pendingFetchOp.getURI(), fetchOp.getTaskIdHex()),
-              pendingFetchOp.getStatesAsArray());
-        }
+    FetchOne pendingFetchOp = replaced.get();
+    if (pendingFetchOp != null) {
+      if (pending == pendingFetchOp) {
+        stateLog.warn(
+            String.format(
+                "[%s] Merging all refs to fetch from [%s] to the already retrying task [%s] for keeping its position into the replication queue",
+                fetchOp.getTaskIdHex(), fetchOp.getURI(), pendingFetchOp.getTaskIdHex()),
+            fetchOp.getStatesAsArray());
+        return;
       }
 
-      if (pendingFetchOp == null || !pendingFetchOp.isRetrying()) {
-        pending.put(uri, fetchOp);
-        switch (reason) {
-          case COLLISION:
-            pool.schedule(fetchOp, config.getRescheduleDelay(), TimeUnit.SECONDS);
-            break;
-          case TRANSPORT_ERROR:
-          case REPOSITORY_MISSING:
-          default:
-            RefUpdate.Result trackingRefUpdate =
-                RetryReason.REPOSITORY_MISSING.equals(reason)
-                    ? RefUpdate.Result.NOT_ATTEMPTED
-                    : RefUpdate.Result.REJECTED_OTHER_REASON;
-            postReplicationFailedEvent(fetchOp, trackingRefUpdate);
-            if (fetchOp.setToRetry()) {
-              postReplicationScheduledEvent(fetchOp);
-              pool.schedule(fetchOp, config.getRetryDelay(), TimeUnit.MINUTES);
-            } else {
-              fetchOp.canceledByReplication();
-              pending.remove(uri);
-              stateLog.error(
-                  "Fetch from " + fetchOp.getURI() + " cancelled after maximum number of retries",
-                  fetchOp.getStatesAsArray());
-            }
-            break;
+      stateLog.warn(
+          String.format(
+              "[%s] Merging the pending fetch from [%s] with task [%s] and rescheduling",
+              pendingFetchOp.getTaskIdHex(), pendingFetchOp.getURI(), fetchOp.getTaskIdHex()),
+          pendingFetchOp.getStatesAsArray());
+    }
+
+    switch (reason) {
+      case COLLISION:
+        scheduleFetch(fetchOp, 0, TimeUnit.SECONDS);
+        return;
+      case TRANSPORT_ERROR:
+      case REPOSITORY_MISSING:
+      default:
+        RefUpdate.Result trackingRefUpdate =
+            RetryReason.REPOSITORY_MISSING.equals(reason)
+                ? RefUpdate.Result.NOT_ATTEMPTED
+                : RefUpdate.Result.REJECTED_OTHER_REASON;
+        postReplicationFailedEvent(fetchOp, trackingRefUpdate);
+        if (pending == fetchOp) {
+          postReplicationScheduledEvent(fetchOp);
+          scheduleFetch(fetchOp, config.getRetryDelay(), TimeUnit.MINUTES);
+          return;
         }
-      }
+        stateLog.error(
+            "Fetch from " + fetchOp.getURI() + " cancelled after maximum number of retries",
+            fetchOp.getStatesAsArray());
     }
   }
 
-  boolean requestRunway(FetchOne op) {
-    synchronized (stateLock) {
-      if (op.wasCanceled()) {
-        return false;
-      }
-      pending.remove(op.getURI());
-      if (inFlight.containsKey(op.getURI())) {
-        return false;
+  /**
+   * Merge a task to reschedule with the pending one of its URI, while holding the state of the URI.
+   *
+   * @return the new pending task of the URI, or null when the task is not retried.
+   */
+  @Nullable
+  private static FetchOne merge(
+      FetchOne fetchOp, @Nullable FetchOne pendingFetchOp, RetryReason reason) {
+    if (pendingFetchOp != null) {
+      // There is one FetchOp instance already pending to same URI.
+
+      if (pendingFetchOp.isRetrying()) {
+        // The one pending is one already retrying, so it should
+        // maintain it and add to it the refs of the one passed
+        // as parameter to the method.
+
+        // This scenario would happen if a FetchOp has started running
+        // and then before it failed due transport exception, another
+        // one to same URI started. The first one would fail and would
+        // be rescheduled, being present in pending list. When the
+        // second one fails, it will also be rescheduled and then,
+        // here, find out replication to its URI is already pending
+        // for retry (blocking).
+        pendingFetchOp.addRefs(fetchOp.getRefs());
+        pendingFetchOp.addStates(fetchOp.getStates());
+        fetchOp.removeStates();
+        return pendingFetchOp;
       }
-      inFlight.put(op.getURI(), op);
+
+      // The one pending is one that is NOT retrying, it was just
+      // scheduled believing no problem would happen. The one pending
+      // should be canceled, and this is done by setting its canceled
+      // flag, replacing it in the pending tasks, and adding its refs to
+      // the fetchOp instance that should then, later, after the merge,
+      // be scheduled for retry.
+
+      // Notice that the FetchOp found pending will start running and,
+      // when requesting its runway (atomically for its URI), it will see
+      // it was canceled and then it will do nothing with the pending
+      // tasks and it will not execute its run implementation.
+      pendingFetchOp.canceledByReplication();
+
+      fetchOp.addRefs(pendingFetchOp.getRefs());
+      fetchOp.addStates(pendingFetchOp.getStates());
+      pendingFetchOp.removeStates();
+      fetchOp.promoteLane(pendingFetchOp.getLane());
+    }
+
+    if (reason != RetryReason.COLLISION && !fetchOp.setToRetry()) {
+      fetchOp.canceledByReplication();
+      return null;
     }
-    return true;
+    return fetchOp;
+  }
+
+  boolean requestRunway(FetchOne op) {
+    return queue.requestRunway(op);
   }
 
   Optional<FetchOne> getInFlight(URIish uri) {
-    return Optional.ofNullable(inFlight.get(uri));
+    return queue.getInFlight(uri);
+  }
+
+  Optional<FetchOne> getFollowUp(URIish uri) {
+    return queue.getFollowUp(uri);
   }
 
   void notifyFinished(FetchOne op) {
-    synchronized (stateLock) {
-      inFlight.remove(op.getURI());
-    }
+    queue.notifyFinished(op).ifPresent(followUp -> startFollowUp(op, followUp));
 
     Set<TransportException> fetchFailures = op.getFetchFailures();
     fetchFailures.forEach(
@@ -609,6 +760,23 @@ public class Source {
                 "Replication task [" + op.getTaskIdHex() + "] completed with partial failure", e));
   }
 
+  private void startFollowUp(FetchOne finished, FetchQueue.FollowUp followUp) {
+    long waitedMs = NANOSECONDS.toMillis(System.nanoTime() - followUp.waitingSinceNanos);
+    // Without the follow-up, a collision was rescheduled every rescheduleDelay seconds
+    long backOffMs = SECONDS.toMillis(config.getRescheduleDelay());
+    long backOffStartMs =
+        Math.max(1, LongMath.divide(waitedMs, backOffMs, RoundingMode.CEILING)) * backOffMs;
+    fetchMetrics.recordFollowUp(getRemoteConfigName(), waitedMs, backOffStartMs - waitedMs);
+
+    repLog.info(
+        "[{}] Replication from {} following the task [{}] starts after {}ms",
+        followUp.fetchOp.getTaskIdHex(),
+        followUp.fetchOp.getURI(),
+        finished.getTaskIdHex(),
+        waitedMs);
+    reschedule(followUp.fetchOp, RetryReason.COLLISION);
+  }
+
   public boolean wouldFetchRef(String ref) {
     if (!config.replicatePermissions() && RefNames.REFS_CONFIG.equals(ref)) {
       return false;
@@ -768,6 +936,18 @@ public class Source {
     return config.getIdleTimeout();
   }
 
+  public int getApiCallTimeout() {
+    return config.getApiCallTimeout();
+  }
+
+  public RequestCompression getRequestCompression() {
+    return config.getRequestCompression();
+  }
+
+  public int getRequestCompressionThreshold() {
+    return config.getRequestCompressionThreshold();
+  }
+
   public int getMaxConnectionsPerRoute() {
     return config.getMaxConnectionsPerRoute();
   }
@@ -784,6 +964,14 @@ public class Source {
     return config.createMissingRepositories();
   }
 
+  public boolean useApplyPack() {
+    return config.useApplyPack();
+  }
+
+  public boolean negotiateMissingHistory() {
+    return config.negotiateMissingHistory();
+  }
+
   public boolean isReplicateProjectDeletions() {
     return config.replicateProjectDeletions();
   }
@@ -16,8 +16,10 @@ package com.googlesource.gerrit.plugins.replication.pull;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.gerrit.server.config.ConfigUtil;
 import com.googlesource.gerrit.plugins.replication.RemoteConfiguration;
+import com.googlesource.gerrit.plugins.replication.pull.client.RequestCompression;
 import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.transport.RemoteConfig;
@@ -26,9 +28,13 @@ public class SourceConfiguration implements RemoteConfiguration {
   static final int DEFAULT_REPLICATION_DELAY = 4;
   static final int DEFAULT_RESCHEDULE_DELAY = 3;
   static final int DEFAULT_SLOW_LATENCY_THRESHOLD_SECS = 900;
+  static final int DEFAULT_SSH_SESSION_IDLE_TIMEOUT_SECS = 30;
+  static final int DEFAULT_REFS_BATCH_TARGET_LATENCY_MS = 10000;
   static final int DEFAULT_MAX_CONNECTION_INACTIVITY_MS = 10000;
   static final int DEFAULT_CONNECTION_TIMEOUT_MS = 5000;
   static final int DEFAULT_CONNECTIONS_PER_ROUTE = 100;
+  static final int DEFAULT_API_CALL_TIMEOUT_SECS = 300;
+  static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 8192;
 
   private final int delay;
   private final int rescheduleDelay;
@@ -36,9 +42,12 @@ public class SourceConfiguration implements RemoteConfiguration {
   private final int lockErrorMaxRetries;
   private final ImmutableList<String> adminUrls;
   private final int poolThreads;
+  private final ImmutableMap<FetchLane, Integer> laneThreads;
   private final boolean replicatePermissions;
   private final boolean replicateHiddenProjects;
   private final boolean createMissingRepositories;
+  private final boolean useApplyPack;
+  private final boolean negotiateMissingHistory;
   private final boolean replicateProjectDeletions;
   private final String remoteNameStyle;
   private final ImmutableList<String> urls;
@@ -48,12 +57,22 @@ public class SourceConfiguration implements RemoteConfiguration {
   private final ImmutableList<String> apis;
   private final int connectionTimeout;
   private final int idleTimeout;
+  private final int apiCallTimeout;
+  private final RequestCompression requestCompression;
+  private final int requestCompressionThreshold;
   private final int maxConnectionsPerRoute;
   private final int maxConnections;
   private final int maxRetries;
   private int slowLatencyThreshold;
   private boolean useCGitClient;
+  private boolean useNegotiationTip;
   private int refsBatchSize;
+  private final int refsBatchThreads;
+  private final int refsBatchSizeMin;
+  private final int refsBatchSizeMax;
+  private final long refsBatchTargetLatencyMs;
+  private final int sshSessionPoolSize;
+  private final long sshSessionIdleTimeoutSec;
 
   public SourceConfiguration(RemoteConfig remoteConfig, Config cfg) {
     this.remoteConfig = remoteConfig;
@@ -63,6 +82,20 @@ public class SourceConfiguration implements RemoteConfiguration {
     connectionTimeout =
         cfg.getInt("remote", name, "connectionTimeout", DEFAULT_CONNECTION_TIMEOUT_MS);
     idleTimeout = cfg.getInt("remote", name, "idleTimeout", DEFAULT_MAX_CONNECTION_INACTIVITY_MS);
+    apiCallTimeout =
+        (int)
+            ConfigUtil.getTimeUnit(
+                cfg,
+                "remote",
+                name,
+                "apiCallTimeout",
+                TimeUnit.SECONDS.toMillis(DEFAULT_API_CALL_TIMEOUT_SECS),
+                TimeUnit.MILLISECONDS);
+    requestCompression =
+        cfg.getEnum("remote", name, "requestCompression", RequestCompression.NONE);
+    requestCompressionThreshold =
+        cfg.getInt(
+            "remote", name, "requestCompressionThreshold", DEFAULT_REQUEST_COMPRESSION_THRESHOLD);
     maxConnectionsPerRoute =
         cfg.getInt("replication", "maxConnectionsPerRoute", DEFAULT_CONNECTIONS_PER_ROUTE);
     maxConnections = cfg.getInt("replication", "maxConnections", 2 * maxConnectionsPerRoute);
@@ -73,17 +106,35 @@ public class SourceConfiguration implements RemoteConfiguration {
     adminUrls = ImmutableList.copyOf(cfg.getStringList("remote", name, "adminUrl"));
     retryDelay = Math.max(0, getInt(remoteConfig, cfg, "replicationretry", 1));
     poolThreads = Math.max(0, getInt(remoteConfig, cfg, "threads", 1));
+    laneThreads = getLaneThreads(remoteConfig, cfg);
     authGroupNames = ImmutableList.copyOf(cfg.getStringList("remote", name, "authGroup"));
     lockErrorMaxRetries = cfg.getInt("replication", "lockErrorMaxRetries", 0);
 
     createMissingRepositories = cfg.getBoolean("remote", name, "createMissingRepositories", true);
+    useApplyPack = cfg.getBoolean("remote", name, "useApplyPack", false);
+    negotiateMissingHistory = cfg.getBoolean("remote", name, "negotiateMissingHistory", true);
     replicateProjectDeletions = cfg.getBoolean("remote", name, "replicateProjectDeletions", true);
     replicatePermissions = cfg.getBoolean("remote", name, "replicatePermissions", true);
     replicateHiddenProjects = cfg.getBoolean("remote", name, "replicateHiddenProjects", false);
     useCGitClient = cfg.getBoolean("replication", "useCGitClient", false);
+    useNegotiationTip = cfg.getBoolean("replication", "useNegotiationTip", false);
     refsBatchSize = cfg.getInt("replication", "refsBatchSize", 50);
     if (refsBatchSize <= 0)
       throw new IllegalArgumentException("refsBatchSize must be greater than zero");
+    refsBatchSizeMin = cfg.getInt("replication", "refsBatchSizeMin", refsBatchSize);
+    refsBatchSizeMax = cfg.getInt("replication", "refsBatchSizeMax", refsBatchSize);
+    if (refsBatchSizeMin <= 0 || refsBatchSizeMax < refsBatchSizeMin)
+      throw new IllegalArgumentException(
+          "refsBatchSizeMin must be greater than zero and not greater than refsBatchSizeMax");
+    refsBatchTargetLatencyMs =
+        ConfigUtil.getTimeUnit(
+            cfg,
+            "replication",
+            null,
+            "refsBatchTargetLatency",
+            DEFAULT_REFS_BATCH_TARGET_LATENCY_MS,
+            TimeUnit.MILLISECONDS);
+    refsBatchThreads = Math.max(1, getInt(remoteConfig, cfg, "refsBatchThreads", 1));
     remoteNameStyle =
         MoreObjects.firstNonNull(cfg.getString("remote", name, "remoteNameStyle"), "slash");
     maxRetries =
@@ -98,6 +149,15 @@ public class SourceConfiguration implements RemoteConfiguration {
                 "slowLatencyThreshold",
                 DEFAULT_SLOW_LATENCY_THRESHOLD_SECS,
                 TimeUnit.SECONDS);
+    sshSessionPoolSize = Math.max(0, getInt(remoteConfig, cfg, "sshSessionPoolSize", 0));
+    sshSessionIdleTimeoutSec =
+        ConfigUtil.getTimeUnit(
+            cfg,
+            "remote",
+            remoteConfig.getName(),
+            "sshSessionIdleTimeout",
+            DEFAULT_SSH_SESSION_IDLE_TIMEOUT_SECS,
+            TimeUnit.SECONDS);
   }
 
   @Override
@@ -119,6 +179,16 @@ public class SourceConfiguration implements RemoteConfiguration {
     return poolThreads;
   }
 
+  /**
+   * Number of threads dedicated to a lane of the fetches.
+   *
+   * @param lane the fetch lane.
+   * @return the number of threads or zero when the lane shares the pool of the source.
+   */
+  public int getLaneThreads(FetchLane lane) {
+    return laneThreads.getOrDefault(lane, 0);
+  }
+
   public int getLockErrorMaxRetries() {
     return lockErrorMaxRetries;
   }
@@ -140,6 +210,18 @@ public class SourceConfiguration implements RemoteConfiguration {
     return idleTimeout;
   }
 
+  public int getApiCallTimeout() {
+    return apiCallTimeout;
+  }
+
+  public RequestCompression getRequestCompression() {
+    return requestCompression;
+  }
+
+  public int getRequestCompressionThreshold() {
+    return requestCompressionThreshold;
+  }
+
   public int getMaxConnectionsPerRoute() {
     return maxConnectionsPerRoute;
   }
@@ -181,10 +263,38 @@ public class SourceConfiguration implements RemoteConfiguration {
     return useCGitClient;
   }
 
+  public boolean useNegotiationTip() {
+    return useNegotiationTip;
+  }
+
+  public int getSshSessionPoolSize() {
+    return sshSessionPoolSize;
+  }
+
+  public long getSshSessionIdleTimeoutSec() {
+    return sshSessionIdleTimeoutSec;
+  }
+
   public int getRefsBatchSize() {
     return refsBatchSize;
   }
 
+  public int getRefsBatchThreads() {
+    return refsBatchThreads;
+  }
+
+  public int getRefsBatchSizeMin() {
+    return refsBatchSizeMin;
+  }
+
+  public int getRefsBatchSizeMax() {
+    return refsBatchSizeMax;
+  }
+
+  public long getRefsBatchTargetLatencyMs() {
+    return refsBatchTargetLatencyMs;
+  }
+
   @Override
   public RemoteConfig getRemoteConfig() {
     return remoteConfig;
@@ -199,10 +309,29 @@ public class SourceConfiguration implements RemoteConfiguration {
     return createMissingRepositories;
   }
 
+  public boolean useApplyPack() {
+    return useApplyPack;
+  }
+
+  public boolean negotiateMissingHistory() {
+    return negotiateMissingHistory;
+  }
+
   public boolean replicateProjectDeletions() {
     return replicateProjectDeletions;
   }
 
+  private static ImmutableMap<FetchLane, Integer> getLaneThreads(RemoteConfig rc, Config cfg) {
+    ImmutableMap.Builder<FetchLane, Integer> laneThreads = ImmutableMap.builder();
+    for (FetchLane lane : FetchLane.values()) {
+      String name = lane.getThreadsConfigName();
+      if (name != null) {
+        laneThreads.put(lane, Math.max(0, getInt(rc, cfg, name, 0)));
+      }
+    }
+    return laneThreads.build();
+  }
+
   private static int getInt(RemoteConfig rc, Config cfg, String name, int defValue) {
     return cfg.getInt("remote", rc.getName(), name, defValue);
   }
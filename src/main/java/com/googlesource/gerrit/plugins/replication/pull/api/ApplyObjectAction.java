@@ -14,6 +14,7 @@
 
 package com.googlesource.gerrit.plugins.replication.pull.api;
 
+import static com.google.gerrit.httpd.restapi.RestApiServlet.SC_UNPROCESSABLE_ENTITY;
 import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
 
 import com.google.common.base.Strings;
@@ -30,9 +31,14 @@ import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lib.RefUpdate;
 
 @Singleton
 public class ApplyObjectAction implements RestModifyView<ProjectResource, RevisionInput> {
@@ -57,12 +63,7 @@ public class ApplyObjectAction implements RestModifyView<ProjectResource, Revisi
     if (!preConditions.canCallFetchApi()) {
       throw new AuthException("Not allowed to call fetch command");
     }
-    if (Strings.isNullOrEmpty(input.getLabel())) {
-      throw new BadRequestException("Source label cannot be null or empty");
-    }
-    if (Strings.isNullOrEmpty(input.getRefName())) {
-      throw new BadRequestException("Ref-update refname cannot be null or empty");
-    }
+    checkLabelAndRefName(input);
 
     try {
       repLog.info(
@@ -83,20 +84,7 @@ public class ApplyObjectAction implements RestModifyView<ProjectResource, Revisi
         return Response.withStatusCode(HttpServletResponse.SC_NO_CONTENT, "");
       }
 
-      try {
-        input.validate();
-      } catch (IllegalArgumentException e) {
-        BadRequestException bre =
-            new BadRequestException("Ref-update with invalid input: " + e.getMessage(), e);
-        repLog.error(
-            "Apply object API *FAILED* from {} for {}:{} - {}",
-            input.getLabel(),
-            resource.getNameKey(),
-            input.getRefName(),
-            input.getRevisionData(),
-            bre);
-        throw bre;
-      }
+      validate(resource, input);
 
       applyObjectCommand.applyObject(
           resource.getNameKey(),
@@ -134,4 +122,111 @@ public class ApplyObjectAction implements RestModifyView<ProjectResource, Revisi
       throw new UnprocessableEntityException(e.getMessage());
     }
   }
+
+  /**
+   * Apply the objects of multiple ref-updates of the same project with a single batch ref update.
+   *
+   * @param resource the project.
+   * @param inputs the ref-updates, each one with a different ref name and with revision data.
+   * @param atomic true for updating either all the refs or none of them.
+   * @return the responses of each ref-update, in the same order of the inputs. When not atomic, a
+   *     failed ref-update has the status code of the failure, and the other ones are still applied.
+   * @throws BadRequestException when the ref-updates are not all from the same source label.
+   */
+  public List<Response<?>> applyBatch(
+      ProjectResource resource, List<RevisionInput> inputs, boolean atomic)
+      throws RestApiException {
+    if (!preConditions.canCallFetchApi()) {
+      throw new AuthException("Not allowed to call fetch command");
+    }
+    for (RevisionInput input : inputs) {
+      checkLabelAndRefName(input);
+      if (!input.getLabel().equals(inputs.get(0).getLabel())) {
+        throw new BadRequestException(
+            String.format(
+                "All the ref-updates of a batch must have the same source label: found %s and %s",
+                inputs.get(0).getLabel(), input.getLabel()));
+      }
+      repLog.info(
+          "Apply object API from {} for {}:{} - {}",
+          resource.getNameKey(),
+          input.getLabel(),
+          input.getRefName(),
+          input.getRevisionData());
+      validate(resource, input);
+    }
+
+    List<RefUpdateState> refUpdateStates;
+    try {
+      refUpdateStates = applyObjectCommand.applyBatch(resource.getNameKey(), inputs, atomic);
+    } catch (MissingParentObjectException e) {
+      logBatchFailure(resource, inputs, e);
+      throw new ResourceConflictException(e.getMessage(), e);
+    } catch (IOException e) {
+      logBatchFailure(resource, inputs, e);
+      throw RestApiException.wrap(e.getMessage(), e);
+    }
+
+    List<Response<?>> responses = new ArrayList<>();
+    for (RefUpdateState refUpdateState : refUpdateStates) {
+      if (ApplyObjectCommand.isSuccessful(refUpdateState.getResult())) {
+        responses.add(Response.created());
+        continue;
+      }
+
+      String message =
+          String.format(
+              "RefUpdate failed with result %s for: project=%s, refName=%s",
+              refUpdateState.getResult().name(),
+              resource.getNameKey(),
+              refUpdateState.getRemoteName());
+      if (atomic) {
+        // None of the refs was updated
+        throw new UnprocessableEntityException(message);
+      }
+      responses.add(
+          Response.withStatusCode(
+              refUpdateState.getResult() == RefUpdate.Result.REJECTED_MISSING_OBJECT
+                  ? HttpServletResponse.SC_CONFLICT
+                  : SC_UNPROCESSABLE_ENTITY,
+              message));
+    }
+    return responses;
+  }
+
+  private static void checkLabelAndRefName(RevisionInput input) throws BadRequestException {
+    if (Strings.isNullOrEmpty(input.getLabel())) {
+      throw new BadRequestException("Source label cannot be null or empty");
+    }
+    if (Strings.isNullOrEmpty(input.getRefName())) {
+      throw new BadRequestException("Ref-update refname cannot be null or empty");
+    }
+  }
+
+  private static void validate(ProjectResource resource, RevisionInput input)
+      throws BadRequestException {
+    try {
+      input.validate();
+    } catch (IllegalArgumentException e) {
+      BadRequestException bre =
+          new BadRequestException("Ref-update with invalid input: " + e.getMessage(), e);
+      repLog.error(
+          "Apply object API *FAILED* from {} for {}:{} - {}",
+          input.getLabel(),
+          resource.getNameKey(),
+          input.getRefName(),
+          input.getRevisionData(),
+          bre);
+      throw bre;
+    }
+  }
+
+  private static void logBatchFailure(
+      ProjectResource resource, List<RevisionInput> inputs, Exception e) {
+    repLog.error(
+        "Apply object API *FAILED* for {}:{}",
+        resource.getNameKey(),
+        inputs.stream().map(RevisionInput::getRefName).collect(Collectors.joining(",")),
+        e);
+  }
 }
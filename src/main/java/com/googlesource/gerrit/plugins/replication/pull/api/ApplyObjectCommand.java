@@ -34,15 +34,21 @@ import com.googlesource.gerrit.plugins.replication.pull.ReplicationState.RefFetc
 import com.googlesource.gerrit.plugins.replication.pull.Source;
 import com.googlesource.gerrit.plugins.replication.pull.SourcesCollection;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.ApplyObject;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.transport.RefSpec;
 
@@ -107,29 +113,127 @@ public class ApplyObjectCommand {
         Arrays.toString(revisionsData));
     Timer1.Context<String> context = metrics.start(sourceLabel);
 
-    RefUpdateState refUpdateState = applyObject.apply(name, new RefSpec(refName), revisionsData);
+    RefUpdateState refUpdateState =
+        applyObject.apply(name, new RefSpec(refName), revisionsData, sourceLabel);
     Boolean isRefUpdateSuccessful = isSuccessful(refUpdateState.getResult());
 
     if (isRefUpdateSuccessful) {
-      for (RevisionData revisionData : revisionsData) {
-        RevisionObjectData commitObj = revisionData.getCommitObject();
-        List<RevisionObjectData> blobs = revisionData.getBlobs();
+      cacheRevisions(name, refName, revisionsData, eventCreatedOn);
+    }
+    long elapsed = NANOSECONDS.toMillis(context.stop());
+    postRefUpdate(name, refName, refUpdateState, sourceLabel, elapsed);
+  }
+
+  /**
+   * Apply the objects of multiple ref-updates of the same project, with a single flush of the
+   * objects and a single batch ref update.
+   *
+   * <p>The events of all the ref updates are posted, also when some of them have failed.
+   *
+   * @param name the project name.
+   * @param inputs the ref-updates, each one with a different ref name and with revision data.
+   * @param atomic true for updating either all the refs or none of them.
+   * @return the result of each ref update, in the same order of the inputs.
+   */
+  public List<RefUpdateState> applyBatch(
+      Project.NameKey name, List<RevisionInput> inputs, boolean atomic)
+      throws IOException, MissingParentObjectException, ResourceNotFoundException {
+    Map<String, RevisionData[]> refsRevisions = new LinkedHashMap<>();
+    List<Timer1.Context<String>> contexts = new ArrayList<>();
+    for (RevisionInput input : inputs) {
+      repLog.info(
+          "Apply object from {} for {}:{} - {}",
+          input.getLabel(),
+          name,
+          input.getRefName(),
+          input.getRevisionData());
+      refsRevisions.put(input.getRefName(), new RevisionData[] {input.getRevisionData()});
+      contexts.add(metrics.start(input.getLabel()));
+    }
+
+    List<RefUpdateState> refUpdateStates =
+        applyObject.applyBatch(name, refsRevisions, atomic, inputs.get(0).getLabel());
+
+    for (int i = 0; i < inputs.size(); i++) {
+      RevisionInput input = inputs.get(i);
+      RefUpdateState refUpdateState = refUpdateStates.get(i);
+      if (isSuccessful(refUpdateState.getResult())) {
+        cacheRevisions(
+            name,
+            input.getRefName(),
+            refsRevisions.get(input.getRefName()),
+            input.getEventCreatedOn());
+      }
+      long elapsed = NANOSECONDS.toMillis(contexts.get(i).stop());
+      try {
+        postRefUpdate(name, input.getRefName(), refUpdateState, input.getLabel(), elapsed);
+      } catch (RefUpdateException e) {
+        // Already logged, the failure is reported with the result of the ref update
+      }
+    }
+    return refUpdateStates;
+  }
 
-        if (commitObj != null) {
+  private void cacheRevisions(
+      Project.NameKey name, String refName, RevisionData[] revisionsData, long eventCreatedOn) {
+    for (RevisionData revisionData : revisionsData) {
+      RevisionObjectData commitObj = revisionData.getCommitObject();
+      List<RevisionObjectData> blobs = revisionData.getBlobs();
+
+      if (commitObj != null) {
+        refUpdatesSucceededCache.put(
+            ApplyObjectsCacheKey.create(
+                revisionData.getCommitObject().getSha1(), refName, name.get()),
+            eventCreatedOn);
+      } else if (blobs != null) {
+        for (RevisionObjectData blob : blobs) {
           refUpdatesSucceededCache.put(
-              ApplyObjectsCacheKey.create(
-                  revisionData.getCommitObject().getSha1(), refName, name.get()),
-              eventCreatedOn);
-        } else if (blobs != null) {
-          for (RevisionObjectData blob : blobs) {
-            refUpdatesSucceededCache.put(
-                ApplyObjectsCacheKey.create(blob.getSha1(), refName, name.get()), eventCreatedOn);
-          }
+              ApplyObjectsCacheKey.create(blob.getSha1(), refName, name.get()), eventCreatedOn);
         }
       }
     }
+  }
+
+  /**
+   * Apply the objects of a git pack stream and update the ref.
+   *
+   * @param name the project name.
+   * @param refName the ref to update.
+   * @param refHead the new value of the ref.
+   * @param pack the git pack stream with the objects missing in the local repository.
+   * @param sourceLabel the label of the replication source.
+   * @param eventCreatedOn the creation time of the ref-update event on the source.
+   */
+  public void applyPack(
+      Project.NameKey name,
+      String refName,
+      ObjectId refHead,
+      InputStream pack,
+      String sourceLabel,
+      long eventCreatedOn)
+      throws IOException, RefUpdateException, MissingParentObjectException,
+          ResourceNotFoundException {
+
+    repLog.info("Apply pack from {} for {}:{} - {}", sourceLabel, name, refName, refHead.name());
+    Timer1.Context<String> context = metrics.start(sourceLabel);
+
+    RefUpdateState refUpdateState =
+        applyObject.applyPack(name, new RefSpec(refName), refHead, pack);
+    if (isSuccessful(refUpdateState.getResult())) {
+      refUpdatesSucceededCache.put(
+          ApplyObjectsCacheKey.create(refHead.name(), refName, name.get()), eventCreatedOn);
+    }
     long elapsed = NANOSECONDS.toMillis(context.stop());
+    postRefUpdate(name, refName, refUpdateState, sourceLabel, elapsed);
+  }
 
+  private void postRefUpdate(
+      Project.NameKey name,
+      String refName,
+      RefUpdateState refUpdateState,
+      String sourceLabel,
+      long elapsed)
+      throws RefUpdateException {
     try {
       Context.setLocalEvent(true);
       Source source =
@@ -155,7 +259,7 @@ public class ApplyObjectCommand {
       Context.unsetLocalEvent();
     }
 
-    if (!isRefUpdateSuccessful) {
+    if (!isSuccessful(refUpdateState.getResult())) {
       String message =
           String.format(
               "RefUpdate failed with result %s for: sourceLcabel=%s, project=%s, refName=%s",
@@ -177,7 +281,7 @@ public class ApplyObjectCommand {
         : ReplicationState.RefFetchResult.FAILED;
   }
 
-  private Boolean isSuccessful(RefUpdate.Result result) {
+  static boolean isSuccessful(RefUpdate.Result result) {
     return SUCCESSFUL_RESULTS.contains(result);
   }
 }
@@ -0,0 +1,128 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.ResourceConflictException;
+import com.google.gerrit.extensions.restapi.Response;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
+import com.google.gerrit.server.project.ProjectResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
+import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
+import java.io.IOException;
+import java.io.InputStream;
+import org.eclipse.jgit.errors.InvalidObjectIdException;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Applies a ref-update received as a git pack stream, with the ref-update details in the request
+ * headers.
+ */
+@Singleton
+public class ApplyPackAction {
+  public static final String PACK_CONTENT_TYPE = "application/x-git-pack";
+  public static final String HTTP_HEADER_LABEL = "X-Pull-Replication-Label";
+  public static final String HTTP_HEADER_REF_NAME = "X-Pull-Replication-Ref-Name";
+  public static final String HTTP_HEADER_OBJECT_ID = "X-Pull-Replication-Object-Id";
+  public static final String HTTP_HEADER_EVENT_CREATED_ON = "X-Pull-Replication-Event-Created-On";
+
+  public static class Input {
+    public String label;
+    public String refName;
+    public String objectId;
+    public long eventCreatedOn;
+  }
+
+  private final ApplyObjectCommand applyObjectCommand;
+  private final FetchPreconditions preConditions;
+
+  @Inject
+  public ApplyPackAction(ApplyObjectCommand applyObjectCommand, FetchPreconditions preConditions) {
+    this.applyObjectCommand = applyObjectCommand;
+    this.preConditions = preConditions;
+  }
+
+  public Response<?> apply(ProjectResource resource, Input input, InputStream pack)
+      throws RestApiException {
+    if (!preConditions.canCallFetchApi()) {
+      throw new AuthException("Not allowed to call fetch command");
+    }
+    if (Strings.isNullOrEmpty(input.label)) {
+      throw new BadRequestException("Source label cannot be null or empty");
+    }
+    if (Strings.isNullOrEmpty(input.refName)) {
+      throw new BadRequestException("Ref-update refname cannot be null or empty");
+    }
+
+    ObjectId refHead;
+    try {
+      refHead = ObjectId.fromString(Strings.nullToEmpty(input.objectId));
+    } catch (InvalidObjectIdException e) {
+      throw new BadRequestException("Ref-update with invalid object id: " + input.objectId, e);
+    }
+
+    try {
+      repLog.info(
+          "Apply pack API from {} for {}:{} - {}",
+          resource.getNameKey(),
+          input.label,
+          input.refName,
+          refHead.name());
+
+      applyObjectCommand.applyPack(
+          resource.getNameKey(),
+          input.refName,
+          refHead,
+          pack,
+          input.label,
+          input.eventCreatedOn);
+      return Response.created();
+    } catch (MissingParentObjectException e) {
+      repLog.error(
+          "Apply pack API *FAILED* from {} for {}:{} - {}",
+          input.label,
+          resource.getNameKey(),
+          input.refName,
+          refHead.name(),
+          e);
+      throw new ResourceConflictException(e.getMessage(), e);
+    } catch (IOException e) {
+      repLog.error(
+          "Apply pack API *FAILED* from {} for {}:{} - {}",
+          input.label,
+          resource.getNameKey(),
+          input.refName,
+          refHead.name(),
+          e);
+      throw RestApiException.wrap(e.getMessage(), e);
+    } catch (RefUpdateException e) {
+      repLog.error(
+          "Apply pack API *FAILED* from {} for {}:{} - {}",
+          input.label,
+          resource.getNameKey(),
+          input.refName,
+          refHead.name(),
+          e);
+      throw new UnprocessableEntityException(e.getMessage());
+    }
+  }
+}
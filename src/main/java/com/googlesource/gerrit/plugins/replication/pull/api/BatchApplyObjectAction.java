@@ -20,23 +20,48 @@ import com.google.gerrit.extensions.restapi.RestModifyView;
 import com.google.gerrit.server.project.ProjectResource;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 @Singleton
 class BatchApplyObjectAction implements RestModifyView<ProjectResource, List<RevisionInput>> {
 
+  /** How the refs of a batch-apply-object call are updated. */
+  enum RefUpdateMode {
+    /** Each ref is applied and updated on its own, one after the other. */
+    SEQUENTIAL,
+
+    /** All the objects are flushed once and the refs are updated with a single batch. */
+    BATCH,
+
+    /** Same as {@link #BATCH}, but either all the refs are updated or none of them. */
+    ATOMIC
+  }
+
   private final ApplyObjectAction applyObjectAction;
+  private final RefUpdateMode refUpdateMode;
 
   @Inject
-  BatchApplyObjectAction(ApplyObjectAction applyObjectAction) {
+  BatchApplyObjectAction(ApplyObjectAction applyObjectAction, ReplicationConfig replicationConfig) {
     this.applyObjectAction = applyObjectAction;
+    this.refUpdateMode =
+        replicationConfig
+            .getConfig()
+            .getEnum("replication", null, "batchApplyObjectRefUpdate", RefUpdateMode.SEQUENTIAL);
   }
 
   @Override
   public Response<?> apply(ProjectResource resource, List<RevisionInput> inputs)
       throws RestApiException {
+    if (refUpdateMode != RefUpdateMode.SEQUENTIAL && canApplyInBatch(inputs)) {
+      return Response.ok(
+          applyObjectAction.applyBatch(resource, inputs, refUpdateMode == RefUpdateMode.ATOMIC));
+    }
 
     List<Response<?>> allResponses = new ArrayList<>();
     for (RevisionInput input : inputs) {
@@ -46,4 +71,18 @@ class BatchApplyObjectAction implements RestModifyView<ProjectResource, List<Rev
 
     return Response.ok(allResponses);
   }
+
+  /**
+   * Deletions and multiple updates of the same ref need to be applied in order, hence they keep
+   * going through the apply-object of each ref.
+   */
+  private static boolean canApplyInBatch(List<RevisionInput> inputs) {
+    Set<String> refNames = new HashSet<>();
+    for (RevisionInput input : inputs) {
+      if (Objects.isNull(input.getRevisionData()) || !refNames.add(input.getRefName())) {
+        return false;
+      }
+    }
+    return inputs.size() > 1;
+  }
 }
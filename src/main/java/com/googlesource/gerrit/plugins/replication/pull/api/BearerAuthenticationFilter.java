@@ -126,9 +126,12 @@ public class BearerAuthenticationFilter extends AllRequestFilter {
             && (requestURI.endsWith(String.format("/%s~apply-object", pluginName))
                 || requestURI.endsWith(String.format("/%s~apply-objects", pluginName))
                 || requestURI.endsWith(String.format("/%s~batch-apply-object", pluginName))
+                || requestURI.endsWith(String.format("/%s~apply-pack", pluginName))
+                || requestURI.endsWith(String.format("/%s~common-ancestor", pluginName))
                 || requestURI.endsWith(String.format("/%s~fetch", pluginName))
                 || requestURI.endsWith(String.format("/%s~delete-project", pluginName))
-                || requestURI.contains(String.format("/%s/init-project/", pluginName))))
+                || requestURI.contains(String.format("/%s/init-project/", pluginName))
+                || requestURI.endsWith(String.format("/%s/capabilities", pluginName))))
         || requestURI.matches(".*/projects/[^/]+/HEAD");
   }
 
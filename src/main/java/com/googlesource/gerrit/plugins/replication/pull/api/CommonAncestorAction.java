@@ -0,0 +1,114 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.server.project.ProjectResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.ApplyObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.eclipse.jgit.errors.InvalidObjectIdException;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Finds the newest of a list of candidate ancestors present in the repository, so that a source
+ * can send only the part of the history of a ref missing on this target.
+ */
+@Singleton
+public class CommonAncestorAction {
+
+  public static class Input {
+    public String label;
+    public String refName;
+    // Candidate commits, from the newest to the oldest
+    public List<String> candidates;
+
+    public Input(String label, String refName, List<String> candidates) {
+      this.label = label;
+      this.refName = refName;
+      this.candidates = candidates;
+    }
+  }
+
+  public static class Info {
+    // The newest candidate present in the repository, null when none of them is present
+    @Nullable public String commonAncestor;
+
+    public Info(@Nullable String commonAncestor) {
+      this.commonAncestor = commonAncestor;
+    }
+  }
+
+  private final ApplyObject applyObject;
+  private final FetchPreconditions preConditions;
+
+  @Inject
+  public CommonAncestorAction(ApplyObject applyObject, FetchPreconditions preConditions) {
+    this.applyObject = applyObject;
+    this.preConditions = preConditions;
+  }
+
+  public Info apply(ProjectResource resource, Input input) throws RestApiException {
+    if (!preConditions.canCallFetchApi()) {
+      throw new AuthException("Not allowed to call fetch command");
+    }
+    if (Strings.isNullOrEmpty(input.label)) {
+      throw new BadRequestException("Source label cannot be null or empty");
+    }
+    if (input.candidates == null || input.candidates.isEmpty()) {
+      throw new BadRequestException("Candidate ancestors cannot be null or empty");
+    }
+
+    List<ObjectId> candidates = new ArrayList<>();
+    for (String candidate : input.candidates) {
+      try {
+        candidates.add(ObjectId.fromString(Strings.nullToEmpty(candidate)));
+      } catch (InvalidObjectIdException e) {
+        throw new BadRequestException("Invalid candidate ancestor: " + candidate, e);
+      }
+    }
+
+    try {
+      Optional<ObjectId> commonAncestor =
+          applyObject.findCommonAncestor(resource.getNameKey(), candidates);
+      repLog.info(
+          "Common ancestor API from {} for {}:{} - {} of {} candidates",
+          input.label,
+          resource.getNameKey(),
+          input.refName,
+          commonAncestor.map(ObjectId::name).orElse("none"),
+          candidates.size());
+      return new Info(commonAncestor.map(ObjectId::name).orElse(null));
+    } catch (IOException e) {
+      repLog.error(
+          "Common ancestor API *FAILED* from {} for {}:{}",
+          input.label,
+          resource.getNameKey(),
+          input.refName,
+          e);
+      throw RestApiException.wrap(e.getMessage(), e);
+    }
+  }
+}
@@ -37,6 +37,7 @@ import com.googlesource.gerrit.plugins.replication.pull.api.exception.RemoteConf
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lib.ObjectId;
 
 @Singleton
 public class FetchAction implements RestModifyView<ProjectResource, Input> {
@@ -64,6 +65,8 @@ public class FetchAction implements RestModifyView<ProjectResource, Input> {
     public String label;
     public String refName;
     public boolean async;
+    // Value of the ref on the source, for skipping its fetch when already up to date
+    public String newRev;
   }
 
   @Override
@@ -81,6 +84,10 @@ public class FetchAction implements RestModifyView<ProjectResource, Input> {
         throw new BadRequestException("Ref-update refname cannot be null or empty");
       }
 
+      if (input.newRev != null && !ObjectId.isId(input.newRev)) {
+        throw new BadRequestException("Ref-update newRev is not a valid object id");
+      }
+
       if (input.async) {
         return applyAsync(resource.getNameKey(), input);
       }
@@ -34,6 +34,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lib.ObjectId;
 
 public class FetchCommand implements Command {
 
@@ -61,19 +62,31 @@ public class FetchCommand implements Command {
       PullReplicationApiRequestMetrics apiRequestMetrics)
       throws InterruptedException, ExecutionException, RemoteConfigurationMissingException,
           TimeoutException {
-    fetch(name, label, refName, ASYNC, Optional.of(apiRequestMetrics));
+    fetchAsync(name, label, refName, Optional.empty(), apiRequestMetrics);
+  }
+
+  public void fetchAsync(
+      Project.NameKey name,
+      String label,
+      String refName,
+      Optional<ObjectId> newRev,
+      PullReplicationApiRequestMetrics apiRequestMetrics)
+      throws InterruptedException, ExecutionException, RemoteConfigurationMissingException,
+          TimeoutException {
+    fetch(name, label, refName, newRev, ASYNC, Optional.of(apiRequestMetrics));
   }
 
   public void fetchSync(Project.NameKey name, String label, String refName)
       throws InterruptedException, ExecutionException, RemoteConfigurationMissingException,
           TimeoutException {
-    fetch(name, label, refName, SYNC, Optional.empty());
+    fetch(name, label, refName, Optional.empty(), SYNC, Optional.empty());
   }
 
   private void fetch(
       Project.NameKey name,
       String label,
       String refName,
+      Optional<ObjectId> newRev,
       ReplicationType fetchType,
       Optional<PullReplicationApiRequestMetrics> apiRequestMetrics)
       throws InterruptedException, ExecutionException, RemoteConfigurationMissingException,
@@ -90,7 +103,8 @@ public class FetchCommand implements Command {
 
     try {
       state.markAllFetchTasksScheduled();
-      Future<?> future = source.get().schedule(name, refName, state, fetchType, apiRequestMetrics);
+      Future<?> future =
+          source.get().schedule(name, refName, newRev, state, fetchType, apiRequestMetrics);
       int timeout = source.get().getTimeout();
       if (timeout == 0) {
         future.get();
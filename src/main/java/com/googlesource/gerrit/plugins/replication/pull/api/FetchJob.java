@@ -19,8 +19,10 @@ import com.google.gerrit.entities.Project;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RemoteConfigurationMissingException;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lib.ObjectId;
 
 public class FetchJob implements Runnable {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
@@ -50,7 +52,12 @@ public class FetchJob implements Runnable {
   @Override
   public void run() {
     try {
-      command.fetchAsync(project, input.label, input.refName, metrics);
+      command.fetchAsync(
+          project,
+          input.label,
+          input.refName,
+          Optional.ofNullable(input.newRev).map(ObjectId::fromString),
+          metrics);
     } catch (InterruptedException
         | ExecutionException
         | RemoteConfigurationMissingException
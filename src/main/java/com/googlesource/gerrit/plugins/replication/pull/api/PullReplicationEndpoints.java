@@ -35,7 +35,12 @@ public interface PullReplicationEndpoints {
 
   public static final String BATCH_APPLY_OBJECT_API_ENDPOINT = "batch-apply-object";
 
+  public static final String APPLY_PACK_API_ENDPOINT = "apply-pack";
+
+  public static final String COMMON_ANCESTOR_API_ENDPOINT = "common-ancestor";
+
   public static final String FETCH_ENDPOINT = "fetch";
   public static final String INIT_PROJECT_ENDPOINT = "init-project";
   public static final String DELETE_PROJECT_ENDPOINT = "delete-project";
+  public static final String CAPABILITIES_ENDPOINT = "capabilities";
 }
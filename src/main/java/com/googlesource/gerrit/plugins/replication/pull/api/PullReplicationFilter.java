@@ -14,9 +14,11 @@
 
 package com.googlesource.gerrit.plugins.replication.pull.api;
 
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
 import static com.google.gerrit.httpd.restapi.RestApiServlet.SC_UNPROCESSABLE_ENTITY;
 import static com.googlesource.gerrit.plugins.replication.pull.api.HttpServletOps.checkAcceptHeader;
 import static com.googlesource.gerrit.plugins.replication.pull.api.HttpServletOps.setResponse;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static javax.servlet.http.HttpServletResponse.SC_CREATED;
@@ -26,6 +28,7 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
 
+import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.reflect.TypeToken;
 import com.google.gerrit.entities.Project;
@@ -39,6 +42,7 @@ import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
+import com.google.gerrit.extensions.restapi.Url;
 import com.google.gerrit.httpd.AllRequestFilter;
 import com.google.gerrit.httpd.restapi.RestApiServlet;
 import com.google.gerrit.json.OutputFormat;
@@ -56,6 +60,7 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
 import com.googlesource.gerrit.plugins.replication.pull.api.FetchAction.Input;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionsInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.InitProjectException;
@@ -63,14 +68,18 @@ import com.googlesource.gerrit.plugins.replication.pull.api.exception.Unauthoriz
 import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -89,9 +98,12 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
   private ApplyObjectAction applyObjectAction;
   private ApplyObjectsAction applyObjectsAction;
   private BatchApplyObjectAction batchApplyObjectAction;
+  private ApplyPackAction applyPackAction;
+  private CommonAncestorAction commonAncestorAction;
   private ProjectInitializationAction projectInitializationAction;
   private UpdateHeadAction updateHEADAction;
   private ProjectDeletionAction projectDeletionAction;
+  private StreamingRevisionsReader streamingRevisionsReader;
   private ProjectCache projectCache;
   private Gson gson;
   private String pluginName;
@@ -103,9 +115,12 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
       ApplyObjectAction applyObjectAction,
       ApplyObjectsAction applyObjectsAction,
       BatchApplyObjectAction batchApplyObjectAction,
+      ApplyPackAction applyPackAction,
+      CommonAncestorAction commonAncestorAction,
       ProjectInitializationAction projectInitializationAction,
       UpdateHeadAction updateHEADAction,
       ProjectDeletionAction projectDeletionAction,
+      StreamingRevisionsReader streamingRevisionsReader,
       ProjectCache projectCache,
       @PluginName String pluginName,
       Provider<CurrentUser> currentUserProvider) {
@@ -113,9 +128,12 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
     this.applyObjectAction = applyObjectAction;
     this.applyObjectsAction = applyObjectsAction;
     this.batchApplyObjectAction = batchApplyObjectAction;
+    this.applyPackAction = applyPackAction;
+    this.commonAncestorAction = commonAncestorAction;
     this.projectInitializationAction = projectInitializationAction;
     this.updateHEADAction = updateHEADAction;
     this.projectDeletionAction = projectDeletionAction;
+    this.streamingRevisionsReader = streamingRevisionsReader;
     this.projectCache = projectCache;
     this.pluginName = pluginName;
     this.gson = OutputFormat.JSON.newGsonBuilder().create();
@@ -145,6 +163,12 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
       } else if (isBatchApplyObjectsAction(httpRequest)) {
         failIfcurrentUserIsAnonymous();
         writeResponse(httpResponse, doBatchApplyObject(httpRequest));
+      } else if (isApplyPackAction(httpRequest)) {
+        failIfcurrentUserIsAnonymous();
+        writeResponse(httpResponse, doApplyPack(httpRequest));
+      } else if (isCommonAncestorAction(httpRequest)) {
+        failIfcurrentUserIsAnonymous();
+        doCommonAncestor(httpRequest, httpResponse);
       } else if (isInitProjectAction(httpRequest)) {
         failIfcurrentUserIsAnonymous();
         if (!checkAcceptHeader(httpRequest, httpResponse)) {
@@ -157,6 +181,9 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
       } else if (isDeleteProjectAction(httpRequest)) {
         failIfcurrentUserIsAnonymous();
         writeResponse(httpResponse, doDeleteProject(httpRequest));
+      } else if (isCapabilitiesAction(httpRequest)) {
+        failIfcurrentUserIsAnonymous();
+        doCapabilities(httpResponse);
       } else {
         chain.doFilter(request, response);
       }
@@ -219,10 +246,20 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
     throw new InitProjectException(projectName);
   }
 
+  private void doCapabilities(HttpServletResponse httpResponse) throws IOException {
+    httpResponse.setContentType("application/json");
+    httpResponse.setStatus(SC_OK);
+    PrintWriter writer = httpResponse.getWriter();
+    writer.print(gson.toJson(CapabilitiesInfo.current()));
+    writer.flush();
+  }
+
   @SuppressWarnings("unchecked")
   private Response<String> doApplyObject(HttpServletRequest httpRequest)
       throws RestApiException, IOException, PermissionBackendException {
-    RevisionInput input = readJson(httpRequest, TypeLiteral.get(RevisionInput.class).getType());
+    RevisionInput input =
+        readRevisions(
+            httpRequest, TypeLiteral.get(RevisionInput.class).getType(), RevisionInput::getLabel);
     IdString id = getProjectName(httpRequest).get();
 
     return (Response<String>) applyObjectAction.apply(parseProjectResource(id), input);
@@ -231,7 +268,9 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
   @SuppressWarnings("unchecked")
   private Response<String> doApplyObjects(HttpServletRequest httpRequest)
       throws RestApiException, IOException, PermissionBackendException {
-    RevisionsInput input = readJson(httpRequest, TypeLiteral.get(RevisionsInput.class).getType());
+    RevisionsInput input =
+        readRevisions(
+            httpRequest, TypeLiteral.get(RevisionsInput.class).getType(), RevisionsInput::getLabel);
     IdString id = getProjectName(httpRequest).get();
 
     return (Response<String>) applyObjectsAction.apply(parseProjectResource(id), input);
@@ -241,13 +280,58 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
   private Response<Map<String, Object>> doBatchApplyObject(HttpServletRequest httpRequest)
       throws RestApiException, IOException, PermissionBackendException {
     TypeToken<List<RevisionInput>> collectionType = new TypeToken<>() {};
-    List<RevisionInput> inputs = readJson(httpRequest, collectionType.getType());
+    List<RevisionInput> inputs =
+        readRevisions(
+            httpRequest,
+            collectionType.getType(),
+            (List<RevisionInput> revisions) ->
+                revisions.isEmpty() ? null : revisions.get(0).getLabel());
     IdString id = getProjectName(httpRequest).get();
 
     return (Response<Map<String, Object>>)
         batchApplyObjectAction.apply(parseProjectResource(id), inputs);
   }
 
+  @SuppressWarnings("unchecked")
+  private Response<String> doApplyPack(HttpServletRequest httpRequest)
+      throws RestApiException, IOException {
+    if (!ApplyPackAction.PACK_CONTENT_TYPE.equals(httpRequest.getContentType())) {
+      throw new BadRequestException(
+          "Expected " + ApplyPackAction.PACK_CONTENT_TYPE + " content type");
+    }
+
+    ApplyPackAction.Input input = new ApplyPackAction.Input();
+    input.label = httpRequest.getHeader(ApplyPackAction.HTTP_HEADER_LABEL);
+    String refName = httpRequest.getHeader(ApplyPackAction.HTTP_HEADER_REF_NAME);
+    input.refName = refName == null ? null : Url.decode(refName);
+    input.objectId = httpRequest.getHeader(ApplyPackAction.HTTP_HEADER_OBJECT_ID);
+    String eventCreatedOn = httpRequest.getHeader(ApplyPackAction.HTTP_HEADER_EVENT_CREATED_ON);
+    try {
+      input.eventCreatedOn = eventCreatedOn == null ? 0L : Long.parseLong(eventCreatedOn);
+    } catch (NumberFormatException e) {
+      throw new BadRequestException("Invalid event creation time", e);
+    }
+    IdString id = getProjectName(httpRequest).get();
+
+    try (InputStream pack = httpRequest.getInputStream()) {
+      return (Response<String>) applyPackAction.apply(parseProjectResource(id), input, pack);
+    }
+  }
+
+  private void doCommonAncestor(HttpServletRequest httpRequest, HttpServletResponse httpResponse)
+      throws RestApiException, IOException {
+    CommonAncestorAction.Input input =
+        readJson(httpRequest, TypeLiteral.get(CommonAncestorAction.Input.class).getType());
+    IdString id = getProjectName(httpRequest).get();
+
+    CommonAncestorAction.Info info = commonAncestorAction.apply(parseProjectResource(id), input);
+    httpResponse.setContentType("application/json");
+    httpResponse.setStatus(SC_OK);
+    PrintWriter writer = httpResponse.getWriter();
+    writer.print(gson.toJson(info));
+    writer.flush();
+  }
+
   @SuppressWarnings("unchecked")
   private Response<String> doUpdateHEAD(HttpServletRequest httpRequest) throws Exception {
     HeadInput input = readJson(httpRequest, TypeLiteral.get(HeadInput.class).getType());
@@ -296,10 +380,28 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
     }
   }
 
+  private <T> T readRevisions(
+      HttpServletRequest httpRequest, Type typeToken, Function<T, String> sourceLabel)
+      throws IOException, RestApiException {
+    if (!streamingRevisionsReader.isEnabled()) {
+      return readJson(httpRequest, typeToken);
+    }
+
+    ProjectResource resource = parseProjectResource(getProjectName(httpRequest).get());
+    return readJson(
+        httpRequest,
+        json -> streamingRevisionsReader.read(resource, gson, json, typeToken, sourceLabel));
+  }
+
   private <T> T readJson(HttpServletRequest httpRequest, Type typeToken)
-      throws IOException, BadRequestException {
+      throws IOException, RestApiException {
+    return readJson(httpRequest, json -> gson.fromJson(json, typeToken));
+  }
+
+  private <T> T readJson(HttpServletRequest httpRequest, JsonParser<T> parser)
+      throws IOException, RestApiException {
 
-    try (BufferedReader br = httpRequest.getReader();
+    try (BufferedReader br = requestReader(httpRequest);
         JsonReader json = new JsonReader(br)) {
       try {
         json.setLenient(true);
@@ -310,7 +412,7 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
           throw new BadRequestException("Expected JSON object", e);
         }
 
-        return gson.fromJson(json, typeToken);
+        return parser.parse(json);
       } finally {
         try {
           // Reader.close won't consume the rest of the input. Explicitly consume the request
@@ -325,6 +427,28 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
     }
   }
 
+  @FunctionalInterface
+  private interface JsonParser<T> {
+    T parse(JsonReader json) throws IOException, RestApiException;
+  }
+
+  private static BufferedReader requestReader(HttpServletRequest httpRequest)
+      throws IOException, BadRequestException {
+    String contentEncoding = httpRequest.getHeader(CONTENT_ENCODING);
+    if (Strings.isNullOrEmpty(contentEncoding) || contentEncoding.equalsIgnoreCase("identity")) {
+      return httpRequest.getReader();
+    }
+    if (!contentEncoding.equalsIgnoreCase("gzip")) {
+      throw new BadRequestException("Unsupported Content-Encoding: " + contentEncoding);
+    }
+
+    String charset = httpRequest.getCharacterEncoding();
+    return new BufferedReader(
+        new InputStreamReader(
+            new GZIPInputStream(httpRequest.getInputStream()),
+            charset == null ? UTF_8.name() : charset));
+  }
+
   /**
    * Return project name from request URI. Request URI format:
    * /a/projects/<project_name>/pull-replication~apply-object
@@ -369,6 +493,18 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
         .endsWith(String.format("/%s~" + BATCH_APPLY_OBJECT_API_ENDPOINT, pluginName));
   }
 
+  private boolean isApplyPackAction(HttpServletRequest httpRequest) {
+    return httpRequest
+        .getRequestURI()
+        .endsWith(String.format("/%s~" + APPLY_PACK_API_ENDPOINT, pluginName));
+  }
+
+  private boolean isCommonAncestorAction(HttpServletRequest httpRequest) {
+    return httpRequest
+        .getRequestURI()
+        .endsWith(String.format("/%s~" + COMMON_ANCESTOR_API_ENDPOINT, pluginName));
+  }
+
   private boolean isFetchAction(HttpServletRequest httpRequest) {
     return httpRequest.getRequestURI().endsWith(String.format("/%s~" + FETCH_ENDPOINT, pluginName));
   }
@@ -386,6 +522,13 @@ public class PullReplicationFilter extends AllRequestFilter implements PullRepli
         && "PUT".equals(httpRequest.getMethod());
   }
 
+  private boolean isCapabilitiesAction(HttpServletRequest httpRequest) {
+    return httpRequest
+            .getRequestURI()
+            .endsWith(String.format("/%s/" + CAPABILITIES_ENDPOINT, pluginName))
+        && "GET".equals(httpRequest.getMethod());
+  }
+
   private boolean isDeleteProjectAction(HttpServletRequest httpRequest) {
     return httpRequest
             .getRequestURI()
@@ -0,0 +1,68 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api;
+
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.server.project.ProjectResource;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.ApplyObject;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * Reads the payloads of the apply-object REST-APIs, inserting their objects into the repository
+ * while they are parsed instead of after the whole payload is on the heap.
+ */
+@Singleton
+class StreamingRevisionsReader {
+  private final ApplyObject applyObject;
+  private final FetchPreconditions preConditions;
+  private final boolean enabled;
+
+  @Inject
+  StreamingRevisionsReader(
+      ApplyObject applyObject,
+      FetchPreconditions preConditions,
+      ReplicationConfig replicationConfig) {
+    this.applyObject = applyObject;
+    this.preConditions = preConditions;
+    this.enabled =
+        replicationConfig.getConfig().getBoolean("replication", "streamApplyObjectPayloads", false);
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  <T> T read(
+      ProjectResource resource,
+      Gson gson,
+      JsonReader json,
+      Type type,
+      Function<T, String> sourceLabel)
+      throws RestApiException, IOException {
+    if (!preConditions.canCallFetchApi()) {
+      throw new AuthException("not allowed to call fetch command");
+    }
+
+    return applyObject.ingest(resource.getNameKey(), gson, json, type, sourceLabel);
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api.data;
+
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.APPLY_OBJECTS_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.APPLY_OBJECT_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.APPLY_PACK_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.BATCH_APPLY_OBJECT_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.CAPABILITIES_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.COMMON_ANCESTOR_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.DELETE_PROJECT_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.FETCH_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.INIT_PROJECT_ENDPOINT;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * REST-API endpoints and request content encodings supported by a pull-replication instance,
+ * served by the capabilities endpoint.
+ */
+public class CapabilitiesInfo {
+  private List<String> endpoints;
+  private List<String> contentEncodings;
+
+  public CapabilitiesInfo(List<String> endpoints, List<String> contentEncodings) {
+    this.endpoints = endpoints;
+    this.contentEncodings = contentEncodings;
+  }
+
+  /** @return the capabilities of this version of the plugin. */
+  public static CapabilitiesInfo current() {
+    return new CapabilitiesInfo(
+        ImmutableList.of(
+            FETCH_ENDPOINT,
+            APPLY_OBJECT_API_ENDPOINT,
+            APPLY_OBJECTS_API_ENDPOINT,
+            BATCH_APPLY_OBJECT_API_ENDPOINT,
+            APPLY_PACK_API_ENDPOINT,
+            COMMON_ANCESTOR_API_ENDPOINT,
+            INIT_PROJECT_ENDPOINT,
+            DELETE_PROJECT_ENDPOINT,
+            CAPABILITIES_ENDPOINT),
+        ImmutableList.of("gzip"));
+  }
+
+  /**
+   * @return the capabilities assumed for the versions of the plugin without the capabilities
+   *     endpoint, which are then discovered from the failures of the calls.
+   */
+  public static CapabilitiesInfo legacy() {
+    return new CapabilitiesInfo(
+        ImmutableList.of(
+            FETCH_ENDPOINT,
+            APPLY_OBJECT_API_ENDPOINT,
+            APPLY_OBJECTS_API_ENDPOINT,
+            BATCH_APPLY_OBJECT_API_ENDPOINT,
+            INIT_PROJECT_ENDPOINT,
+            DELETE_PROJECT_ENDPOINT),
+        Collections.emptyList());
+  }
+
+  public List<String> getEndpoints() {
+    return endpoints == null ? Collections.emptyList() : endpoints;
+  }
+
+  public List<String> getContentEncodings() {
+    return contentEncodings == null ? Collections.emptyList() : contentEncodings;
+  }
+
+  public boolean supportsEndpoint(String endpoint) {
+    return getEndpoints().contains(endpoint);
+  }
+
+  public boolean supportsContentEncoding(String contentEncoding) {
+    return getContentEncodings().contains(contentEncoding);
+  }
+
+  /** @return a copy of these capabilities without the given endpoint. */
+  public CapabilitiesInfo withoutEndpoint(String endpoint) {
+    List<String> remainingEndpoints = new ArrayList<>(getEndpoints());
+    remainingEndpoints.remove(endpoint);
+    return new CapabilitiesInfo(remainingEndpoints, getContentEncodings());
+  }
+
+  @Override
+  public String toString() {
+    return "CapabilitiesInfo { endpoints="
+        + endpoints
+        + ", contentEncodings="
+        + contentEncodings
+        + "}";
+  }
+}
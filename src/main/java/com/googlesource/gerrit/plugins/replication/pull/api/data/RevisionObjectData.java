@@ -14,32 +14,88 @@
 
 package com.googlesource.gerrit.plugins.replication.pull.api.data;
 
+import com.google.gerrit.common.Nullable;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.util.Base64;
 import org.eclipse.jgit.lib.Constants;
 
+/**
+ * Git object sent with the apply-object REST-API calls.
+ *
+ * <p>The content is kept as raw bytes and base64-encoded only when serialized to JSON by {@link
+ * Adapter}, which keeps the same wire format of the reflective serialization.
+ *
+ * <p>An object of type {@link Constants#OBJ_REF_DELTA} has a git binary delta as content, to be
+ * applied to the {@code base} object, which the target already has.
+ */
+@JsonAdapter(RevisionObjectData.Adapter.class)
 public class RevisionObjectData {
+  private static final byte[] NO_CONTENT = new byte[0];
+
   private final String sha1;
   private final Integer type;
-  private final String content;
+  private final byte[] content;
+  private final String base;
+  private final boolean stored;
 
   public RevisionObjectData(String sha1, int type, byte[] content) {
+    this(sha1, type, content, null);
+  }
+
+  public RevisionObjectData(String sha1, int type, byte[] content, @Nullable String base) {
+    this(sha1, type, content, base, false);
+  }
+
+  private RevisionObjectData(
+      String sha1, int type, byte[] content, @Nullable String base, boolean stored) {
     this.sha1 = sha1;
     this.type = type;
-    this.content = content == null ? "" : Base64.getEncoder().encodeToString(content);
+    this.content = content == null ? NO_CONTENT : content;
+    this.base = base;
+    this.stored = stored;
+  }
+
+  /**
+   * Create an object that has already been inserted in the repository while its payload was
+   * streamed, hence without content.
+   *
+   * @param sha1 the id of the object.
+   * @param type the type of the object, never a delta.
+   * @return the object without content.
+   */
+  public static RevisionObjectData stored(String sha1, int type) {
+    return new RevisionObjectData(sha1, type, null, null, true);
   }
 
   public Integer getType() {
     return type;
   }
 
+  /** @return the raw content of the object, not copied: callers must not modify it. */
   public byte[] getContent() {
-    return Base64.getDecoder().decode(content);
+    return content;
   }
 
   public String getSha1() {
     return sha1;
   }
 
+  /** @return the sha1 of the delta base object, or null when the content is not a delta. */
+  @Nullable
+  public String getBase() {
+    return base;
+  }
+
+  /** @return true when the object is already in the repository and has no content. */
+  public boolean isStored() {
+    return stored;
+  }
+
   @Override
   public String toString() {
     String typeStr;
@@ -53,6 +109,9 @@ public class RevisionObjectData {
       case Constants.OBJ_TREE:
         typeStr = "TREE";
         break;
+      case Constants.OBJ_REF_DELTA:
+        typeStr = "DELTA:" + base;
+        break;
       default:
         typeStr = "type:" + type;
         break;
@@ -60,4 +119,67 @@ public class RevisionObjectData {
 
     return sha1 + " (" + typeStr + ")";
   }
+
+  public static class Adapter extends TypeAdapter<RevisionObjectData> {
+    private static final String SHA1 = "sha1";
+    private static final String TYPE = "type";
+    private static final String CONTENT = "content";
+    private static final String BASE = "base";
+
+    @Override
+    public void write(JsonWriter out, RevisionObjectData value) throws IOException {
+      if (value == null) {
+        out.nullValue();
+        return;
+      }
+      out.beginObject();
+      out.name(SHA1).value(value.sha1);
+      out.name(TYPE).value(value.type);
+      out.name(CONTENT).value(Base64.getEncoder().encodeToString(value.content));
+      if (value.base != null) {
+        out.name(BASE).value(value.base);
+      }
+      out.endObject();
+    }
+
+    @Override
+    public RevisionObjectData read(JsonReader in) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+
+      String sha1 = null;
+      int type = Constants.OBJ_BAD;
+      byte[] content = null;
+      String base = null;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+          continue;
+        }
+        switch (name) {
+          case SHA1:
+            sha1 = in.nextString();
+            break;
+          case TYPE:
+            type = in.nextInt();
+            break;
+          case CONTENT:
+            content = Base64.getDecoder().decode(in.nextString());
+            break;
+          case BASE:
+            base = in.nextString();
+            break;
+          default:
+            in.skipValue();
+            break;
+        }
+      }
+      in.endObject();
+      return new RevisionObjectData(sha1, type, content, base);
+    }
+  }
 }
@@ -20,9 +20,13 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.Project.NameKey;
 import com.googlesource.gerrit.plugins.replication.pull.Source;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.BatchApplyObjectData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.URIish;
 
 public interface FetchApiClient {
@@ -31,6 +35,12 @@ public interface FetchApiClient {
     FetchApiClient create(Source source);
   }
 
+  /** Content of a git pack, written on demand into the request body. */
+  @FunctionalInterface
+  public interface PackContent {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
   HttpResult callFetch(
       Project.NameKey project, String refName, URIish targetUri, long startTimeNanos)
       throws IOException;
@@ -55,11 +65,20 @@ public interface FetchApiClient {
       URIish targetUri)
       throws IOException;
 
-  HttpResult callBatchSendObject(
+  default HttpResult callBatchSendObject(
       NameKey project,
       List<BatchApplyObjectData> batchApplyObjects,
       long eventCreatedOn,
       URIish targetUri)
+      throws IOException {
+    return callBatchSendObject(
+        project, serializeBatchSendObject(batchApplyObjects, eventCreatedOn), targetUri);
+  }
+
+  JsonPayload serializeBatchSendObject(
+      List<BatchApplyObjectData> batchApplyObjects, long eventCreatedOn);
+
+  HttpResult callBatchSendObject(NameKey project, JsonPayload payload, URIish targetUri)
       throws IOException;
 
   HttpResult callSendObjects(
@@ -69,4 +88,44 @@ public interface FetchApiClient {
       List<RevisionData> revisionData,
       URIish targetUri)
       throws IOException;
+
+  HttpResult callSendPack(
+      NameKey project,
+      String refName,
+      long eventCreatedOn,
+      ObjectId objectId,
+      PackContent pack,
+      URIish targetUri)
+      throws IOException;
+
+  /**
+   * Find the newest of the candidate ancestors of a ref that a target already has.
+   *
+   * @param project the project name.
+   * @param refName the ref name.
+   * @param candidates the ids of the candidate commits, from the newest to the oldest.
+   * @param targetUri the apiUrl of the target.
+   * @return the first of the candidates found on the target, or empty if none was found.
+   * @throws IOException if the target could not be queried.
+   */
+  Optional<ObjectId> findCommonAncestor(
+      NameKey project, String refName, List<ObjectId> candidates, URIish targetUri)
+      throws IOException;
+
+  /**
+   * Get the capabilities of a target, discovered from its capabilities endpoint and cached.
+   *
+   * @param targetUri the apiUrl of the target.
+   * @return the capabilities of the target, or the legacy ones when they cannot be discovered.
+   */
+  CapabilitiesInfo getCapabilities(URIish targetUri);
+
+  /**
+   * Record that an endpoint is not available on a target, so that it is not called again until
+   * the capabilities of the target are refreshed.
+   *
+   * @param targetUri the apiUrl of the target.
+   * @param endpoint the endpoint not available.
+   */
+  void endpointUnavailable(URIish targetUri, String endpoint);
 }
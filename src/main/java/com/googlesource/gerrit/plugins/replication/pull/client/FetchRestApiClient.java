@@ -16,6 +16,9 @@ package com.googlesource.gerrit.plugins.replication.pull.client;
 
 import static com.google.common.net.HttpHeaders.CONTENT_TYPE;
 import static com.google.gson.FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.APPLY_PACK_API_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.CAPABILITIES_ENDPOINT;
+import static com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationEndpoints.COMMON_ANCESTOR_API_ENDPOINT;
 import static java.util.Objects.requireNonNull;
 
 import com.google.common.base.Strings;
@@ -33,19 +36,26 @@ import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.replication.CredentialsFactory;
 import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ApplyObjectMetrics;
 import com.googlesource.gerrit.plugins.replication.pull.BearerTokenProvider;
 import com.googlesource.gerrit.plugins.replication.pull.Source;
+import com.googlesource.gerrit.plugins.replication.pull.api.ApplyPackAction;
+import com.googlesource.gerrit.plugins.replication.pull.api.CommonAncestorAction;
 import com.googlesource.gerrit.plugins.replication.pull.api.PullReplicationApiRequestMetrics;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.BatchApplyObjectData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionsInput;
 import com.googlesource.gerrit.plugins.replication.pull.filter.SyncRefsFilter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
@@ -53,6 +63,7 @@ import org.apache.http.auth.AuthenticationException;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -60,6 +71,7 @@ import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.URIish;
 
@@ -76,7 +88,10 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
   private final String instanceId;
   private final String pluginName;
   private final SyncRefsFilter syncRefsFilter;
+  private final ApplyObjectMetrics applyObjectMetrics;
   private final BearerTokenProvider bearerTokenProvider;
+  private final RequestCompressor requestCompressor;
+  private final TargetCapabilitiesCache capabilitiesCache;
   private final String urlAuthenticationPrefix;
 
   @Inject
@@ -85,15 +100,19 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
       SourceHttpClient.Factory httpClientFactory,
       ReplicationConfig replicationConfig,
       SyncRefsFilter syncRefsFilter,
+      ApplyObjectMetrics applyObjectMetrics,
       @PluginName String pluginName,
       @Nullable @GerritInstanceId String instanceId,
       BearerTokenProvider bearerTokenProvider,
+      RequestCompressor requestCompressor,
+      TargetCapabilitiesCache capabilitiesCache,
       @Assisted Source source) {
     this.credentials = credentials;
     this.httpClientFactory = httpClientFactory;
     this.source = source;
     this.pluginName = pluginName;
     this.syncRefsFilter = syncRefsFilter;
+    this.applyObjectMetrics = applyObjectMetrics;
     this.instanceId =
         Optional.ofNullable(
                 replicationConfig.getConfig().getString("replication", null, "instanceLabel"))
@@ -105,6 +124,8 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
         "gerrit.instanceId or replication.instanceLabel must be set");
 
     this.bearerTokenProvider = bearerTokenProvider;
+    this.requestCompressor = requestCompressor;
+    this.capabilitiesCache = capabilitiesCache;
     this.urlAuthenticationPrefix = bearerTokenProvider.get().map(br -> "").orElse("a/");
   }
 
@@ -192,18 +213,14 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
     String url = formatUrl(targetUri.toString(), project, "apply-object");
 
     HttpPost post = new HttpPost(url);
-    post.setEntity(new StringEntity(GSON.toJson(input)));
+    post.setEntity(compress(targetUri, new JsonStreamEntity(GSON, input)));
     post.addHeader(new BasicHeader(CONTENT_TYPE, MediaType.JSON_UTF_8.toString()));
     return executeRequest(post, bearerTokenProvider.get(), targetUri);
   }
 
   @Override
-  public HttpResult callBatchSendObject(
-      NameKey project,
-      List<BatchApplyObjectData> batchedRefs,
-      long eventCreatedOn,
-      URIish targetUri)
-      throws IOException {
+  public JsonPayload serializeBatchSendObject(
+      List<BatchApplyObjectData> batchedRefs, long eventCreatedOn) {
     List<RevisionInput> inputs =
         batchedRefs.stream()
             .map(
@@ -215,12 +232,30 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
                         batchApplyObject.revisionData().orElse(null)))
             .collect(Collectors.toList());
 
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      new JsonStreamEntity(GSON, inputs).writeTo(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new JsonPayload(out.toByteArray());
+  }
+
+  @Override
+  public HttpResult callBatchSendObject(NameKey project, JsonPayload payload, URIish targetUri)
+      throws IOException {
     String url = formatUrl(targetUri.toString(), project, "batch-apply-object");
 
     HttpPost post = new HttpPost(url);
-    post.setEntity(new StringEntity(GSON.toJson(inputs)));
+    HttpEntity entity =
+        acceptsCompression(targetUri)
+            ? requestCompressor.compress(source, payload)
+            : payload.toEntity();
+    post.setEntity(entity);
     post.addHeader(new BasicHeader(CONTENT_TYPE, MediaType.JSON_UTF_8.toString()));
-    return executeRequest(post, bearerTokenProvider.get(), targetUri);
+    HttpResult result = executeRequest(post, bearerTokenProvider.get(), targetUri);
+    applyObjectMetrics.recordPayloadSent(source.getRemoteConfigName(), entity.getContentLength());
+    return result;
   }
 
   @Override
@@ -242,11 +277,106 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
 
     String url = formatUrl(targetUri.toString(), project, "apply-objects");
     HttpPost post = new HttpPost(url);
-    post.setEntity(new StringEntity(GSON.toJson(input)));
+    post.setEntity(compress(targetUri, new JsonStreamEntity(GSON, input)));
     post.addHeader(new BasicHeader(CONTENT_TYPE, MediaType.JSON_UTF_8.toString()));
     return executeRequest(post, bearerTokenProvider.get(), targetUri);
   }
 
+  @Override
+  public HttpResult callSendPack(
+      NameKey project,
+      String refName,
+      long eventCreatedOn,
+      ObjectId objectId,
+      PackContent pack,
+      URIish targetUri)
+      throws IOException {
+    String url = formatUrl(targetUri.toString(), project, APPLY_PACK_API_ENDPOINT);
+    HttpPost post = new HttpPost(url);
+    post.setEntity(new PackStreamEntity(pack));
+    post.addHeader(new BasicHeader(CONTENT_TYPE, ApplyPackAction.PACK_CONTENT_TYPE));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_LABEL, instanceId));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_REF_NAME, Url.encode(refName)));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_OBJECT_ID, objectId.name()));
+    post.addHeader(
+        new BasicHeader(
+            ApplyPackAction.HTTP_HEADER_EVENT_CREATED_ON, Long.toString(eventCreatedOn)));
+    return executeRequest(post, bearerTokenProvider.get(), targetUri);
+  }
+
+  @Override
+  public Optional<ObjectId> findCommonAncestor(
+      NameKey project, String refName, List<ObjectId> candidates, URIish targetUri)
+      throws IOException {
+    CommonAncestorAction.Input input =
+        new CommonAncestorAction.Input(
+            instanceId,
+            refName,
+            candidates.stream().map(ObjectId::name).collect(Collectors.toList()));
+
+    String url = formatUrl(targetUri.toString(), project, COMMON_ANCESTOR_API_ENDPOINT);
+    HttpPost post = new HttpPost(url);
+    post.setEntity(compress(targetUri, new JsonStreamEntity(GSON, input)));
+    post.addHeader(new BasicHeader(CONTENT_TYPE, MediaType.JSON_UTF_8.toString()));
+    HttpResult result = executeRequest(post, bearerTokenProvider.get(), targetUri);
+    if (!result.isSuccessful()) {
+      if (result.isNotFound() && !result.isProjectMissing(project)) {
+        endpointUnavailable(targetUri, COMMON_ANCESTOR_API_ENDPOINT);
+      }
+      throw new IOException(
+          String.format(
+              "Unable to find the common ancestor of %s:%s on %s: %s",
+              project, refName, targetUri, result));
+    }
+
+    CommonAncestorAction.Info info =
+        GSON.fromJson(result.getMessage().orElse("{}"), CommonAncestorAction.Info.class);
+    return Optional.ofNullable(info.commonAncestor).map(ObjectId::fromString);
+  }
+
+  @Override
+  public CapabilitiesInfo getCapabilities(URIish targetUri) {
+    return capabilitiesCache.get(targetUri.toString(), () -> discoverCapabilities(targetUri));
+  }
+
+  @Override
+  public void endpointUnavailable(URIish targetUri, String endpoint) {
+    capabilitiesCache.put(
+        targetUri.toString(), getCapabilities(targetUri).withoutEndpoint(endpoint));
+  }
+
+  private CapabilitiesInfo discoverCapabilities(URIish targetUri) throws IOException {
+    String url =
+        String.format(
+            "%s/%splugins/%s/%s",
+            targetUri, urlAuthenticationPrefix, pluginName, CAPABILITIES_ENDPOINT);
+    HttpGet get = new HttpGet(url);
+    get.addHeader(new BasicHeader("Accept", MediaType.JSON_UTF_8.toString()));
+    HttpResult result = authenticatedRequest(get, bearerTokenProvider.get(), targetUri);
+    if (result.isSuccessful()) {
+      CapabilitiesInfo capabilities =
+          GSON.fromJson(result.getMessage().orElse("{}"), CapabilitiesInfo.class);
+      logger.atFine().log("Discovered capabilities of %s: %s", targetUri, capabilities);
+      return capabilities;
+    }
+    if (result.isNotFound()) {
+      logger.atFine().log("Capabilities endpoint not available on %s", targetUri);
+      return CapabilitiesInfo.legacy();
+    }
+    throw new IOException(
+        String.format("Unable to discover the capabilities of %s: %s", targetUri, result));
+  }
+
+  private HttpEntity compress(URIish targetUri, HttpEntity entity) {
+    return acceptsCompression(targetUri) ? requestCompressor.compress(source, entity) : entity;
+  }
+
+  private boolean acceptsCompression(URIish targetUri) {
+    String contentEncoding = source.getRequestCompression().contentEncoding();
+    return contentEncoding != null
+        && getCapabilities(targetUri).supportsContentEncoding(contentEncoding);
+  }
+
   private String formatUrl(String targetUri, Project.NameKey project, String api) {
     return String.format(
         "%s/%sprojects/%s/%s~%s",
@@ -287,7 +417,18 @@ public class FetchRestApiClient implements FetchApiClient, ResponseHandler<HttpR
   private HttpResult executeRequest(
       HttpRequestBase httpRequest, Optional<String> bearerToken, URIish targetUri)
       throws IOException {
+    try {
+      return authenticatedRequest(httpRequest, bearerToken, targetUri);
+    } catch (IOException e) {
+      // The target may have been restarted with a different version of the plugin
+      capabilitiesCache.invalidate(targetUri.toString());
+      throw e;
+    }
+  }
 
+  private HttpResult authenticatedRequest(
+      HttpRequestBase httpRequest, Optional<String> bearerToken, URIish targetUri)
+      throws IOException {
     HttpRequestBase reqWithAuthentication =
         bearerToken.isPresent()
             ? withBearerTokenAuthentication(httpRequest, bearerToken.get())
@@ -0,0 +1,75 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import java.util.concurrent.Callable;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Aborts the HTTP requests of a REST-API call executed by another thread.
+ *
+ * <p>The socket I/O of a request is not interruptible, hence cancelling the future of a call does
+ * not unblock it. Aborting its request closes the connection instead, and fails the call.
+ */
+public class HttpRequestAborter {
+  private static final ThreadLocal<HttpRequestAborter> CURRENT = new ThreadLocal<>();
+
+  private HttpUriRequest inFlight;
+  private boolean aborted;
+
+  /**
+   * Execute a call, whose HTTP requests are aborted by {@link #abort()}.
+   *
+   * @param call the call to execute.
+   * @return the result of the call.
+   */
+  public <T> T run(Callable<T> call) throws Exception {
+    CURRENT.set(this);
+    try {
+      return call.call();
+    } finally {
+      CURRENT.remove();
+    }
+  }
+
+  /** Abort the request in flight, and the next ones of the call. */
+  public synchronized void abort() {
+    aborted = true;
+    if (inFlight != null) {
+      inFlight.abort();
+    }
+  }
+
+  static void started(HttpUriRequest request) {
+    HttpRequestAborter aborter = CURRENT.get();
+    if (aborter != null) {
+      aborter.setInFlight(request);
+    }
+  }
+
+  static void completed() {
+    HttpRequestAborter aborter = CURRENT.get();
+    if (aborter != null) {
+      aborter.setInFlight(null);
+    }
+  }
+
+  private synchronized void setInFlight(HttpUriRequest request) {
+    inFlight = request;
+    if (aborted && request != null) {
+      request.abort();
+    }
+  }
+}
@@ -56,4 +56,8 @@ public class HttpResult {
   public boolean isSendBatchObjectAvailable() {
     return responseCode != SC_NOT_FOUND;
   }
+
+  public boolean isNotFound() {
+    return responseCode == SC_NOT_FOUND;
+  }
 }
@@ -0,0 +1,58 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+
+/** JSON request body serialized once and sent, unchanged, to multiple apiUrls. */
+public class JsonPayload {
+  private final byte[] content;
+  private final Map<RequestCompression, byte[]> compressedContents = new ConcurrentHashMap<>();
+
+  public JsonPayload(byte[] content) {
+    this.content = content;
+  }
+
+  /** @return the size in bytes of the serialized payload. */
+  public int size() {
+    return content.length;
+  }
+
+  /** @return a repeatable HTTP entity sharing the serialized payload. */
+  HttpEntity toEntity() {
+    return new ByteArrayEntity(content, ContentType.APPLICATION_JSON);
+  }
+
+  /**
+   * Compress the payload only once per compression, for all the apiUrls it is sent to.
+   *
+   * @param compression the compression of the payload.
+   * @param compressor compresses the serialized payload, only called the first time.
+   * @return a repeatable HTTP entity sharing the compressed payload.
+   */
+  HttpEntity toEntity(RequestCompression compression, UnaryOperator<byte[]> compressor) {
+    ByteArrayEntity entity =
+        new ByteArrayEntity(
+            compressedContents.computeIfAbsent(compression, c -> compressor.apply(content)),
+            ContentType.APPLICATION_JSON);
+    entity.setContentEncoding(compression.contentEncoding());
+    return entity;
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * HTTP entity that serializes its JSON body directly into the request output stream, without
+ * building the whole payload in memory first.
+ */
+class JsonStreamEntity extends AbstractHttpEntity {
+  private final Gson gson;
+  private final Object input;
+
+  JsonStreamEntity(Gson gson, Object input) {
+    this.gson = gson;
+    this.input = input;
+    setContentType(ContentType.APPLICATION_JSON.toString());
+    setChunked(true);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    try {
+      gson.toJson(input, writer);
+    } catch (JsonIOException e) {
+      throw new IOException(e);
+    }
+    writer.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
@@ -0,0 +1,63 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import com.googlesource.gerrit.plugins.replication.pull.api.ApplyPackAction;
+import com.googlesource.gerrit.plugins.replication.pull.client.FetchApiClient.PackContent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/** HTTP entity that writes a git pack directly into the request output stream. */
+class PackStreamEntity extends AbstractHttpEntity {
+  private final PackContent pack;
+
+  PackStreamEntity(PackContent pack) {
+    this.pack = pack;
+    setContentType(ApplyPackAction.PACK_CONTENT_TYPE);
+    setChunked(true);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    pack.writeTo(out);
+    out.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import com.google.gerrit.common.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** Compression of the REST-API request bodies sent to the apiUrls of a source. */
+public enum RequestCompression {
+  NONE(null),
+  GZIP("gzip") {
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out);
+    }
+  };
+
+  private final String contentEncoding;
+
+  RequestCompression(@Nullable String contentEncoding) {
+    this.contentEncoding = contentEncoding;
+  }
+
+  /** @return the value of the Content-Encoding header, or null when not compressed. */
+  @Nullable
+  public String contentEncoding() {
+    return contentEncoding;
+  }
+
+  OutputStream compress(OutputStream out) throws IOException {
+    return out;
+  }
+}
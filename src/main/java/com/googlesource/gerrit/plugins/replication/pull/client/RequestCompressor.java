@@ -0,0 +1,255 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.Histogram1;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.pull.Source;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Compresses the REST-API request bodies with the {@code remote.NAME.requestCompression} of the
+ * source, when they are larger than the {@code remote.NAME.requestCompressionThreshold}.
+ */
+@Singleton
+public class RequestCompressor {
+  private final Timer1<String> compressionTime;
+  private final Counter1<String> uncompressedBytes;
+  private final Counter1<String> compressedBytes;
+  private final Histogram1<String> compressionRatio;
+
+  @Inject
+  RequestCompressor(@PluginName String pluginName, MetricMaker metricMaker) {
+    Field<String> field =
+        Field.ofString(
+                "pull_replication",
+                (metadataBuilder, fieldValue) ->
+                    metadataBuilder
+                        .pluginName(pluginName)
+                        .addPluginMetadata(PluginMetadata.create("pull_replication", fieldValue)))
+            .build();
+    compressionTime =
+        metricMaker.newTimer(
+            "request_compression_latency",
+            new Description("Time spent compressing the REST-API request bodies")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            field);
+    uncompressedBytes =
+        metricMaker.newCounter(
+            "request_compression_uncompressed_bytes",
+            new Description("Number of bytes of the REST-API request bodies before compression")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
+    compressedBytes =
+        metricMaker.newCounter(
+            "request_compression_compressed_bytes",
+            new Description("Number of bytes of the REST-API request bodies after compression")
+                .setCumulative()
+                .setUnit(Description.Units.BYTES),
+            field);
+    compressionRatio =
+        metricMaker.newHistogram(
+            "request_compression_ratio",
+            new Description("Size of the compressed REST-API request bodies, in percent")
+                .setCumulative()
+                .setUnit("percent"),
+            field);
+  }
+
+  /**
+   * Wrap the body of a request to a source with the compression configured for the source.
+   *
+   * <p>Bodies of unknown length are always compressed, when the compression is enabled.
+   *
+   * @param source the source the request is sent to.
+   * @param entity the request body.
+   * @return the compressed request body, or the same entity when it is not compressed.
+   */
+  public HttpEntity compress(Source source, HttpEntity entity) {
+    RequestCompression compression = source.getRequestCompression();
+    long length = entity.getContentLength();
+    if (compression == RequestCompression.NONE
+        || (length >= 0 && length < source.getRequestCompressionThreshold())) {
+      return entity;
+    }
+    return new CompressedEntity(entity, compression, source.getRemoteConfigName());
+  }
+
+  /**
+   * Compress a payload sent to multiple apiUrls with the compression configured for the source.
+   *
+   * <p>The payload is compressed only once per compression, hence the compression metrics are
+   * recorded only the first time.
+   *
+   * @param source the source the payload is sent to.
+   * @param payload the serialized payload.
+   * @return the compressed payload, or the serialized payload when it is not compressed.
+   */
+  public HttpEntity compress(Source source, JsonPayload payload) {
+    RequestCompression compression = source.getRequestCompression();
+    if (compression == RequestCompression.NONE
+        || payload.size() < source.getRequestCompressionThreshold()) {
+      return payload.toEntity();
+    }
+    return payload.toEntity(
+        compression, content -> compress(content, compression, source.getRemoteConfigName()));
+  }
+
+  private byte[] compress(byte[] content, RequestCompression compression, String sourceName) {
+    long start = System.nanoTime();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream compressor = compression.compress(out)) {
+      compressor.write(content);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    compressionTime.record(sourceName, System.nanoTime() - start, NANOSECONDS);
+    recordSizes(sourceName, content.length, out.size());
+    return out.toByteArray();
+  }
+
+  private void recordSizes(String sourceName, long uncompressed, long compressed) {
+    uncompressedBytes.incrementBy(sourceName, uncompressed);
+    compressedBytes.incrementBy(sourceName, compressed);
+    if (uncompressed > 0) {
+      compressionRatio.record(sourceName, compressed * 100 / uncompressed);
+    }
+  }
+
+  private class CompressedEntity extends HttpEntityWrapper {
+    private final RequestCompression compression;
+    private final String sourceName;
+
+    CompressedEntity(HttpEntity entity, RequestCompression compression, String sourceName) {
+      super(entity);
+      this.compression = compression;
+      this.sourceName = sourceName;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+      return new BasicHeader(HttpHeaders.CONTENT_ENCODING, compression.contentEncoding());
+    }
+
+    @Override
+    public long getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public boolean isChunked() {
+      return true;
+    }
+
+    /**
+     * Read the compressed body, for the HTTP client paths that do not write the entity directly
+     * into the request. The body is compressed again in memory, so it is not recorded in the
+     * compression metrics, and is repeatable when the wrapped entity is.
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (OutputStream compressor = compression.compress(out)) {
+        super.writeTo(compressor);
+      }
+      return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      TimedOutputStream network = new TimedOutputStream(new NonClosingOutputStream(out));
+      CountingOutputStream compressed = new CountingOutputStream(network);
+      TimedOutputStream compressor = new TimedOutputStream(compression.compress(compressed));
+      CountingOutputStream uncompressed = new CountingOutputStream(compressor);
+      super.writeTo(uncompressed);
+      compressor.close();
+
+      compressionTime.record(
+          sourceName, compressor.elapsedNanos - network.elapsedNanos, NANOSECONDS);
+      recordSizes(sourceName, uncompressed.getCount(), compressed.getCount());
+    }
+  }
+
+  /** Measures the time spent writing to the wrapped stream. */
+  private static class TimedOutputStream extends FilterOutputStream {
+    long elapsedNanos;
+
+    TimedOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      long start = System.nanoTime();
+      out.write(b);
+      elapsedNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      out.write(b, off, len);
+      elapsedNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      out.close();
+      elapsedNanos += System.nanoTime() - start;
+    }
+  }
+
+  /** Keeps the request output stream open, which is closed by the HTTP client. */
+  private static class NonClosingOutputStream extends FilterOutputStream {
+    NonClosingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -42,14 +42,19 @@ public class SourceHttpClient implements HttpClient {
   @Override
   public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler)
       throws ClientProtocolException, IOException {
-    return source
-        .memoize(
-            () ->
-                HttpClients.custom()
-                    .setConnectionManager(customConnectionManager(source))
-                    .setDefaultRequestConfig(customRequestConfig(source))
-                    .build())
-        .execute(request, responseHandler);
+    HttpRequestAborter.started(request);
+    try {
+      return source
+          .memoize(
+              () ->
+                  HttpClients.custom()
+                      .setConnectionManager(customConnectionManager(source))
+                      .setDefaultRequestConfig(customRequestConfig(source))
+                      .build())
+          .execute(request, responseHandler);
+    } finally {
+      HttpRequestAborter.completed();
+    }
   }
 
   private static RequestConfig customRequestConfig(Source source) {
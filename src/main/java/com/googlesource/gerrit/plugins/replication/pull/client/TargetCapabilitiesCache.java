@@ -0,0 +1,97 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capabilities of the replication targets, discovered from their capabilities endpoint and kept
+ * per apiUrl for a configurable time.
+ *
+ * <p>The entries are invalidated when the calls to the target fail with an I/O error, so that an
+ * upgrade or downgrade of the target is detected at the next call. When the discovery fails, the
+ * legacy capabilities are assumed for a short time, so that the calls to an unreachable target do
+ * not ask its capabilities endpoint every time.
+ */
+@Singleton
+public class TargetCapabilitiesCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  static final long DEFAULT_CAPABILITIES_CACHE_TTL_SEC = TimeUnit.MINUTES.toSeconds(10);
+  static final long DISCOVERY_FAILURE_TTL_SEC = 30;
+
+  private final Cache<String, CapabilitiesInfo> capabilities;
+  private final Cache<String, CapabilitiesInfo> discoveryFailures;
+
+  @Inject
+  TargetCapabilitiesCache(ReplicationConfig replicationConfig) {
+    long ttlSec =
+        ConfigUtil.getTimeUnit(
+            replicationConfig.getConfig(),
+            "replication",
+            null,
+            "capabilitiesCacheTtl",
+            DEFAULT_CAPABILITIES_CACHE_TTL_SEC,
+            TimeUnit.SECONDS);
+    this.capabilities =
+        CacheBuilder.newBuilder().expireAfterWrite(ttlSec, TimeUnit.SECONDS).build();
+    this.discoveryFailures =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.min(ttlSec, DISCOVERY_FAILURE_TTL_SEC), TimeUnit.SECONDS)
+            .build();
+  }
+
+  /**
+   * Get the capabilities of a target, discovering them when they are not cached.
+   *
+   * @param apiUrl the apiUrl of the target.
+   * @param loader discovers the capabilities of the target.
+   * @return the capabilities of the target.
+   */
+  public CapabilitiesInfo get(String apiUrl, Callable<CapabilitiesInfo> loader) {
+    CapabilitiesInfo fallback = discoveryFailures.getIfPresent(apiUrl);
+    if (fallback != null) {
+      return fallback;
+    }
+    try {
+      return capabilities.get(apiUrl, loader);
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      logger.atWarning().withCause(e.getCause()).log(
+          "Unable to discover the capabilities of %s", apiUrl);
+      fallback = CapabilitiesInfo.legacy();
+      discoveryFailures.put(apiUrl, fallback);
+      return fallback;
+    }
+  }
+
+  public void put(String apiUrl, CapabilitiesInfo capabilitiesInfo) {
+    discoveryFailures.invalidate(apiUrl);
+    capabilities.put(apiUrl, capabilitiesInfo);
+  }
+
+  public void invalidate(String apiUrl) {
+    capabilities.invalidate(apiUrl);
+  }
+}
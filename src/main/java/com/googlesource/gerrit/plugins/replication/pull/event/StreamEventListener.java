@@ -141,6 +141,7 @@ public class StreamEventListener implements EventListener {
 
       fetchRefsAsync(
           refUpdatedEvent.getRefName(),
+          refUpdatedEvent.refUpdate.get().newRev,
           refUpdatedEvent.instanceId,
           refUpdatedEvent.getProjectNameKey(),
           metrics);
@@ -150,6 +151,7 @@ public class StreamEventListener implements EventListener {
         projectInitializationAction.initProject(getProjectRepositoryName(projectCreatedEvent));
         fetchRefsAsync(
             FetchOne.ALL_REFS,
+            null,
             projectCreatedEvent.instanceId,
             projectCreatedEvent.getProjectNameKey(),
             metrics);
@@ -214,11 +216,13 @@ public class StreamEventListener implements EventListener {
 
   protected void fetchRefsAsync(
       String refName,
+      @Nullable String newRev,
       String sourceInstanceId,
       NameKey projectNameKey,
       PullReplicationApiRequestMetrics metrics) {
     FetchAction.Input input = new FetchAction.Input();
     input.refName = refName;
+    input.newRev = newRev;
     input.label = sourceInstanceId;
     workQueue.getDefaultQueue().submit(fetchJobFactory.create(projectNameKey, input, metrics));
   }
@@ -0,0 +1,72 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of refs fetched in a single fetch call from a source, adapted to the latency of the
+ * previous fetch calls.
+ *
+ * <p>The size follows an additive-increase/multiplicative-decrease scheme, within {@code
+ * replication.refsBatchSizeMin} and {@code replication.refsBatchSizeMax}: it grows by {@link
+ * #ADDITIVE_INCREASE} refs after each full batch fetched within {@code
+ * replication.refsBatchTargetLatency}, and is halved after a slower or failed batch.
+ */
+public class AdaptiveRefsBatchSize {
+  static final int ADDITIVE_INCREASE = 10;
+
+  private final int min;
+  private final int max;
+  private final long targetLatencyNanos;
+  private final AtomicInteger size;
+
+  public AdaptiveRefsBatchSize(int initial, int min, int max, long targetLatencyMs) {
+    this.min = min;
+    this.max = max;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+    this.size = new AtomicInteger(Math.min(max, Math.max(min, initial)));
+  }
+
+  /** Returns the number of refs of the next batch. */
+  public int get() {
+    return size.get();
+  }
+
+  /**
+   * Record a batch of refs fetched.
+   *
+   * @param refs number of refs of the batch.
+   * @param durationNanos time spent fetching the batch in nanos.
+   */
+  public void onFetched(int refs, long durationNanos) {
+    if (durationNanos > targetLatencyNanos) {
+      size.updateAndGet(this::decrease);
+    } else if (refs >= size.get()) {
+      // A partial batch does not tell whether a larger one would have been fast enough
+      size.updateAndGet(s -> Math.min(max, s + ADDITIVE_INCREASE));
+    }
+  }
+
+  /** Record a batch of refs that could not be fetched. */
+  public void onFailed() {
+    size.updateAndGet(this::decrease);
+  }
+
+  private int decrease(int s) {
+    return Math.max(min, s / 2);
+  }
+}
@@ -18,73 +18,107 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.restapi.IdString;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ApplyObjectMetrics;
 import com.googlesource.gerrit.plugins.replication.pull.LocalGitRepositoryManagerProvider;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.errors.CorruptObjectException;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.Pack;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.internal.storage.pack.BinaryDelta;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.PackParser;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.ReceiveCommand.Result;
 import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.FileUtils;
 
 public class ApplyObject {
 
   private final GitRepositoryManager gitManager;
+  private final PackConsolidator packConsolidator;
+  private final ApplyObjectMetrics metrics;
+  private final boolean usePackInserter;
 
   // NOTE: We do need specifically the local GitRepositoryManager to make sure
   // to be able to write onto the directly physical repository without any wrapper.
   // Using for instance the multi-site wrapper injected by Guice would result
   // in a split-brain because of the misalignment of local vs. global refs values.
   @Inject
-  public ApplyObject(LocalGitRepositoryManagerProvider gitManagerProvider) {
+  public ApplyObject(
+      LocalGitRepositoryManagerProvider gitManagerProvider,
+      ReplicationConfig replicationConfig,
+      PackConsolidator packConsolidator,
+      ApplyObjectMetrics metrics) {
     this.gitManager = gitManagerProvider.get();
+    this.packConsolidator = packConsolidator;
+    this.metrics = metrics;
+    this.usePackInserter =
+        replicationConfig.getConfig().getBoolean("replication", "applyObjectPackInserter", false);
   }
 
-  public RefUpdateState apply(Project.NameKey name, RefSpec refSpec, RevisionData[] revisionsData)
+  public RefUpdateState apply(
+      Project.NameKey name, RefSpec refSpec, RevisionData[] revisionsData, String sourceLabel)
       throws MissingParentObjectException, IOException, ResourceNotFoundException {
     try (Repository git = gitManager.openRepository(name)) {
 
       ObjectId refHead = null;
       RefUpdate ru = git.updateRef(refSpec.getSource());
-      try (ObjectInserter oi = git.newObjectInserter()) {
+      try (ObjectInserter oi = newObjectInserter(git);
+          ObjectReader reader = oi.newReader()) {
+        RevisionObjectsInserter inserter = new RevisionObjectsInserter(reader, oi);
         for (RevisionData revisionData : revisionsData) {
-
-          ObjectId newObjectID = null;
-          RevisionObjectData commitObject = revisionData.getCommitObject();
-
-          if (commitObject != null) {
-            RevCommit commit = RevCommit.parse(commitObject.getContent());
-            for (RevCommit parent : commit.getParents()) {
-              if (!git.getObjectDatabase().has(parent.getId())) {
-                throw new MissingParentObjectException(name, refSpec.getSource(), parent.getId());
-              }
-            }
-            refHead = newObjectID = oi.insert(commitObject.getType(), commitObject.getContent());
-
-            RevisionObjectData treeObject = revisionData.getTreeObject();
-            oi.insert(treeObject.getType(), treeObject.getContent());
-          }
-
-          for (RevisionObjectData rev : revisionData.getBlobs()) {
-            ObjectId blobObjectId = oi.insert(rev.getType(), rev.getContent());
-            if (newObjectID == null) {
-              newObjectID = blobObjectId;
-            }
+          ObjectId newObjectID = insert(inserter, name, refSpec.getSource(), revisionData);
+          if (newObjectID != null) {
             refHead = newObjectID;
           }
 
-          oi.flush();
-
-          if (commitObject == null) {
+          if (revisionData.getCommitObject() == null) {
             // Non-commits must be forced as they do not have a graph associated
             ru.setForceUpdate(true);
           }
         }
+        flush(name, git, oi, inserter.anyInserted());
+        inserter.recordMetrics(metrics, sourceLabel);
 
         ru.setNewObjectId(refHead);
         RefUpdate.Result result = ru.update();
@@ -94,4 +128,504 @@ public class ApplyObject {
       throw new ResourceNotFoundException(IdString.fromDecoded(name.get()));
     }
   }
+
+  /**
+   * Find the first of the candidate commits present in the repository.
+   *
+   * @param name the project name.
+   * @param candidates the candidate commits, from the newest to the oldest.
+   * @return the first candidate present, or empty when none of them is present.
+   */
+  public Optional<ObjectId> findCommonAncestor(Project.NameKey name, List<ObjectId> candidates)
+      throws IOException, ResourceNotFoundException {
+    try (Repository git = gitManager.openRepository(name);
+        ObjectReader reader = git.newObjectReader()) {
+      for (ObjectId candidate : candidates) {
+        if (reader.has(candidate, Constants.OBJ_COMMIT)) {
+          return Optional.of(candidate);
+        }
+      }
+      return Optional.empty();
+    } catch (RepositoryNotFoundException e) {
+      throw new ResourceNotFoundException(IdString.fromDecoded(name.get()));
+    }
+  }
+
+  /**
+   * Insert the objects of multiple refs and update all of them with a single batch ref update.
+   *
+   * <p>All the objects are inserted with the same object inserter, flushed only once before
+   * updating the refs. When not atomic, a ref whose parents are missing is rejected with {@link
+   * RefUpdate.Result#REJECTED_MISSING_OBJECT} and the other refs are still updated.
+   *
+   * @param name the project name.
+   * @param refsRevisions the revisions of each ref to update.
+   * @param atomic true for updating either all the refs or none of them.
+   * @param sourceLabel the label of the source of the refs, for the metrics.
+   * @return the results of the ref updates, in the same order of {@code refsRevisions}.
+   * @throws MissingParentObjectException when atomic and the parents of a ref are missing.
+   */
+  public List<RefUpdateState> applyBatch(
+      Project.NameKey name,
+      Map<String, RevisionData[]> refsRevisions,
+      boolean atomic,
+      String sourceLabel)
+      throws MissingParentObjectException, IOException, ResourceNotFoundException {
+    try (Repository git = gitManager.openRepository(name)) {
+      Map<String, ObjectId> refHeads = new LinkedHashMap<>();
+      Set<String> forcedRefs = new HashSet<>();
+      Set<String> missingParentRefs = new HashSet<>();
+      try (ObjectInserter oi = newObjectInserter(git);
+          ObjectReader reader = oi.newReader()) {
+        RevisionObjectsInserter inserter = new RevisionObjectsInserter(reader, oi);
+        for (Map.Entry<String, RevisionData[]> refRevisions : refsRevisions.entrySet()) {
+          String refName = refRevisions.getKey();
+          try {
+            for (RevisionData revisionData : refRevisions.getValue()) {
+              ObjectId newObjectID = insert(inserter, name, refName, revisionData);
+              if (newObjectID != null) {
+                refHeads.put(refName, newObjectID);
+              }
+              if (revisionData.getCommitObject() == null) {
+                forcedRefs.add(refName);
+              }
+            }
+          } catch (MissingParentObjectException e) {
+            if (atomic) {
+              throw e;
+            }
+            refHeads.remove(refName);
+            missingParentRefs.add(refName);
+          }
+        }
+        flush(name, git, oi, inserter.anyInserted());
+        inserter.recordMetrics(metrics, sourceLabel);
+      }
+
+      Map<String, Ref> currentRefs =
+          git.getRefDatabase().exactRef(refsRevisions.keySet().toArray(new String[0]));
+      List<ReceiveCommand> commands = new ArrayList<>();
+      try (RevWalk rw = new RevWalk(git)) {
+        for (String refName : refsRevisions.keySet()) {
+          ObjectId oldId =
+              Optional.ofNullable(currentRefs.get(refName))
+                  .map(Ref::getObjectId)
+                  .orElse(ObjectId.zeroId());
+          if (missingParentRefs.contains(refName)) {
+            ReceiveCommand cmd = new ReceiveCommand(oldId, oldId, refName);
+            cmd.setResult(Result.REJECTED_MISSING_OBJECT, "missing parent objects");
+            commands.add(cmd);
+          } else {
+            commands.add(
+                newCommand(
+                    rw, oldId, refHeads.get(refName), refName, forcedRefs.contains(refName)));
+          }
+        }
+
+        if (atomic && commands.stream().anyMatch(cmd -> cmd.getResult() != Result.NOT_ATTEMPTED)) {
+          ReceiveCommand.abort(commands);
+        } else {
+          BatchRefUpdate bru = git.getRefDatabase().newBatchUpdate();
+          bru.setAtomic(atomic);
+          bru.setAllowNonFastForwards(true);
+          bru.addCommand(ReceiveCommand.filter(commands, Result.NOT_ATTEMPTED));
+          bru.execute(rw, NullProgressMonitor.INSTANCE);
+        }
+      }
+
+      return commands.stream()
+          .map(cmd -> new RefUpdateState(cmd.getRefName(), refUpdateResult(cmd)))
+          .collect(Collectors.toList());
+    } catch (RepositoryNotFoundException e) {
+      throw new ResourceNotFoundException(IdString.fromDecoded(name.get()));
+    }
+  }
+
+  private static ReceiveCommand newCommand(
+      RevWalk rw, ObjectId oldId, ObjectId newId, String refName, boolean forced)
+      throws IOException {
+    if (newId == null) {
+      ReceiveCommand cmd = new ReceiveCommand(oldId, oldId, refName);
+      cmd.setResult(Result.REJECTED_OTHER_REASON, "no objects to apply");
+      return cmd;
+    }
+    if (oldId.equals(ObjectId.zeroId()) || oldId.equals(newId)) {
+      return new ReceiveCommand(oldId, newId, refName);
+    }
+    if (forced) {
+      return new ReceiveCommand(oldId, newId, refName, ReceiveCommand.Type.UPDATE_NONFASTFORWARD);
+    }
+
+    // The batch allows non-fast-forwards for the forced refs, the commits are checked here
+    // for getting the same result of a single ref update
+    ReceiveCommand cmd = new ReceiveCommand(oldId, newId, refName);
+    cmd.updateType(rw);
+    if (cmd.getType() == ReceiveCommand.Type.UPDATE_NONFASTFORWARD) {
+      cmd.setResult(Result.REJECTED_NONFASTFORWARD);
+    }
+    return cmd;
+  }
+
+  private static RefUpdate.Result refUpdateResult(ReceiveCommand cmd) {
+    switch (cmd.getResult()) {
+      case OK:
+        if (cmd.getOldId().equals(cmd.getNewId())) {
+          return RefUpdate.Result.NO_CHANGE;
+        }
+        switch (cmd.getType()) {
+          case CREATE:
+            return RefUpdate.Result.NEW;
+          case UPDATE_NONFASTFORWARD:
+            return RefUpdate.Result.FORCED;
+          default:
+            return RefUpdate.Result.FAST_FORWARD;
+        }
+      case NOT_ATTEMPTED:
+        return RefUpdate.Result.NOT_ATTEMPTED;
+      case REJECTED_NONFASTFORWARD:
+        return RefUpdate.Result.REJECTED;
+      case REJECTED_MISSING_OBJECT:
+        return RefUpdate.Result.REJECTED_MISSING_OBJECT;
+      case LOCK_FAILURE:
+        return RefUpdate.Result.LOCK_FAILURE;
+      default:
+        return RefUpdate.Result.REJECTED_OTHER_REASON;
+    }
+  }
+
+  /**
+   * Deserialize an apply-object JSON payload, inserting the trees and blobs into the repository as
+   * soon as they are parsed, so that only one of them at a time is kept on the heap.
+   *
+   * <p>The commits keep their content, needed for checking their parents when applied. The other
+   * objects are returned as {@link RevisionObjectData#stored} objects, which are not inserted again
+   * when applied.
+   *
+   * @param name the project name.
+   * @param gson the JSON parser of the payload.
+   * @param json the JSON payload.
+   * @param type the type of the payload.
+   * @param sourceLabel extracts the label of the source from the payload, for the metrics.
+   * @return the payload.
+   */
+  public <T> T ingest(
+      Project.NameKey name, Gson gson, JsonReader json, Type type, Function<T, String> sourceLabel)
+      throws IOException, ResourceNotFoundException {
+    long start = System.nanoTime();
+    try (Repository git = gitManager.openRepository(name);
+        ObjectInserter oi = newObjectInserter(git);
+        ObjectReader reader = oi.newReader()) {
+      RevisionObjectsInserter inserter = new RevisionObjectsInserter(reader, oi);
+      InsertingAdapter insertingAdapter = new InsertingAdapter(inserter, reader);
+      T payload =
+          gson.newBuilder()
+              .registerTypeAdapter(RevisionObjectData.class, insertingAdapter)
+              .create()
+              .fromJson(json, type);
+
+      long flushStart = System.nanoTime();
+      flush(name, git, oi, inserter.anyInserted());
+      long insertNanos = insertingAdapter.insertNanos + System.nanoTime() - flushStart;
+      String label = payload == null ? null : sourceLabel.apply(payload);
+      if (label != null) {
+        metrics.recordPayloadIngested(label, System.nanoTime() - start - insertNanos, insertNanos);
+        inserter.recordMetrics(metrics, label);
+      }
+      return payload;
+    } catch (RepositoryNotFoundException e) {
+      throw new ResourceNotFoundException(IdString.fromDecoded(name.get()));
+    }
+  }
+
+  /** Inserts the trees and blobs as soon as they are parsed. */
+  private static class InsertingAdapter extends TypeAdapter<RevisionObjectData> {
+    private final RevisionObjectData.Adapter adapter = new RevisionObjectData.Adapter();
+    private final RevisionObjectsInserter inserter;
+    private final ObjectReader reader;
+    private long insertNanos;
+
+    InsertingAdapter(RevisionObjectsInserter inserter, ObjectReader reader) {
+      this.inserter = inserter;
+      this.reader = reader;
+    }
+
+    @Override
+    public void write(JsonWriter out, RevisionObjectData value) throws IOException {
+      adapter.write(out, value);
+    }
+
+    @Override
+    public RevisionObjectData read(JsonReader in) throws IOException {
+      RevisionObjectData rev = adapter.read(in);
+      if (rev == null || rev.getType() == Constants.OBJ_COMMIT) {
+        return rev;
+      }
+
+      long start = System.nanoTime();
+      ObjectId objectId = inserter.insert(rev);
+      int type =
+          rev.getType() == Constants.OBJ_REF_DELTA
+              ? reader.open(ObjectId.fromString(rev.getBase())).getType()
+              : rev.getType();
+      insertNanos += System.nanoTime() - start;
+      return RevisionObjectData.stored(objectId.name(), type);
+    }
+  }
+
+  /**
+   * Create the object inserter of the apply-object objects.
+   *
+   * <p>With {@code replication.applyObjectPackInserter} the objects of a repository on the local
+   * file-system are written into a single pack when flushed, instead of one loose object each.
+   */
+  private ObjectInserter newObjectInserter(Repository git) {
+    if (usePackInserter && git.getObjectDatabase() instanceof ObjectDirectory) {
+      return ((ObjectDirectory) git.getObjectDatabase()).newPackInserter();
+    }
+    return git.newObjectInserter();
+  }
+
+  private void flush(
+      Project.NameKey name, Repository git, ObjectInserter oi, Optional<ObjectId> inserted)
+      throws IOException {
+    if (!(oi instanceof PackInserter)) {
+      oi.flush();
+      return;
+    }
+
+    ObjectDirectory odb = (ObjectDirectory) git.getObjectDatabase();
+    Set<File> packs = odb.getPacks().stream().map(Pack::getPackFile).collect(Collectors.toSet());
+    oi.flush();
+
+    // The pack written by the inserter is the new one with the objects it has inserted
+    if (inserted.isPresent()) {
+      for (Pack pack : odb.getPacks()) {
+        if (!packs.contains(pack.getPackFile()) && pack.hasObject(inserted.get())) {
+          packConsolidator.onPackInserted(name, pack.getPackFile());
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Insert the objects of a revision.
+   *
+   * @return the id of the commit, or of the first blob when the revision has no commit, or null
+   *     when the revision has no objects.
+   */
+  private static ObjectId insert(
+      RevisionObjectsInserter inserter,
+      Project.NameKey name,
+      String refName,
+      RevisionData revisionData)
+      throws MissingParentObjectException, IOException {
+    ObjectId newObjectID = null;
+    RevisionObjectData commitObject = revisionData.getCommitObject();
+
+    if (commitObject != null) {
+      RevCommit commit = RevCommit.parse(commitObject.getContent());
+      for (RevCommit parent : commit.getParents()) {
+        if (!inserter.has(parent.getId())) {
+          throw new MissingParentObjectException(name, refName, parent.getId());
+        }
+      }
+      newObjectID = inserter.insert(commitObject);
+
+      inserter.insert(revisionData.getTreeObject());
+    }
+
+    for (RevisionObjectData rev : revisionData.getBlobs()) {
+      ObjectId blobObjectId = inserter.insert(rev);
+      if (newObjectID == null) {
+        newObjectID = blobObjectId;
+      }
+    }
+    return newObjectID;
+  }
+
+  /**
+   * Inserts the objects of an apply-object request, skipping the ones already in the repository or
+   * already inserted by the same request, and counts the written and the skipped ones.
+   */
+  private static class RevisionObjectsInserter {
+    private final ObjectReader reader;
+    private final ObjectInserter oi;
+    private final Set<ObjectId> inserted = new HashSet<>();
+    private long writtenObjects;
+    private long writtenBytes;
+    private long skippedObjects;
+    private long skippedBytes;
+
+    RevisionObjectsInserter(ObjectReader reader, ObjectInserter oi) {
+      this.reader = reader;
+      this.oi = oi;
+    }
+
+    boolean has(ObjectId objectId) throws IOException {
+      return inserted.contains(objectId) || reader.has(objectId);
+    }
+
+    Optional<ObjectId> anyInserted() {
+      return inserted.stream().findAny();
+    }
+
+    ObjectId insert(RevisionObjectData rev) throws IOException {
+      if (rev.isStored()) {
+        return ObjectId.fromString(rev.getSha1());
+      }
+
+      // The id sent by the source allows skipping the existing objects without hashing them
+      // or resolving their deltas, and it is verified for the objects that are written
+      ObjectId objectId =
+          rev.getSha1() == null
+              ? oi.idFor(rev.getType(), rev.getContent())
+              : ObjectId.fromString(rev.getSha1());
+      if (has(objectId)) {
+        skippedObjects++;
+        skippedBytes += rev.getContent().length;
+        return objectId;
+      }
+
+      ObjectId insertedId =
+          rev.getType() == Constants.OBJ_REF_DELTA
+              ? insertDelta(rev)
+              : oi.insert(rev.getType(), rev.getContent());
+      if (!insertedId.equals(objectId)) {
+        throw new CorruptObjectException(
+            String.format("Object %s resolves to %s", objectId.name(), insertedId.name()));
+      }
+      inserted.add(insertedId);
+      writtenObjects++;
+      writtenBytes += rev.getContent().length;
+      return insertedId;
+    }
+
+    private ObjectId insertDelta(RevisionObjectData rev) throws IOException {
+      if (rev.getBase() == null) {
+        throw new CorruptObjectException("Delta of object " + rev.getSha1() + " without base");
+      }
+      ObjectLoader base = reader.open(ObjectId.fromString(rev.getBase()));
+      byte[] content = BinaryDelta.apply(base.getCachedBytes(), rev.getContent());
+      return oi.insert(base.getType(), content);
+    }
+
+    void recordMetrics(ApplyObjectMetrics metrics, String sourceLabel) {
+      metrics.recordObjectsWritten(sourceLabel, writtenObjects, writtenBytes);
+      metrics.recordObjectsSkipped(sourceLabel, skippedObjects, skippedBytes);
+    }
+  }
+
+  /**
+   * Insert the objects of a git pack stream and update the ref to the given object.
+   *
+   * <p>The objects are stored as they are received, without being decompressed and inserted one
+   * by one. They are inserted only once the parents of the ref head are known to be present, so
+   * that a rejected pack leaves no objects behind in the repository.
+   *
+   * @param name the project name.
+   * @param refSpec the ref to update.
+   * @param refHead the new value of the ref, which must be either contained in the pack or already
+   *     present in the repository.
+   * @param pack the git pack stream.
+   * @return the result of the ref update.
+   */
+  public RefUpdateState applyPack(
+      Project.NameKey name, RefSpec refSpec, ObjectId refHead, InputStream pack)
+      throws MissingParentObjectException, IOException, ResourceNotFoundException {
+    try (Repository git = gitManager.openRepository(name)) {
+      if (git.getObjectDatabase() instanceof ObjectDirectory) {
+        insertQuarantinedPack(
+            name, refSpec.getSource(), refHead, (ObjectDirectory) git.getObjectDatabase(), pack);
+      } else {
+        insertPack(git, pack);
+        checkParents(git, name, refSpec.getSource(), refHead);
+      }
+
+      RefUpdate ru = git.updateRef(refSpec.getSource());
+      try (RevWalk rw = new RevWalk(git)) {
+        if (!(rw.parseAny(refHead) instanceof RevCommit)) {
+          // Non-commits must be forced as they do not have a graph associated
+          ru.setForceUpdate(true);
+        }
+      }
+
+      ru.setNewObjectId(refHead);
+      RefUpdate.Result result = ru.update();
+      return new RefUpdateState(refSpec.getSource(), result);
+    } catch (RepositoryNotFoundException e) {
+      throw new ResourceNotFoundException(IdString.fromDecoded(name.get()));
+    }
+  }
+
+  /**
+   * Insert the objects of a git pack stream into a quarantine object directory, which has the
+   * objects of the repository as alternates, and move its packs into the repository once the
+   * parents of the ref head are checked.
+   */
+  private static void insertQuarantinedPack(
+      Project.NameKey name,
+      String refName,
+      ObjectId refHead,
+      ObjectDirectory odb,
+      InputStream pack)
+      throws MissingParentObjectException, IOException {
+    File quarantine = Files.createTempDirectory(odb.getDirectory().toPath(), "incoming-").toFile();
+    try {
+      File objects = new File(quarantine, "objects");
+      Files.createDirectories(new File(objects, "pack").toPath());
+      try (Repository incoming =
+          new FileRepositoryBuilder()
+              .setGitDir(quarantine)
+              .setObjectDirectory(objects)
+              .addAlternateObjectDirectory(odb.getDirectory())
+              .setBare()
+              .build()) {
+        insertPack(incoming, pack);
+        checkParents(incoming, name, refName, refHead);
+      }
+      movePacks(new File(objects, "pack"), odb.getPackDirectory());
+    } finally {
+      FileUtils.delete(
+          quarantine, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING | FileUtils.IGNORE_ERRORS);
+    }
+  }
+
+  private static void insertPack(Repository git, InputStream pack) throws IOException {
+    try (ObjectInserter oi = git.newObjectInserter()) {
+      PackParser parser = oi.newPackParser(pack);
+      parser.setAllowThin(false);
+      parser.parse(NullProgressMonitor.INSTANCE);
+      oi.flush();
+    }
+  }
+
+  private static void checkParents(
+      Repository git, Project.NameKey name, String refName, ObjectId refHead)
+      throws MissingParentObjectException, IOException {
+    try (RevWalk rw = new RevWalk(git)) {
+      RevObject head = rw.parseAny(refHead);
+      if (head instanceof RevCommit) {
+        for (RevCommit parent : ((RevCommit) head).getParents()) {
+          if (!git.getObjectDatabase().has(parent.getId())) {
+            throw new MissingParentObjectException(name, refName, parent.getId());
+          }
+        }
+      }
+    }
+  }
+
+  private static void movePacks(File from, File to) throws IOException {
+    File[] files = from.listFiles();
+    if (files == null) {
+      return;
+    }
+
+    // A pack is only visible once its index is present, hence the index is moved last
+    Arrays.sort(files, Comparator.comparing(f -> f.getName().endsWith(".idx")));
+    for (File file : files) {
+      Files.move(
+          file.toPath(), new File(to, file.getName()).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
 }
@@ -14,37 +14,117 @@
 
 package com.googlesource.gerrit.plugins.replication.pull.fetch;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.gerrit.entities.RefNames;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
-import com.googlesource.gerrit.plugins.replication.pull.SourceConfiguration;
+import com.googlesource.gerrit.plugins.replication.pull.Source;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Fetch client splitting the refs in batches, of the size adapted by the {@link
+ * AdaptiveRefsBatchSize} of the source.
+ *
+ * <p>When {@code remote.NAME.refsBatchThreads} is greater than one, the batches are fetched in
+ * parallel by the batch executor of the source. The NoteDb meta refs are then fetched once all the
+ * other refs are, so that a change is never replicated before its patch-sets.
+ */
 public class BatchFetchClient implements Fetch {
-  private int batchSize;
+  private final AdaptiveRefsBatchSize refsBatchSize;
   private Fetch fetchClient;
+  private final Source source;
 
   @Inject
   public BatchFetchClient(
-      SourceConfiguration config,
       FetchFactory factory,
+      Source source,
       @Assisted String taskHexId,
       @Assisted URIish uri,
       @Assisted Repository git) {
-    this.batchSize = config.getRefsBatchSize();
+    this.refsBatchSize = source.getRefsBatchSize();
     this.fetchClient = factory.createPlainImpl(taskHexId, uri, git);
+    this.source = source;
   }
 
   @Override
   public List<RefUpdateState> fetch(List<RefSpec> refs) throws IOException {
+    Optional<ExecutorService> executor = source.getBatchFetchExecutor();
+    int batchSize = refsBatchSize.get();
+    if (executor.isPresent() && refs.size() > batchSize) {
+      Map<Boolean, List<RefSpec>> metaRefs =
+          refs.stream().collect(Collectors.partitioningBy(BatchFetchClient::isMetaRef));
+      List<RefUpdateState> results =
+          fetchInParallel(executor.get(), metaRefs.get(false), batchSize);
+      results.addAll(fetchInParallel(executor.get(), metaRefs.get(true), batchSize));
+      return results;
+    }
+
     List<RefUpdateState> results = Lists.newArrayList();
-    for (List<RefSpec> refsBatch : Lists.partition(refs, batchSize)) {
-      results.addAll(fetchClient.fetch(refsBatch));
+    int next = 0;
+    while (next < refs.size()) {
+      // The size of the batch may have been adapted by the previous one
+      List<RefSpec> refsBatch =
+          refs.subList(next, Math.min(refs.size(), next + refsBatchSize.get()));
+      results.addAll(fetchBatch(refsBatch));
+      next += refsBatch.size();
     }
     return results;
   }
+
+  private List<RefUpdateState> fetchInParallel(
+      ExecutorService executor, List<RefSpec> refs, int batchSize) throws IOException {
+    List<Future<List<RefUpdateState>>> batches = new ArrayList<>();
+    for (List<RefSpec> refsBatch : Lists.partition(refs, batchSize)) {
+      batches.add(executor.submit(() -> fetchBatch(refsBatch)));
+    }
+
+    List<RefUpdateState> results = new ArrayList<>();
+    try {
+      for (Future<List<RefUpdateState>> batch : batches) {
+        results.addAll(batch.get());
+      }
+      return results;
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IOException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching the batches of refs");
+    } finally {
+      // The batches not started yet are not needed anymore when one of them failed
+      batches.forEach(batch -> batch.cancel(false));
+    }
+  }
+
+  private List<RefUpdateState> fetchBatch(List<RefSpec> refsBatch) throws IOException {
+    long startNanos = System.nanoTime();
+    try {
+      List<RefUpdateState> results = fetchClient.fetch(refsBatch);
+      refsBatchSize.onFetched(refsBatch.size(), System.nanoTime() - startNanos);
+      return results;
+    } catch (PermanentTransportException e) {
+      throw e;
+    } catch (IOException e) {
+      refsBatchSize.onFailed();
+      throw e;
+    }
+  }
+
+  private static boolean isMetaRef(RefSpec refSpec) {
+    return refSpec.getSource() != null && RefNames.isNoteDbMetaRef(refSpec.getSource());
+  }
 }
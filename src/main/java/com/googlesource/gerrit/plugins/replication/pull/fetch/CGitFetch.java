@@ -15,8 +15,13 @@
 package com.googlesource.gerrit.plugins.replication.pull.fetch;
 
 import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Lists;
+import com.google.gerrit.common.Nullable;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.replication.CredentialsFactory;
@@ -25,10 +30,21 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.CredentialItem;
@@ -36,12 +52,27 @@ import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
 
+/**
+ * Fetch client executing the native git client.
+ *
+ * <p>With git 2.29 or later, all the refspecs of a fetch are passed to a single {@code git fetch
+ * --stdin} process, otherwise they are passed as its arguments. With git 2.41 or later, the {@code
+ * --porcelain} output is parsed into the actual state of each ref fetched. The outputs of the
+ * process are redirected to temporary files, read once it exits, so that no other thread is needed
+ * for consuming them while it runs.
+ */
 public class CGitFetch implements Fetch {
+  private static final Pattern GIT_VERSION = Pattern.compile("git version (\\d+)\\.(\\d+)");
+  private static final int GIT_VERSION_TIMEOUT_SECS = 10;
+  private static final Supplier<GitVersion> NATIVE_GIT_VERSION =
+      Suppliers.memoize(CGitFetch::nativeGitVersion);
 
   private File localProjectDirectory;
   private URIish uri;
   private int timeout;
   private final String taskIdHex;
+  private final Repository git;
+  private final boolean useNegotiationTip;
 
   @Inject
   public CGitFetch(
@@ -51,6 +82,8 @@ public class CGitFetch implements Fetch {
       @Assisted URIish uri,
       @Assisted Repository git) {
     this.localProjectDirectory = git.getDirectory();
+    this.git = git;
+    this.useNegotiationTip = config.useNegotiationTip();
     this.taskIdHex = taskIdHex;
     this.uri = appendCredentials(uri, cpFactory.create(config.getRemoteConfig().getName()));
     this.timeout = config.getRemoteConfig().getTimeout();
@@ -59,40 +92,234 @@ public class CGitFetch implements Fetch {
   @Override
   public List<RefUpdateState> fetch(List<RefSpec> refsSpec) throws IOException {
     List<String> refs = refsSpec.stream().map(s -> s.toString()).collect(Collectors.toList());
-    List<String> command = Lists.newArrayList("git", "fetch", uri.toPrivateASCIIString());
-    command.addAll(refs);
-    ProcessBuilder pb = new ProcessBuilder().command(command).directory(localProjectDirectory);
+    GitVersion version = NATIVE_GIT_VERSION.get();
+    boolean stdin = version.isAtLeast(2, 29);
+    boolean porcelain = version.isAtLeast(2, 41);
+    List<String> command =
+        fetchCommand(refs, negotiationTips(refsSpec), uri.toPrivateASCIIString(), version);
     repLog.info("[{}] Fetch references {} from {}", taskIdHex, refs, uri);
-    Process process = pb.start();
 
+    Path output = Files.createTempFile("cgit-fetch-", ".out");
+    Path errors = Files.createTempFile("cgit-fetch-", ".err");
+    Process process = null;
+    boolean isFinished = false;
     try {
-      boolean isFinished = waitForTaskToFinish(process);
+      process =
+          new ProcessBuilder()
+              .command(command)
+              .directory(localProjectDirectory)
+              .redirectOutput(output.toFile())
+              .redirectError(errors.toFile())
+              .start();
+      try (Writer processStdin = new OutputStreamWriter(process.getOutputStream(), UTF_8)) {
+        if (stdin) {
+          for (String ref : refs) {
+            processStdin.write(ref);
+            processStdin.write('\n');
+          }
+        }
+      }
+
+      isFinished = waitForTaskToFinish(process);
       if (!isFinished) {
         throw new TransportException(
             String.format("Timeout exception during the fetch from: %s, refs: %s", uri, refs));
       }
       if (process.exitValue() != 0) {
-        String errorMessage =
-            new BufferedReader(new InputStreamReader(process.getErrorStream()))
-                .lines()
-                .collect(Collectors.joining("\n"));
+        String errorMessage = String.join("\n", Files.readAllLines(errors, UTF_8));
         throw new TransportException(
             String.format("Cannot fetch from %s, error message: %s", uri, errorMessage));
       }
 
-      return refsSpec.stream()
-          .map(
-              value -> {
-                return new RefUpdateState(value.getSource(), RefUpdate.Result.NEW);
-              })
-          .collect(Collectors.toList());
+      if (!porcelain) {
+        return refsSpec.stream()
+            .map(value -> new RefUpdateState(value.getSource(), RefUpdate.Result.NEW))
+            .collect(Collectors.toList());
+      }
+      return refUpdateStates(Files.readAllLines(output, UTF_8), refsSpec);
     } catch (TransportException e) {
       throw PermanentTransportException.wrapIfPermanentTransportException(e);
     } catch (InterruptedException e) {
       repLog.error(
           "[{}] Thread interrupted during the fetch from: {}, refs: {}", taskIdHex, uri, refs);
       throw new IllegalStateException(e);
+    } finally {
+      // Also kills the process when its refspecs could not be written
+      if (process != null && !isFinished) {
+        process.destroyForcibly();
+      }
+      Files.deleteIfExists(output);
+      Files.deleteIfExists(errors);
+    }
+  }
+
+  /**
+   * Build the {@code git fetch} command, reading the refspecs from its standard input when
+   * supported by the native git client.
+   */
+  @VisibleForTesting
+  static List<String> fetchCommand(
+      List<String> refs, List<String> negotiationTips, String url, GitVersion version) {
+    List<String> command = Lists.newArrayList("git", "fetch");
+    boolean stdin = version.isAtLeast(2, 29);
+    if (stdin) {
+      command.add("--stdin");
+    }
+    if (version.isAtLeast(2, 41)) {
+      command.add("--porcelain");
+      command.add("--verbose");
+    }
+    command.addAll(negotiationTips);
+    command.add(url);
+    if (!stdin) {
+      command.addAll(refs);
+    }
+    return command;
+  }
+
+  /**
+   * Convert the lines of {@code git fetch --porcelain}, formatted as {@code <flag> <old-object-id>
+   * <new-object-id> <local-reference>}, to the states of the refs fetched. The refs of the
+   * refspecs that are not reported are up to date.
+   */
+  @VisibleForTesting
+  static List<RefUpdateState> refUpdateStates(List<String> porcelainLines, List<RefSpec> refsSpec) {
+    Map<String, RefUpdateState> states = new LinkedHashMap<>();
+    for (String line : porcelainLines) {
+      if (line.length() < 3) {
+        continue;
+      }
+      RefUpdate.Result result = porcelainResult(line.charAt(0));
+      String[] fields = line.substring(2).split(" ", 3);
+      if (result == null || fields.length < 3) {
+        continue;
+      }
+      String remoteName = remoteNameOf(fields[2], refsSpec);
+      states.put(remoteName, new RefUpdateState(remoteName, result));
+    }
+
+    for (RefSpec refSpec : refsSpec) {
+      if (!refSpec.isWildcard() && !states.containsKey(refSpec.getSource())) {
+        states.put(
+            refSpec.getSource(),
+            new RefUpdateState(refSpec.getSource(), RefUpdate.Result.NO_CHANGE));
+      }
+    }
+    return new ArrayList<>(states.values());
+  }
+
+  @Nullable
+  private static RefUpdate.Result porcelainResult(char flag) {
+    switch (flag) {
+      case ' ':
+        return RefUpdate.Result.FAST_FORWARD;
+      case '+':
+      case 't':
+        return RefUpdate.Result.FORCED;
+      case '*':
+        return RefUpdate.Result.NEW;
+      case '=':
+        return RefUpdate.Result.NO_CHANGE;
+      case '!':
+        return RefUpdate.Result.REJECTED;
+      default:
+        return null;
+    }
+  }
+
+  private static String remoteNameOf(String localName, List<RefSpec> refsSpec) {
+    for (RefSpec refSpec : refsSpec) {
+      if (refSpec.getDestination() == null || !refSpec.matchDestination(localName)) {
+        continue;
+      }
+      return refSpec.isWildcard()
+          ? refSpec.expandFromDestination(localName).getSource()
+          : refSpec.getSource();
+    }
+    // Tags followed by the fetch are stored under their remote name
+    return localName;
+  }
+
+  private static GitVersion nativeGitVersion() {
+    GitVersion version = GitVersion.UNKNOWN;
+    try {
+      Process process = new ProcessBuilder("git", "version").redirectErrorStream(true).start();
+      if (process.waitFor(GIT_VERSION_TIMEOUT_SECS, TimeUnit.SECONDS)
+          && process.exitValue() == 0) {
+        // The output of the command is a single line, buffered until it is read
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8))) {
+          version = GitVersion.parse(reader.lines().collect(Collectors.joining("\n")));
+        }
+      } else {
+        process.destroyForcibly();
+      }
+    } catch (IOException e) {
+      repLog.warn("Cannot check the version of the native git client", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (!version.isAtLeast(2, 29)) {
+      repLog.warn(
+          "Native git client older than 2.29, without fetch --stdin: "
+              + "the refs to fetch are passed as arguments");
+    }
+    if (!version.isAtLeast(2, 41)) {
+      repLog.warn(
+          "Native git client older than 2.41, without fetch --porcelain: "
+              + "the refs fetched are reported as NEW");
+    }
+    return version;
+  }
+
+  @VisibleForTesting
+  static class GitVersion {
+    static final GitVersion UNKNOWN = new GitVersion(0, 0);
+
+    private final int major;
+    private final int minor;
+
+    GitVersion(int major, int minor) {
+      this.major = major;
+      this.minor = minor;
+    }
+
+    static GitVersion parse(String versionOutput) {
+      Matcher version = GIT_VERSION.matcher(versionOutput);
+      if (!version.find()) {
+        return UNKNOWN;
+      }
+      return new GitVersion(Integer.parseInt(version.group(1)), Integer.parseInt(version.group(2)));
+    }
+
+    boolean isAtLeast(int major, int minor) {
+      return this.major > major || (this.major == major && this.minor >= minor);
+    }
+  }
+
+  /**
+   * Restrict the negotiation to the local values of the refs to fetch, which are the old revisions
+   * of the refs on the source, when all of them exist locally. Otherwise, all the local refs are
+   * needed for finding the common history of the new refs.
+   */
+  private List<String> negotiationTips(List<RefSpec> refsSpec) throws IOException {
+    if (!useNegotiationTip) {
+      return Collections.emptyList();
+    }
+
+    List<String> tips = new ArrayList<>(refsSpec.size());
+    for (RefSpec refSpec : refsSpec) {
+      Ref localRef =
+          refSpec.isWildcard() || refSpec.getDestination() == null
+              ? null
+              : git.exactRef(refSpec.getDestination());
+      if (localRef == null || localRef.getObjectId() == null) {
+        return Collections.emptyList();
+      }
+      tips.add("--negotiation-tip=" + localRef.getObjectId().name());
     }
+    return tips;
   }
 
   protected URIish appendCredentials(URIish uri, CredentialsProvider credentialsProvider) {
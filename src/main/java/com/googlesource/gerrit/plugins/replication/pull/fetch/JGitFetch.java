@@ -49,8 +49,19 @@ public class JGitFetch implements Fetch {
   public List<RefUpdateState> fetch(List<RefSpec> refs) throws IOException {
     FetchResult res;
     try (Transport tn = transportProvider.open(git, uri)) {
+      // Following the tags would have the source advertise all of them, as well as the refs to
+      // fetch. The tags are replicated by their own ref-update events anyway.
+      if (TagOpt.AUTO_FOLLOW.equals(tn.getTagOpt())) {
+        tn.setTagOpt(TagOpt.NO_TAGS);
+      }
       res = fetchVia(tn, refs);
     }
+    repLog.info(
+        "[{}] Fetched references {} from {}, {} refs advertised",
+        taskIdHex,
+        refs,
+        uri,
+        res.getAdvertisedRefs().size());
     return res.getTrackingRefUpdates().stream()
         .map(value -> new RefUpdateState(value.getRemoteName(), value.getResult()))
         .collect(Collectors.toList());
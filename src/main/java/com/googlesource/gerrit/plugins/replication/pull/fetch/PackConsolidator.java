@@ -0,0 +1,346 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.LocalGitRepositoryManagerProvider;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.Pack;
+import org.eclipse.jgit.internal.storage.file.PackFile;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.internal.storage.pack.PackExt;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.GitDateParser;
+import org.eclipse.jgit.util.SystemReader;
+
+/**
+ * Merges the small packs written by the apply-object REST-API into a single pack.
+ *
+ * <p>When the objects are inserted with a pack inserter, every apply-object call adds a small pack
+ * to the repository. Once the number of packs added to a project reaches {@code
+ * replication.applyObjectMaxPacks}, the small packs added by the apply-object calls are merged in
+ * background, so that the reads do not have to look up the objects across a growing list of packs.
+ *
+ * <p>Only the packs older than the {@code gc.prunePackExpire} of the repository are merged and
+ * deleted, and never while a GC of the repository is running.
+ */
+@Singleton
+public class PackConsolidator implements LifecycleListener {
+  static final String PACK_CONSOLIDATOR_QUEUE_NAME = "PullReplication-PackConsolidator";
+  static final int DEFAULT_APPLY_OBJECT_MAX_PACKS = 50;
+  static final long DEFAULT_APPLY_OBJECT_SMALL_PACK_SIZE = 1024 * 1024;
+  static final String DEFAULT_PRUNE_PACK_EXPIRE = "1.hour.ago";
+
+  private final GitRepositoryManager gitManager;
+  private final WorkQueue workQueue;
+  private final int maxPacks;
+  private final long smallPackSize;
+  private final Map<Project.NameKey, Set<File>> insertedPacks = new ConcurrentHashMap<>();
+  private final Set<Project.NameKey> scheduledProjects = ConcurrentHashMap.newKeySet();
+  private volatile ScheduledExecutorService pool;
+
+  @Inject
+  PackConsolidator(
+      LocalGitRepositoryManagerProvider gitManagerProvider,
+      WorkQueue workQueue,
+      ReplicationConfig replicationConfig) {
+    Config cfg = replicationConfig.getConfig();
+    this.gitManager = gitManagerProvider.get();
+    this.workQueue = workQueue;
+    this.maxPacks =
+        cfg.getBoolean("replication", "applyObjectPackInserter", false)
+            ? Math.max(
+                0, cfg.getInt("replication", "applyObjectMaxPacks", DEFAULT_APPLY_OBJECT_MAX_PACKS))
+            : 0;
+    this.smallPackSize =
+        cfg.getLong(
+            "replication", "applyObjectSmallPackSize", DEFAULT_APPLY_OBJECT_SMALL_PACK_SIZE);
+  }
+
+  @Override
+  public void start() {
+    if (maxPacks > 0) {
+      pool = workQueue.createQueue(1, PACK_CONSOLIDATOR_QUEUE_NAME);
+    }
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService executor = pool;
+    if (executor != null) {
+      pool = null;
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Record a pack added to a project by the apply-object REST-API and schedule the merge of the
+   * small packs of the project when the maximum number of packs has been reached.
+   *
+   * @param project the project name.
+   * @param packFile the file of the added pack.
+   */
+  public void onPackInserted(Project.NameKey project, File packFile) {
+    ScheduledExecutorService executor = pool;
+    if (executor == null) {
+      return;
+    }
+
+    Set<File> packs = insertedPacks.computeIfAbsent(project, p -> ConcurrentHashMap.newKeySet());
+    packs.add(packFile);
+    if (packs.size() >= maxPacks && scheduledProjects.add(project)) {
+      executor.execute(
+          () -> {
+            try {
+              consolidate(project);
+            } catch (IOException e) {
+              repLog.error("Cannot merge the small packs of project {}", project, e);
+            } finally {
+              scheduledProjects.remove(project);
+            }
+          });
+    }
+  }
+
+  /**
+   * Merge the small packs added to a project by the apply-object REST-API into a single pack and
+   * delete them.
+   *
+   * @param project the project name.
+   * @return the number of packs that have been merged.
+   */
+  @VisibleForTesting
+  int consolidate(Project.NameKey project) throws IOException {
+    Set<File> packFiles = insertedPacks.get(project);
+    if (packFiles == null) {
+      return 0;
+    }
+
+    packFiles.removeIf(packFile -> !packFile.exists());
+    try (Repository git = gitManager.openRepository(project)) {
+      if (!(git.getObjectDatabase() instanceof ObjectDirectory)) {
+        return 0;
+      }
+      ObjectDirectory odb = (ObjectDirectory) git.getObjectDatabase();
+      long packExpire = getPackExpire(git);
+      List<Pack> smallPacks =
+          odb.getPacks().stream()
+              .filter(
+                  pack ->
+                      packFiles.contains(pack.getPackFile())
+                          && !pack.shouldBeKept()
+                          && pack.getPackFile().length() <= smallPackSize
+                          && pack.getPackFile().lastModified() < packExpire)
+              .collect(Collectors.toList());
+      if (smallPacks.size() < 2) {
+        return 0;
+      }
+
+      try (GcLock lock = GcLock.tryLock(git)) {
+        if (lock == null) {
+          repLog.info("Not merging the small packs of project {} during its GC", project);
+          return 0;
+        }
+
+        Pack mergedPack = merge(git, odb, smallPacks);
+
+        // The pack file is deleted first so that the pack is not considered valid anymore: the
+        // readers drop the deleted packs when failing to open them, and rescan the pack directory
+        // when missing an object.
+        for (Pack pack : smallPacks) {
+          if (pack.getPackFile().equals(mergedPack.getPackFile())) {
+            continue;
+          }
+          FileUtils.delete(pack.getPackFile(), FileUtils.RETRY | FileUtils.SKIP_MISSING);
+          for (PackExt ext : PackExt.values()) {
+            if (ext != PackExt.PACK) {
+              FileUtils.delete(
+                  pack.getPackFile().create(ext), FileUtils.RETRY | FileUtils.SKIP_MISSING);
+            }
+          }
+          packFiles.remove(pack.getPackFile());
+        }
+        packFiles.add(mergedPack.getPackFile());
+
+        repLog.info(
+            "Merged {} small packs with {} objects of project {}",
+            smallPacks.size(),
+            mergedPack.getIndex().getObjectCount(),
+            project);
+        return smallPacks.size();
+      }
+    }
+  }
+
+  /**
+   * Write the objects of the packs into a new pack, reusing their stored representation and
+   * deltas, and add it to the object directory.
+   */
+  private static Pack merge(Repository git, ObjectDirectory odb, List<Pack> packs)
+      throws IOException {
+    File packDir = odb.getPackDirectory();
+    File tmpPack = File.createTempFile("consolidate_", ".pack_tmp", packDir);
+    File tmpIdx = new File(packDir, tmpPack.getName().replace(".pack_tmp", ".idx_tmp"));
+    try (ObjectReader reader = git.newObjectReader();
+        RevWalk rw = new RevWalk(reader);
+        PackWriter pw = new PackWriter(new PackConfig(git), reader)) {
+      Set<ObjectId> ids = new HashSet<>();
+      List<RevObject> objects = new ArrayList<>();
+      for (Pack pack : packs) {
+        for (PackIndex.MutableEntry entry : pack) {
+          ObjectId id = entry.toObjectId();
+          if (ids.add(id)) {
+            objects.add(rw.lookupAny(id, reader.open(id).getType()));
+          }
+        }
+      }
+      pw.preparePack(objects.iterator());
+
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpPack))) {
+        pw.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, out);
+      }
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpIdx))) {
+        pw.writeIndex(out);
+      }
+
+      // A pack is only visible once its index is present, hence the index is moved last
+      PackFile packFile = new PackFile(packDir, pw.computeName(), PackExt.PACK);
+      FileUtils.rename(tmpPack, packFile, StandardCopyOption.ATOMIC_MOVE);
+      FileUtils.rename(tmpIdx, packFile.create(PackExt.INDEX), StandardCopyOption.ATOMIC_MOVE);
+      return odb.openPack(packFile);
+    } finally {
+      FileUtils.delete(tmpPack, FileUtils.SKIP_MISSING);
+      FileUtils.delete(tmpIdx, FileUtils.SKIP_MISSING);
+    }
+  }
+
+  private static long getPackExpire(Repository git) throws IOException {
+    String prunePackExpire =
+        git.getConfig()
+            .getString(
+                ConfigConstants.CONFIG_GC_SECTION,
+                null,
+                ConfigConstants.CONFIG_KEY_PRUNEPACKEXPIRE);
+    try {
+      return GitDateParser.parse(
+              prunePackExpire == null ? DEFAULT_PRUNE_PACK_EXPIRE : prunePackExpire,
+              null,
+              SystemReader.getInstance().getLocale())
+          .getTime();
+    } catch (ParseException e) {
+      throw new IOException("Invalid gc.prunePackExpire " + prunePackExpire, e);
+    }
+  }
+
+  /**
+   * The {@code gc.pid} lock of the JGit GC, which prevents the packs from being merged while the
+   * repository is repacked.
+   */
+  private static class GcLock implements AutoCloseable {
+    private static final Duration STALE_LOCK = Duration.ofHours(12);
+
+    private final Path pidFile;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private GcLock(Path pidFile, FileChannel channel, FileLock lock) {
+      this.pidFile = pidFile;
+      this.channel = channel;
+      this.lock = lock;
+    }
+
+    /** Take the lock, unless a GC of the repository is running. */
+    @Nullable
+    static GcLock tryLock(Repository git) throws IOException {
+      Path pidFile = git.getDirectory().toPath().resolve("gc.pid");
+      if (Files.exists(pidFile)
+          && Files.getLastModifiedTime(pidFile).toMillis()
+              > System.currentTimeMillis() - STALE_LOCK.toMillis()) {
+        return null;
+      }
+
+      FileChannel channel =
+          FileChannel.open(pidFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      try {
+        FileLock lock = channel.tryLock();
+        if (lock != null) {
+          String pid =
+              ProcessHandle.current().pid() + " " + SystemReader.getInstance().getHostname();
+          channel.truncate(0);
+          channel.write(ByteBuffer.wrap(pid.getBytes(StandardCharsets.UTF_8)));
+          return new GcLock(pidFile, channel, lock);
+        }
+      } catch (OverlappingFileLockException e) {
+        // Held by a GC running in this JVM
+      }
+      channel.close();
+      return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        Files.deleteIfExists(pidFile);
+        lock.release();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,293 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.transport;
+
+import static com.googlesource.gerrit.plugins.replication.pull.PullReplicationLogger.repLog;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.RemoteSession2;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.sshd.SshdSession;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * SSH sessions to the URIs of a source, kept open after a fetch for being reused by the next ones.
+ *
+ * <p>Each fetch executes its git command on a new channel of the session, so that reusing the
+ * session only saves the connection and the authentication to the source. A session is used by a
+ * single transport at a time and is disconnected once idle for longer than the idle timeout, or
+ * when the maximum number of idle sessions is reached.
+ *
+ * <p>The sessions closed while idle are not reused. As the source can also drop a connection
+ * without the session noticing it, a reused session whose first command fails is replaced by a new
+ * one and the command is executed again.
+ */
+class SshSessionPool extends SshSessionFactory {
+  private static class IdleSession {
+    final RemoteSession session;
+    final long idleSinceNanos;
+
+    IdleSession(RemoteSession session, long idleSinceNanos) {
+      this.session = session;
+      this.idleSinceNanos = idleSinceNanos;
+    }
+  }
+
+  private final SshSessionFactory delegate;
+  private final String sourceName;
+  private final TransportMetrics metrics;
+  private final int maxIdle;
+  private final long idleTimeoutNanos;
+
+  // Guarded by this
+  private final Map<String, Deque<IdleSession>> idle = new HashMap<>();
+  private final Map<RemoteSession, String> leased = new IdentityHashMap<>();
+  private int idleCount;
+  private boolean closed;
+
+  private final Set<RemoteSession> disconnected = ConcurrentHashMap.newKeySet();
+
+  SshSessionPool(
+      SshSessionFactory delegate,
+      String sourceName,
+      TransportMetrics metrics,
+      int maxIdle,
+      long idleTimeoutNanos) {
+    this.delegate = delegate;
+    this.sourceName = sourceName;
+    this.metrics = metrics;
+    this.maxIdle = maxIdle;
+    this.idleTimeoutNanos = idleTimeoutNanos;
+  }
+
+  @Override
+  public RemoteSession getSession(
+      URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+      throws TransportException {
+    String key = keyOf(uri);
+    RemoteSession session = takeIdle(key);
+    if (session != null) {
+      metrics.recordSessionReused(sourceName);
+      synchronized (this) {
+        leased.put(session, key);
+      }
+      return new ReusedSession(session, key, uri, credentialsProvider, fs, tms);
+    }
+
+    session = newSession(uri, credentialsProvider, fs, tms);
+    synchronized (this) {
+      leased.put(session, key);
+    }
+    return session;
+  }
+
+  @Override
+  public void releaseSession(RemoteSession session) {
+    RemoteSession pooled =
+        session instanceof ReusedSession ? ((ReusedSession) session).session : session;
+    String key;
+    synchronized (this) {
+      key = leased.remove(pooled);
+    }
+    if (key == null || disconnected.contains(pooled) || !offerIdle(key, pooled)) {
+      disconnect(pooled);
+    }
+  }
+
+  @Override
+  public String getType() {
+    return delegate.getType();
+  }
+
+  /** Disconnect all the idle sessions and stop keeping the released ones. */
+  void close() {
+    List<RemoteSession> toRelease = new ArrayList<>();
+    synchronized (this) {
+      idle.values().forEach(sessions -> sessions.forEach(s -> toRelease.add(s.session)));
+      idle.clear();
+      idleCount = 0;
+      closed = true;
+    }
+    toRelease.forEach(this::disconnect);
+  }
+
+  private RemoteSession newSession(
+      URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+      throws TransportException {
+    long startNanos = System.nanoTime();
+    RemoteSession session = delegate.getSession(uri, credentialsProvider, fs, tms);
+    metrics.recordSessionCreated(sourceName, System.nanoTime() - startNanos);
+    if (session instanceof SshdSession) {
+      ((SshdSession) session).addCloseListener(disconnected::add);
+    }
+    return session;
+  }
+
+  private void disconnect(RemoteSession session) {
+    delegate.releaseSession(session);
+    disconnected.remove(session);
+  }
+
+  private RemoteSession takeIdle(String key) {
+    List<RemoteSession> expired = new ArrayList<>();
+    RemoteSession session = null;
+    synchronized (this) {
+      evictExpired(expired);
+      Deque<IdleSession> sessions = idle.get(key);
+      while (session == null && sessions != null && !sessions.isEmpty()) {
+        // The most recently used session is the least likely to be dropped by the source
+        RemoteSession candidate = sessions.pollLast().session;
+        idleCount--;
+        if (disconnected.contains(candidate)) {
+          expired.add(candidate);
+        } else {
+          session = candidate;
+        }
+      }
+      if (sessions != null && sessions.isEmpty()) {
+        idle.remove(key);
+      }
+    }
+    expired.forEach(this::disconnect);
+    return session;
+  }
+
+  private boolean offerIdle(String key, RemoteSession session) {
+    List<RemoteSession> expired = new ArrayList<>();
+    boolean offered = false;
+    synchronized (this) {
+      evictExpired(expired);
+      if (!closed && idleCount < maxIdle) {
+        idle.computeIfAbsent(key, k -> new ArrayDeque<>())
+            .addLast(new IdleSession(session, System.nanoTime()));
+        idleCount++;
+        offered = true;
+      }
+    }
+    expired.forEach(this::disconnect);
+    return offered;
+  }
+
+  private void evictExpired(List<RemoteSession> expired) {
+    long now = System.nanoTime();
+    Iterator<Deque<IdleSession>> keys = idle.values().iterator();
+    while (keys.hasNext()) {
+      Deque<IdleSession> sessions = keys.next();
+      while (!sessions.isEmpty() && now - sessions.peekFirst().idleSinceNanos > idleTimeoutNanos) {
+        expired.add(sessions.pollFirst().session);
+        idleCount--;
+      }
+      if (sessions.isEmpty()) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * A session taken from the pool, which is replaced by a new session when its first command fails.
+   */
+  private class ReusedSession implements RemoteSession2 {
+    private final String key;
+    private final URIish uri;
+    private final CredentialsProvider credentialsProvider;
+    private final FS fs;
+    private final int tms;
+    private RemoteSession session;
+    private boolean executed;
+
+    ReusedSession(
+        RemoteSession session,
+        String key,
+        URIish uri,
+        CredentialsProvider credentialsProvider,
+        FS fs,
+        int tms) {
+      this.session = session;
+      this.key = key;
+      this.uri = uri;
+      this.credentialsProvider = credentialsProvider;
+      this.fs = fs;
+      this.tms = tms;
+    }
+
+    @Override
+    public Process exec(String commandName, int timeout) throws IOException {
+      return exec(s -> s.exec(commandName, timeout));
+    }
+
+    @Override
+    public Process exec(String commandName, Map<String, String> environment, int timeout)
+        throws IOException {
+      return exec(
+          s ->
+              s instanceof RemoteSession2
+                  ? ((RemoteSession2) s).exec(commandName, environment, timeout)
+                  : s.exec(commandName, timeout));
+    }
+
+    @Override
+    public void disconnect() {
+      session.disconnect();
+    }
+
+    private synchronized Process exec(Command command) throws IOException {
+      if (executed) {
+        return command.exec(session);
+      }
+
+      executed = true;
+      try {
+        return command.exec(session);
+      } catch (IOException | IllegalStateException e) {
+        repLog.warn(
+            "Cannot execute a command on the reused SSH session to {}, retrying on a new session",
+            uri,
+            e);
+      }
+
+      RemoteSession dropped = session;
+      session = newSession(uri, credentialsProvider, fs, tms);
+      synchronized (SshSessionPool.this) {
+        leased.remove(dropped);
+        leased.put(session, key);
+      }
+      SshSessionPool.this.disconnect(dropped);
+      return command.exec(session);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Command {
+    Process exec(RemoteSession session) throws IOException;
+  }
+
+  private static String keyOf(URIish uri) {
+    return uri.getUser() + "@" + uri.getHost() + ":" + uri.getPort();
+  }
+}
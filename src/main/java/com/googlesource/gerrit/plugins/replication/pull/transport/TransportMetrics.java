@@ -0,0 +1,89 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.transport;
+
+import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.concurrent.TimeUnit;
+
+@Singleton
+public class TransportMetrics {
+  private final Counter1<String> sessionsCreated;
+  private final Counter1<String> sessionsReused;
+  private final Timer1<String> handshakeTime;
+
+  @Inject
+  TransportMetrics(@PluginName String pluginName, MetricMaker metricMaker) {
+    Field<String> SOURCE_FIELD =
+        Field.ofString(
+                "pull_replication",
+                (metadataBuilder, fieldValue) ->
+                    metadataBuilder
+                        .pluginName(pluginName)
+                        .addPluginMetadata(PluginMetadata.create("pull_replication", fieldValue)))
+            .build();
+
+    sessionsCreated =
+        metricMaker.newCounter(
+            "transport_sessions_created",
+            new Description("Number of SSH sessions opened for fetching from a source")
+                .setRate()
+                .setUnit("sessions"),
+            SOURCE_FIELD);
+
+    sessionsReused =
+        metricMaker.newCounter(
+            "transport_sessions_reused",
+            new Description("Number of fetches reusing an idle SSH session to a source")
+                .setRate()
+                .setUnit("sessions"),
+            SOURCE_FIELD);
+
+    handshakeTime =
+        metricMaker.newTimer(
+            "transport_session_handshake_latency",
+            new Description("Time spent opening and authenticating an SSH session to a source")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            SOURCE_FIELD);
+  }
+
+  /**
+   * Record the opening of a new session to a source.
+   *
+   * @param name the source name.
+   * @param handshakeNanos time spent opening the session in nanos.
+   */
+  public void recordSessionCreated(String name, long handshakeNanos) {
+    sessionsCreated.increment(name);
+    handshakeTime.record(name, handshakeNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Record the reuse of an idle session to a source.
+   *
+   * @param name the source name.
+   */
+  public void recordSessionReused(String name) {
+    sessionsReused.increment(name);
+  }
+}
@@ -23,11 +23,14 @@ import com.googlesource.gerrit.plugins.replication.CredentialsFactory;
 import com.googlesource.gerrit.plugins.replication.pull.BearerTokenProvider;
 import com.googlesource.gerrit.plugins.replication.pull.SourceConfiguration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.Transport;
 import org.eclipse.jgit.transport.TransportHttp;
 import org.eclipse.jgit.transport.URIish;
@@ -35,21 +38,37 @@ import org.eclipse.jgit.transport.URIish;
 /**
  * This class is responsible for setting bearer token header for Bearer Token Authentication using
  * {@link org.eclipse.jgit.transport.TransportHttp#setAdditionalHeaders(java.util.Map)} method.
+ *
+ * <p>When {@code remote.NAME.sshSessionPoolSize} is set, the SSH transports share the sessions to
+ * the source through a {@link SshSessionPool}.
  */
 @Singleton
 public class TransportProvider {
   private final RemoteConfig remoteConfig;
   private final CredentialsProvider credentialsProvider;
   private final Optional<String> bearerToken;
+  private final Optional<SshSessionPool> sshSessionPool;
 
   @Inject
   public TransportProvider(
       SourceConfiguration sourceConfig,
       CredentialsFactory cpFactory,
-      BearerTokenProvider bearerTokenProvider) {
+      BearerTokenProvider bearerTokenProvider,
+      TransportMetrics metrics) {
     this.remoteConfig = sourceConfig.getRemoteConfig();
     this.credentialsProvider = cpFactory.create(remoteConfig.getName());
     this.bearerToken = bearerTokenProvider.get();
+    int sshSessionPoolSize = sourceConfig.getSshSessionPoolSize();
+    this.sshSessionPool =
+        sshSessionPoolSize > 0
+            ? Optional.of(
+                new SshSessionPool(
+                    SshSessionFactory.getInstance(),
+                    remoteConfig.getName(),
+                    metrics,
+                    sshSessionPoolSize,
+                    TimeUnit.SECONDS.toNanos(sourceConfig.getSshSessionIdleTimeoutSec())))
+            : Optional.empty();
   }
 
   public Transport open(Repository local, URIish uri)
@@ -62,6 +81,14 @@ public class TransportProvider {
     } else {
       tn.setCredentialsProvider(credentialsProvider);
     }
+    if (tn instanceof SshTransport) {
+      sshSessionPool.ifPresent(((SshTransport) tn)::setSshSessionFactory);
+    }
     return tn;
   }
+
+  /** Disconnect the SSH sessions kept open for reuse. */
+  public void close() {
+    sshSessionPool.ifPresent(SshSessionPool::close);
+  }
 }
@@ -0,0 +1,129 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ApiCallsExecutorTest {
+  private static final String API_URL = "http://target1.com";
+  private static final String ANOTHER_API_URL = "http://target2.com";
+  private static final long TIMEOUT_SECS = 10;
+
+  @Mock private WorkQueue workQueue;
+  @Mock private ReplicationConfig replicationConfig;
+  @Mock private Source source;
+
+  private ApiCallsExecutor objectUnderTest;
+
+  @Before
+  public void setup() {
+    when(replicationConfig.getConfig()).thenReturn(new Config());
+    when(workQueue.createQueue(anyInt(), anyString()))
+        .thenReturn(new ScheduledThreadPoolExecutor(2));
+    when(source.getApis()).thenReturn(ImmutableList.of(API_URL, ANOTHER_API_URL));
+    lenient().when(source.getRemoteConfigName()).thenReturn("source");
+    lenient()
+        .when(source.getApiCallTimeout())
+        .thenReturn((int) TimeUnit.SECONDS.toMillis(TIMEOUT_SECS));
+
+    objectUnderTest =
+        new ApiCallsExecutor(
+            replicationConfig, workQueue, "pull-replication", new DisabledMetricMaker());
+    objectUnderTest.start();
+  }
+
+  @After
+  public void tearDown() {
+    objectUnderTest.stop();
+  }
+
+  @Test
+  public void shouldCallAllApiUrlsInParallel() throws Exception {
+    CountDownLatch allCalled = new CountDownLatch(2);
+
+    boolean result =
+        objectUnderTest.callAll(
+            source,
+            apiUrl -> {
+              allCalled.countDown();
+              return allCalled.await(TIMEOUT_SECS, TimeUnit.SECONDS);
+            });
+
+    assertThat(result).isTrue();
+  }
+
+  @Test
+  public void shouldFailWhenOneApiUrlCallFails() throws Exception {
+    assertThat(objectUnderTest.callAll(source, apiUrl -> apiUrl.equals(API_URL))).isFalse();
+  }
+
+  @Test
+  public void shouldFailWhenOneApiUrlCallDoesNotCompleteWithinTheDeadline() throws Exception {
+    when(source.getApiCallTimeout()).thenReturn(100);
+    CountDownLatch hungCall = new CountDownLatch(1);
+
+    boolean result =
+        objectUnderTest.callAll(
+            source,
+            apiUrl -> {
+              if (apiUrl.equals(ANOTHER_API_URL)) {
+                hungCall.await(TIMEOUT_SECS, TimeUnit.SECONDS);
+              }
+              return true;
+            });
+
+    assertThat(result).isFalse();
+    hungCall.countDown();
+  }
+
+  @Test
+  public void shouldRethrowTheExceptionOfAnApiUrlCall() {
+    assertThrows(
+        MissingParentObjectException.class,
+        () ->
+            objectUnderTest.callAll(
+                source,
+                apiUrl -> {
+                  if (apiUrl.equals(ANOTHER_API_URL)) {
+                    throw new MissingParentObjectException(
+                        Project.nameKey("aProject"), "refs/heads/master", "source");
+                  }
+                  return true;
+                }));
+  }
+}
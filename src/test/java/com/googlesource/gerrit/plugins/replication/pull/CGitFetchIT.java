@@ -34,6 +34,7 @@ import com.googlesource.gerrit.plugins.replication.AutoReloadSecureCredentialsFa
 import com.googlesource.gerrit.plugins.replication.CredentialsFactory;
 import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.ReplicationFileBasedConfig;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.AdaptiveRefsBatchSize;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.BatchFetchClient;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.CGitFetch;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.Fetch;
@@ -42,6 +43,7 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.FetchFactory;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Optional;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Ref;
@@ -166,9 +168,19 @@ public class CGitFetchIT extends FetchITBase {
     when(fetchFactory.createPlainImpl(TEST_TASK_ID, uri, repo)).thenReturn(fetchClient);
     when(fetchClient.fetch(any())).thenReturn(fetchResultList);
 
+    Source source = mock(Source.class);
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.empty());
+    when(source.getRefsBatchSize())
+        .thenReturn(
+            new AdaptiveRefsBatchSize(
+                sourceConfig.getRefsBatchSize(),
+                sourceConfig.getRefsBatchSizeMin(),
+                sourceConfig.getRefsBatchSizeMax(),
+                sourceConfig.getRefsBatchTargetLatencyMs()));
+
     Fetch objectUnderTest =
         new BatchFetchClient(
-            sourceConfig, fetchFactory, TEST_TASK_ID, new URIish(testRepoPath.toString()), repo);
+            fetchFactory, source, TEST_TASK_ID, new URIish(testRepoPath.toString()), repo);
 
     objectUnderTest.fetch(
         Lists.newArrayList(
@@ -204,6 +216,36 @@ public class CGitFetchIT extends FetchITBase {
     }
   }
 
+  @Test
+  public void shouldFetchExistingRefUsingItsLocalValueAsNegotiationTip() throws Exception {
+    String testProjectName = project + TEST_REPLICATION_SUFFIX;
+    createTestProject(testProjectName);
+    String master = "refs/heads/master";
+    String sourceRevision = gApi.projects().name(testProjectName).branch(master).get().revision;
+
+    Config cf = new Config();
+    cf.setInt("remote", "test_config", "timeout", 0);
+    cf.setBoolean("replication", null, "useNegotiationTip", true);
+    SourceConfiguration sourceConfig =
+        new SourceConfiguration(new RemoteConfig(cf, "test_config"), cf);
+
+    try (Repository repo = repoManager.openRepository(project)) {
+      assertThat(getRef(repo, master)).isNotNull();
+      Fetch objectUnderTest =
+          new CGitFetch(
+              sourceConfig,
+              plugin.getSysInjector().getInstance(CredentialsFactory.class),
+              TEST_TASK_ID,
+              new URIish(testRepoPath.toString()),
+              repo);
+
+      objectUnderTest.fetch(Lists.newArrayList(new RefSpec("+" + master + ":" + master)));
+
+      Ref targetBranchRef = getRef(repo, master);
+      assertThat(targetBranchRef.getObjectId().getName()).isEqualTo(sourceRevision);
+    }
+  }
+
   @Test(expected = TransportException.class)
   public void shouldThrowExceptionWhenBranchDoesNotExists() throws Exception {
     String testProjectName = project + TEST_REPLICATION_SUFFIX;
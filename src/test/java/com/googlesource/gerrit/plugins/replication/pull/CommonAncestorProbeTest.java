@@ -0,0 +1,103 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class CommonAncestorProbeTest {
+  private final List<List<ObjectId>> probes = new ArrayList<>();
+
+  @Test
+  public void shouldFindNoMissingAncestorsWhenThereAreNoAncestors() throws Exception {
+    assertThat(CommonAncestorProbe.missingAncestors(List.of(), targetWithAncestorsFrom(0)))
+        .isEqualTo(0);
+    assertThat(probes).isEmpty();
+  }
+
+  @Test
+  public void shouldFindNoMissingAncestorsWhenTheDirectParentIsPresent() throws Exception {
+    assertThat(CommonAncestorProbe.missingAncestors(ancestors(10), targetWithAncestorsFrom(0)))
+        .isEqualTo(0);
+    assertThat(probes).hasSize(1);
+  }
+
+  @Test
+  public void shouldFindAllAncestorsMissingWhenNoneIsPresent() throws Exception {
+    List<ObjectId> ancestors = ancestors(10);
+
+    assertThat(CommonAncestorProbe.missingAncestors(ancestors, targetWithAncestorsFrom(10)))
+        .isEqualTo(10);
+    assertThat(probes).hasSize(1);
+    assertThat(probes.get(0))
+        .containsExactly(
+            ancestors.get(0),
+            ancestors.get(1),
+            ancestors.get(3),
+            ancestors.get(7),
+            ancestors.get(9))
+        .inOrder();
+  }
+
+  @Test
+  public void shouldFindTheMissingAncestorsAtAProbedDistance() throws Exception {
+    assertThat(CommonAncestorProbe.missingAncestors(ancestors(100), targetWithAncestorsFrom(8)))
+        .isEqualTo(8);
+    assertThat(probes).hasSize(2);
+  }
+
+  @Test
+  public void shouldFindTheMissingAncestorsBetweenTwoProbedDistances() throws Exception {
+    List<ObjectId> ancestors = ancestors(100);
+
+    assertThat(CommonAncestorProbe.missingAncestors(ancestors, targetWithAncestorsFrom(21)))
+        .isEqualTo(21);
+    assertThat(probes).hasSize(2);
+    assertThat(probes.get(1)).containsExactlyElementsIn(ancestors.subList(16, 31)).inOrder();
+  }
+
+  @Test
+  public void shouldFindASingleMissingAncestorInOneRound() throws Exception {
+    assertThat(CommonAncestorProbe.missingAncestors(ancestors(100), targetWithAncestorsFrom(1)))
+        .isEqualTo(1);
+    assertThat(probes).hasSize(1);
+  }
+
+  private static List<ObjectId> ancestors(int count) {
+    List<ObjectId> ancestors = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      ancestors.add(ancestorAt(i));
+    }
+    return ancestors;
+  }
+
+  /** Target having all the ancestors older than the {@code missing} newest ones. */
+  private CommonAncestorProbe.Target targetWithAncestorsFrom(int missing) {
+    return candidates -> {
+      probes.add(candidates);
+      return candidates.stream()
+          .filter(candidate -> candidate.compareTo(ancestorAt(missing)) >= 0)
+          .findFirst();
+    };
+  }
+
+  private static ObjectId ancestorAt(int index) {
+    return ObjectId.fromString(String.format("%040x", index + 1));
+  }
+}
@@ -0,0 +1,239 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FetchCallsDispatcherTest {
+  private static final long TIMEOUT_SECS = 10;
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final Project.NameKey ANOTHER_PROJECT = Project.nameKey("another-project");
+
+  @Mock private WorkQueue workQueue;
+  @Mock private ReplicationConfig replicationConfig;
+  @Mock private Source source;
+  @Mock private Source anotherSource;
+
+  private Config config;
+  private ScheduledThreadPoolExecutor executor;
+  private FetchCallsDispatcher objectUnderTest;
+
+  @Before
+  public void setup() {
+    config = new Config();
+    executor = new ScheduledThreadPoolExecutor(2);
+    when(replicationConfig.getConfig()).thenReturn(config);
+    when(workQueue.createQueue(anyInt(), anyString())).thenReturn(executor);
+    when(source.getRemoteConfigName()).thenReturn("source");
+  }
+
+  @After
+  public void tearDown() {
+    objectUnderTest.stop();
+  }
+
+  @Test
+  public void shouldExecuteCallForAllSourcesAndThenComplete() throws Exception {
+    when(anotherSource.getRemoteConfigName()).thenReturn("anotherSource");
+    objectUnderTest = newDispatcher();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch completed = new CountDownLatch(1);
+
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source, anotherSource),
+        s -> calls.incrementAndGet(),
+        s -> {},
+        completed::countDown);
+
+    assertThat(completed.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldDispatchFetchCallsWhenQueueIsFullAndBackpressureIsFetch() throws Exception {
+    config.setInt("replication", null, "fetchCallsQueueSize", 1);
+    config.setString("replication", null, "fetchCallsBackpressure", "fetch");
+    objectUnderTest = newDispatcher();
+    CountDownLatch releaseFirstCall = new CountDownLatch(1);
+    CountDownLatch fetchCalled = new CountDownLatch(1);
+
+    objectUnderTest.dispatch(
+        PROJECT, ImmutableList.of(source), await(releaseFirstCall), s -> {}, () -> {});
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source),
+        s -> {
+          throw new IllegalStateException("apply-object call not expected");
+        },
+        s -> fetchCalled.countDown(),
+        () -> {});
+
+    releaseFirstCall.countDown();
+    assertThat(fetchCalled.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void shouldSpillEventsWhenQueueIsFullAndBackpressureIsSpill() throws Exception {
+    config.setInt("replication", null, "fetchCallsQueueSize", 1);
+    config.setString("replication", null, "fetchCallsBackpressure", "spill");
+    objectUnderTest = newDispatcher();
+    CountDownLatch releaseFirstCall = new CountDownLatch(1);
+    CountDownLatch spilledCompleted = new CountDownLatch(1);
+    AtomicInteger spilledCalls = new AtomicInteger();
+
+    objectUnderTest.dispatch(
+        PROJECT, ImmutableList.of(source), await(releaseFirstCall), s -> {}, () -> {});
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source),
+        s -> spilledCalls.incrementAndGet(),
+        s -> {},
+        spilledCompleted::countDown);
+
+    assertThat(spilledCalls.get()).isEqualTo(0);
+    releaseFirstCall.countDown();
+    assertThat(spilledCompleted.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(spilledCalls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotExceedMaxCallsPerSource() throws Exception {
+    config.setInt("replication", null, "fetchCallsMaxPerSource", 1);
+    objectUnderTest = newDispatcher();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch completed = new CountDownLatch(3);
+
+    for (int i = 0; i < 3; i++) {
+      objectUnderTest.dispatch(
+          Project.nameKey("project-" + i),
+          ImmutableList.of(source),
+          s -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            running.decrementAndGet();
+          },
+          s -> {},
+          completed::countDown);
+    }
+
+    assertThat(completed.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxRunning.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldExecuteTheCallsOfTheSameProjectInOrder() throws Exception {
+    objectUnderTest = newDispatcher();
+    CountDownLatch releaseFirstCall = new CountDownLatch(1);
+    CountDownLatch anotherProjectCalled = new CountDownLatch(1);
+    CountDownLatch completed = new CountDownLatch(2);
+    List<String> calls = new CopyOnWriteArrayList<>();
+
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source),
+        s -> {
+          await(releaseFirstCall).accept(s);
+          calls.add("first");
+        },
+        s -> {},
+        completed::countDown);
+    objectUnderTest.dispatch(
+        PROJECT, ImmutableList.of(source), s -> calls.add("second"), s -> {}, completed::countDown);
+    objectUnderTest.dispatch(
+        ANOTHER_PROJECT,
+        ImmutableList.of(source),
+        s -> anotherProjectCalled.countDown(),
+        s -> {},
+        () -> {});
+
+    assertThat(anotherProjectCalled.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(calls).isEmpty();
+    releaseFirstCall.countDown();
+    assertThat(completed.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(calls).containsExactly("first", "second").inOrder();
+  }
+
+  @Test
+  public void shouldCompleteTheDiscardedCallsWhenStopping() throws Exception {
+    objectUnderTest = newDispatcher();
+    CountDownLatch firstCallStarted = new CountDownLatch(1);
+    CountDownLatch discardedCompleted = new CountDownLatch(1);
+    AtomicInteger discardedCalls = new AtomicInteger();
+
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source),
+        s -> {
+          firstCallStarted.countDown();
+          await(new CountDownLatch(1)).accept(s);
+        },
+        s -> {},
+        () -> {});
+    objectUnderTest.dispatch(
+        PROJECT,
+        ImmutableList.of(source),
+        s -> discardedCalls.incrementAndGet(),
+        s -> {},
+        discardedCompleted::countDown);
+
+    assertThat(firstCallStarted.await(TIMEOUT_SECS, TimeUnit.SECONDS)).isTrue();
+    assertThat(objectUnderTest.stop()).isEqualTo(1);
+    assertThat(discardedCompleted.getCount()).isEqualTo(0);
+    assertThat(discardedCalls.get()).isEqualTo(0);
+  }
+
+  private FetchCallsDispatcher newDispatcher() {
+    FetchCallsDispatcher dispatcher =
+        new FetchCallsDispatcher(
+            replicationConfig, workQueue, "pull-replication", new DisabledMetricMaker());
+    dispatcher.start();
+    return dispatcher;
+  }
+
+  private static Consumer<Source> await(CountDownLatch latch) {
+    return s -> {
+      try {
+        latch.await(TIMEOUT_SECS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class FetchLaneTest {
+
+  @Test
+  public void shouldUseBulkLaneForAllRefs() {
+    assertThat(FetchLane.of(ReplicationType.ASYNC, FetchOne.ALL_REFS)).isEqualTo(FetchLane.BULK);
+    assertThat(FetchLane.of(ReplicationType.SYNC, FetchOne.ALL_REFS)).isEqualTo(FetchLane.BULK);
+  }
+
+  @Test
+  public void shouldUseSyncLaneForSyncFetches() {
+    assertThat(FetchLane.of(ReplicationType.SYNC, "refs/changes/01/1/1")).isEqualTo(FetchLane.SYNC);
+    assertThat(FetchLane.of(ReplicationType.SYNC, "refs/changes/01/1/meta"))
+        .isEqualTo(FetchLane.SYNC);
+  }
+
+  @Test
+  public void shouldUseMetaLaneForAsyncNoteDbMetaRefs() {
+    assertThat(FetchLane.of(ReplicationType.ASYNC, "refs/changes/01/1/meta"))
+        .isEqualTo(FetchLane.META);
+  }
+
+  @Test
+  public void shouldUseAsyncLaneForOtherAsyncRefs() {
+    assertThat(FetchLane.of(ReplicationType.ASYNC, "refs/heads/master"))
+        .isEqualTo(FetchLane.ASYNC);
+  }
+
+  @Test
+  public void shouldOrderTheLanesByPriority() {
+    assertThat(FetchLane.SYNC.isMoreUrgentThan(FetchLane.META)).isTrue();
+    assertThat(FetchLane.META.isMoreUrgentThan(FetchLane.ASYNC)).isTrue();
+    assertThat(FetchLane.ASYNC.isMoreUrgentThan(FetchLane.BULK)).isTrue();
+    assertThat(FetchLane.BULK.isMoreUrgentThan(FetchLane.BULK)).isFalse();
+  }
+}
@@ -32,10 +32,15 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RefSpec;
@@ -95,19 +100,7 @@ public class FetchOneTest {
     int maxLockRetries = 1;
     when(source.getLockErrorMaxRetries()).thenReturn(maxLockRetries);
 
-    objectUnderTest =
-        new FetchOne(
-            grm,
-            source,
-            sourceConfiguration,
-            scoper,
-            idGenerator,
-            replicationStateListeners,
-            fetchReplicationMetrics,
-            fetchFactory,
-            PROJECT_NAME,
-            urIish,
-            Optional.of(pullReplicationApiRequestMetrics));
+    objectUnderTest = newFetchOne(fetchReplicationMetrics);
   }
 
   @Test
@@ -125,6 +118,17 @@ public class FetchOneTest {
     assertThat(objectUnderTest.toString()).isEqualTo(expected);
   }
 
+  @Test
+  public void shouldOnlyPromoteTheLaneToAHigherPriorityOne() {
+    objectUnderTest.setLane(FetchLane.META);
+
+    objectUnderTest.promoteLane(FetchLane.BULK);
+    assertThat(objectUnderTest.getLane()).isEqualTo(FetchLane.META);
+
+    objectUnderTest.promoteLane(FetchLane.SYNC);
+    assertThat(objectUnderTest.getLane()).isEqualTo(FetchLane.SYNC);
+  }
+
   @Test
   public void shouldAddARefToTheDeltaIfItsNotTheAllRefs() {
     Set<String> refs = Set.of(TEST_REF);
@@ -199,14 +203,48 @@ public class FetchOneTest {
   }
 
   @Test
-  public void shouldRescheduleReplicationTaskAndExitIfTheQueueLockCantBeObtained()
+  public void shouldFollowTheInFlightTaskAndExitIfTheQueueLockCantBeObtained()
       throws Exception {
     setupMocks(false);
 
     objectUnderTest.run();
 
     verify(source, never()).notifyFinished(objectUnderTest);
-    verify(source).reschedule(objectUnderTest, Source.RetryReason.COLLISION);
+    verify(source, never()).reschedule(any(), any());
+  }
+
+  @Test
+  public void shouldKeepTheStatesWhenFollowingTheInFlightTask() throws Exception {
+    setupMocks(false);
+    List<ReplicationState> states = createTestStates(TEST_REF, 1);
+
+    objectUnderTest.run();
+
+    verify(states.get(0), never()).notifyRefReplicated(any(), any(), any(), any(), any());
+    assertThat(objectUnderTest.getStates().get(TEST_REF)).containsExactlyElementsIn(states);
+  }
+
+  @Test
+  public void shouldRecordTheTimeWaitedForAThreadOnceTheScheduledDelayElapsed() throws Exception {
+    setupMocks(false);
+    FetchReplicationMetrics metrics = mock(FetchReplicationMetrics.class);
+    FetchOne fetchOp = newFetchOne(metrics);
+    fetchOp.setScheduledDelay(0, TimeUnit.SECONDS);
+
+    fetchOp.run();
+
+    verify(metrics).recordQueueWait(any(), longThat(wait -> wait >= 0));
+  }
+
+  @Test
+  public void shouldNotRecordTheQueueWaitOfATaskThatWasNotScheduled() throws Exception {
+    setupMocks(false);
+    FetchReplicationMetrics metrics = mock(FetchReplicationMetrics.class);
+    FetchOne fetchOp = newFetchOne(metrics);
+
+    fetchOp.run();
+
+    verify(metrics, never()).recordQueueWait(any(), anyLong());
   }
 
   @Test
@@ -265,6 +303,43 @@ public class FetchOneTest {
             TEST_PROJECT_NAME, someRef, urIish, ReplicationState.RefFetchResult.FAILED, null);
   }
 
+  @Test
+  public void shouldNotFetchARefWhoseLocalValueIsAlreadyItsNewRev() throws Exception {
+    setupMocks(true);
+    ObjectId newRev = ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a");
+    setupRemoteConfigMock(List.of(new RefSpec(TEST_REF + ":" + TEST_REF)));
+    setupLocalRefMock(TEST_REF, newRev);
+    List<ReplicationState> states = createTestStates(TEST_REF, 1);
+    objectUnderTest.addRef(TEST_REF, Optional.of(newRev));
+
+    objectUnderTest.run();
+
+    verify(fetchFactory, never()).create(any(), any(), any());
+    verify(states.get(0))
+        .notifyRefReplicated(
+            TEST_PROJECT_NAME,
+            TEST_REF,
+            urIish,
+            ReplicationState.RefFetchResult.SUCCEEDED,
+            RefUpdate.Result.NO_CHANGE);
+  }
+
+  @Test
+  public void shouldFetchARefWhoseLocalValueIsNotItsNewRev() throws Exception {
+    setupMocks(true);
+    String refSpec = TEST_REF + ":" + TEST_REF;
+    Fetch mockFetch =
+        setupFetchFactoryMock(
+            List.of(new FetchFactoryEntry.Builder().refSpecNameWithDefaults(refSpec).build()));
+    setupLocalRefMock(TEST_REF, ObjectId.fromString("b5d7bcf1d1c5b0f0726d10a16c8315f06f900bfb"));
+    objectUnderTest.addRef(
+        TEST_REF, Optional.of(ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a")));
+
+    objectUnderTest.run();
+
+    verify(mockFetch).fetch(List.of(new RefSpec(refSpec)));
+  }
+
   @Test(expected = InternalError.class)
   public void shouldThrowAnExceptionForUnrecoverableErrors() {
     setupFailingScopeMock();
@@ -754,6 +829,21 @@ public class FetchOneTest {
     when(scoper.scope(any())).thenThrow(new InternalError());
   }
 
+  private FetchOne newFetchOne(FetchReplicationMetrics fetchReplicationMetrics) {
+    return new FetchOne(
+        grm,
+        source,
+        sourceConfiguration,
+        scoper,
+        idGenerator,
+        replicationStateListeners,
+        fetchReplicationMetrics,
+        fetchFactory,
+        PROJECT_NAME,
+        urIish,
+        Optional.of(pullReplicationApiRequestMetrics));
+  }
+
   private void setupMocks(boolean runawayAllowed) throws Exception {
     setupRequestScopeMock();
     setupSourceMock(runawayAllowed);
@@ -768,6 +858,13 @@ public class FetchOneTest {
     when(grm.openRepository(PROJECT_NAME)).thenReturn(repository);
   }
 
+  private void setupLocalRefMock(String ref, ObjectId objectId) throws IOException {
+    RefDatabase refDatabase = mock(RefDatabase.class);
+    when(repository.getRefDatabase()).thenReturn(refDatabase);
+    when(refDatabase.exactRef(ref))
+        .thenReturn(Map.of(ref, new ObjectIdRef.PeeledNonTag(Ref.Storage.LOOSE, ref, objectId)));
+  }
+
   private List<ReplicationState> createTestStates(String ref, int numberOfStates) {
     List<ReplicationState> states =
         IntStream.rangeClosed(1, numberOfStates)
@@ -0,0 +1,295 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FetchQueueTest {
+  private static final int THREADS = 8;
+  private static final int UPDATES_PER_THREAD = 1000;
+
+  private URIish uri;
+  private FetchQueue objectUnderTest;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() throws Exception {
+    uri = new URIish("http://gerrit-host/aProject.git");
+    objectUnderTest = new FetchQueue();
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldMoveTheTaskFromPendingToInFlight() {
+    FetchOne fetchOp = fetchOp(uri);
+    objectUnderTest.updatePending(uri, pending -> fetchOp);
+
+    assertThat(objectUnderTest.getPending(uri)).hasValue(fetchOp);
+    assertThat(objectUnderTest.requestRunway(fetchOp)).isTrue();
+    assertThat(objectUnderTest.getPending(uri)).isEmpty();
+    assertThat(objectUnderTest.getInFlight(uri)).hasValue(fetchOp);
+
+    assertThat(objectUnderTest.notifyFinished(fetchOp)).isEmpty();
+    assertThat(objectUnderTest.pending()).isEmpty();
+    assertThat(objectUnderTest.inFlight()).isEmpty();
+  }
+
+  @Test
+  public void shouldNotGrantTheRunwayToACanceledTask() {
+    FetchOne fetchOp = fetchOp(uri);
+    when(fetchOp.wasCanceled()).thenReturn(true);
+    objectUnderTest.updatePending(uri, pending -> fetchOp);
+
+    assertThat(objectUnderTest.requestRunway(fetchOp)).isFalse();
+    assertThat(objectUnderTest.getPending(uri)).hasValue(fetchOp);
+    assertThat(objectUnderTest.getInFlight(uri)).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepThePendingTaskWhileAnotherOneIsInFlight() {
+    FetchOne inFlightOp = fetchOp(uri);
+    FetchOne pendingOp = fetchOp(uri);
+    objectUnderTest.updatePending(uri, pending -> inFlightOp);
+    objectUnderTest.requestRunway(inFlightOp);
+    objectUnderTest.updatePending(uri, pending -> pendingOp);
+
+    assertThat(objectUnderTest.pending()).containsExactly(uri, pendingOp);
+    assertThat(objectUnderTest.inFlight()).containsExactly(uri, inFlightOp);
+  }
+
+  @Test
+  public void shouldMergeTheCollidingTasksIntoASingleFollowUp() {
+    FetchOne inFlightOp = fetchOp(uri);
+    FetchOne followUpOp = fetchOp(uri);
+    FetchOne collidingOp = fetchOp(uri);
+    Set<String> collidingRefs = Set.of("refs/heads/master");
+    when(collidingOp.getRefs()).thenReturn(collidingRefs);
+    objectUnderTest.requestRunway(inFlightOp);
+
+    assertThat(objectUnderTest.requestRunway(followUpOp)).isFalse();
+    assertThat(objectUnderTest.requestRunway(collidingOp)).isFalse();
+
+    assertThat(objectUnderTest.getFollowUp(uri)).hasValue(followUpOp);
+    verify(followUpOp).addRefs(collidingRefs);
+    verify(collidingOp).removeStates();
+
+    Optional<FetchQueue.FollowUp> followUp = objectUnderTest.notifyFinished(inFlightOp);
+    assertThat(followUp.map(f -> f.fetchOp)).hasValue(followUpOp);
+    assertThat(objectUnderTest.getInFlight(uri)).isEmpty();
+    assertThat(objectUnderTest.getFollowUp(uri)).isEmpty();
+  }
+
+  @Test
+  public void shouldPromoteTheFollowUpToTheLaneOfTheTaskMergedIntoIt() {
+    FetchOne inFlightOp = fetchOp(uri);
+    FetchOne followUpOp = fetchOp(uri);
+    FetchOne collidingOp = fetchOp(uri);
+    when(collidingOp.getLane()).thenReturn(FetchLane.SYNC);
+    objectUnderTest.requestRunway(inFlightOp);
+    objectUnderTest.requestRunway(followUpOp);
+
+    assertThat(objectUnderTest.requestRunway(collidingOp)).isFalse();
+
+    verify(followUpOp).promoteLane(FetchLane.SYNC);
+  }
+
+  @Test
+  public void shouldMoveThePendingTaskToTheNewTaskOfAHigherPriorityLane() {
+    ReplicationState state = mock(ReplicationState.class);
+    FetchOne pendingOp = fetchOpWithRefs(uri);
+    when(pendingOp.getLane()).thenReturn(FetchLane.BULK);
+    objectUnderTest.addPendingRef(
+        uri, FetchOne.ALL_REFS, Optional.empty(), FetchLane.BULK, state, pendingOp);
+    FetchOne syncOp = fetchOpWithRefs(uri);
+    when(syncOp.getLane()).thenReturn(FetchLane.SYNC);
+
+    assertThat(objectUnderTest.needsNewTask(uri, FetchLane.SYNC)).isTrue();
+    FetchQueue.PendingRef missing =
+        objectUnderTest.addPendingRef(
+            uri, "refs/heads/master", Optional.empty(), FetchLane.SYNC, state, null);
+    assertThat(missing.fetchOp).isNull();
+    FetchQueue.PendingRef pending =
+        objectUnderTest.addPendingRef(
+            uri, "refs/heads/master", Optional.empty(), FetchLane.SYNC, state, syncOp);
+
+    assertThat(pending.isNew).isTrue();
+    assertThat(pending.promoted).isEqualTo(pendingOp);
+    verify(pendingOp).canceledByReplication();
+    assertThat(syncOp.getRefs()).containsExactly(FetchOne.ALL_REFS, "refs/heads/master");
+    assertThat(objectUnderTest.getPending(uri)).hasValue(syncOp);
+    assertThat(objectUnderTest.needsNewTask(uri, FetchLane.BULK)).isFalse();
+  }
+
+  @Test
+  public void shouldApplyTheConcurrentUpdatesOfTheSameUriAtomically() throws Exception {
+    FetchOne fetchOp = fetchOp(uri);
+    int[] merged = new int[1];
+
+    runConcurrently(
+        () -> {
+          for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+            objectUnderTest.updatePending(
+                uri,
+                pending -> {
+                  if (pending != null) {
+                    // Not thread-safe on purpose: lost updates would break the count
+                    merged[0]++;
+                  }
+                  return fetchOp;
+                });
+          }
+          return true;
+        });
+
+    assertThat(merged[0]).isEqualTo(THREADS * UPDATES_PER_THREAD - 1);
+  }
+
+  @Test
+  public void shouldAddTheRefsScheduledConcurrentlyOnTheSameUriToASingleTask() throws Exception {
+    ReplicationState state = mock(ReplicationState.class);
+    List<FetchOne> newTasks = Collections.synchronizedList(new ArrayList<>());
+    List<Boolean> added = Collections.synchronizedList(new ArrayList<>());
+
+    runConcurrently(
+        () -> {
+          for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+            String ref = "refs/heads/branch-" + i;
+            FetchOne newTask =
+                objectUnderTest.needsNewTask(uri, FetchLane.ASYNC) ? fetchOpWithRefs(uri) : null;
+            FetchQueue.PendingRef pending =
+                objectUnderTest.addPendingRef(
+                    uri, ref, Optional.empty(), FetchLane.ASYNC, state, newTask);
+            while (pending.fetchOp == null) {
+              pending =
+                  objectUnderTest.addPendingRef(
+                      uri, ref, Optional.empty(), FetchLane.ASYNC, state, fetchOpWithRefs(uri));
+            }
+            if (pending.isNew) {
+              newTasks.add(pending.fetchOp);
+            }
+            added.add(pending.isAdded);
+          }
+          return true;
+        });
+
+    assertThat(newTasks).hasSize(1);
+    FetchOne fetchOp = newTasks.get(0);
+    assertThat(objectUnderTest.getPending(uri)).hasValue(fetchOp);
+    assertThat(fetchOp.getRefs()).hasSize(UPDATES_PER_THREAD);
+    assertThat(added.stream().filter(Boolean::booleanValue).count()).isEqualTo(UPDATES_PER_THREAD);
+  }
+
+  @Test
+  public void shouldNotAddTheRefToAPendingTaskThatStartedInTheMeantime() throws Exception {
+    FetchOne fetchOp = fetchOpWithRefs(uri);
+    ReplicationState state = mock(ReplicationState.class);
+    objectUnderTest.updatePending(uri, pending -> fetchOp);
+    objectUnderTest.requestRunway(fetchOp);
+
+    FetchQueue.PendingRef pending =
+        objectUnderTest.addPendingRef(
+            uri, "refs/heads/master", Optional.empty(), FetchLane.ASYNC, state, null);
+
+    assertThat(pending.fetchOp).isNull();
+    assertThat(fetchOp.getRefs()).isEmpty();
+    assertThat(objectUnderTest.getInFlight(uri)).hasValue(fetchOp);
+  }
+
+  @Test
+  public void shouldGrantTheRunwayToOneTaskPerUri() throws Exception {
+    List<Boolean> granted = runConcurrently(() -> objectUnderTest.requestRunway(fetchOp(uri)));
+
+    assertThat(granted.stream().filter(Boolean::booleanValue).count()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotContendAcrossUris() throws Exception {
+    List<Boolean> granted =
+        runConcurrently(
+            () ->
+                objectUnderTest.requestRunway(
+                    fetchOp(new URIish("http://gerrit-host/" + Thread.currentThread().getId()))));
+
+    assertThat(granted).doesNotContain(false);
+    assertThat(objectUnderTest.inFlight()).hasSize(THREADS);
+  }
+
+  private <T> List<T> runConcurrently(Callable<T> task) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return task.call();
+              }));
+    }
+    start.countDown();
+
+    List<T> results = new ArrayList<>();
+    for (Future<T> future : futures) {
+      results.add(future.get(30, TimeUnit.SECONDS));
+    }
+    return results;
+  }
+
+  private static FetchOne fetchOpWithRefs(URIish uri) {
+    FetchOne fetchOp = fetchOp(uri);
+    // Not thread-safe on purpose: the refs are only added while holding the state of the URI
+    Set<String> refs = new HashSet<>();
+    when(fetchOp.getRefs()).thenReturn(refs);
+    when(fetchOp.getLane()).thenReturn(FetchLane.ASYNC);
+    doAnswer(invocation -> refs.add(invocation.getArgument(0)))
+        .when(fetchOp)
+        .addRef(anyString(), any());
+    doAnswer(invocation -> refs.addAll(invocation.getArgument(0))).when(fetchOp).addRefs(any());
+    return fetchOp;
+  }
+
+  private static FetchOne fetchOp(URIish uri) {
+    FetchOne fetchOp = mock(FetchOne.class);
+    when(fetchOp.getURI()).thenReturn(uri);
+    return fetchOp;
+  }
+}
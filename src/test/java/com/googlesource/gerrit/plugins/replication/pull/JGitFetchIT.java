@@ -14,10 +14,14 @@
 
 package com.googlesource.gerrit.plugins.replication.pull;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import com.google.common.collect.Lists;
+import com.google.gerrit.acceptance.PushOneCommit.Result;
 import com.google.gerrit.acceptance.SkipProjectClone;
 import com.google.gerrit.acceptance.TestPlugin;
 import com.google.gerrit.acceptance.UseLocalDisk;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.config.FactoryModule;
 import com.google.inject.Scopes;
 import com.google.inject.assistedinject.FactoryModuleBuilder;
@@ -32,6 +36,7 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.JGitFetch;
 import com.googlesource.gerrit.plugins.replication.pull.fetch.PermanentTransportException;
 import java.net.URISyntaxException;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
@@ -59,6 +64,29 @@ public class JGitFetchIT extends FetchITBase {
     }
   }
 
+  @Test
+  public void shouldNotFollowTheTagsOfTheFetchedCommits() throws Exception {
+    Project.NameKey sourceProject = createTestProject(project + TEST_REPLICATION_SUFFIX);
+    testRepo = cloneProject(sourceProject);
+    Result pushResult = createChange();
+    String sourceRef = pushResult.getPatchSet().refName();
+    String tagRef = "refs/tags/v1.0";
+    try (Repository sourceRepo = repoManager.openRepository(sourceProject)) {
+      RefUpdate tagUpdate = sourceRepo.updateRef(tagRef);
+      tagUpdate.setNewObjectId(pushResult.getCommit());
+      assertThat(tagUpdate.update()).isEqualTo(RefUpdate.Result.NEW);
+    }
+
+    try (Repository repo = repoManager.openRepository(project)) {
+      Fetch objectUnderTest =
+          fetchFactory.create(TEST_TASK_ID, new URIish(testRepoPath.toString()), repo);
+      objectUnderTest.fetch(Lists.newArrayList(new RefSpec(sourceRef + ":" + sourceRef)));
+
+      assertThat(getRef(repo, sourceRef)).isNotNull();
+      assertThat(getRef(repo, tagRef)).isNull();
+    }
+  }
+
   @SuppressWarnings("unused")
   private static class TestModule extends FactoryModule {
     @Override
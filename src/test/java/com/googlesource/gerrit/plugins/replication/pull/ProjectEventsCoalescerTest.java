@@ -0,0 +1,156 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.server.git.WorkQueue;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ReplicationQueue.ReferenceBatchUpdatedEvent;
+import com.googlesource.gerrit.plugins.replication.pull.ReplicationQueue.ReferenceUpdatedEvent;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ProjectEventsCoalescerTest {
+  private static final String PROJECT = "aProject";
+  private static final String ANOTHER_PROJECT = "anotherProject";
+  private static final ObjectId OLD_OBJECT_ID =
+      ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a");
+  private static final ObjectId NEW_OBJECT_ID =
+      ObjectId.fromString("3c1ddc050d7906adb0e29bc3bc46af8749b2f63b");
+
+  @Mock private WorkQueue workQueue;
+  @Mock private ReplicationConfig replicationConfig;
+
+  private Config config;
+  private LinkedBlockingQueue<ReferenceBatchUpdatedEvent> sent;
+  private ProjectEventsCoalescer objectUnderTest;
+
+  @Before
+  public void setup() {
+    config = new Config();
+    config.setString("replication", null, "coalescingWindow", "200 ms");
+    sent = new LinkedBlockingQueue<>();
+    when(replicationConfig.getConfig()).thenReturn(config);
+    when(workQueue.createQueue(anyInt(), anyString()))
+        .thenReturn(new ScheduledThreadPoolExecutor(1));
+  }
+
+  @After
+  public void tearDown() {
+    objectUnderTest.stop();
+  }
+
+  @Test
+  public void shouldCollapseUpdatesOfTheSameRefToTheLatestOne() throws Exception {
+    objectUnderTest = newCoalescer();
+
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/1", OLD_OBJECT_ID), sent::add);
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/1", NEW_OBJECT_ID), sent::add);
+
+    ReferenceBatchUpdatedEvent merged = sent.poll(10, TimeUnit.SECONDS);
+    assertThat(merged).isNotNull();
+    assertThat(merged.refs()).hasSize(1);
+    assertThat(merged.refs().get(0).objectId()).isEqualTo(NEW_OBJECT_ID);
+    assertThat(sent).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepMetaRefsAtTheEndOfTheMergedBatch() throws Exception {
+    objectUnderTest = newCoalescer();
+
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/meta", NEW_OBJECT_ID), sent::add);
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/1", NEW_OBJECT_ID), sent::add);
+    objectUnderTest.add(event(PROJECT, "refs/sequences/changes", NEW_OBJECT_ID), sent::add);
+
+    ReferenceBatchUpdatedEvent merged = sent.poll(10, TimeUnit.SECONDS);
+    assertThat(refNames(merged))
+        .containsExactly(
+            "refs/changes/01/1/1", "refs/sequences/changes", "refs/changes/01/1/meta")
+        .inOrder();
+  }
+
+  @Test
+  public void shouldNotMergeEventsOfDifferentProjects() throws Exception {
+    objectUnderTest = newCoalescer();
+
+    objectUnderTest.add(event(PROJECT, "refs/heads/master", NEW_OBJECT_ID), sent::add);
+    objectUnderTest.add(event(ANOTHER_PROJECT, "refs/heads/master", NEW_OBJECT_ID), sent::add);
+
+    assertThat(sent.poll(10, TimeUnit.SECONDS)).isNotNull();
+    assertThat(sent.poll(10, TimeUnit.SECONDS)).isNotNull();
+  }
+
+  @Test
+  public void shouldSendTheBatchImmediatelyWhenMaxBatchSizeIsReached() {
+    config.setString("replication", null, "coalescingWindow", "1 hour");
+    config.setInt("replication", null, "coalescingMaxBatchSize", 2);
+    objectUnderTest = newCoalescer();
+
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/1", NEW_OBJECT_ID), sent::add);
+    assertThat(sent).isEmpty();
+    objectUnderTest.add(event(PROJECT, "refs/changes/01/1/meta", NEW_OBJECT_ID), sent::add);
+
+    assertThat(sent).hasSize(1);
+    assertThat(refNames(sent.peek()))
+        .containsExactly("refs/changes/01/1/1", "refs/changes/01/1/meta")
+        .inOrder();
+  }
+
+  @Test
+  public void shouldReturnPendingEventsWhenStopped() {
+    config.setString("replication", null, "coalescingWindow", "1 hour");
+    objectUnderTest = newCoalescer();
+
+    objectUnderTest.add(event(PROJECT, "refs/heads/master", NEW_OBJECT_ID), sent::add);
+
+    assertThat(objectUnderTest.stop()).hasSize(1);
+    assertThat(sent).isEmpty();
+  }
+
+  private ProjectEventsCoalescer newCoalescer() {
+    ProjectEventsCoalescer coalescer = new ProjectEventsCoalescer(replicationConfig, workQueue);
+    coalescer.start();
+    return coalescer;
+  }
+
+  private static ReferenceBatchUpdatedEvent event(
+      String projectName, String refName, ObjectId objectId) {
+    long now = System.currentTimeMillis();
+    return ReferenceBatchUpdatedEvent.create(
+        projectName,
+        List.of(ReferenceUpdatedEvent.create(projectName, refName, objectId, now, false)),
+        now);
+  }
+
+  private static List<String> refNames(ReferenceBatchUpdatedEvent event) {
+    return event.refs().stream().map(ReferenceUpdatedEvent::refName).collect(Collectors.toList());
+  }
+}
@@ -32,6 +32,7 @@ import static org.mockito.Mockito.when;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.api.changes.NotifyHandling;
 import com.google.gerrit.extensions.events.ProjectDeletedListener;
@@ -49,11 +50,14 @@ import com.google.inject.Provider;
 import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.ReplicationFileBasedConfig;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.BatchApplyObjectData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
 import com.googlesource.gerrit.plugins.replication.pull.client.FetchApiClient;
 import com.googlesource.gerrit.plugins.replication.pull.client.FetchRestApiClient;
 import com.googlesource.gerrit.plugins.replication.pull.client.HttpResult;
+import com.googlesource.gerrit.plugins.replication.pull.client.JsonPayload;
 import com.googlesource.gerrit.plugins.replication.pull.filter.ApplyObjectsRefsFilter;
 import com.googlesource.gerrit.plugins.replication.pull.filter.ExcludedRefsFilter;
 import java.io.IOException;
@@ -62,9 +66,12 @@ import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.errors.LargeObjectException;
 import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.transport.URIish;
@@ -79,7 +86,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReplicationQueueTest {
-  private static int CONNECTION_TIMEOUT = 1000000;
+  private static final long FETCH_CALLS_TIMEOUT_SECS = 10;
   private static final String LOCAL_INSTANCE_ID = "local instance id";
   private static final String FOREIGN_INSTANCE_ID = "any other instance id";
   private static final String TEST_REF_NAME = "refs/meta/heads/anyref";
@@ -98,6 +105,7 @@ public class ReplicationQueueTest {
   @Mock FetchApiClient.Factory fetchClientFactory;
   @Mock AccountAttribute accountAttribute;
   @Mock RevisionReader revReader;
+  @Mock RevisionPackWriter revisionPackWriter;
   @Mock RevisionData revisionData;
   @Mock HttpResult successfulHttpResult;
   @Mock HttpResult fetchHttpResult;
@@ -106,6 +114,7 @@ public class ReplicationQueueTest {
   @Mock HttpResult httpResult;
   @Mock HttpResult batchHttpResult;
   @Mock ApplyObjectsRefsFilter applyObjectsRefsFilter;
+  JsonPayload batchPayload = new JsonPayload(new byte[0]);
 
   @Mock Config config;
   ApplyObjectMetrics applyObjectMetrics;
@@ -117,6 +126,10 @@ public class ReplicationQueueTest {
   @Captor ArgumentCaptor<List<BatchApplyObjectData>> batchRefsCaptor;
 
   private ExcludedRefsFilter refsFilter;
+  private ScheduledThreadPoolExecutor fetchCallsExecutor;
+  private FetchCallsDispatcher fetchCallsDispatcher;
+  private ApiCallsExecutor apiCallsExecutor;
+  private ProjectEventsCoalescer eventsCoalescer;
   private ReplicationQueue objectUnderTest;
   private SitePaths sitePaths;
   private Path pluginDataPath;
@@ -128,7 +141,7 @@ public class ReplicationQueueTest {
     Path pluginDataPath = createTempPath("data");
     ReplicationConfig replicationConfig = new ReplicationFileBasedConfig(sitePaths, pluginDataPath);
     refsFilter = new ExcludedRefsFilter(replicationConfig);
-    when(source.getConnectionTimeout()).thenReturn(CONNECTION_TIMEOUT);
+    lenient().when(source.getRemoteConfigName()).thenReturn("remote");
     when(source.wouldFetchProject(any())).thenReturn(true);
     when(source.wouldFetchRef(anyString())).thenReturn(true);
     ImmutableList<String> apis = ImmutableList.of("http://localhost:18080");
@@ -152,8 +165,17 @@ public class ReplicationQueueTest {
             ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a"),
             ObjectId.fromString("b5d7bcf1d1c5b0f0726d10a16c8315f06f900bfb"));
     when(revisionDataWithParents.getParentObjetIds()).thenReturn(revisionDataParentObjectIds);
+    lenient()
+        .when(revReader.readAll(any(), any(), anyString()))
+        .thenAnswer(
+            invocation ->
+                ((List<?>) invocation.getArgument(1))
+                    .stream().map(objectId -> revisionData).collect(Collectors.toList()));
 
     when(fetchClientFactory.create(any())).thenReturn(fetchRestApiClient);
+    lenient()
+        .when(fetchRestApiClient.getCapabilities(any()))
+        .thenReturn(CapabilitiesInfo.current());
     lenient()
         .when(
             fetchRestApiClient.callSendObject(
@@ -163,7 +185,10 @@ public class ReplicationQueueTest {
         .when(fetchRestApiClient.callSendObjects(any(), anyString(), anyLong(), any(), any()))
         .thenReturn(httpResult);
     lenient()
-        .when(fetchRestApiClient.callBatchSendObject(any(), any(), anyLong(), any()))
+        .when(fetchRestApiClient.serializeBatchSendObject(any(), anyLong()))
+        .thenReturn(batchPayload);
+    lenient()
+        .when(fetchRestApiClient.callBatchSendObject(any(), any(JsonPayload.class), any()))
         .thenReturn(batchHttpResult);
     when(fetchRestApiClient.callFetch(any(), anyString(), any())).thenReturn(fetchHttpResult);
     when(fetchRestApiClient.initProject(any(), any())).thenReturn(successfulHttpResult);
@@ -178,6 +203,15 @@ public class ReplicationQueueTest {
     applyObjectMetrics = new ApplyObjectMetrics("pull-replication", new DisabledMetricMaker());
     fetchMetrics = new FetchReplicationMetrics("pull-replication", new DisabledMetricMaker());
 
+    fetchCallsExecutor = new ScheduledThreadPoolExecutor(1);
+    lenient().when(wq.createQueue(anyInt(), anyString())).thenReturn(fetchCallsExecutor);
+    fetchCallsDispatcher =
+        new FetchCallsDispatcher(
+            replicationConfig, wq, "pull-replication", new DisabledMetricMaker());
+    apiCallsExecutor =
+        new ApiCallsExecutor(replicationConfig, wq, "pull-replication", new DisabledMetricMaker());
+    eventsCoalescer = new ProjectEventsCoalescer(replicationConfig, wq);
+
     objectUnderTest =
         new ReplicationQueue(
             wq,
@@ -187,20 +221,24 @@ public class ReplicationQueueTest {
             fetchClientFactory,
             refsFilter,
             () -> revReader,
+            revisionPackWriter,
             applyObjectMetrics,
             fetchMetrics,
             LOCAL_INSTANCE_ID,
             config,
-            applyObjectsRefsFilter);
+            applyObjectsRefsFilter,
+            fetchCallsDispatcher,
+            apiCallsExecutor,
+            eventsCoalescer);
   }
 
   @Test
   public void shouldCallBatchSendObjectWhenMetaRef() throws IOException {
     Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
-    verify(fetchRestApiClient).callBatchSendObject(any(), any(), anyLong(), any());
+    verify(fetchRestApiClient).callBatchSendObject(any(), any(JsonPayload.class), any());
   }
 
   @Test
@@ -217,17 +255,93 @@ public class ReplicationQueueTest {
             fetchClientFactory,
             refsFilter,
             () -> revReader,
+            revisionPackWriter,
             applyObjectMetrics,
             fetchMetrics,
             LOCAL_INSTANCE_ID,
             config,
-            applyObjectsRefsFilter);
+            applyObjectsRefsFilter,
+            fetchCallsDispatcher,
+            apiCallsExecutor,
+            eventsCoalescer);
 
     Event event = new TestEvent("refs/changes/01/1/meta");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
+
+    verify(fetchRestApiClient).callBatchSendObject(any(), any(JsonPayload.class), any());
+  }
+
+  @Test
+  public void shouldCallSendPackWhenApplyPackIsEnabled() throws IOException {
+    when(source.useApplyPack()).thenReturn(true);
+    when(fetchRestApiClient.callSendPack(any(), anyString(), anyLong(), any(), any(), any()))
+        .thenReturn(httpResult);
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    objectUnderTest.start();
+    onEvent(event);
 
-    verify(fetchRestApiClient).callBatchSendObject(any(), any(), anyLong(), any());
+    verify(fetchRestApiClient)
+        .callSendPack(any(), eq("refs/changes/01/1/meta"), anyLong(), any(), any(), any());
+    verify(fetchRestApiClient, never()).callBatchSendObject(any(), any(JsonPayload.class), any());
+  }
+
+  @Test
+  public void shouldFallbackToCallFetchWhenApplyPackHistoryIsTooDeep() throws IOException {
+    when(source.useApplyPack()).thenReturn(true);
+    when(httpResult.isSuccessful()).thenReturn(false);
+    when(httpResult.isParentObjectMissing()).thenReturn(true);
+    when(fetchRestApiClient.callSendPack(any(), anyString(), anyLong(), any(), any(), any()))
+        .thenReturn(httpResult);
+    when(revisionPackWriter.isHistoryWithinDepth(any(), any())).thenReturn(false);
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    objectUnderTest.start();
+    onEvent(event);
+
+    verify(fetchRestApiClient, times(1))
+        .callSendPack(any(), eq("refs/changes/01/1/meta"), anyLong(), any(), any(), any());
+    verify(fetchRestApiClient).callFetch(any(), anyString(), any());
+  }
+
+  @Test
+  public void shouldCallSendObjectWhenApplyPackIsNotSupportedByTheTarget() throws IOException {
+    when(source.useApplyPack()).thenReturn(true);
+    when(fetchRestApiClient.getCapabilities(any())).thenReturn(CapabilitiesInfo.legacy());
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    objectUnderTest.start();
+    onEvent(event);
+
+    verify(fetchRestApiClient)
+        .callSendObjects(any(), eq("refs/changes/01/1/meta"), anyLong(), any(), any());
+    verify(fetchRestApiClient, never())
+        .callSendPack(any(), anyString(), anyLong(), any(), any(), any());
+  }
+
+  @Test
+  public void shouldCallSendObjectWhenBatchApplyObjectIsNotSupportedByTheTarget()
+      throws IOException {
+    when(fetchRestApiClient.getCapabilities(any()))
+        .thenReturn(CapabilitiesInfo.legacy().withoutEndpoint("batch-apply-object"));
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    objectUnderTest.start();
+    onEvent(event);
+
+    verify(fetchRestApiClient)
+        .callSendObjects(any(), eq("refs/changes/01/1/meta"), anyLong(), any(), any());
+    verify(fetchRestApiClient, never()).callBatchSendObject(any(), any(JsonPayload.class), any());
+  }
+
+  @Test
+  public void shouldRecordBatchApplyObjectAsUnavailableWhenNotFound() throws IOException {
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    when(batchHttpResult.isSuccessful()).thenReturn(false);
+    when(batchHttpResult.isSendBatchObjectAvailable()).thenReturn(false);
+    objectUnderTest.start();
+    onEvent(event);
+
+    verify(fetchRestApiClient).endpointUnavailable(any(), eq("batch-apply-object"));
+    verify(fetchRestApiClient)
+        .callSendObjects(any(), eq("refs/changes/01/1/meta"), anyLong(), any(), any());
   }
 
   @Test
@@ -235,9 +349,9 @@ public class ReplicationQueueTest {
     Event event = generateBatchRefUpdateEvent(TEST_REF_NAME);
     event.instanceId = FOREIGN_INSTANCE_ID;
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
-    verify(fetchRestApiClient, never()).callBatchSendObject(any(), any(), anyLong(), any());
+    verify(fetchRestApiClient, never()).callBatchSendObject(any(), any(JsonPayload.class), any());
   }
 
   @Test
@@ -248,7 +362,7 @@ public class ReplicationQueueTest {
     when(source.isCreateMissingRepositories()).thenReturn(true);
 
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient).initProject(any(), any());
   }
@@ -257,7 +371,7 @@ public class ReplicationQueueTest {
   public void shouldCallSendObjectReorderingRefsHavingMetaAtTheEnd() throws IOException {
     Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta", "refs/changes/01/1/1");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
     verifySendObjectOrdering("refs/changes/01/1/1", "refs/changes/01/1/meta");
   }
 
@@ -265,7 +379,7 @@ public class ReplicationQueueTest {
   public void shouldCallSendObjectKeepingMetaAtTheEnd() throws IOException {
     Event event = generateBatchRefUpdateEvent("refs/changes/01/1/1", "refs/changes/01/1/meta");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
     verifySendObjectOrdering("refs/changes/01/1/1", "refs/changes/01/1/meta");
   }
 
@@ -279,7 +393,7 @@ public class ReplicationQueueTest {
     when(source.isCreateMissingRepositories()).thenReturn(false);
 
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, never()).initProject(any(), any());
   }
@@ -298,26 +412,30 @@ public class ReplicationQueueTest {
             fetchClientFactory,
             refsFilter,
             () -> revReader,
+            revisionPackWriter,
             applyObjectMetrics,
             fetchMetrics,
             LOCAL_INSTANCE_ID,
             config,
-            applyObjectsRefsFilter);
+            applyObjectsRefsFilter,
+            fetchCallsDispatcher,
+            apiCallsExecutor,
+            eventsCoalescer);
 
     Event event = new TestEvent("refs/changes/01/1/1");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
-    verify(fetchRestApiClient).callBatchSendObject(any(), any(), anyLong(), any());
+    verify(fetchRestApiClient).callBatchSendObject(any(), any(JsonPayload.class), any());
   }
 
   @Test
   public void shouldCallBatchSendObjectWhenPatchSetRef() throws IOException {
     Event event = generateBatchRefUpdateEvent("refs/changes/01/1/1");
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
-    verify(fetchRestApiClient).callBatchSendObject(any(), any(), anyLong(), any());
+    verify(fetchRestApiClient).callBatchSendObject(any(), any(JsonPayload.class), any());
   }
 
   @Test
@@ -328,7 +446,7 @@ public class ReplicationQueueTest {
 
     when(revReader.read(any(), any(), anyString(), anyInt())).thenThrow(IOException.class);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient).callFetch(any(), anyString(), any());
   }
@@ -341,7 +459,7 @@ public class ReplicationQueueTest {
 
     when(revReader.read(any(), any(), anyString(), anyInt())).thenReturn(Optional.empty());
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient).callFetch(any(), anyString(), any());
   }
@@ -356,7 +474,7 @@ public class ReplicationQueueTest {
     when(batchHttpResult.isSuccessful()).thenReturn(false);
     when(batchHttpResult.isParentObjectMissing()).thenReturn(true);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient).callFetch(any(), anyString(), any());
   }
@@ -372,7 +490,7 @@ public class ReplicationQueueTest {
     when(batchHttpResult.isParentObjectMissing()).thenReturn(true);
     when(applyObjectsRefsFilter.match(any())).thenReturn(true);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(2))
         .callSendObjects(any(), anyString(), anyLong(), any(), any());
@@ -391,7 +509,7 @@ public class ReplicationQueueTest {
     when(httpResult.isSuccessful()).thenReturn(false);
     when(httpResult.isParentObjectMissing()).thenReturn(false);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient).callFetch(any(), anyString(), any());
   }
@@ -405,7 +523,7 @@ public class ReplicationQueueTest {
     when(batchHttpResult.isSuccessful()).thenReturn(false);
     when(batchHttpResult.isParentObjectMissing()).thenReturn(true);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(1))
         .callSendObjects(any(), anyString(), anyLong(), revisionsDataCaptor.capture(), any());
@@ -417,6 +535,38 @@ public class ReplicationQueueTest {
     assertThat(firstRevisionsValues).contains(revisionData);
   }
 
+  @Test
+  public void shouldApplyOnlyTheMissingParentObjectsWhenParentObjectIsMissingOnMetaRef()
+      throws IOException {
+    Event event = generateBatchRefUpdateEvent("refs/changes/01/1/meta");
+    objectUnderTest.start();
+
+    List<ObjectId> ancestors =
+        Arrays.asList(
+            ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a"),
+            ObjectId.fromString("b5d7bcf1d1c5b0f0726d10a16c8315f06f900bfb"),
+            ObjectId.fromString("e6d6b4f1e3e9d2c42c3b4d2b6c4f0d4b0e4a6d11"),
+            ObjectId.fromString("2b1d7e3f5a9c8b7d6e5f4a3b2c1d0e9f8a7b6c5d"));
+    when(batchHttpResult.isSuccessful()).thenReturn(false);
+    when(batchHttpResult.isParentObjectMissing()).thenReturn(true);
+    when(source.negotiateMissingHistory()).thenReturn(true);
+    when(revisionData.getCommitObject())
+        .thenReturn(
+            new RevisionObjectData(
+                "0a1b2c3d4e5f60718293a4b5c6d7e8f901234567", Constants.OBJ_COMMIT, new byte[0]));
+    when(revReader.readParentObjectIds(any(), any())).thenReturn(ancestors);
+    when(fetchRestApiClient.findCommonAncestor(any(), anyString(), any(), any()))
+        .thenReturn(Optional.of(ancestors.get(2)));
+
+    onEvent(event);
+
+    verify(fetchRestApiClient, times(1)).findCommonAncestor(any(), anyString(), any(), any());
+    verify(revReader).readAll(any(), eq(ImmutableList.of(ancestors.get(3))), anyString());
+    verify(fetchRestApiClient, times(1))
+        .callSendObjects(any(), anyString(), anyLong(), revisionsDataCaptor.capture(), any());
+    assertThat(revisionsDataCaptor.getValue()).hasSize(2);
+  }
+
   @Test
   public void shouldFallbackToApplyAllParentObjectsWhenParentObjectIsMissingOnAllowedRefs()
       throws IOException {
@@ -428,7 +578,7 @@ public class ReplicationQueueTest {
     when(batchHttpResult.isParentObjectMissing()).thenReturn(true);
     when(applyObjectsRefsFilter.match(refName)).thenReturn(true);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(1))
         .callSendObjects(any(), anyString(), anyLong(), revisionsDataCaptor.capture(), any());
@@ -453,7 +603,7 @@ public class ReplicationQueueTest {
     when(httpResult.isSuccessful()).thenReturn(false, true);
     when(httpResult.isParentObjectMissing()).thenReturn(true, false);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(2))
         .callSendObjects(any(), anyString(), anyLong(), revisionsDataCaptor.capture(), any());
@@ -483,7 +633,7 @@ public class ReplicationQueueTest {
     when(httpResult.isParentObjectMissing()).thenReturn(true, false);
     when(applyObjectsRefsFilter.match(refName)).thenReturn(true);
 
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(2))
         .callSendObjects(any(), anyString(), anyLong(), revisionsDataCaptor.capture(), any());
@@ -509,7 +659,7 @@ public class ReplicationQueueTest {
     when(httpResult.isParentObjectMissing()).thenReturn(true);
 
     objectUnderTest.start();
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verify(fetchRestApiClient, times(2))
         .callSendObjects(any(), anyString(), anyLong(), any(), any());
@@ -537,13 +687,17 @@ public class ReplicationQueueTest {
             fetchClientFactory,
             refsFilter,
             () -> revReader,
+            revisionPackWriter,
             applyObjectMetrics,
             fetchMetrics,
             LOCAL_INSTANCE_ID,
             config,
-            applyObjectsRefsFilter);
+            applyObjectsRefsFilter,
+            fetchCallsDispatcher,
+            apiCallsExecutor,
+            eventsCoalescer);
     Event event = generateBatchRefUpdateEvent("refs/multi-site/version");
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verifyZeroInteractions(wq, rd, dis, sl, fetchClientFactory, accountAttribute);
   }
@@ -551,7 +705,7 @@ public class ReplicationQueueTest {
   @Test
   public void shouldSkipEventWhenStarredChangesRef() {
     Event event = generateBatchRefUpdateEvent("refs/starred-changes/41/2941/1000000");
-    objectUnderTest.onEvent(event);
+    onEvent(event);
 
     verifyZeroInteractions(wq, rd, dis, sl, fetchClientFactory, accountAttribute);
   }
@@ -612,6 +766,14 @@ public class ReplicationQueueTest {
     verify(source, never()).scheduleUpdateHead(any(), any(), any());
   }
 
+  private void onEvent(Event event) {
+    objectUnderTest.onEvent(event);
+    assertThat(
+            MoreExecutors.shutdownAndAwaitTermination(
+                fetchCallsExecutor, FETCH_CALLS_TIMEOUT_SECS, TimeUnit.SECONDS))
+        .isTrue();
+  }
+
   protected static Path createTempPath(String prefix) throws IOException {
     return createTempDirectory(prefix);
   }
@@ -638,8 +800,7 @@ public class ReplicationQueueTest {
   }
 
   private void verifySendObjectOrdering(String firstRef, String secondRef) throws IOException {
-    verify(fetchRestApiClient)
-        .callBatchSendObject(any(), batchRefsCaptor.capture(), anyLong(), any());
+    verify(fetchRestApiClient).serializeBatchSendObject(batchRefsCaptor.capture(), anyLong());
     List<BatchApplyObjectData> batchRefs = batchRefsCaptor.getValue();
 
     assertThat(batchRefs.get(0).refName()).isEqualTo(firstRef);
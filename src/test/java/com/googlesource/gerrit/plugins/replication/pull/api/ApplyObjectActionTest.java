@@ -15,11 +15,17 @@
 package com.googlesource.gerrit.plugins.replication.pull.api;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.httpd.restapi.RestApiServlet.SC_UNPROCESSABLE_ENTITY;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static org.apache.http.HttpStatus.SC_CREATED;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Lists;
@@ -30,6 +36,7 @@ import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
+import com.google.gerrit.extensions.restapi.UnprocessableEntityException;
 import com.google.gerrit.server.project.ProjectResource;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
@@ -37,12 +44,16 @@ import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectD
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.UnauthorizedAuthException;
+import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -230,6 +241,56 @@ public class ApplyObjectActionTest {
     applyObjectAction.apply(projectResource, inputParams);
   }
 
+  @Test
+  public void shouldReturnTheResponseOfEveryRefWhenApplyBatchIsNotAtomic() throws Exception {
+    List<RevisionInput> inputs =
+        List.of(
+            new RevisionInput(label, refName, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()),
+            new RevisionInput(label, "foo", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()),
+            new RevisionInput(label, "bar", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()));
+    when(applyObjectCommand.applyBatch(any(), any(), anyBoolean()))
+        .thenReturn(
+            List.of(
+                new RefUpdateState(refName, RefUpdate.Result.NEW),
+                new RefUpdateState("foo", RefUpdate.Result.LOCK_FAILURE),
+                new RefUpdateState("bar", RefUpdate.Result.REJECTED_MISSING_OBJECT)));
+
+    List<Response<?>> responses = applyObjectAction.applyBatch(projectResource, inputs, false);
+
+    assertThat(responses.stream().map(Response::statusCode).collect(Collectors.toList()))
+        .containsExactly(SC_CREATED, SC_UNPROCESSABLE_ENTITY, SC_CONFLICT)
+        .inOrder();
+  }
+
+  @Test(expected = UnprocessableEntityException.class)
+  public void shouldThrowUnprocessableEntityExceptionWhenAtomicApplyBatchFails() throws Exception {
+    List<RevisionInput> inputs =
+        List.of(
+            new RevisionInput(label, refName, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()),
+            new RevisionInput(label, "foo", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()));
+    when(applyObjectCommand.applyBatch(any(), any(), anyBoolean()))
+        .thenReturn(
+            List.of(
+                new RefUpdateState(refName, RefUpdate.Result.REJECTED_OTHER_REASON),
+                new RefUpdateState("foo", RefUpdate.Result.LOCK_FAILURE)));
+
+    applyObjectAction.applyBatch(projectResource, inputs, true);
+  }
+
+  @Test
+  public void shouldRejectTheBatchWhenTheLabelsAreDifferent() throws Exception {
+    List<RevisionInput> inputs =
+        List.of(
+            new RevisionInput(label, refName, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()),
+            new RevisionInput(
+                "another-label", "foo", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData()));
+
+    assertThrows(
+        BadRequestException.class,
+        () -> applyObjectAction.applyBatch(projectResource, inputs, false));
+    verify(applyObjectCommand, never()).applyBatch(any(), any(), anyBoolean());
+  }
+
   private RevisionData createSampleRevisionData() {
     RevisionObjectData commitData =
         new RevisionObjectData(
@@ -16,7 +16,10 @@ package com.googlesource.gerrit.plugins.replication.pull.api;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,6 +41,7 @@ import com.googlesource.gerrit.plugins.replication.pull.PullReplicationStateLogg
 import com.googlesource.gerrit.plugins.replication.pull.Source;
 import com.googlesource.gerrit.plugins.replication.pull.SourcesCollection;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.RefUpdateException;
@@ -46,7 +50,9 @@ import com.googlesource.gerrit.plugins.replication.pull.fetch.RefUpdateState;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.transport.URIish;
@@ -96,7 +102,7 @@ public class ApplyObjectCommandTest {
     when(eventDispatcherDataItem.get()).thenReturn(eventDispatcher);
     when(metrics.start(anyString())).thenReturn(timetContext);
     when(timetContext.stop()).thenReturn(100L);
-    when(applyObject.apply(any(), any(), any())).thenReturn(state);
+    lenient().when(applyObject.apply(any(), any(), any(), any())).thenReturn(state);
     when(sourceCollection.getByRemoteName(TEST_SOURCE_LABEL)).thenReturn(Optional.of(source));
     when(source.getURI(TEST_PROJECT_NAME)).thenReturn(TEST_REMOTE_URI);
 
@@ -165,7 +171,7 @@ public class ApplyObjectCommandTest {
     RevisionData sampleRevisionData =
         createSampleRevisionData(sampleCommitObjectId, sampleTreeObjectId);
     RefUpdateState failureState = new RefUpdateState(TEST_REMOTE_NAME, RefUpdate.Result.IO_FAILURE);
-    when(applyObject.apply(any(), any(), any())).thenReturn(failureState);
+    when(applyObject.apply(any(), any(), any(), any())).thenReturn(failureState);
     objectUnderTest.applyObject(
         TEST_PROJECT_NAME,
         TEST_REF_NAME,
@@ -182,6 +188,74 @@ public class ApplyObjectCommandTest {
         .isNull();
   }
 
+  @Test
+  public void shouldSendEventsOfAllTheRefsWhenApplyBatch()
+      throws PermissionBackendException, IOException, MissingParentObjectException,
+          ResourceNotFoundException {
+    String anotherRefName = "refs/changes/01/1/meta";
+    when(applyObject.applyBatch(any(), any(), anyBoolean(), any()))
+        .thenReturn(
+            List.of(
+                new RefUpdateState(TEST_REF_NAME, RefUpdate.Result.NEW),
+                new RefUpdateState(anotherRefName, RefUpdate.Result.FAST_FORWARD)));
+
+    objectUnderTest.applyBatch(
+        TEST_PROJECT_NAME,
+        List.of(
+            revisionInput(TEST_REF_NAME, sampleCommitObjectId, sampleTreeObjectId),
+            revisionInput(anotherRefName, sampleCommitObjectId2, sampleTreeObjectId2)),
+        false);
+
+    verify(eventDispatcher, times(2)).postEvent(eventCaptor.capture());
+    assertThat(
+            eventCaptor.getAllValues().stream()
+                .map(e -> ((FetchRefReplicatedEvent) e).getRefName())
+                .collect(Collectors.toList()))
+        .containsExactly(TEST_REF_NAME, anotherRefName)
+        .inOrder();
+    assertThat(
+            cache.getIfPresent(
+                ApplyObjectsCacheKey.create(
+                    sampleCommitObjectId2, anotherRefName, TEST_PROJECT_NAME.get())))
+        .isEqualTo(TEST_EVENT_TIMESTAMP);
+  }
+
+  @Test
+  public void shouldReturnTheResultOfEveryRefAfterSendingAllTheEventsOfTheBatch()
+      throws PermissionBackendException, IOException, MissingParentObjectException,
+          ResourceNotFoundException {
+    String anotherRefName = "refs/changes/01/1/meta";
+    List<RefUpdateState> refUpdateStates =
+        List.of(
+            new RefUpdateState(TEST_REF_NAME, RefUpdate.Result.LOCK_FAILURE),
+            new RefUpdateState(anotherRefName, RefUpdate.Result.NEW));
+    when(applyObject.applyBatch(any(), any(), anyBoolean(), any())).thenReturn(refUpdateStates);
+
+    List<RefUpdateState> results =
+        objectUnderTest.applyBatch(
+            TEST_PROJECT_NAME,
+            List.of(
+                revisionInput(TEST_REF_NAME, sampleCommitObjectId, sampleTreeObjectId),
+                revisionInput(anotherRefName, sampleCommitObjectId2, sampleTreeObjectId2)),
+            false);
+
+    assertThat(results).isEqualTo(refUpdateStates);
+    verify(eventDispatcher, times(2)).postEvent(any());
+    assertThat(
+            cache.getIfPresent(
+                ApplyObjectsCacheKey.create(
+                    sampleCommitObjectId, TEST_REF_NAME, TEST_PROJECT_NAME.get())))
+        .isNull();
+  }
+
+  private RevisionInput revisionInput(String refName, String commitObjectId, String treeObjectId) {
+    return new RevisionInput(
+        TEST_SOURCE_LABEL,
+        refName,
+        TEST_EVENT_TIMESTAMP,
+        createSampleRevisionData(commitObjectId, treeObjectId));
+  }
+
   private RevisionData createSampleRevisionData(String commitObjectId, String treeObjectId) {
     RevisionObjectData commitData =
         new RevisionObjectData(commitObjectId, Constants.OBJ_COMMIT, new byte[] {});
@@ -0,0 +1,128 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.acceptance.PushOneCommit.Result;
+import com.google.gerrit.entities.Project.NameKey;
+import com.google.gerrit.extensions.restapi.Url;
+import com.googlesource.gerrit.plugins.replication.pull.RevisionPackWriter;
+import java.io.ByteArrayOutputStream;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHeader;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.Test;
+
+public class ApplyPackActionIT extends ActionITBase {
+  private static final String REF_NAME = "refs/heads/master";
+
+  @Test
+  public void shouldApplyThePackOfARevision() throws Exception {
+    NameKey sourceProject = createProjectOverAPI("sourceProject", project, false, null);
+    NameKey targetProject = createProjectOverAPI("targetProject", project, false, null);
+    ObjectId head = pushCommit(cloneProject(sourceProject), "subject");
+
+    httpClientFactory
+        .create(source)
+        .execute(
+            withBasicAuthenticationAsAdmin(
+                createPackRequest(targetProject, head, writePack(sourceProject, head, false))),
+            assertHttpResponseCode(201));
+
+    assertThatRefIsReplicated(sourceProject, targetProject);
+  }
+
+  @Test
+  public void shouldReturnConflictWithoutInsertingTheObjectsWhenAParentIsMissing()
+      throws Exception {
+    NameKey sourceProject = createProjectOverAPI("sourceProject", project, false, null);
+    NameKey targetProject = createProjectOverAPI("targetProject", project, false, null);
+    TestRepository<InMemoryRepository> sourceRepo = cloneProject(sourceProject);
+    pushCommit(sourceRepo, "subject1");
+    ObjectId head = pushCommit(sourceRepo, "subject2");
+
+    httpClientFactory
+        .create(source)
+        .execute(
+            withBasicAuthenticationAsAdmin(
+                createPackRequest(targetProject, head, writePack(sourceProject, head, false))),
+            assertHttpResponseCode(409));
+
+    try (Repository target = repoManager.openRepository(targetProject)) {
+      assertThat(target.getObjectDatabase().has(head)).isFalse();
+      assertThat(target.exactRef(REF_NAME)).isNull();
+    }
+
+    httpClientFactory
+        .create(source)
+        .execute(
+            withBasicAuthenticationAsAdmin(
+                createPackRequest(targetProject, head, writePack(sourceProject, head, true))),
+            assertHttpResponseCode(201));
+
+    assertThatRefIsReplicated(sourceProject, targetProject);
+  }
+
+  private ObjectId pushCommit(TestRepository<InMemoryRepository> repo, String subject)
+      throws Exception {
+    Result pushResult =
+        pushFactory.create(admin.newIdent(), repo, subject, "a/file.txt", subject).to(REF_NAME);
+    pushResult.assertOkStatus();
+    return pushResult.getCommit().getId();
+  }
+
+  private byte[] writePack(NameKey sourceProject, ObjectId head, boolean withHistory)
+      throws Exception {
+    ByteArrayOutputStream pack = new ByteArrayOutputStream();
+    plugin
+        .getSysInjector()
+        .getInstance(RevisionPackWriter.class)
+        .write(sourceProject, head, withHistory, pack);
+    return pack.toByteArray();
+  }
+
+  private HttpPost createPackRequest(NameKey targetProject, ObjectId head, byte[] pack) {
+    HttpPost post = new HttpPost(getURLWithAuthenticationPrefix(targetProject.get()));
+    post.setEntity(new ByteArrayEntity(pack));
+    post.addHeader(new BasicHeader("Content-Type", ApplyPackAction.PACK_CONTENT_TYPE));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_LABEL, TEST_REPLICATION_REMOTE));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_REF_NAME, Url.encode(REF_NAME)));
+    post.addHeader(new BasicHeader(ApplyPackAction.HTTP_HEADER_OBJECT_ID, head.name()));
+    return post;
+  }
+
+  private void assertThatRefIsReplicated(NameKey sourceProject, NameKey targetProject)
+      throws Exception {
+    try (Repository sourceRepo = repoManager.openRepository(sourceProject);
+        Repository target = repoManager.openRepository(targetProject);
+        TestRepository<Repository> testRepo = new TestRepository<>(target)) {
+      assertThat(target.exactRef(REF_NAME).getObjectId())
+          .isEqualTo(sourceRepo.exactRef(REF_NAME).getObjectId());
+      testRepo.fsck();
+    }
+  }
+
+  @Override
+  protected String getURLWithAuthenticationPrefix(String projectName) {
+    return String.format(
+        "%s/a/projects/%s/pull-replication~apply-pack",
+        adminRestSession.url(), Url.encode(projectName));
+  }
+}
@@ -16,6 +16,8 @@ package com.googlesource.gerrit.plugins.replication.pull.api;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,12 +27,14 @@ import com.google.gerrit.extensions.restapi.MergeConflictException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.server.project.ProjectResource;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import java.util.Collections;
 import java.util.List;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
 import org.junit.Before;
 import org.junit.Test;
@@ -74,10 +78,81 @@ public class BatchApplyObjectActionTest {
 
   @Mock private ApplyObjectAction applyObjectAction;
   @Mock private ProjectResource projectResource;
+  @Mock private ReplicationConfig replicationConfig;
+
+  private Config config;
 
   @Before
   public void setup() {
-    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction);
+    config = new Config();
+    when(replicationConfig.getConfig()).thenReturn(config);
+    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction, replicationConfig);
+  }
+
+  @Test
+  public void shouldApplyAllTheRevisionsInBatchWhenBatchRefUpdateIsConfigured()
+      throws RestApiException {
+    config.setString("replication", null, "batchApplyObjectRefUpdate", "batch");
+    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction, replicationConfig);
+    RevisionInput first =
+        new RevisionInput(LABEL, REF_NAME, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+    RevisionInput second =
+        new RevisionInput(LABEL, "foo", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+    List<Response<?>> responses = List.of(Response.created(), Response.created());
+    when(applyObjectAction.applyBatch(projectResource, List.of(first, second), false))
+        .thenReturn(responses);
+
+    Response<?> response = batchApplyObjectAction.apply(projectResource, List.of(first, second));
+
+    assertThat(response.statusCode()).isEqualTo(SC_OK);
+    assertThat((List<Response<?>>) response.value()).isEqualTo(responses);
+    verify(applyObjectAction, never()).apply(any(), any());
+  }
+
+  @Test
+  public void shouldApplyAllTheRevisionsAtomicallyWhenAtomicRefUpdateIsConfigured()
+      throws RestApiException {
+    config.setString("replication", null, "batchApplyObjectRefUpdate", "atomic");
+    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction, replicationConfig);
+    RevisionInput first =
+        new RevisionInput(LABEL, REF_NAME, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+    RevisionInput second =
+        new RevisionInput(LABEL, "foo", DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+
+    batchApplyObjectAction.apply(projectResource, List.of(first, second));
+
+    verify(applyObjectAction).applyBatch(projectResource, List.of(first, second), true);
+  }
+
+  @Test
+  public void shouldApplyEachRevisionWhenBatchContainsDeletes() throws RestApiException {
+    config.setString("replication", null, "batchApplyObjectRefUpdate", "batch");
+    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction, replicationConfig);
+    RevisionInput create =
+        new RevisionInput(LABEL, REF_NAME, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+    RevisionInput delete = new RevisionInput(LABEL, REF_META_NAME, DUMMY_EVENT_TIMESTAMP, null);
+
+    batchApplyObjectAction.apply(projectResource, List.of(create, delete));
+
+    verify(applyObjectAction).apply(projectResource, create);
+    verify(applyObjectAction).apply(projectResource, delete);
+    verify(applyObjectAction, never()).applyBatch(any(), any(), anyBoolean());
+  }
+
+  @Test
+  public void shouldApplyEachRevisionWhenBatchContainsTheSameRefTwice() throws RestApiException {
+    config.setString("replication", null, "batchApplyObjectRefUpdate", "batch");
+    batchApplyObjectAction = new BatchApplyObjectAction(applyObjectAction, replicationConfig);
+    RevisionInput first =
+        new RevisionInput(LABEL, REF_NAME, DUMMY_EVENT_TIMESTAMP, createSampleRevisionData());
+    RevisionInput second =
+        new RevisionInput(LABEL, REF_NAME, DUMMY_EVENT_TIMESTAMP + 1, createSampleRevisionData());
+
+    batchApplyObjectAction.apply(projectResource, List.of(first, second));
+
+    verify(applyObjectAction).apply(projectResource, first);
+    verify(applyObjectAction).apply(projectResource, second);
+    verify(applyObjectAction, never()).applyBatch(any(), any(), anyBoolean());
   }
 
   @Test
@@ -95,6 +95,16 @@ public class BearerAuthenticationFilterTest {
     authenticateAndFilter("any-prefix/pull-replication~batch-apply-object", NO_QUERY_PARAMETERS);
   }
 
+  @Test
+  public void shouldAuthenticateWhenApplyPack() throws ServletException, IOException {
+    authenticateAndFilter("any-prefix/pull-replication~apply-pack", NO_QUERY_PARAMETERS);
+  }
+
+  @Test
+  public void shouldAuthenticateWhenCommonAncestor() throws ServletException, IOException {
+    authenticateAndFilter("any-prefix/pull-replication~common-ancestor", NO_QUERY_PARAMETERS);
+  }
+
   @Test
   public void shouldAuthenticateWhenDeleteProject() throws ServletException, IOException {
     authenticateAndFilter("any-prefix/pull-replication~delete-project", NO_QUERY_PARAMETERS);
@@ -111,6 +121,11 @@ public class BearerAuthenticationFilterTest {
         "any-prefix/pull-replication/init-project/my-project.git", NO_QUERY_PARAMETERS);
   }
 
+  @Test
+  public void shouldAuthenticateWhenCapabilities() throws ServletException, IOException {
+    authenticateAndFilter("any-prefix/plugins/pull-replication/capabilities", NO_QUERY_PARAMETERS);
+  }
+
   @Test
   public void shouldAuthenticateWhenGitUploadPack() throws ServletException, IOException {
     authenticateAndFilter("any-prefix/git-upload-pack", NO_QUERY_PARAMETERS);
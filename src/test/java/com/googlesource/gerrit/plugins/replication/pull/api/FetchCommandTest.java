@@ -40,10 +40,12 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.URIish;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -76,7 +78,13 @@ public class FetchCommandTest {
 
     when(fetchReplicationStateFactory.create(any())).thenReturn(state);
     when(sources.getByRemoteName(label)).thenReturn(Optional.of(source));
-    when(source.schedule(eq(projectName), eq(REF_NAME_TO_FETCH), eq(state), any(), any()))
+    when(source.schedule(
+            eq(projectName),
+            eq(REF_NAME_TO_FETCH),
+            ArgumentMatchers.<Optional<ObjectId>>any(),
+            eq(state),
+            any(),
+            any()))
         .thenReturn(CompletableFuture.completedFuture(null));
     objectUnderTest =
         new FetchCommand(fetchReplicationStateFactory, fetchStateLog, sources, eventDispatcher);
@@ -89,7 +97,8 @@ public class FetchCommandTest {
     objectUnderTest.fetchSync(projectName, label, REF_NAME_TO_FETCH);
 
     verify(source, times(1))
-        .schedule(projectName, REF_NAME_TO_FETCH, state, SYNC, Optional.empty());
+        .schedule(
+            projectName, REF_NAME_TO_FETCH, Optional.empty(), state, SYNC, Optional.empty());
   }
 
   @Test
@@ -99,7 +108,32 @@ public class FetchCommandTest {
     objectUnderTest.fetchAsync(projectName, label, REF_NAME_TO_FETCH, apiRequestMetrics);
 
     verify(source, times(1))
-        .schedule(projectName, REF_NAME_TO_FETCH, state, ASYNC, Optional.of(apiRequestMetrics));
+        .schedule(
+            projectName,
+            REF_NAME_TO_FETCH,
+            Optional.empty(),
+            state,
+            ASYNC,
+            Optional.of(apiRequestMetrics));
+  }
+
+  @Test
+  public void shouldScheduleRefFetchWithTheNewRevOfTheRef()
+      throws InterruptedException, ExecutionException, RemoteConfigurationMissingException,
+          TimeoutException {
+    ObjectId newRev = ObjectId.fromString("9f8d52853089a3cf00c02ff7bd0817bd4353a95a");
+
+    objectUnderTest.fetchAsync(
+        projectName, label, REF_NAME_TO_FETCH, Optional.of(newRev), apiRequestMetrics);
+
+    verify(source, times(1))
+        .schedule(
+            projectName,
+            REF_NAME_TO_FETCH,
+            Optional.of(newRev),
+            state,
+            ASYNC,
+            Optional.of(apiRequestMetrics));
   }
 
   @Test
@@ -109,7 +143,8 @@ public class FetchCommandTest {
     objectUnderTest.fetchSync(projectName, label, REF_NAME_TO_FETCH);
 
     verify(source, times(1))
-        .schedule(projectName, REF_NAME_TO_FETCH, state, SYNC, Optional.empty());
+        .schedule(
+            projectName, REF_NAME_TO_FETCH, Optional.empty(), state, SYNC, Optional.empty());
     verify(state, times(1)).markAllFetchTasksScheduled();
   }
 
@@ -126,7 +161,8 @@ public class FetchCommandTest {
   public void shouldUpdateStateWhenInterruptedException()
       throws InterruptedException, ExecutionException, TimeoutException {
     when(future.get()).thenThrow(new InterruptedException());
-    when(source.schedule(projectName, REF_NAME_TO_FETCH, state, SYNC, Optional.empty()))
+    when(source.schedule(
+            projectName, REF_NAME_TO_FETCH, Optional.empty(), state, SYNC, Optional.empty()))
         .thenReturn(future);
 
     InterruptedException e =
@@ -141,7 +177,8 @@ public class FetchCommandTest {
   public void shouldUpdateStateWhenExecutionException()
       throws InterruptedException, ExecutionException, TimeoutException {
     when(future.get()).thenThrow(new ExecutionException(new Exception()));
-    when(source.schedule(projectName, REF_NAME_TO_FETCH, state, SYNC, Optional.empty()))
+    when(source.schedule(
+            projectName, REF_NAME_TO_FETCH, Optional.empty(), state, SYNC, Optional.empty()))
         .thenReturn(future);
 
     ExecutionException e =
@@ -156,7 +193,8 @@ public class FetchCommandTest {
   public void shouldUpdateStateWhenTimeoutException()
       throws InterruptedException, ExecutionException, TimeoutException {
     when(future.get(anyLong(), eq(TimeUnit.SECONDS))).thenThrow(new TimeoutException());
-    when(source.schedule(projectName, REF_NAME_TO_FETCH, state, SYNC, Optional.empty()))
+    when(source.schedule(
+            projectName, REF_NAME_TO_FETCH, Optional.empty(), state, SYNC, Optional.empty()))
         .thenReturn(future);
     when(source.getTimeout()).thenReturn(1);
 
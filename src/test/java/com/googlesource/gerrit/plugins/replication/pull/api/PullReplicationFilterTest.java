@@ -1,6 +1,8 @@
 package com.googlesource.gerrit.plugins.replication.pull.api;
 
 import static com.google.common.net.HttpHeaders.ACCEPT;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.httpd.restapi.RestApiServlet.SC_UNPROCESSABLE_ENTITY;
 import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static org.mockito.ArgumentMatchers.any;
@@ -20,10 +22,14 @@ import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectResource;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.inject.util.Providers;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionInput;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -42,12 +48,16 @@ public class PullReplicationFilterTest {
   @Mock private ApplyObjectAction applyObjectAction;
   @Mock private ApplyObjectsAction applyObjectsAction;
   @Mock private BatchApplyObjectAction batchApplyObjectAction;
+  @Mock private ApplyPackAction applyPackAction;
+  @Mock private CommonAncestorAction commonAncestorAction;
   @Mock private ProjectInitializationAction projectInitializationAction;
   @Mock private UpdateHeadAction updateHEADAction;
   @Mock private ProjectDeletionAction projectDeletionAction;
+  @Mock private StreamingRevisionsReader streamingRevisionsReader;
   @Mock private ProjectCache projectCache;
   @Mock private ProjectState projectState;
   @Mock private ServletOutputStream outputStream;
+  @Mock private ServletInputStream inputStream;
   @Mock private PrintWriter printWriter;
   @Mock private IdentifiedUser identifiedUserMock;
   @Mock private AnonymousUser anonymousUserMock;
@@ -65,10 +75,16 @@ public class PullReplicationFilterTest {
 
   private final String BATCH_APPLY_OBJECT_URI =
       String.format("any-prefix/projects/%s/%s~batch-apply-object", PROJECT_NAME, PLUGIN_NAME);
+  private final String APPLY_PACK_URI =
+      String.format("any-prefix/projects/%s/%s~apply-pack", PROJECT_NAME, PLUGIN_NAME);
+  private final String COMMON_ANCESTOR_URI =
+      String.format("any-prefix/projects/%s/%s~common-ancestor", PROJECT_NAME, PLUGIN_NAME);
   private final String DELETE_PROJECT_URI =
       String.format("any-prefix/projects/%s/%s~delete-project", PROJECT_NAME, PLUGIN_NAME);
   private final String INIT_PROJECT_URI =
       String.format("any-prefix/%s/init-project/%s", PLUGIN_NAME, PROJECT_NAME_GIT);
+  private final String CAPABILITIES_URI =
+      String.format("any-prefix/plugins/%s/capabilities", PLUGIN_NAME);
 
   private final Response OK_RESPONSE = Response.ok();
 
@@ -82,9 +98,12 @@ public class PullReplicationFilterTest {
         applyObjectAction,
         applyObjectsAction,
         batchApplyObjectAction,
+        applyPackAction,
+        commonAncestorAction,
         projectInitializationAction,
         updateHEADAction,
         projectDeletionAction,
+        streamingRevisionsReader,
         projectCache,
         PLUGIN_NAME,
         Providers.of(currentUser));
@@ -134,8 +153,8 @@ public class PullReplicationFilterTest {
     byte[] payloadApplyObject =
         ("{\"label\":\"Replication\",\"ref_name\":\"refs/heads/master\","
                 + "\"revision_data\":{"
-                + "\"commit_object\":{\"type\":1,\"content\":\"some-content\"},"
-                + "\"tree_object\":{\"type\":2,\"content\":\"some-content\"},"
+                + "\"commit_object\":{\"type\":1,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"tree_object\":{\"type\":2,\"content\":\"c29tZS1jb250ZW50\"},"
                 + "\"blobs\":[]}"
                 + "}")
             .getBytes(StandardCharsets.UTF_8);
@@ -151,14 +170,74 @@ public class PullReplicationFilterTest {
     verify(applyObjectAction).apply(any(ProjectResource.class), any());
   }
 
+  @Test
+  public void shouldFilterGzipCompressedApplyObjectAction() throws Exception {
+    byte[] payloadApplyObject =
+        ("{\"label\":\"Replication\",\"ref_name\":\"refs/heads/master\","
+                + "\"revision_data\":{"
+                + "\"commit_object\":{\"type\":1,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"tree_object\":{\"type\":2,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"blobs\":[]}"
+                + "}")
+            .getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(payloadApplyObject);
+    }
+
+    when(request.getRequestURI()).thenReturn(APPLY_OBJECT_URI);
+    when(request.getHeader(CONTENT_ENCODING)).thenReturn("gzip");
+    when(request.getInputStream())
+        .thenReturn(new ByteArrayServletInputStream(compressed.toByteArray()));
+    when(projectCache.get(Project.nameKey(PROJECT_NAME))).thenReturn(Optional.of(projectState));
+    when(response.getWriter()).thenReturn(printWriter);
+    when(applyObjectAction.apply(any(), any())).thenReturn(OK_RESPONSE);
+
+    PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(applyObjectAction).apply(any(ProjectResource.class), any());
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void shouldStreamApplyObjectPayloadWhenEnabled() throws Exception {
+    RevisionInput revisionInput = new RevisionInput("Replication", "refs/heads/master", 0L, null);
+    defineBehaviours("{}".getBytes(StandardCharsets.UTF_8), APPLY_OBJECT_URI);
+    when(streamingRevisionsReader.isEnabled()).thenReturn(true);
+    when(streamingRevisionsReader.read(any(), any(), any(), any(), any()))
+        .thenReturn(revisionInput);
+    when(applyObjectAction.apply(any(), any())).thenReturn(OK_RESPONSE);
+
+    PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(streamingRevisionsReader)
+        .read(any(ProjectResource.class), any(), any(), eq(RevisionInput.class), any());
+    verify(applyObjectAction).apply(any(ProjectResource.class), eq(revisionInput));
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+  }
+
+  @Test
+  public void shouldBe400WhenContentEncodingIsNotSupported() throws Exception {
+    when(request.getRequestURI()).thenReturn(APPLY_OBJECT_URI);
+    when(request.getHeader(CONTENT_ENCODING)).thenReturn("br");
+    when(response.getOutputStream()).thenReturn(outputStream);
+
+    PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
   @Test
   public void shouldFilterApplyObjectsAction() throws Exception {
 
     byte[] payloadApplyObjects =
         ("{\"label\":\"Replication\",\"ref_name\":\"refs/heads/master\","
                 + "\"revisions_data\":[{"
-                + "\"commit_object\":{\"type\":1,\"content\":\"some-content\"},"
-                + "\"tree_object\":{\"type\":2,\"content\":\"some-content\"},"
+                + "\"commit_object\":{\"type\":1,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"tree_object\":{\"type\":2,\"content\":\"c29tZS1jb250ZW50\"},"
                 + "\"blobs\":[]}]}")
             .getBytes(StandardCharsets.UTF_8);
 
@@ -221,6 +300,78 @@ public class PullReplicationFilterTest {
     verify(response).setStatus(OK_RESPONSE.statusCode());
   }
 
+  @Test
+  public void shouldFilterApplyPackAction() throws Exception {
+    when(request.getRequestURI()).thenReturn(APPLY_PACK_URI);
+    when(request.getContentType()).thenReturn(ApplyPackAction.PACK_CONTENT_TYPE);
+    when(request.getHeader(ApplyPackAction.HTTP_HEADER_EVENT_CREATED_ON)).thenReturn("1234");
+    when(request.getInputStream()).thenReturn(inputStream);
+    when(projectCache.get(Project.nameKey(PROJECT_NAME))).thenReturn(Optional.of(projectState));
+    when(applyPackAction.apply(any(), any(), any())).thenReturn(OK_RESPONSE);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    final PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(projectCache).get(Project.nameKey(PROJECT_NAME));
+    verify(applyPackAction).apply(any(ProjectResource.class), any(), eq(inputStream));
+    verify(response).setStatus(OK_RESPONSE.statusCode());
+  }
+
+  @Test
+  public void shouldBe400WhenApplyPackContentTypeIsNotAPack() throws Exception {
+    when(request.getRequestURI()).thenReturn(APPLY_PACK_URI);
+    when(request.getContentType()).thenReturn("application/json");
+    when(response.getOutputStream()).thenReturn(outputStream);
+
+    final PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(response).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+  }
+
+  @Test
+  public void shouldFilterCapabilitiesAction() throws Exception {
+    when(request.getRequestURI()).thenReturn(CAPABILITIES_URI);
+    when(request.getMethod()).thenReturn("GET");
+    StringWriter capabilities = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(capabilities));
+
+    final PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(response).setContentType("application/json");
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+    assertThat(capabilities.toString()).contains("\"apply-pack\"");
+    assertThat(capabilities.toString()).contains("\"content_encodings\":[\"gzip\"]");
+  }
+
+  @Test
+  public void shouldFilterCommonAncestorAction() throws Exception {
+    String commonAncestor = "9f8d52853089a3cf00c02ff7bd0817bd4353a95a";
+    byte[] payloadCommonAncestor =
+        ("{\"label\":\"Replication\",\"ref_name\":\"refs/changes/01/1/meta\","
+                + "\"candidates\":[\""
+                + commonAncestor
+                + "\"]}")
+            .getBytes(StandardCharsets.UTF_8);
+    when(request.getRequestURI()).thenReturn(COMMON_ANCESTOR_URI);
+    InputStream is = new ByteArrayInputStream(payloadCommonAncestor);
+    when(request.getReader()).thenReturn(new BufferedReader(new InputStreamReader(is)));
+    when(projectCache.get(Project.nameKey(PROJECT_NAME))).thenReturn(Optional.of(projectState));
+    when(commonAncestorAction.apply(any(), any()))
+        .thenReturn(new CommonAncestorAction.Info(commonAncestor));
+    StringWriter info = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(info));
+
+    final PullReplicationFilter pullReplicationFilter = createPullReplicationFilter();
+    pullReplicationFilter.doFilter(request, response, filterChain);
+
+    verify(commonAncestorAction).apply(any(ProjectResource.class), any());
+    verify(response).setStatus(HttpServletResponse.SC_OK);
+    assertThat(info.toString()).isEqualTo("{\"common_ancestor\":\"" + commonAncestor + "\"}");
+  }
+
   @Test
   public void shouldGoNextInChainWhenUriDoesNotMatch() throws Exception {
     when(request.getRequestURI()).thenReturn("any-url");
@@ -373,14 +524,14 @@ public class PullReplicationFilterTest {
     byte[] payloadApplyObject =
         ("[{\"label\":\"Replication\",\"ref_name\":\"refs/heads/foo\","
                 + "\"revision_data\":{"
-                + "\"commit_object\":{\"type\":1,\"content\":\"some-content\"},"
-                + "\"tree_object\":{\"type\":2,\"content\":\"some-content\"},"
+                + "\"commit_object\":{\"type\":1,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"tree_object\":{\"type\":2,\"content\":\"c29tZS1jb250ZW50\"},"
                 + "\"blobs\":[]}"
                 + "},"
                 + "{\"label\":\"Replication\",\"ref_name\":\"refs/heads/bar\","
                 + "\"revision_data\":{"
-                + "\"commit_object\":{\"type\":1,\"content\":\"some-content\"},"
-                + "\"tree_object\":{\"type\":2,\"content\":\"some-content\"},"
+                + "\"commit_object\":{\"type\":1,\"content\":\"c29tZS1jb250ZW50\"},"
+                + "\"tree_object\":{\"type\":2,\"content\":\"c29tZS1jb250ZW50\"},"
                 + "\"blobs\":[]}"
                 + "}]")
             .getBytes(StandardCharsets.UTF_8);
@@ -395,4 +546,35 @@ public class PullReplicationFilterTest {
     verifyBehaviours();
     verify(batchApplyObjectAction).apply(any(ProjectResource.class), any());
   }
+
+  private static class ByteArrayServletInputStream extends ServletInputStream {
+    private final ByteArrayInputStream in;
+
+    ByteArrayServletInputStream(byte[] content) {
+      in = new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      return in.read(b, off, len);
+    }
+
+    @Override
+    public boolean isFinished() {
+      return in.available() == 0;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {}
+  }
 }
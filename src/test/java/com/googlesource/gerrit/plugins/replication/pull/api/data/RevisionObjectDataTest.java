@@ -0,0 +1,78 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.api.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gson.FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.nio.charset.StandardCharsets;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.Test;
+
+public class RevisionObjectDataTest {
+  private static final String SHA1 = "9f8d52853089a3cf00c02ff7bd0817bd4353a95a";
+  private static final byte[] CONTENT = "blob content".getBytes(StandardCharsets.UTF_8);
+  private static final String JSON =
+      "{\"sha1\":\"" + SHA1 + "\",\"type\":3,\"content\":\"YmxvYiBjb250ZW50\"}";
+
+  private final Gson gson =
+      new GsonBuilder().setFieldNamingPolicy(LOWER_CASE_WITH_UNDERSCORES).create();
+
+  @Test
+  public void shouldSerializeContentAsBase64() {
+    assertThat(gson.toJson(new RevisionObjectData(SHA1, Constants.OBJ_BLOB, CONTENT)))
+        .isEqualTo(JSON);
+  }
+
+  @Test
+  public void shouldDeserializeContentFromBase64() {
+    RevisionObjectData revisionObjectData = gson.fromJson(JSON, RevisionObjectData.class);
+
+    assertThat(revisionObjectData.getSha1()).isEqualTo(SHA1);
+    assertThat(revisionObjectData.getType()).isEqualTo(Constants.OBJ_BLOB);
+    assertThat(revisionObjectData.getContent()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void shouldSerializeNullContentAsEmpty() {
+    RevisionObjectData revisionObjectData =
+        gson.fromJson(
+            gson.toJson(new RevisionObjectData(SHA1, Constants.OBJ_COMMIT, null)),
+            RevisionObjectData.class);
+
+    assertThat(revisionObjectData.getContent()).isEmpty();
+  }
+
+  @Test
+  public void shouldSerializeDeltaBase() {
+    String base = "b5d7bcf1d1c5b0f0726d10a16c8315f06f900bfb";
+    RevisionObjectData revisionObjectData =
+        gson.fromJson(
+            gson.toJson(new RevisionObjectData(SHA1, Constants.OBJ_REF_DELTA, CONTENT, base)),
+            RevisionObjectData.class);
+
+    assertThat(revisionObjectData.getType()).isEqualTo(Constants.OBJ_REF_DELTA);
+    assertThat(revisionObjectData.getBase()).isEqualTo(base);
+    assertThat(revisionObjectData.getContent()).isEqualTo(CONTENT);
+  }
+
+  @Test
+  public void shouldNotSerializeMissingDeltaBase() {
+    assertThat(gson.toJson(new RevisionObjectData(SHA1, Constants.OBJ_BLOB, CONTENT)))
+        .doesNotContain("base");
+  }
+}
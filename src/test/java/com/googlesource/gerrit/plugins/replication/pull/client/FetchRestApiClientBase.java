@@ -16,24 +16,32 @@ package com.googlesource.gerrit.plugins.replication.pull.client;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.metrics.DisabledMetricMaker;
 import com.googlesource.gerrit.plugins.replication.CredentialsFactory;
 import com.googlesource.gerrit.plugins.replication.ReplicationFileBasedConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ApplyObjectMetrics;
 import com.googlesource.gerrit.plugins.replication.pull.BearerTokenProvider;
 import com.googlesource.gerrit.plugins.replication.pull.Source;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.BatchApplyObjectData;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.filter.SyncRefsFilter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
@@ -42,8 +50,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
@@ -70,11 +82,17 @@ public abstract class FetchRestApiClientBase {
   @Mock ReplicationFileBasedConfig replicationConfig;
   @Mock Source source;
   @Mock BearerTokenProvider bearerTokenProvider;
+  @Mock ApplyObjectMetrics applyObjectMetrics;
+
+  @Mock TargetCapabilitiesCache capabilitiesCache;
   @Captor ArgumentCaptor<HttpPost> httpPostCaptor;
   @Captor ArgumentCaptor<HttpPut> httpPutCaptor;
   @Captor ArgumentCaptor<HttpDelete> httpDeleteCaptor;
+  @Captor ArgumentCaptor<HttpGet> httpGetCaptor;
   String api = "http://gerrit-host";
   String pluginName = "pull-replication";
+  RequestCompressor requestCompressor =
+      new RequestCompressor(pluginName, new DisabledMetricMaker());
   String instanceId = "Replication";
   String refName = RefNames.REFS_HEADS + "master";
   long eventCreatedOn = 1684875939;
@@ -191,9 +209,12 @@ public abstract class FetchRestApiClientBase {
             httpClientFactory,
             replicationConfig,
             syncRefsFilter,
+            applyObjectMetrics,
             pluginName,
             instanceId,
             bearerTokenProvider,
+            requestCompressor,
+            capabilitiesCache,
             source);
 
     objectUnderTest.callFetch(Project.nameKey("test_repo"), refName, new URIish(api));
@@ -219,9 +240,12 @@ public abstract class FetchRestApiClientBase {
             httpClientFactory,
             replicationConfig,
             syncRefsFilter,
+            applyObjectMetrics,
             pluginName,
             instanceId,
             bearerTokenProvider,
+            requestCompressor,
+            capabilitiesCache,
             source);
 
     objectUnderTest.callFetch(Project.nameKey("test_repo"), refName, new URIish(api));
@@ -319,9 +343,12 @@ public abstract class FetchRestApiClientBase {
                 httpClientFactory,
                 replicationConfig,
                 syncRefsFilter,
+                applyObjectMetrics,
                 pluginName,
                 null,
                 bearerTokenProvider,
+                requestCompressor,
+                capabilitiesCache,
                 source));
   }
 
@@ -335,9 +362,12 @@ public abstract class FetchRestApiClientBase {
                 httpClientFactory,
                 replicationConfig,
                 syncRefsFilter,
+                applyObjectMetrics,
                 pluginName,
                 " ",
                 bearerTokenProvider,
+                requestCompressor,
+                capabilitiesCache,
                 source));
   }
 
@@ -351,9 +381,12 @@ public abstract class FetchRestApiClientBase {
                 httpClientFactory,
                 replicationConfig,
                 syncRefsFilter,
+                applyObjectMetrics,
                 pluginName,
                 "",
                 bearerTokenProvider,
+                requestCompressor,
+                capabilitiesCache,
                 source));
   }
 
@@ -366,9 +399,12 @@ public abstract class FetchRestApiClientBase {
             httpClientFactory,
             replicationConfig,
             syncRefsFilter,
+            applyObjectMetrics,
             pluginName,
             "",
             bearerTokenProvider,
+            requestCompressor,
+            capabilitiesCache,
             source);
     objectUnderTest.callFetch(Project.nameKey("test_repo"), refName, new URIish(api));
 
@@ -499,6 +535,165 @@ public abstract class FetchRestApiClientBase {
     assertThat(readPayload(httpPost)).isEqualTo(expectedSendObjectsPayload);
   }
 
+  @Test
+  public void shouldCompressSendObjectPayloadWhenRequestCompressionIsEnabled()
+      throws IOException, URISyntaxException {
+    when(source.getRequestCompression()).thenReturn(RequestCompression.GZIP);
+    when(capabilitiesCache.get(eq(api), any())).thenReturn(CapabilitiesInfo.current());
+
+    objectUnderTest.callSendObject(
+        Project.nameKey("test_repo"),
+        refName,
+        eventCreatedOn,
+        IS_REF_UPDATE,
+        createSampleRevisionData(),
+        new URIish(api));
+
+    verify(httpClient, times(1)).execute(httpPostCaptor.capture(), any());
+
+    HttpEntity entity = httpPostCaptor.getValue().getEntity();
+    assertThat(entity.getContentEncoding().getValue()).isEqualTo("gzip");
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    entity.writeTo(compressed);
+    byte[] payload =
+        ByteStreams.toByteArray(
+            new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+    assertThat(new String(payload, UTF_8)).isEqualTo(expectedSendObjectPayload);
+  }
+
+  @Test
+  public void shouldReadTheCompressedSendObjectPayloadContent()
+      throws IOException, URISyntaxException {
+    when(source.getRequestCompression()).thenReturn(RequestCompression.GZIP);
+    when(capabilitiesCache.get(eq(api), any())).thenReturn(CapabilitiesInfo.current());
+
+    objectUnderTest.callSendObject(
+        Project.nameKey("test_repo"),
+        refName,
+        eventCreatedOn,
+        IS_REF_UPDATE,
+        createSampleRevisionData(),
+        new URIish(api));
+
+    verify(httpClient, times(1)).execute(httpPostCaptor.capture(), any());
+
+    HttpEntity entity = httpPostCaptor.getValue().getEntity();
+    assertThat(entity.isRepeatable()).isTrue();
+    for (int i = 0; i < 2; i++) {
+      byte[] payload = ByteStreams.toByteArray(new GZIPInputStream(entity.getContent()));
+      assertThat(new String(payload, UTF_8)).isEqualTo(expectedSendObjectPayload);
+    }
+  }
+
+  @Test
+  public void shouldNotCompressBatchPayloadSmallerThanTheThreshold()
+      throws IOException, URISyntaxException {
+    when(source.getRequestCompression()).thenReturn(RequestCompression.GZIP);
+    when(source.getRequestCompressionThreshold()).thenReturn(Integer.MAX_VALUE);
+    when(capabilitiesCache.get(eq(api), any())).thenReturn(CapabilitiesInfo.current());
+    List<BatchApplyObjectData> batchApplyObjects = new ArrayList<>();
+    batchApplyObjects.add(BatchApplyObjectData.create(refName, Optional.empty(), true));
+
+    objectUnderTest.callBatchSendObject(
+        Project.nameKey("test_repo"), batchApplyObjects, eventCreatedOn, new URIish(api));
+
+    verify(httpClient, times(1)).execute(httpPostCaptor.capture(), any());
+    assertThat(httpPostCaptor.getValue().getEntity().getContentEncoding()).isNull();
+  }
+
+  @Test
+  public void shouldSendTheSameCompressedBatchPayloadToAllTheApiUrls()
+      throws IOException, URISyntaxException {
+    when(source.getRequestCompression()).thenReturn(RequestCompression.GZIP);
+    when(capabilitiesCache.get(any(), any())).thenReturn(CapabilitiesInfo.current());
+    JsonPayload payload =
+        objectUnderTest.serializeBatchSendObject(
+            List.of(
+                BatchApplyObjectData.create(
+                    refName, Optional.of(createSampleRevisionData()), false)),
+            eventCreatedOn);
+
+    objectUnderTest.callBatchSendObject(Project.nameKey("test_repo"), payload, new URIish(api));
+    objectUnderTest.callBatchSendObject(
+        Project.nameKey("test_repo"), payload, new URIish(api + "/other"));
+
+    verify(httpClient, times(2)).execute(httpPostCaptor.capture(), any());
+    HttpEntity firstEntity = httpPostCaptor.getAllValues().get(0).getEntity();
+    HttpEntity secondEntity = httpPostCaptor.getAllValues().get(1).getEntity();
+    assertThat(firstEntity.getContentEncoding().getValue()).isEqualTo("gzip");
+    byte[] compressed = ByteStreams.toByteArray(firstEntity.getContent());
+    assertThat(ByteStreams.toByteArray(secondEntity.getContent())).isEqualTo(compressed);
+
+    ArgumentCaptor<Long> sentBytes = ArgumentCaptor.forClass(Long.class);
+    verify(applyObjectMetrics, times(2)).recordPayloadSent(any(), sentBytes.capture());
+    assertThat(sentBytes.getAllValues())
+        .containsExactly((long) compressed.length, (long) compressed.length);
+  }
+
+  @Test
+  public void shouldNotCompressPayloadWhenTheTargetDoesNotSupportTheEncoding()
+      throws IOException, URISyntaxException {
+    when(source.getRequestCompression()).thenReturn(RequestCompression.GZIP);
+    when(capabilitiesCache.get(eq(api), any())).thenReturn(CapabilitiesInfo.legacy());
+
+    objectUnderTest.callSendObject(
+        Project.nameKey("test_repo"),
+        refName,
+        eventCreatedOn,
+        IS_REF_UPDATE,
+        createSampleRevisionData(),
+        new URIish(api));
+
+    verify(httpClient, times(1)).execute(httpPostCaptor.capture(), any());
+    assertThat(httpPostCaptor.getValue().getEntity().getContentEncoding()).isNull();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldDiscoverCapabilitiesFromTheCapabilitiesEndpoint()
+      throws IOException, URISyntaxException {
+    when(capabilitiesCache.get(eq(api), any()))
+        .thenAnswer(invocation -> ((Callable<CapabilitiesInfo>) invocation.getArgument(1)).call());
+    when(httpClient.execute(any(HttpGet.class), any()))
+        .thenReturn(
+            new HttpResult(
+                200, Optional.of("{\"endpoints\":[\"fetch\"],\"content_encodings\":[]}")));
+
+    CapabilitiesInfo capabilities = objectUnderTest.getCapabilities(new URIish(api));
+
+    verify(httpClient, times(1)).execute(httpGetCaptor.capture(), any());
+    assertThat(httpGetCaptor.getValue().getURI().getPath())
+        .isEqualTo(
+            String.format("%s/plugins/pull-replication/capabilities", urlAuthenticationPrefix()));
+    assertThat(capabilities.getEndpoints()).containsExactly("fetch");
+    assertThat(capabilities.getContentEncodings()).isEmpty();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAssumeLegacyCapabilitiesWhenTheCapabilitiesEndpointIsNotFound()
+      throws IOException, URISyntaxException {
+    when(capabilitiesCache.get(eq(api), any()))
+        .thenAnswer(invocation -> ((Callable<CapabilitiesInfo>) invocation.getArgument(1)).call());
+    when(httpClient.execute(any(HttpGet.class), any()))
+        .thenReturn(new HttpResult(404, Optional.of("Not found")));
+
+    CapabilitiesInfo capabilities = objectUnderTest.getCapabilities(new URIish(api));
+
+    assertThat(capabilities.supportsEndpoint("batch-apply-object")).isTrue();
+    assertThat(capabilities.supportsEndpoint("apply-pack")).isFalse();
+  }
+
+  @Test
+  public void shouldInvalidateCapabilitiesWhenTheCallFails() throws Exception {
+    when(httpClient.execute(any(HttpPost.class), any())).thenThrow(new IOException("reset"));
+
+    assertThrows(
+        IOException.class,
+        () -> objectUnderTest.callFetch(Project.nameKey("test_repo"), refName, new URIish(api)));
+    verify(capabilitiesCache).invalidate(api);
+  }
+
   @Test
   public void shouldCallBatchApplyObjectEndpointWithNoRevisionDataForDeletes()
       throws IOException, URISyntaxException {
@@ -57,6 +57,7 @@ public class FetchRestApiClientWithBasicAuthenticationTest extends FetchRestApiC
     when(replicationConfig.getConfig()).thenReturn(config);
     when(config.getStringList("replication", null, "syncRefs")).thenReturn(new String[0]);
     when(source.getRemoteConfigName()).thenReturn("Replication");
+    lenient().when(source.getRequestCompression()).thenReturn(RequestCompression.NONE);
 
     HttpResult httpResult = new HttpResult(SC_CREATED, Optional.of("result message"));
     when(httpClient.execute(any(HttpRequestBase.class), any())).thenReturn(httpResult);
@@ -68,9 +69,12 @@ public class FetchRestApiClientWithBasicAuthenticationTest extends FetchRestApiC
             httpClientFactory,
             replicationConfig,
             syncRefsFilter,
+            applyObjectMetrics,
             pluginName,
             instanceId,
             bearerTokenProvider,
+            requestCompressor,
+            capabilitiesCache,
             source);
     verify(bearerTokenProvider).get();
   }
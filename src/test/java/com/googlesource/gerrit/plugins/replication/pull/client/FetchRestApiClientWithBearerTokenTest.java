@@ -36,6 +36,7 @@ public class FetchRestApiClientWithBearerTokenTest extends FetchRestApiClientBas
     when(bearerTokenProvider.get()).thenReturn(Optional.of("some-bearer-token"));
     when(replicationConfig.getConfig()).thenReturn(config);
     when(config.getStringList("replication", null, "syncRefs")).thenReturn(new String[0]);
+    lenient().when(source.getRequestCompression()).thenReturn(RequestCompression.NONE);
     HttpResult httpResult = new HttpResult(SC_CREATED, Optional.of("result message"));
     when(httpClient.execute(any(HttpRequestBase.class), any())).thenReturn(httpResult);
     when(httpClientFactory.create(any())).thenReturn(httpClient);
@@ -48,9 +49,12 @@ public class FetchRestApiClientWithBearerTokenTest extends FetchRestApiClientBas
             httpClientFactory,
             replicationConfig,
             syncRefsFilter,
+            applyObjectMetrics,
             pluginName,
             instanceId,
             bearerTokenProvider,
+            requestCompressor,
+            capabilitiesCache,
             source);
     verify(bearerTokenProvider).get();
   }
@@ -0,0 +1,88 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HttpRequestAborterTest {
+  @Mock private HttpUriRequest request;
+
+  @Test
+  public void shouldAbortTheRequestInFlight() throws Exception {
+    HttpRequestAborter aborter = new HttpRequestAborter();
+
+    aborter.run(
+        () -> {
+          HttpRequestAborter.started(request);
+          aborter.abort();
+          HttpRequestAborter.completed();
+          return true;
+        });
+
+    verify(request).abort();
+  }
+
+  @Test
+  public void shouldAbortTheRequestsStartedAfterTheAbort() throws Exception {
+    HttpRequestAborter aborter = new HttpRequestAborter();
+    aborter.abort();
+
+    aborter.run(
+        () -> {
+          HttpRequestAborter.started(request);
+          HttpRequestAborter.completed();
+          return true;
+        });
+
+    verify(request).abort();
+  }
+
+  @Test
+  public void shouldNotAbortTheCompletedRequests() throws Exception {
+    HttpRequestAborter aborter = new HttpRequestAborter();
+
+    boolean result =
+        aborter.run(
+            () -> {
+              HttpRequestAborter.started(request);
+              HttpRequestAborter.completed();
+              return true;
+            });
+    aborter.abort();
+
+    assertThat(result).isTrue();
+    verify(request, never()).abort();
+  }
+
+  @Test
+  public void shouldNotTrackTheRequestsOutsideOfACall() throws Exception {
+    HttpRequestAborter aborter = new HttpRequestAborter();
+
+    HttpRequestAborter.started(request);
+    aborter.abort();
+    HttpRequestAborter.completed();
+
+    verify(request, never()).abort();
+  }
+}
@@ -0,0 +1,83 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.client;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.api.data.CapabilitiesInfo;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TargetCapabilitiesCacheTest {
+  private static final String API_URL = "http://gerrit-host";
+
+  @Mock private ReplicationConfig replicationConfig;
+
+  private TargetCapabilitiesCache objectUnderTest;
+  private AtomicInteger discoveries;
+
+  @Before
+  public void setup() {
+    when(replicationConfig.getConfig()).thenReturn(new Config());
+    objectUnderTest = new TargetCapabilitiesCache(replicationConfig);
+    discoveries = new AtomicInteger();
+  }
+
+  @Test
+  public void shouldDiscoverTheCapabilitiesOnce() {
+    objectUnderTest.get(API_URL, this::discover);
+    CapabilitiesInfo capabilities = objectUnderTest.get(API_URL, this::discover);
+
+    assertThat(discoveries.get()).isEqualTo(1);
+    assertThat(capabilities.supportsEndpoint("apply-pack")).isTrue();
+  }
+
+  @Test
+  public void shouldAssumeTheLegacyCapabilitiesWithoutRetryingAFailedDiscovery() {
+    objectUnderTest.get(API_URL, this::failDiscovery);
+    CapabilitiesInfo capabilities = objectUnderTest.get(API_URL, this::discover);
+
+    assertThat(discoveries.get()).isEqualTo(1);
+    assertThat(capabilities.supportsEndpoint("apply-pack")).isFalse();
+  }
+
+  @Test
+  public void shouldDiscoverTheCapabilitiesAgainAfterAnInvalidation() {
+    objectUnderTest.get(API_URL, this::discover);
+    objectUnderTest.invalidate(API_URL);
+    objectUnderTest.get(API_URL, this::discover);
+
+    assertThat(discoveries.get()).isEqualTo(2);
+  }
+
+  private CapabilitiesInfo discover() {
+    discoveries.incrementAndGet();
+    return CapabilitiesInfo.current();
+  }
+
+  private CapabilitiesInfo failDiscovery() throws IOException {
+    discoveries.incrementAndGet();
+    throw new IOException("connection refused");
+  }
+}
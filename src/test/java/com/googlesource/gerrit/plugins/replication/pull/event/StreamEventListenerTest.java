@@ -186,6 +186,7 @@ public class StreamEventListenerTest {
     Input input = inputCaptor.getValue();
     assertThat(input.label).isEqualTo(REMOTE_INSTANCE_ID);
     assertThat(input.refName).isEqualTo(TEST_REF_NAME);
+    assertThat(input.newRev).isEqualTo(NEW_REV);
 
     verify(executor).submit(any(FetchJob.class));
   }
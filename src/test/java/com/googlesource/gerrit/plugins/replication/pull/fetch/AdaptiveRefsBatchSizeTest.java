@@ -0,0 +1,84 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.replication.pull.fetch.AdaptiveRefsBatchSize.ADDITIVE_INCREASE;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AdaptiveRefsBatchSizeTest {
+  private static final long TARGET_LATENCY_MS = 1000;
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(TARGET_LATENCY_MS / 2);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(TARGET_LATENCY_MS * 2);
+
+  @Test
+  public void shouldGrowAfterAFullBatchFetchedWithinTheTargetLatency() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(50, 10, 100, TARGET_LATENCY_MS);
+
+    batchSize.onFetched(50, FAST);
+
+    assertThat(batchSize.get()).isEqualTo(50 + ADDITIVE_INCREASE);
+  }
+
+  @Test
+  public void shouldNotGrowAfterAPartialBatch() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(50, 10, 100, TARGET_LATENCY_MS);
+
+    batchSize.onFetched(5, FAST);
+
+    assertThat(batchSize.get()).isEqualTo(50);
+  }
+
+  @Test
+  public void shouldNotGrowAboveTheMaximum() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(95, 10, 100, TARGET_LATENCY_MS);
+
+    batchSize.onFetched(95, FAST);
+    batchSize.onFetched(100, FAST);
+
+    assertThat(batchSize.get()).isEqualTo(100);
+  }
+
+  @Test
+  public void shouldHalveAfterASlowBatch() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(50, 10, 100, TARGET_LATENCY_MS);
+
+    batchSize.onFetched(50, SLOW);
+
+    assertThat(batchSize.get()).isEqualTo(25);
+  }
+
+  @Test
+  public void shouldNotShrinkBelowTheMinimum() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(50, 20, 100, TARGET_LATENCY_MS);
+
+    batchSize.onFailed();
+    batchSize.onFailed();
+
+    assertThat(batchSize.get()).isEqualTo(20);
+  }
+
+  @Test
+  public void shouldKeepAFixedSizeWhenMinimumAndMaximumAreEqual() {
+    AdaptiveRefsBatchSize batchSize = new AdaptiveRefsBatchSize(50, 50, 50, TARGET_LATENCY_MS);
+
+    batchSize.onFetched(50, FAST);
+    batchSize.onFailed();
+
+    assertThat(batchSize.get()).isEqualTo(50);
+  }
+}
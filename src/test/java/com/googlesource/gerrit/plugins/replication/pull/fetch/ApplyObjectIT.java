@@ -16,7 +16,13 @@ package com.googlesource.gerrit.plugins.replication.pull.fetch;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Bytes;
@@ -35,18 +41,34 @@ import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.api.changes.ReviewInput.CommentInput;
 import com.google.gerrit.extensions.client.Comment;
 import com.google.gerrit.extensions.config.FactoryModule;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import com.google.inject.Inject;
 import com.google.inject.Scopes;
 import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
 import com.googlesource.gerrit.plugins.replication.ReplicationFileBasedConfig;
+import com.googlesource.gerrit.plugins.replication.pull.ApplyObjectMetrics;
+import com.googlesource.gerrit.plugins.replication.pull.LocalGitRepositoryManagerProvider;
 import com.googlesource.gerrit.plugins.replication.pull.RevisionReader;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionData;
 import com.googlesource.gerrit.plugins.replication.pull.api.data.RevisionObjectData;
 import com.googlesource.gerrit.plugins.replication.pull.api.exception.MissingParentObjectException;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
 import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.RefUpdate;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.RefSpec;
 import org.junit.Before;
@@ -59,6 +81,7 @@ import org.junit.Test;
     sysModule = "com.googlesource.gerrit.plugins.replication.pull.fetch.ApplyObjectIT$TestModule")
 public class ApplyObjectIT extends LightweightPluginDaemonTest {
   private static final String TEST_REPLICATION_SUFFIX = "suffix1";
+  private static final String TEST_SOURCE_LABEL = "test-source";
 
   @Inject private ProjectOperations projectOperations;
   @Inject ApplyObject objectUnderTest;
@@ -83,7 +106,7 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
 
     try (Repository repo = repoManager.openRepository(testRepoKey)) {
       revisionData = reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0);
-      objectUnderTest.apply(project, refSpec, toArray(revisionData));
+      objectUnderTest.apply(project, refSpec, toArray(revisionData), TEST_SOURCE_LABEL);
     }
 
     try (Repository repo = repoManager.openRepository(project);
@@ -106,7 +129,7 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
     Optional<RevisionData> revisionData = reader.read(allProjects, seqChangesRef, 0);
 
     RefSpec refSpec = new RefSpec(seqChangesRef);
-    objectUnderTest.apply(project, refSpec, toArray(revisionData));
+    objectUnderTest.apply(project, refSpec, toArray(revisionData), TEST_SOURCE_LABEL);
     try (Repository repo = repoManager.openRepository(project);
         TestRepository<Repository> testRepo = new TestRepository<>(repo); ) {
 
@@ -131,7 +154,7 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
     try (Repository repo = repoManager.openRepository(testRepoKey)) {
       Optional<RevisionData> revisionData =
           reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0);
-      objectUnderTest.apply(project, refSpec, toArray(revisionData));
+      objectUnderTest.apply(project, refSpec, toArray(revisionData), TEST_SOURCE_LABEL);
     }
 
     ReviewInput reviewInput = new ReviewInput();
@@ -144,7 +167,7 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
       Optional<RevisionData> revisionDataWithComment =
           reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0);
 
-      objectUnderTest.apply(project, refSpec, toArray(revisionDataWithComment));
+      objectUnderTest.apply(project, refSpec, toArray(revisionDataWithComment), TEST_SOURCE_LABEL);
 
       Optional<RevisionData> newRevisionData =
           reader.read(project, repo.exactRef(refName).getObjectId(), refName, 0);
@@ -155,6 +178,187 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
     }
   }
 
+  @Test
+  public void shouldApplyMultipleRefsWithASingleBatchRefUpdate() throws Exception {
+    String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
+    testRepo = cloneProject(createTestProject(testRepoProjectName));
+
+    Result pushResult = createChange();
+    String metaRef = RefNames.changeMetaRef(pushResult.getChange().getId());
+    String seqChangesRef = RefNames.REFS_SEQUENCES + "changes";
+    NameKey testRepoKey = Project.nameKey(testRepoProjectName);
+
+    Map<String, RevisionData[]> refsRevisions = new LinkedHashMap<>();
+    try (Repository repo = repoManager.openRepository(testRepoKey)) {
+      refsRevisions.put(
+          metaRef,
+          toArray(reader.read(testRepoKey, repo.exactRef(metaRef).getObjectId(), metaRef, 0)));
+    }
+    refsRevisions.put(seqChangesRef, toArray(reader.read(allProjects, seqChangesRef, 0)));
+
+    List<RefUpdateState> refUpdateStates =
+        objectUnderTest.applyBatch(project, refsRevisions, /* atomic= */ true, TEST_SOURCE_LABEL);
+
+    assertThat(
+            refUpdateStates.stream().map(RefUpdateState::getResult).collect(Collectors.toList()))
+        .containsExactly(RefUpdate.Result.NEW, RefUpdate.Result.NEW)
+        .inOrder();
+    try (Repository repo = repoManager.openRepository(project);
+        TestRepository<Repository> testRepo = new TestRepository<>(repo)) {
+      compareObjects(
+          refsRevisions.get(metaRef)[0],
+          reader.read(project, repo.exactRef(metaRef).getObjectId(), metaRef, 0));
+      compareObjects(
+          refsRevisions.get(seqChangesRef)[0],
+          reader.read(project, repo.exactRef(seqChangesRef).getObjectId(), seqChangesRef, 0));
+      testRepo.fsck();
+    }
+  }
+
+  @Test
+  public void shouldRejectOnlyTheRefWithMissingParentsWhenBatchIsNotAtomic() throws Exception {
+    String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
+    NameKey testRepoKey = createTestProject(testRepoProjectName);
+    testRepo = cloneProject(testRepoKey);
+
+    Result pushResult = createChange();
+    Change.Id changeId = pushResult.getChange().getId();
+    String metaRef = RefNames.changeMetaRef(changeId);
+    String seqChangesRef = RefNames.REFS_SEQUENCES + "changes";
+
+    CommentInput comment = createCommentInput(1, 0, 1, 1, "Test comment");
+    ReviewInput reviewInput = new ReviewInput();
+    reviewInput.comments = ImmutableMap.of(Patch.COMMIT_MSG, ImmutableList.of(comment));
+    gApi.changes().id(changeId.get()).current().review(reviewInput);
+
+    Map<String, RevisionData[]> refsRevisions = new LinkedHashMap<>();
+    try (Repository repo = repoManager.openRepository(testRepoKey)) {
+      refsRevisions.put(
+          metaRef,
+          toArray(reader.read(testRepoKey, repo.exactRef(metaRef).getObjectId(), metaRef, 0)));
+    }
+    refsRevisions.put(seqChangesRef, toArray(reader.read(allProjects, seqChangesRef, 0)));
+
+    List<RefUpdateState> refUpdateStates =
+        objectUnderTest.applyBatch(project, refsRevisions, /* atomic= */ false, TEST_SOURCE_LABEL);
+
+    assertThat(
+            refUpdateStates.stream().map(RefUpdateState::getResult).collect(Collectors.toList()))
+        .containsExactly(RefUpdate.Result.REJECTED_MISSING_OBJECT, RefUpdate.Result.NEW)
+        .inOrder();
+    try (Repository repo = repoManager.openRepository(project)) {
+      assertThat(repo.exactRef(metaRef)).isNull();
+      assertThat(repo.exactRef(seqChangesRef)).isNotNull();
+    }
+  }
+
+  @Test
+  public void shouldApplyObjectsIntoAPackWithPackInserter() throws Exception {
+    String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
+    testRepo = cloneProject(createTestProject(testRepoProjectName));
+
+    Result pushResult = createChange();
+    String refName = RefNames.changeMetaRef(pushResult.getChange().getId());
+    NameKey testRepoKey = Project.nameKey(testRepoProjectName);
+    PackConsolidator packConsolidator = mock(PackConsolidator.class);
+    ApplyObject packApplyObject = newApplyObjectWithPackInserter(packConsolidator);
+
+    Optional<RevisionData> revisionData;
+    try (Repository repo = repoManager.openRepository(testRepoKey)) {
+      revisionData = reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0);
+    }
+
+    try (Repository repo = repoManager.openRepository(project);
+        TestRepository<Repository> testRepo = new TestRepository<>(repo)) {
+      GC gc = new GC((FileRepository) repo);
+      long looseObjects = gc.getStatistics().numberOfLooseObjects;
+      long packs = gc.getStatistics().numberOfPackFiles;
+
+      packApplyObject.apply(
+          project, new RefSpec(refName), toArray(revisionData), TEST_SOURCE_LABEL);
+
+      assertThat(gc.getStatistics().numberOfLooseObjects).isEqualTo(looseObjects);
+      assertThat(gc.getStatistics().numberOfPackFiles).isEqualTo(packs + 1);
+      compareObjects(
+          revisionData.get(),
+          reader.read(project, repo.exactRef(refName).getObjectId(), refName, 0));
+      testRepo.fsck();
+    }
+    verify(packConsolidator).onPackInserted(eq(project), any(File.class));
+  }
+
+  @Test
+  public void shouldApplyObjectsInsertedWhileStreamingThePayload() throws Exception {
+    String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
+    testRepo = cloneProject(createTestProject(testRepoProjectName));
+
+    Result pushResult = createChange();
+    String refName = RefNames.changeMetaRef(pushResult.getChange().getId());
+    NameKey testRepoKey = Project.nameKey(testRepoProjectName);
+    Gson gson = OutputFormat.JSON.newGsonBuilder().create();
+
+    Optional<RevisionData> revisionData;
+    try (Repository repo = repoManager.openRepository(testRepoKey)) {
+      revisionData = reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0);
+    }
+    RevisionData ingested =
+        objectUnderTest.ingest(
+            project,
+            gson,
+            new JsonReader(new StringReader(gson.toJson(revisionData.get()))),
+            RevisionData.class,
+            (RevisionData revision) -> TEST_SOURCE_LABEL);
+
+    assertThat(ingested.getCommitObject().isStored()).isFalse();
+    assertThat(ingested.getTreeObject().isStored()).isTrue();
+    assertThat(ingested.getTreeObject().getContent()).isEmpty();
+
+    objectUnderTest.apply(
+        project, new RefSpec(refName), new RevisionData[] {ingested}, TEST_SOURCE_LABEL);
+    try (Repository repo = repoManager.openRepository(project);
+        TestRepository<Repository> testRepo = new TestRepository<>(repo)) {
+      compareObjects(
+          revisionData.get(),
+          reader.read(project, repo.exactRef(refName).getObjectId(), refName, 0));
+      testRepo.fsck();
+    }
+  }
+
+  @Test
+  public void shouldSkipObjectsAlreadyInTheRepository() throws Exception {
+    String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
+    testRepo = cloneProject(createTestProject(testRepoProjectName));
+
+    Result pushResult = createChange();
+    String refName = RefNames.changeMetaRef(pushResult.getChange().getId());
+    NameKey testRepoKey = Project.nameKey(testRepoProjectName);
+    ApplyObjectMetrics metrics = mock(ApplyObjectMetrics.class);
+    ApplyObject countingApplyObject =
+        new ApplyObject(
+            plugin.getSysInjector().getInstance(LocalGitRepositoryManagerProvider.class),
+            plugin.getSysInjector().getInstance(ReplicationConfig.class),
+            mock(PackConsolidator.class),
+            metrics);
+
+    RevisionData revisionData;
+    try (Repository repo = repoManager.openRepository(testRepoKey)) {
+      revisionData =
+          reader.read(testRepoKey, repo.exactRef(refName).getObjectId(), refName, 0).get();
+    }
+    List<RevisionObjectData> objects = new ArrayList<>(revisionData.getBlobs());
+    objects.add(revisionData.getCommitObject());
+    objects.add(revisionData.getTreeObject());
+    long bytes = objects.stream().mapToLong(object -> object.getContent().length).sum();
+
+    countingApplyObject.apply(
+        project, new RefSpec(refName), new RevisionData[] {revisionData}, TEST_SOURCE_LABEL);
+    countingApplyObject.apply(
+        project, new RefSpec(refName), new RevisionData[] {revisionData}, TEST_SOURCE_LABEL);
+
+    verify(metrics).recordObjectsWritten(TEST_SOURCE_LABEL, 0, 0);
+    verify(metrics).recordObjectsSkipped(TEST_SOURCE_LABEL, objects.size(), bytes);
+  }
+
   @Test
   public void shouldThrowExceptionWhenParentCommitObjectIsMissing() throws Exception {
     String testRepoProjectName = project + TEST_REPLICATION_SUFFIX;
@@ -177,10 +381,78 @@ public class ApplyObjectIT extends LightweightPluginDaemonTest {
       RefSpec refSpec = new RefSpec(refName);
       assertThrows(
           MissingParentObjectException.class,
-          () -> objectUnderTest.apply(project, refSpec, toArray(revisionData)));
+          () -> objectUnderTest.apply(project, refSpec, toArray(revisionData), TEST_SOURCE_LABEL));
+    }
+  }
+
+  @Test
+  public void shouldApplyObjectsEncodedAsDeltas() throws Exception {
+    String refName = "refs/heads/master";
+    NameKey sourceProject =
+        createProjectOverAPI("sourceProject", project, false, /* submitType= */ null);
+    NameKey targetProject =
+        createProjectOverAPI("targetProject", project, false, /* submitType= */ null);
+    TestRepository<InMemoryRepository> sourceRepo = cloneProject(sourceProject);
+    String content = Strings.repeat("line of a frequently edited file\n", 100);
+    RevisionReader deltaReader = newRevisionReaderWithDeltas();
+
+    pushFactory
+        .create(admin.newIdent(), sourceRepo, "subject1", "a/file.txt", content)
+        .to(refName)
+        .assertOkStatus();
+    objectUnderTest.apply(
+        targetProject,
+        new RefSpec(refName),
+        toArray(deltaReader.read(sourceProject, refName, 0)),
+        TEST_SOURCE_LABEL);
+
+    pushFactory
+        .create(admin.newIdent(), sourceRepo, "subject2", "a/file.txt", content + "new line\n")
+        .to(refName)
+        .assertOkStatus();
+    Optional<RevisionData> revisionData = deltaReader.read(sourceProject, refName, 0);
+    assertThat(
+            revisionData.get().getBlobs().stream()
+                .map(RevisionObjectData::getType)
+                .collect(Collectors.toList()))
+        .contains(Constants.OBJ_REF_DELTA);
+    objectUnderTest.apply(
+        targetProject, new RefSpec(refName), toArray(revisionData), TEST_SOURCE_LABEL);
+
+    try (Repository source = repoManager.openRepository(sourceProject);
+        Repository target = repoManager.openRepository(targetProject);
+        TestRepository<Repository> testRepo = new TestRepository<>(target)) {
+      assertThat(target.exactRef(refName).getObjectId())
+          .isEqualTo(source.exactRef(refName).getObjectId());
+      testRepo.fsck();
     }
   }
 
+  private RevisionReader newRevisionReaderWithDeltas() {
+    ReplicationFileBasedConfig replicationConfig =
+        plugin.getSysInjector().getInstance(ReplicationFileBasedConfig.class);
+    Config config = new Config(replicationConfig.getConfig());
+    config.setBoolean("replication", null, "useApiPayloadDeltas", true);
+    ReplicationConfig deltasConfig = mock(ReplicationConfig.class);
+    when(deltasConfig.getConfig()).thenReturn(config);
+    return new RevisionReader(
+        repoManager, deltasConfig, plugin.getSysInjector().getInstance(ApplyObjectMetrics.class));
+  }
+
+  private ApplyObject newApplyObjectWithPackInserter(PackConsolidator packConsolidator) {
+    ReplicationFileBasedConfig replicationConfig =
+        plugin.getSysInjector().getInstance(ReplicationFileBasedConfig.class);
+    Config config = new Config(replicationConfig.getConfig());
+    config.setBoolean("replication", null, "applyObjectPackInserter", true);
+    ReplicationConfig packConfig = mock(ReplicationConfig.class);
+    when(packConfig.getConfig()).thenReturn(config);
+    return new ApplyObject(
+        plugin.getSysInjector().getInstance(LocalGitRepositoryManagerProvider.class),
+        packConfig,
+        packConsolidator,
+        plugin.getSysInjector().getInstance(ApplyObjectMetrics.class));
+  }
+
   private void compareObjects(RevisionData expected, Optional<RevisionData> actualOption) {
     assertThat(actualOption.isPresent()).isTrue();
     RevisionData actual = actualOption.get();
@@ -0,0 +1,156 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.googlesource.gerrit.plugins.replication.pull.Source;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BatchFetchClientTest {
+  private static final String TASK_ID = "taskid";
+
+  @Mock private FetchFactory fetchFactory;
+  @Mock private Source source;
+  @Mock private Repository repo;
+
+  private final List<List<RefSpec>> fetchedBatches =
+      Collections.synchronizedList(new ArrayList<>());
+  private ExecutorService executor;
+  private URIish uri;
+
+  @Before
+  public void setup() throws Exception {
+    uri = new URIish("http://some-host/some-path");
+    executor = Executors.newFixedThreadPool(2);
+    when(source.getRefsBatchSize()).thenReturn(new AdaptiveRefsBatchSize(2, 2, 2, 1000));
+    when(fetchFactory.createPlainImpl(TASK_ID, uri, repo))
+        .thenReturn(
+            refs -> {
+              fetchedBatches.add(refs);
+              return refs.stream()
+                  .map(ref -> new RefUpdateState(ref.getSource(), RefUpdate.Result.NEW))
+                  .collect(Collectors.toList());
+            });
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldFetchTheBatchesSequentiallyByDefault() throws Exception {
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.empty());
+
+    List<RefUpdateState> results = newBatchFetchClient().fetch(refSpecs("1", "2", "3"));
+
+    assertThat(remoteNames(results))
+        .containsExactly("refs/heads/1", "refs/heads/2", "refs/heads/3")
+        .inOrder();
+    assertThat(fetchedBatches).hasSize(2);
+  }
+
+  @Test
+  public void shouldMergeTheResultsOfTheBatchesFetchedInParallel() throws Exception {
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.of(executor));
+
+    List<RefUpdateState> results =
+        newBatchFetchClient().fetch(refSpecs("1", "2", "3", "4", "5"));
+
+    assertThat(remoteNames(results))
+        .containsExactly(
+            "refs/heads/1", "refs/heads/2", "refs/heads/3", "refs/heads/4", "refs/heads/5")
+        .inOrder();
+    assertThat(fetchedBatches).hasSize(3);
+  }
+
+  @Test
+  public void shouldFetchTheMetaRefsAfterTheOtherRefs() throws Exception {
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.of(executor));
+    RefSpec meta = new RefSpec("refs/changes/01/1/meta:refs/changes/01/1/meta");
+    RefSpec patchSet = new RefSpec("refs/changes/01/1/1:refs/changes/01/1/1");
+    RefSpec branch = new RefSpec("refs/heads/master:refs/heads/master");
+
+    newBatchFetchClient().fetch(List.of(meta, patchSet, branch));
+
+    assertThat(fetchedBatches)
+        .containsExactly(List.of(patchSet, branch), List.of(meta))
+        .inOrder();
+  }
+
+  @Test
+  public void shouldFailWhenOneOfTheBatchesFails() throws Exception {
+    Fetch failingClient = mock(Fetch.class);
+    when(failingClient.fetch(any())).thenThrow(new IOException("fetch failed"));
+    when(fetchFactory.createPlainImpl(TASK_ID, uri, repo)).thenReturn(failingClient);
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.of(executor));
+
+    IOException e =
+        assertThrows(IOException.class, () -> newBatchFetchClient().fetch(refSpecs("1", "2", "3")));
+
+    assertThat(e).hasMessageThat().isEqualTo("fetch failed");
+  }
+
+  @Test
+  public void shouldFetchTheNextBatchesWithTheAdaptedSize() throws Exception {
+    when(source.getRefsBatchSize()).thenReturn(new AdaptiveRefsBatchSize(2, 1, 2, 0));
+    when(source.getBatchFetchExecutor()).thenReturn(Optional.empty());
+
+    newBatchFetchClient().fetch(refSpecs("1", "2", "3", "4"));
+
+    assertThat(fetchedBatches)
+        .containsExactly(refSpecs("1", "2"), refSpecs("3"), refSpecs("4"))
+        .inOrder();
+  }
+
+  private BatchFetchClient newBatchFetchClient() {
+    return new BatchFetchClient(fetchFactory, source, TASK_ID, uri, repo);
+  }
+
+  private static List<RefSpec> refSpecs(String... branches) {
+    List<RefSpec> refSpecs = new ArrayList<>();
+    for (String branch : branches) {
+      refSpecs.add(new RefSpec("refs/heads/" + branch + ":refs/heads/" + branch));
+    }
+    return refSpecs;
+  }
+
+  private static List<String> remoteNames(List<RefUpdateState> results) {
+    return results.stream().map(RefUpdateState::getRemoteName).collect(Collectors.toList());
+  }
+}
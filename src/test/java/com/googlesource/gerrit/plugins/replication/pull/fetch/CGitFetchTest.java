@@ -0,0 +1,149 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.Test;
+
+public class CGitFetchTest {
+  private static final String OLD_ID = "9f8d52853089a3cf00c02ff7bd0817bd4353a95a";
+  private static final String NEW_ID = "b5d7bcf1d1c5b0f0726d10a16c8315f06f900bfb";
+  private static final String ZERO_ID = "0000000000000000000000000000000000000000";
+  private static final String URL = "http://gerrit-host/aProject.git";
+
+  @Test
+  public void shouldReportTheStateOfEachFetchedRef() {
+    List<RefUpdateState> states =
+        CGitFetch.refUpdateStates(
+            List.of(
+                "* " + ZERO_ID + " " + NEW_ID + " refs/changes/01/1/1",
+                "  " + OLD_ID + " " + NEW_ID + " refs/heads/master",
+                "+ " + OLD_ID + " " + NEW_ID + " refs/heads/stable",
+                "= " + OLD_ID + " " + OLD_ID + " refs/heads/unchanged"),
+            List.of(
+                new RefSpec("refs/changes/01/1/1:refs/changes/01/1/1"),
+                new RefSpec("refs/heads/master:refs/heads/master"),
+                new RefSpec("+refs/heads/stable:refs/heads/stable"),
+                new RefSpec("refs/heads/unchanged:refs/heads/unchanged")));
+
+    assertThat(states).hasSize(4);
+    assertState(states.get(0), "refs/changes/01/1/1", RefUpdate.Result.NEW);
+    assertState(states.get(1), "refs/heads/master", RefUpdate.Result.FAST_FORWARD);
+    assertState(states.get(2), "refs/heads/stable", RefUpdate.Result.FORCED);
+    assertState(states.get(3), "refs/heads/unchanged", RefUpdate.Result.NO_CHANGE);
+  }
+
+  @Test
+  public void shouldReportTheRefsNotInTheOutputAsUnchanged() {
+    List<RefUpdateState> states =
+        CGitFetch.refUpdateStates(
+            List.of(), List.of(new RefSpec("refs/heads/master:refs/heads/master")));
+
+    assertThat(states).hasSize(1);
+    assertState(states.get(0), "refs/heads/master", RefUpdate.Result.NO_CHANGE);
+  }
+
+  @Test
+  public void shouldReportTheRemoteNameOfTheRefsMatchingAWildcard() {
+    List<RefUpdateState> states =
+        CGitFetch.refUpdateStates(
+            List.of("* " + ZERO_ID + " " + NEW_ID + " refs/remotes/origin/master"),
+            List.of(new RefSpec("+refs/heads/*:refs/remotes/origin/*")));
+
+    assertThat(states).hasSize(1);
+    assertState(states.get(0), "refs/heads/master", RefUpdate.Result.NEW);
+  }
+
+  @Test
+  public void shouldIgnoreThePrunedRefsAndTheOtherLines() {
+    List<RefUpdateState> states =
+        CGitFetch.refUpdateStates(
+            List.of("- " + OLD_ID + " " + ZERO_ID + " refs/heads/deleted", ""),
+            List.of(new RefSpec("+refs/heads/*:refs/heads/*")));
+
+    assertThat(states).isEmpty();
+  }
+
+  @Test
+  public void shouldParseTheVersionOfTheNativeGitClient() {
+    CGitFetch.GitVersion version = CGitFetch.GitVersion.parse("git version 2.39.5 (Apple Git-154)");
+
+    assertThat(version.isAtLeast(2, 29)).isTrue();
+    assertThat(version.isAtLeast(2, 41)).isFalse();
+    assertThat(CGitFetch.GitVersion.parse("unknown").isAtLeast(2, 29)).isFalse();
+  }
+
+  @Test
+  public void shouldReadTheRefspecsFromTheStandardInputWithGit229() {
+    List<String> command =
+        CGitFetch.fetchCommand(
+            List.of("refs/heads/master:refs/heads/master"),
+            List.of(),
+            URL,
+            new CGitFetch.GitVersion(2, 29));
+
+    assertThat(command).containsExactly("git", "fetch", "--stdin", URL).inOrder();
+  }
+
+  @Test
+  public void shouldFetchWithPorcelainWithGit241() {
+    List<String> command =
+        CGitFetch.fetchCommand(
+            List.of("refs/heads/master:refs/heads/master"),
+            List.of("--negotiation-tip=" + OLD_ID),
+            URL,
+            new CGitFetch.GitVersion(2, 41));
+
+    assertThat(command)
+        .containsExactly(
+            "git",
+            "fetch",
+            "--stdin",
+            "--porcelain",
+            "--verbose",
+            "--negotiation-tip=" + OLD_ID,
+            URL)
+        .inOrder();
+  }
+
+  @Test
+  public void shouldPassTheRefspecsAsArgumentsBeforeGit229() {
+    List<String> command =
+        CGitFetch.fetchCommand(
+            List.of("refs/heads/master:refs/heads/master", "refs/heads/stable:refs/heads/stable"),
+            List.of(),
+            URL,
+            new CGitFetch.GitVersion(2, 28));
+
+    assertThat(command)
+        .containsExactly(
+            "git",
+            "fetch",
+            URL,
+            "refs/heads/master:refs/heads/master",
+            "refs/heads/stable:refs/heads/stable")
+        .inOrder();
+  }
+
+  private static void assertState(
+      RefUpdateState state, String remoteName, RefUpdate.Result result) {
+    assertThat(state.getRemoteName()).isEqualTo(remoteName);
+    assertThat(state.getResult()).isEqualTo(result);
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.fetch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.googlesource.gerrit.plugins.replication.ReplicationConfig;
+import com.googlesource.gerrit.plugins.replication.pull.LocalGitRepositoryManagerProvider;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.Pack;
+import org.eclipse.jgit.internal.storage.file.PackInserter;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PackConsolidatorTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("aProject");
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Mock private LocalGitRepositoryManagerProvider gitManagerProvider;
+  @Mock private GitRepositoryManager gitManager;
+  @Mock private WorkQueue workQueue;
+  @Mock private ScheduledExecutorService pool;
+  @Mock private ReplicationConfig replicationConfig;
+
+  private Config config;
+  private FileRepository repo;
+
+  @Before
+  public void setup() throws Exception {
+    config = new Config();
+    config.setBoolean("replication", null, "applyObjectPackInserter", true);
+    config.setInt("replication", null, "applyObjectMaxPacks", 3);
+    when(replicationConfig.getConfig()).thenReturn(config);
+    when(gitManagerProvider.get()).thenReturn(gitManager);
+
+    repo =
+        (FileRepository) FileRepositoryBuilder.create(new File(tempFolder.getRoot(), "repo.git"));
+    repo.create(true);
+  }
+
+  @After
+  public void tearDown() {
+    repo.close();
+  }
+
+  @Test
+  public void shouldMergeTheSmallPacksIntoASinglePack() throws Exception {
+    PackConsolidator packConsolidator = newStartedPackConsolidator();
+    List<ObjectId> blobs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      blobs.add(insertPack(packConsolidator, "blob " + i));
+    }
+    assertThat(packsCount()).isEqualTo(3);
+    expirePacks();
+
+    int merged = packConsolidator.consolidate(PROJECT);
+
+    assertThat(merged).isEqualTo(3);
+    assertThat(packsCount()).isEqualTo(1);
+    for (ObjectId blob : blobs) {
+      assertThat(repo.getObjectDatabase().has(blob)).isTrue();
+    }
+  }
+
+  @Test
+  public void shouldNotMergeASingleSmallPack() throws Exception {
+    PackConsolidator packConsolidator = newStartedPackConsolidator();
+    insertPack(packConsolidator, "blob");
+    expirePacks();
+
+    assertThat(packConsolidator.consolidate(PROJECT)).isEqualTo(0);
+    assertThat(packsCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotMergeThePacksNotInsertedByTheApplyObject() throws Exception {
+    PackConsolidator packConsolidator = newStartedPackConsolidator();
+    insertPack(packConsolidator, "blob 1");
+    insertPack(packConsolidator, "blob 2");
+    ObjectId otherBlob = insertPack("other blob");
+    expirePacks();
+
+    assertThat(packConsolidator.consolidate(PROJECT)).isEqualTo(2);
+    assertThat(packsCount()).isEqualTo(2);
+    assertThat(packOf(otherBlob).getIndex().getObjectCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldNotMergeThePacksBeforeThePrunePackExpire() throws Exception {
+    PackConsolidator packConsolidator = newStartedPackConsolidator();
+    insertPack(packConsolidator, "blob 1");
+    insertPack(packConsolidator, "blob 2");
+
+    assertThat(packConsolidator.consolidate(PROJECT)).isEqualTo(0);
+    assertThat(packsCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldNotMergeThePacksDuringAGc() throws Exception {
+    PackConsolidator packConsolidator = newStartedPackConsolidator();
+    insertPack(packConsolidator, "blob 1");
+    insertPack(packConsolidator, "blob 2");
+    expirePacks();
+    Files.write(new File(repo.getDirectory(), "gc.pid").toPath(), new byte[0]);
+
+    assertThat(packConsolidator.consolidate(PROJECT)).isEqualTo(0);
+    assertThat(packsCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldScheduleTheMergeWhenTheMaxPacksIsReached() {
+    when(workQueue.createQueue(anyInt(), anyString())).thenReturn(pool);
+    PackConsolidator packConsolidator = newPackConsolidator();
+    packConsolidator.start();
+
+    packConsolidator.onPackInserted(PROJECT, new File("pack-1.pack"));
+    packConsolidator.onPackInserted(PROJECT, new File("pack-2.pack"));
+    verify(pool, never()).execute(any());
+
+    packConsolidator.onPackInserted(PROJECT, new File("pack-3.pack"));
+    packConsolidator.onPackInserted(PROJECT, new File("pack-4.pack"));
+    verify(pool, times(1)).execute(any());
+  }
+
+  @Test
+  public void shouldNotScheduleTheMergeWithoutPackInserter() {
+    config.setBoolean("replication", null, "applyObjectPackInserter", false);
+    PackConsolidator packConsolidator = newPackConsolidator();
+    packConsolidator.start();
+
+    for (int i = 0; i < 5; i++) {
+      packConsolidator.onPackInserted(PROJECT, new File("pack-" + i + ".pack"));
+    }
+
+    verify(workQueue, never()).createQueue(anyInt(), anyString());
+  }
+
+  private PackConsolidator newPackConsolidator() {
+    return new PackConsolidator(gitManagerProvider, workQueue, replicationConfig);
+  }
+
+  private PackConsolidator newStartedPackConsolidator() throws Exception {
+    when(workQueue.createQueue(anyInt(), anyString())).thenReturn(pool);
+    when(gitManager.openRepository(PROJECT))
+        .thenAnswer(
+            invocation -> {
+              repo.incrementOpen();
+              return repo;
+            });
+    PackConsolidator packConsolidator = newPackConsolidator();
+    packConsolidator.start();
+    return packConsolidator;
+  }
+
+  private ObjectId insertPack(PackConsolidator packConsolidator, String content) throws Exception {
+    ObjectId id = insertPack(content);
+    packConsolidator.onPackInserted(PROJECT, packOf(id).getPackFile());
+    return id;
+  }
+
+  private ObjectId insertPack(String content) throws Exception {
+    try (PackInserter inserter = repo.getObjectDatabase().newPackInserter()) {
+      ObjectId id = inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8));
+      inserter.flush();
+      return id;
+    }
+  }
+
+  private Pack packOf(ObjectId id) throws Exception {
+    for (Pack pack : repo.getObjectDatabase().getPacks()) {
+      if (pack.hasObject(id)) {
+        return pack;
+      }
+    }
+    throw new AssertionError("No pack with object " + id.name());
+  }
+
+  private void expirePacks() {
+    long expired = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+    for (Pack pack : repo.getObjectDatabase().getPacks()) {
+      assertThat(pack.getPackFile().setLastModified(expired)).isTrue();
+    }
+  }
+
+  private int packsCount() {
+    return repo.getObjectDatabase().getPacks().size();
+  }
+}
@@ -0,0 +1,198 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.replication.pull.transport;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.sshd.SessionCloseListener;
+import org.eclipse.jgit.transport.sshd.SshdSession;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SshSessionPoolTest {
+  private static final String SOURCE_NAME = "source";
+  private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+  private static final String COMMAND = "git-upload-pack '/some-path'";
+
+  @Mock private SshSessionFactory delegate;
+  @Mock private TransportMetrics metrics;
+
+  private URIish uri;
+
+  @Before
+  public void setup() throws Exception {
+    uri = new URIish("ssh://user@some-host:29418/some-path");
+  }
+
+  @Test
+  public void shouldReuseTheReleasedSession() throws Exception {
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(session);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+    pool.getSession(uri, null, null, 0).exec(COMMAND, 0);
+
+    verify(session).exec(COMMAND, 0);
+    verify(delegate).getSession(eq(uri), any(), any(), anyInt());
+    verify(delegate, never()).releaseSession(session);
+    verify(metrics).recordSessionCreated(eq(SOURCE_NAME), anyLong());
+    verify(metrics).recordSessionReused(SOURCE_NAME);
+  }
+
+  @Test
+  public void shouldNotShareTheSessionsOfDifferentHosts() throws Exception {
+    URIish otherUri = new URIish("ssh://user@other-host:29418/some-path");
+    RemoteSession session = mock(RemoteSession.class);
+    RemoteSession otherSession = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(session);
+    when(delegate.getSession(eq(otherUri), any(), any(), anyInt())).thenReturn(otherSession);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+
+    assertThat(pool.getSession(otherUri, null, null, 0)).isSameInstanceAs(otherSession);
+  }
+
+  @Test
+  public void shouldReleaseTheSessionsAboveTheMaximumIdle() throws Exception {
+    RemoteSession first = mock(RemoteSession.class);
+    RemoteSession second = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(first, second);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    RemoteSession firstLeased = pool.getSession(uri, null, null, 0);
+    RemoteSession secondLeased = pool.getSession(uri, null, null, 0);
+    pool.releaseSession(firstLeased);
+    pool.releaseSession(secondLeased);
+
+    verify(delegate, never()).releaseSession(first);
+    verify(delegate).releaseSession(second);
+  }
+
+  @Test
+  public void shouldReleaseTheExpiredSessions() throws Exception {
+    RemoteSession expired = mock(RemoteSession.class);
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(expired, session);
+    SshSessionPool pool = newPool(1, 0L);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+    Thread.sleep(1);
+
+    assertThat(pool.getSession(uri, null, null, 0)).isSameInstanceAs(session);
+    verify(delegate).releaseSession(expired);
+  }
+
+  @Test
+  public void shouldReleaseTheIdleSessionsWhenClosed() throws Exception {
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(session);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+    pool.close();
+
+    verify(delegate).releaseSession(session);
+  }
+
+  @Test
+  public void shouldReleaseTheSessionsReturnedAfterClose() throws Exception {
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(session);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    RemoteSession leased = pool.getSession(uri, null, null, 0);
+    pool.close();
+    pool.releaseSession(leased);
+
+    verify(delegate).releaseSession(session);
+  }
+
+  @Test
+  public void shouldNotReuseTheSessionsClosedWhileIdle() throws Exception {
+    SshdSession closed = mock(SshdSession.class);
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(closed, session);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+    ArgumentCaptor<SessionCloseListener> closeListener =
+        ArgumentCaptor.forClass(SessionCloseListener.class);
+    verify(closed).addCloseListener(closeListener.capture());
+    closeListener.getValue().sessionClosed(closed);
+
+    assertThat(pool.getSession(uri, null, null, 0)).isSameInstanceAs(session);
+    verify(delegate).releaseSession(closed);
+  }
+
+  @Test
+  public void shouldRetryTheFirstCommandOfAReusedSessionOnANewSession() throws Exception {
+    RemoteSession dropped = mock(RemoteSession.class);
+    RemoteSession session = mock(RemoteSession.class);
+    Process process = mock(Process.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(dropped, session);
+    when(dropped.exec(COMMAND, 0)).thenThrow(new IOException("connection reset"));
+    when(session.exec(COMMAND, 0)).thenReturn(process);
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    pool.releaseSession(pool.getSession(uri, null, null, 0));
+    RemoteSession reused = pool.getSession(uri, null, null, 0);
+
+    assertThat(reused.exec(COMMAND, 0)).isSameInstanceAs(process);
+    verify(delegate).releaseSession(dropped);
+
+    pool.releaseSession(reused);
+    pool.getSession(uri, null, null, 0).exec(COMMAND, 0);
+    verify(session, times(2)).exec(COMMAND, 0);
+  }
+
+  @Test
+  public void shouldNotRetryTheCommandsOfANewSession() throws Exception {
+    RemoteSession session = mock(RemoteSession.class);
+    when(delegate.getSession(eq(uri), any(), any(), anyInt())).thenReturn(session);
+    when(session.exec(COMMAND, 0)).thenThrow(new IOException("connection reset"));
+    SshSessionPool pool = newPool(1, IDLE_TIMEOUT_NANOS);
+
+    RemoteSession leased = pool.getSession(uri, null, null, 0);
+
+    assertThrows(IOException.class, () -> leased.exec(COMMAND, 0));
+    verify(delegate).getSession(eq(uri), any(), any(), anyInt());
+  }
+
+  private SshSessionPool newPool(int maxIdle, long idleTimeoutNanos) {
+    return new SshSessionPool(delegate, SOURCE_NAME, metrics, maxIdle, idleTimeoutNanos);
+  }
+}
@@ -29,6 +29,7 @@ import java.util.Optional;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.SshTransport;
 import org.eclipse.jgit.transport.TransferConfig;
 import org.eclipse.jgit.transport.Transport;
 import org.eclipse.jgit.transport.TransportHttp;
@@ -48,6 +49,7 @@ public class TransportProviderTest {
   @Mock private Repository repository;
   @Mock private StoredConfig storedConfig;
   @Mock private org.eclipse.jgit.transport.TransferConfig transferConfig;
+  @Mock private TransportMetrics metrics;
 
   @Before
   public void setup() {
@@ -69,7 +71,7 @@ public class TransportProviderTest {
     when(bearerTokenProvider.get()).thenReturn(Optional.of("some-bearer-token"));
 
     TransportProvider transportProvider =
-        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider);
+        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider, metrics);
     verifyConstructor();
 
     URIish urIish = new URIish("http://some-host/some-path");
@@ -86,7 +88,7 @@ public class TransportProviderTest {
     when(bearerTokenProvider.get()).thenReturn(Optional.empty());
 
     TransportProvider transportProvider =
-        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider);
+        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider, metrics);
     verifyConstructor();
 
     URIish urIish = new URIish("ssh://some-host/some-path");
@@ -101,11 +103,42 @@ public class TransportProviderTest {
     when(bearerTokenProvider.get()).thenReturn(Optional.of("some-bearer-token"));
 
     TransportProvider transportProvider =
-        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider);
+        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider, metrics);
     verifyConstructor();
 
     URIish urIish = new URIish("ssh://some-host/some-path");
     Transport transport = transportProvider.open(repository, urIish);
     assertThat(transport).isNotInstanceOf(TransportHttp.class);
   }
+
+  @Test
+  public void shouldShareTheSshSessionsWhenPoolIsEnabled() throws URISyntaxException, IOException {
+    when(bearerTokenProvider.get()).thenReturn(Optional.empty());
+    when(sourceConfig.getSshSessionPoolSize()).thenReturn(2);
+    when(sourceConfig.getSshSessionIdleTimeoutSec()).thenReturn(30L);
+
+    TransportProvider transportProvider =
+        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider, metrics);
+
+    URIish urIish = new URIish("ssh://some-host/some-path");
+    Transport transport = transportProvider.open(repository, urIish);
+
+    assertThat(transport).isInstanceOf(SshTransport.class);
+    assertThat(((SshTransport) transport).getSshSessionFactory())
+        .isInstanceOf(SshSessionPool.class);
+  }
+
+  @Test
+  public void shouldNotShareTheSshSessionsByDefault() throws URISyntaxException, IOException {
+    when(bearerTokenProvider.get()).thenReturn(Optional.empty());
+
+    TransportProvider transportProvider =
+        new TransportProvider(sourceConfig, cpFactory, bearerTokenProvider, metrics);
+
+    URIish urIish = new URIish("ssh://some-host/some-path");
+    Transport transport = transportProvider.open(repository, urIish);
+
+    assertThat(((SshTransport) transport).getSshSessionFactory())
+        .isNotInstanceOf(SshSessionPool.class);
+  }
 }